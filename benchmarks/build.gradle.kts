@@ -0,0 +1,72 @@
+val jmhVersion = "1.23"
+
+configurations {
+    val testConfig by getting {}
+    val testCompile by getting {
+        extendsFrom(testConfig)
+    }
+}
+
+dependencies {
+    compile(project(":saros.core"))
+    compile(project(":saros.server"))
+    compile("org.openjdk.jmh:jmh-core:$jmhVersion")
+    annotationProcessor("org.openjdk.jmh:jmh-generator-annprocess:$jmhVersion")
+}
+
+sourceSets {
+    main {
+        java.srcDirs("src")
+    }
+}
+
+/*
+ * Properties:
+ * Set <code>./gradlew -PjmhIncludes=<regex></code> to only run the matching benchmarks.
+ *
+ * Set <code>./gradlew -PjmhTolerance=<percent></code> to define how much a benchmark
+ * may be slower than the baseline before jmhCheck fails (default 10).
+ */
+val jmhIncludes: String? by project
+val jmhTolerance: String? by project
+
+val jmhResults = file("$buildDir/reports/jmh/results.csv")
+val jmhBaseline = file("baseline.csv")
+
+tasks {
+
+    val jmh by registering(JavaExec::class) {
+        dependsOn("classes")
+
+        group = "Benchmark"
+        description = "Runs the JMH benchmarks and writes the results to build/reports/jmh/results.csv"
+
+        main = "org.openjdk.jmh.Main"
+        classpath = sourceSets["main"].runtimeClasspath
+        args = listOf("-rf", "csv", "-rff", jmhResults.path) + listOfNotNull(jmhIncludes)
+
+        doFirst {
+            jmhResults.parentFile.mkdirs()
+        }
+    }
+
+    register("jmhCheck", JavaExec::class) {
+        dependsOn(jmh)
+
+        group = "Benchmark"
+        description = "Runs the JMH benchmarks and fails if a benchmark regressed compared to baseline.csv"
+
+        main = "saros.benchmarks.BaselineCheck"
+        classpath = sourceSets["main"].runtimeClasspath
+        args = listOf(jmhBaseline.path, jmhResults.path, jmhTolerance ?: "10")
+    }
+
+    register("jmhUpdateBaseline", Copy::class) {
+        group = "Benchmark"
+        description = "Replaces baseline.csv with the results of the last benchmark run"
+
+        from(jmhResults)
+        into(projectDir)
+        rename { jmhBaseline.name }
+    }
+}
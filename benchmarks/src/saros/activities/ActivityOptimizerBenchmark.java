@@ -0,0 +1,87 @@
+package saros.activities;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import saros.benchmarks.Fixtures;
+import saros.editor.text.TextPosition;
+import saros.editor.text.TextSelection;
+import saros.filesystem.IFile;
+import saros.filesystem.IReferencePoint;
+import saros.net.xmpp.JID;
+import saros.session.User;
+
+/**
+ * Measures {@link ActivityOptimizer#optimize} for outgoing buffers containing typing, selection and
+ * viewport activities for several files.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ActivityOptimizerBenchmark {
+
+  @Param({"16", "256", "4096"})
+  public int activities;
+
+  private final User alice = new User(new JID("alice@benchmark"), true, true, null);
+
+  private Path workspace;
+
+  private List<IActivity> buffer;
+
+  @Setup
+  public void setUp() throws Exception {
+    workspace = Files.createTempDirectory("saros-benchmark");
+
+    IReferencePoint referencePoint = Fixtures.createReferencePoint(workspace, "project");
+
+    IFile[] files = new IFile[8];
+
+    for (int i = 0; i < files.length; i++) files[i] = referencePoint.getFile("src/File" + i);
+
+    buffer = new ArrayList<IActivity>(activities);
+
+    for (int i = 0; i < activities; i++) {
+      IFile file = files[i % files.length];
+      TextPosition position = new TextPosition(i, 0);
+
+      switch (i % 3) {
+        case 0:
+          buffer.add(TextEditActivity.buildTextEditActivity(alice, position, "a", "", file));
+          break;
+        case 1:
+          buffer.add(new TextSelectionActivity(alice, new TextSelection(position, position), file));
+          break;
+        default:
+          buffer.add(new ViewportActivity(alice, i, 40, file));
+      }
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    Fixtures.delete(workspace);
+  }
+
+  @Benchmark
+  public List<IActivity> optimize() {
+    return ActivityOptimizer.optimize(buffer);
+  }
+}
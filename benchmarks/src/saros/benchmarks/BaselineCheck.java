@@ -0,0 +1,189 @@
+package saros.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares the results of a JMH run against a baseline. Both files must be in the CSV format that
+ * JMH writes when invoked with <code>-rf csv</code>. A benchmark is considered to have regressed if
+ * its score is worse than the baseline score by more than the given tolerance (in percent). For the
+ * throughput mode higher scores are better, for all other modes lower scores are better.
+ *
+ * <p>Usage: <code>BaselineCheck &lt;baseline.csv&gt; &lt;results.csv&gt; [tolerance]</code>
+ *
+ * <p>Exits with status 1 if at least one benchmark regressed, otherwise with status 0. Benchmarks
+ * that are not contained in both files are reported but not compared.
+ */
+public final class BaselineCheck {
+
+  private static final String THROUGHPUT_MODE = "thrpt";
+
+  private static class Result {
+    private final String mode;
+    private final double score;
+    private final String unit;
+
+    private Result(String mode, double score, String unit) {
+      this.mode = mode;
+      this.score = score;
+      this.unit = unit;
+    }
+  }
+
+  private BaselineCheck() {
+    // NOP
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("usage: BaselineCheck <baseline.csv> <results.csv> [tolerance]");
+      System.exit(2);
+    }
+
+    Path baselineFile = Paths.get(args[0]);
+    Path resultsFile = Paths.get(args[1]);
+    double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : 10D;
+
+    if (!Files.exists(baselineFile)) {
+      System.out.println(
+          "no baseline found at " + baselineFile + ", run jmhUpdateBaseline to create one");
+      return;
+    }
+
+    Map<String, Result> baseline = read(baselineFile);
+    Map<String, Result> results = read(resultsFile);
+
+    int regressions = 0;
+
+    for (Map.Entry<String, Result> entry : results.entrySet()) {
+      String benchmark = entry.getKey();
+      Result current = entry.getValue();
+      Result base = baseline.get(benchmark);
+
+      if (base == null || !base.mode.equals(current.mode) || !base.unit.equals(current.unit)) {
+        System.out.println("[NEW]  " + benchmark + ": " + format(current));
+        continue;
+      }
+
+      double change =
+          base.score == 0D ? 0D : (current.score - base.score) / Math.abs(base.score) * 100D;
+
+      // positive values are always a deterioration
+      double deterioration = THROUGHPUT_MODE.equals(current.mode) ? -change : change;
+
+      boolean regressed = deterioration > tolerance;
+
+      if (regressed) regressions++;
+
+      System.out.println(
+          String.format(
+              Locale.ROOT,
+              "[%s] %s: %s (baseline %s, %+.1f%%)",
+              regressed ? "FAIL" : " OK ",
+              benchmark,
+              format(current),
+              format(base),
+              change));
+    }
+
+    for (String benchmark : baseline.keySet()) {
+      if (!results.containsKey(benchmark)) System.out.println("[GONE] " + benchmark);
+    }
+
+    if (regressions > 0) {
+      System.out.println(
+          regressions + " benchmark(s) regressed by more than " + tolerance + "% against baseline");
+      System.exit(1);
+    }
+  }
+
+  private static String format(Result result) {
+    return String.format(Locale.ROOT, "%.3f %s", result.score, result.unit);
+  }
+
+  /**
+   * Reads the given JMH CSV result file. The benchmark name and all parameter columns are combined
+   * to the key of the result.
+   */
+  private static Map<String, Result> read(Path file) throws IOException {
+    List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+
+    Map<String, Result> results = new LinkedHashMap<String, Result>();
+
+    if (lines.isEmpty()) return results;
+
+    List<String> header = split(lines.get(0));
+
+    int benchmarkColumn = header.indexOf("Benchmark");
+    int modeColumn = header.indexOf("Mode");
+    int scoreColumn = header.indexOf("Score");
+    int unitColumn = header.indexOf("Unit");
+
+    if (benchmarkColumn == -1 || modeColumn == -1 || scoreColumn == -1 || unitColumn == -1)
+      throw new IOException("file " + file + " is not a JMH CSV result file");
+
+    for (String line : lines.subList(1, lines.size())) {
+      if (line.trim().isEmpty()) continue;
+
+      List<String> columns = split(line);
+
+      StringBuilder key = new StringBuilder(columns.get(benchmarkColumn));
+
+      for (int i = 0; i < header.size(); i++) {
+        if (!header.get(i).startsWith("Param: ") || columns.get(i).isEmpty()) continue;
+
+        key.append(' ')
+            .append(header.get(i).substring("Param: ".length()))
+            .append('=')
+            .append(columns.get(i));
+      }
+
+      results.put(
+          key.toString(),
+          new Result(
+              columns.get(modeColumn),
+              Double.parseDouble(columns.get(scoreColumn).replace(',', '.')),
+              columns.get(unitColumn)));
+    }
+
+    return results;
+  }
+
+  /** Splits a CSV line into its columns, removing the quotes that JMH puts around the values. */
+  private static List<String> split(String line) {
+    List<String> columns = new ArrayList<String>();
+
+    StringBuilder column = new StringBuilder();
+    boolean quoted = false;
+
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+
+      if (c == '"') {
+        if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          column.append(c);
+          i++;
+        } else {
+          quoted = !quoted;
+        }
+      } else if (c == ',' && !quoted) {
+        columns.add(column.toString());
+        column.setLength(0);
+      } else {
+        column.append(c);
+      }
+    }
+
+    columns.add(column.toString());
+
+    return columns;
+  }
+}
@@ -0,0 +1,98 @@
+package saros.benchmarks;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import saros.filesystem.IReferencePoint;
+import saros.net.xmpp.JID;
+import saros.server.filesystem.ServerPathImpl;
+import saros.server.filesystem.ServerProjectImpl;
+import saros.server.filesystem.ServerWorkspaceImpl;
+import saros.session.ISarosSession;
+import saros.session.User;
+
+/** Shared fixtures for the benchmarks. */
+public final class Fixtures {
+
+  /** The id under which the reference point passed to {@link #createSession} is shared. */
+  public static final String REFERENCE_POINT_ID = "0";
+
+  private Fixtures() {
+    // NOP
+  }
+
+  /**
+   * Creates a reference point backed by the server file system in a new directory inside the given
+   * workspace root.
+   */
+  public static ServerProjectImpl createReferencePoint(Path workspaceRoot, String name)
+      throws IOException {
+
+    ServerWorkspaceImpl workspace =
+        new ServerWorkspaceImpl(ServerPathImpl.fromString(workspaceRoot.toString()));
+
+    ServerProjectImpl referencePoint = new ServerProjectImpl(workspace, name);
+    referencePoint.create();
+
+    return referencePoint;
+  }
+
+  /**
+   * Creates a session that only supports the lookups that are needed to marshal activities, i.e the
+   * lookup of users and of the given shared reference point. All other methods throw an {@link
+   * UnsupportedOperationException}.
+   */
+  public static ISarosSession createSession(IReferencePoint referencePoint, User... users) {
+
+    final Map<JID, User> userMap = new HashMap<JID, User>();
+
+    for (User user : users) userMap.put(user.getJID(), user);
+
+    return (ISarosSession)
+        Proxy.newProxyInstance(
+            ISarosSession.class.getClassLoader(),
+            new Class<?>[] {ISarosSession.class},
+            (proxy, method, args) -> {
+              switch (method.getName()) {
+                case "getUser":
+                  return userMap.get(args[0]);
+                case "getReferencePointId":
+                  return referencePoint.equals(args[0]) ? REFERENCE_POINT_ID : null;
+                case "getReferencePoint":
+                  return REFERENCE_POINT_ID.equals(args[0]) ? referencePoint : null;
+                case "getID":
+                  return "benchmark";
+                default:
+                  throw new UnsupportedOperationException(method.getName());
+              }
+            });
+  }
+
+  /** Deletes the given directory including all of its content. */
+  public static void delete(Path directory) throws IOException {
+    if (directory == null || !Files.exists(directory)) return;
+
+    Files.walkFileTree(
+        directory,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+              throws IOException {
+            Files.delete(file);
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+            Files.delete(dir);
+            return FileVisitResult.CONTINUE;
+          }
+        });
+  }
+}
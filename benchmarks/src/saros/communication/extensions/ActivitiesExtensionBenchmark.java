@@ -0,0 +1,148 @@
+package saros.communication.extensions;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.jivesoftware.smack.packet.PacketExtension;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xmlpull.mxp1.MXParser;
+import org.xmlpull.v1.XmlPullParser;
+import saros.activities.BinaryActivityCodec;
+import saros.activities.IActivity;
+import saros.activities.JupiterActivity;
+import saros.activities.TextSelectionActivity;
+import saros.activities.ViewportActivity;
+import saros.benchmarks.Fixtures;
+import saros.concurrent.jupiter.internal.JupiterVectorTime;
+import saros.concurrent.jupiter.internal.text.InsertOperation;
+import saros.editor.text.TextPosition;
+import saros.editor.text.TextSelection;
+import saros.filesystem.IFile;
+import saros.filesystem.IReferencePoint;
+import saros.misc.xstream.ResourceTransportWrapperConverter;
+import saros.misc.xstream.UserConverter;
+import saros.net.IBinaryPacketExtension;
+import saros.net.xmpp.JID;
+import saros.server.filesystem.ServerPathFactoryImpl;
+import saros.session.ISarosSession;
+import saros.session.User;
+
+/**
+ * Measures the marshalling and unmarshalling of {@link ActivitiesExtension activity batches} as
+ * performed by the transmitter and receiver, both as XML using XStream and in binary form.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ActivitiesExtensionBenchmark {
+
+  @Param({"1", "16", "128"})
+  public int activities;
+
+  private final User alice = new User(new JID("alice@benchmark"), true, true, null);
+  private final User bob = new User(new JID("bob@benchmark"), false, false, null);
+
+  private Path workspace;
+
+  private UserConverter userConverter;
+  private ResourceTransportWrapperConverter resourceConverter;
+  private BinaryActivityCodec binaryCodec;
+
+  private PacketExtension extension;
+
+  private byte[] xml;
+  private byte[] binary;
+
+  @Setup
+  public void setUp() throws Exception {
+    workspace = Files.createTempDirectory("saros-benchmark");
+
+    IReferencePoint referencePoint = Fixtures.createReferencePoint(workspace, "project");
+    IFile file = referencePoint.getFile("src/saros/Main.java");
+
+    ISarosSession session = Fixtures.createSession(referencePoint, alice, bob);
+
+    userConverter = new UserConverter(session);
+    resourceConverter = new ResourceTransportWrapperConverter(session, new ServerPathFactoryImpl());
+    binaryCodec = new BinaryActivityCodec(session, new ServerPathFactoryImpl(), userConverter);
+
+    userConverter.start();
+    resourceConverter.start();
+    binaryCodec.start();
+
+    List<IActivity> batch = new ArrayList<IActivity>(activities);
+
+    for (int i = 0; i < activities; i++) {
+      TextPosition position = new TextPosition(42, i);
+
+      if (i % 16 == 15) {
+        batch.add(new ViewportActivity(alice, 20, 60, file));
+      } else if (i % 8 == 7) {
+        batch.add(new TextSelectionActivity(alice, new TextSelection(position, position), file));
+      } else {
+        batch.add(
+            new JupiterActivity(
+                new JupiterVectorTime(i, 0),
+                new InsertOperation(position, 0, 1, "a"),
+                alice,
+                file));
+      }
+    }
+
+    extension = ActivitiesExtension.PROVIDER.create(new ActivitiesExtension("benchmark", batch, 0));
+
+    xml = extension.toXML().getBytes(StandardCharsets.UTF_8);
+    binary = ((IBinaryPacketExtension) extension).toBinary();
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    binaryCodec.stop();
+    resourceConverter.stop();
+    userConverter.stop();
+
+    Fixtures.delete(workspace);
+  }
+
+  @Benchmark
+  public byte[] marshalXML() {
+    return extension.toXML().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public PacketExtension unmarshalXML() throws Exception {
+    XmlPullParser parser = new MXParser();
+    parser.setInput(new ByteArrayInputStream(xml), "UTF-8");
+    parser.next();
+
+    return ActivitiesExtension.PROVIDER.parseExtension(parser);
+  }
+
+  @Benchmark
+  public byte[] marshalBinary() {
+    return ((IBinaryPacketExtension) extension).toBinary();
+  }
+
+  @Benchmark
+  public PacketExtension unmarshalBinary() throws Exception {
+    return ActivitiesExtension.PROVIDER.parseBinaryExtension(binary);
+  }
+}
@@ -0,0 +1,71 @@
+package saros.concurrent.jupiter.internal;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import saros.activities.JupiterActivity;
+import saros.concurrent.jupiter.Operation;
+import saros.concurrent.jupiter.TransformationException;
+import saros.concurrent.jupiter.internal.text.InsertOperation;
+import saros.editor.text.TextPosition;
+import saros.net.xmpp.JID;
+import saros.session.User;
+
+/**
+ * Measures {@link Jupiter#receiveJupiterActivity} if the remote side lags behind and the
+ * acknowledgement list contains a backlog of unacknowledged local operations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JupiterBenchmark {
+
+  @Param({"1", "64", "1024"})
+  public int backlog;
+
+  private final User alice = new User(new JID("alice@benchmark"), true, true, null);
+  private final User bob = new User(new JID("bob@benchmark"), false, false, null);
+
+  private Jupiter jupiter;
+
+  private int receivedOperations;
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    jupiter = new Jupiter(false);
+    receivedOperations = 0;
+
+    for (int i = 0; i < backlog; i++)
+      jupiter.generateJupiterActivity(
+          new InsertOperation(new TextPosition(0, i), 0, 1, "a"), alice, null);
+  }
+
+  @Benchmark
+  public Operation receiveWithBacklog() throws TransformationException {
+    /*
+     * the remote side has not seen any of our local operations, so every
+     * received operation has to be transformed against the whole backlog
+     */
+    final JupiterActivity activity =
+        new JupiterActivity(
+            new JupiterVectorTime(receivedOperations++, 0),
+            new InsertOperation(new TextPosition(1, 0), 0, 1, "b"),
+            bob,
+            null);
+
+    return jupiter.receiveJupiterActivity(activity);
+  }
+}
@@ -0,0 +1,69 @@
+package saros.concurrent.jupiter.internal.text;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import saros.concurrent.jupiter.Operation;
+import saros.editor.text.TextPosition;
+
+/** Measures the transformation of the operation pairs that occur while typing concurrently. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GOTOInclusionTransformationBenchmark {
+
+  private GOTOInclusionTransformation inclusion;
+
+  private Operation insertA;
+  private Operation insertB;
+  private Operation deleteA;
+  private Operation deleteB;
+  private Operation split;
+
+  @Setup
+  public void setUp() {
+    inclusion = new GOTOInclusionTransformation();
+
+    insertA = new InsertOperation(new TextPosition(10, 5), 0, 1, "a");
+    insertB = new InsertOperation(new TextPosition(10, 5), 0, 1, "b");
+
+    deleteA = new DeleteOperation(new TextPosition(10, 2), 0, 6, "foobar");
+    deleteB = new DeleteOperation(new TextPosition(10, 4), 1, 3, "obar\nxyz");
+
+    split =
+        new SplitOperation(
+            new DeleteOperation(new TextPosition(9, 0), 2, 0, "line\nline\n"),
+            new InsertOperation(new TextPosition(9, 0), 1, 0, "text\n"));
+  }
+
+  @Benchmark
+  public Operation insertInsert() {
+    return inclusion.transform(insertA, insertB, Boolean.TRUE);
+  }
+
+  @Benchmark
+  public Operation insertDelete() {
+    return inclusion.transform(insertA, deleteA, Boolean.TRUE);
+  }
+
+  @Benchmark
+  public Operation deleteDelete() {
+    return inclusion.transform(deleteA, deleteB, Boolean.FALSE);
+  }
+
+  @Benchmark
+  public Operation splitInsert() {
+    return inclusion.transform(split, insertA, Boolean.FALSE);
+  }
+}
@@ -0,0 +1,84 @@
+package saros.negotiation;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import saros.benchmarks.Fixtures;
+import saros.filesystem.IReferencePoint;
+import saros.filesystem.checksum.NullChecksumCache;
+
+/**
+ * Measures the creation of the {@link FileList} of a reference point, i.e. the walk over its
+ * members and the checksum calculation of all contained files, without any checksum cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileListFactoryBenchmark {
+
+  private static final int FILES_PER_FOLDER = 32;
+
+  @Param({"128", "1024"})
+  public int files;
+
+  @Param({"4096"})
+  public int fileSize;
+
+  private Path workspace;
+
+  private IReferencePoint referencePoint;
+
+  @Setup
+  public void setUp() throws Exception {
+    workspace = Files.createTempDirectory("saros-benchmark");
+
+    referencePoint = Fixtures.createReferencePoint(workspace, "project");
+
+    Path root = workspace.resolve("project");
+
+    Random random = new Random(42);
+
+    byte[] content = new byte[fileSize];
+
+    for (int i = 0; i < files; i++) {
+      Path folder = root.resolve("folder" + (i / FILES_PER_FOLDER));
+      Files.createDirectories(folder);
+
+      random.nextBytes(content);
+
+      for (int j = 0; j < content.length; j++) content[j] = (byte) ('a' + (content[j] & 0x0F));
+
+      Files.write(folder.resolve("File" + i + ".java"), Arrays.copyOf(content, content.length));
+    }
+
+    Files.write(root.resolve("README"), "benchmark".getBytes(StandardCharsets.UTF_8));
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    Fixtures.delete(workspace);
+  }
+
+  @Benchmark
+  public FileList createFileList() throws Exception {
+    return FileListFactory.createFileList(referencePoint, new NullChecksumCache(), null);
+  }
+}
@@ -0,0 +1,165 @@
+package saros.net.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import saros.net.stream.ByteStream;
+import saros.net.stream.StreamMode;
+import saros.net.xmpp.JID;
+
+/**
+ * Measures the round trip of a packet through a pair of {@link BinaryChannelConnection binary
+ * channel connections} connected via loopback sockets, i.e. the framing and fragmentation on the
+ * sending side and the reassembly on the receiving side.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BinaryChannelConnectionBenchmark {
+
+  private static class SocketByteStream implements ByteStream {
+
+    private final Socket socket;
+
+    private SocketByteStream(Socket socket) {
+      this.socket = socket;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+      return socket.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+      return socket.getOutputStream();
+    }
+
+    @Override
+    public void close() throws IOException {
+      socket.close();
+    }
+
+    @Override
+    public int getReadTimeout() throws IOException {
+      return socket.getSoTimeout();
+    }
+
+    @Override
+    public void setReadTimeout(int timeout) throws IOException {
+      socket.setSoTimeout(timeout);
+    }
+  }
+
+  private static class NullConnectionListener implements IByteStreamConnectionListener {
+
+    @Override
+    public void connectionClosed(String connectionIdentifier, IByteStreamConnection connection) {
+      // NOP
+    }
+
+    @Override
+    public void connectionChanged(
+        String connectionIdentifier, IByteStreamConnection connection, boolean incomingRequest) {
+      // NOP
+    }
+  }
+
+  /** 64 bytes (a small activity batch), 16 KiB (one chunk), 512 KiB (fragmented). */
+  @Param({"64", "16384", "524288"})
+  public int payloadSize;
+
+  private final JID aliceJID = new JID("alice@benchmark");
+  private final JID bobJID = new JID("bob@benchmark");
+
+  private final Semaphore received = new Semaphore(0);
+
+  private BinaryChannelConnection alice;
+  private BinaryChannelConnection bob;
+
+  private TransferDescription description;
+
+  private byte[] payload;
+
+  @Setup
+  public void setUp() throws Exception {
+    Socket aliceSocket;
+    Socket bobSocket;
+
+    try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      aliceSocket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+      bobSocket = server.accept();
+    }
+
+    aliceSocket.setTcpNoDelay(true);
+    bobSocket.setTcpNoDelay(true);
+
+    alice =
+        new BinaryChannelConnection(
+            aliceJID,
+            bobJID,
+            "benchmark",
+            new SocketByteStream(aliceSocket),
+            StreamMode.SOCKS5_DIRECT,
+            new NullConnectionListener());
+
+    bob =
+        new BinaryChannelConnection(
+            bobJID,
+            aliceJID,
+            "benchmark",
+            new SocketByteStream(bobSocket),
+            StreamMode.SOCKS5_DIRECT,
+            new NullConnectionListener());
+
+    bob.setBinaryXMPPExtensionReceiver((extension) -> received.release());
+
+    alice.initialize();
+    bob.initialize();
+
+    description =
+        TransferDescription.newDescription()
+            .setNamespace("saros")
+            .setElementName("benchmark")
+            .setSender(aliceJID)
+            .setRecipient(bobJID);
+
+    payload = new byte[payloadSize];
+    new Random(42).nextBytes(payload);
+  }
+
+  @TearDown
+  public void tearDown() {
+    alice.close();
+    bob.close();
+  }
+
+  @Benchmark
+  public void sendAndReceive() throws Exception {
+    alice.send(description, payload);
+
+    if (!received.tryAcquire(10, TimeUnit.SECONDS))
+      throw new IllegalStateException("packet was not received");
+  }
+}
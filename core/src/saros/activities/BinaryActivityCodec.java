@@ -0,0 +1,654 @@
+package saros.activities;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.log4j.Logger;
+import saros.annotations.Component;
+import saros.communication.extensions.ActivitiesExtension;
+import saros.concurrent.jupiter.Operation;
+import saros.concurrent.jupiter.Timestamp;
+import saros.concurrent.jupiter.internal.JupiterVectorTime;
+import saros.concurrent.jupiter.internal.text.DeleteOperation;
+import saros.concurrent.jupiter.internal.text.InsertOperation;
+import saros.concurrent.jupiter.internal.text.NoOperation;
+import saros.concurrent.jupiter.internal.text.SplitOperation;
+import saros.concurrent.jupiter.internal.text.TimestampOperation;
+import saros.editor.text.TextPosition;
+import saros.editor.text.TextSelection;
+import saros.filesystem.IFile;
+import saros.filesystem.IPath;
+import saros.filesystem.IPathFactory;
+import saros.filesystem.IReferencePoint;
+import saros.misc.xstream.UserConverter;
+import saros.misc.xstream.XStreamExtensionProvider.BinaryCodec;
+import saros.repackaged.picocontainer.Startable;
+import saros.session.ISarosSession;
+import saros.session.User;
+
+/**
+ * Session-dependent codec that marshals {@link ActivitiesExtension activity batches} into a compact
+ * binary form instead of XML.
+ *
+ * <p>Only batches that consist entirely of the activity types that are produced while editing (text
+ * edits, Jupiter operations, selections, viewports, checksums, editor state changes and NOPs) are
+ * encoded. All other batches are rejected and therefore marshalled by XStream as before.
+ *
+ * <p>The encoded form starts with a version byte followed by the session id, the sequence number
+ * and the activities. Users and files are written only once per batch and are referenced by their
+ * index afterwards.
+ */
+@Component
+public class BinaryActivityCodec implements BinaryCodec<ActivitiesExtension>, Startable {
+
+  private static final Logger log = Logger.getLogger(BinaryActivityCodec.class);
+
+  /** Version of the encoding, must be changed on every incompatible change of the format. */
+  static final int VERSION = 1;
+
+  private static class ActivityTag {
+    private static final int TEXT_EDIT = 1;
+    private static final int JUPITER = 2;
+    private static final int TEXT_SELECTION = 3;
+    private static final int VIEWPORT = 4;
+    private static final int CHECKSUM = 5;
+    private static final int EDITOR = 6;
+    private static final int NOP = 7;
+  }
+
+  private static class OperationTag {
+    private static final int NO = 0;
+    private static final int TIMESTAMP = 1;
+    private static final int INSERT = 2;
+    private static final int DELETE = 3;
+    private static final int SPLIT = 4;
+  }
+
+  private final ISarosSession session;
+  private final IPathFactory pathFactory;
+  private final UserConverter userConverter;
+
+  public BinaryActivityCodec(
+      ISarosSession session, IPathFactory pathFactory, UserConverter userConverter) {
+    this.session = session;
+    this.pathFactory = pathFactory;
+    this.userConverter = userConverter;
+  }
+
+  @Override
+  public void start() {
+    ActivitiesExtension.PROVIDER.registerBinaryCodec(this);
+  }
+
+  @Override
+  public void stop() {
+    ActivitiesExtension.PROVIDER.unregisterBinaryCodec(this);
+  }
+
+  @Override
+  public byte[] encode(ActivitiesExtension extension) {
+    final List<IActivity> activities = extension.getActivities();
+
+    for (IActivity activity : activities) if (!isSupported(activity)) return null;
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream(64 + activities.size() * 32);
+
+    final Encoder encoder = new Encoder(out);
+
+    try {
+      encoder.writeByte(VERSION);
+      encoder.writeString(extension.getSessionID());
+      encoder.writeInt(extension.getSequenceNumber());
+      encoder.writeVarInt(activities.size());
+
+      for (IActivity activity : activities) {
+        if (!encoder.writeActivity(activity)) return null;
+      }
+
+      encoder.flush();
+    } catch (IOException e) {
+      // cannot happen when writing to a byte array
+      log.error("failed to encode activities: " + activities, e);
+      return null;
+    }
+
+    return out.toByteArray();
+  }
+
+  @Override
+  public ActivitiesExtension decode(byte[] data) throws IOException {
+    final Decoder decoder = new Decoder(new ByteArrayInputStream(data));
+
+    final int version = decoder.readUnsignedByte();
+
+    if (version != VERSION)
+      throw new IOException(
+          "unsupported binary activity encoding version: " + version + ", expected " + VERSION);
+
+    final String sessionID = decoder.readString();
+    final int sequenceNumber = decoder.readInt();
+    final int count = decoder.readVarInt();
+
+    final List<IActivity> activities = new ArrayList<IActivity>(count);
+
+    try {
+      for (int i = 0; i < count; i++) activities.add(decoder.readActivity());
+    } catch (IllegalArgumentException | IllegalStateException e) {
+      throw new IOException("decoded activity is malformed: " + e.getMessage(), e);
+    }
+
+    return new ActivitiesExtension(sessionID, activities, sequenceNumber);
+  }
+
+  private static boolean isSupported(IActivity activity) {
+    final Class<?> clazz = activity.getClass();
+
+    if (clazz == JupiterActivity.class) {
+      final JupiterActivity jupiterActivity = (JupiterActivity) activity;
+
+      return isSupported(jupiterActivity.getTimestamp())
+          && isSupported(jupiterActivity.getOperation());
+    }
+
+    if (clazz == ChecksumActivity.class) {
+      final Timestamp timestamp = ((ChecksumActivity) activity).getTimestamp();
+
+      return timestamp == null || isSupported(timestamp);
+    }
+
+    return clazz == TextEditActivity.class
+        || clazz == TextSelectionActivity.class
+        || clazz == ViewportActivity.class
+        || clazz == EditorActivity.class
+        || clazz == NOPActivity.class;
+  }
+
+  private static boolean isSupported(Timestamp timestamp) {
+    return timestamp != null && timestamp.getClass() == JupiterVectorTime.class;
+  }
+
+  private static boolean isSupported(Operation operation) {
+    if (operation == null) return false;
+
+    final Class<?> clazz = operation.getClass();
+
+    if (clazz == SplitOperation.class) {
+      final SplitOperation split = (SplitOperation) operation;
+      return isSupported(split.getFirst()) && isSupported(split.getSecond());
+    }
+
+    return clazz == InsertOperation.class
+        || clazz == DeleteOperation.class
+        || clazz == NoOperation.class
+        || clazz == TimestampOperation.class;
+  }
+
+  private class Encoder extends DataOutputStream {
+
+    private final Map<User, Integer> users = new HashMap<User, Integer>();
+    private final Map<IFile, Integer> files = new HashMap<IFile, Integer>();
+
+    private Encoder(OutputStream out) {
+      super(out);
+    }
+
+    /**
+     * Writes the given activity.
+     *
+     * @return <code>false</code> if the activity could not be written because its resource is not
+     *     shared in the current session
+     */
+    private boolean writeActivity(IActivity activity) throws IOException {
+
+      if (activity instanceof TextEditActivity) {
+        final TextEditActivity edit = (TextEditActivity) activity;
+
+        writeByte(ActivityTag.TEXT_EDIT);
+        writeUser(edit.getSource());
+        if (!writeFile(edit.getResource())) return false;
+        writePosition(edit.getStartPosition());
+        writeString(edit.getNewText());
+        writeString(edit.getReplacedText());
+
+      } else if (activity instanceof JupiterActivity) {
+        final JupiterActivity jupiterActivity = (JupiterActivity) activity;
+
+        writeByte(ActivityTag.JUPITER);
+        writeUser(jupiterActivity.getSource());
+        if (!writeFile(jupiterActivity.getResource())) return false;
+        writeTimestamp(jupiterActivity.getTimestamp());
+        writeOperation(jupiterActivity.getOperation());
+
+      } else if (activity instanceof TextSelectionActivity) {
+        final TextSelectionActivity selectionActivity = (TextSelectionActivity) activity;
+        final TextSelection selection = selectionActivity.getSelection();
+
+        writeByte(ActivityTag.TEXT_SELECTION);
+        writeUser(selectionActivity.getSource());
+        if (!writeFile(selectionActivity.getResource())) return false;
+        writeBoolean(selection.isEmpty());
+
+        if (!selection.isEmpty()) {
+          writePosition(selection.getStartPosition());
+          writePosition(selection.getEndPosition());
+          writeBoolean(selection.isBackwardsSelection());
+        }
+
+      } else if (activity instanceof ViewportActivity) {
+        final ViewportActivity viewport = (ViewportActivity) activity;
+
+        writeByte(ActivityTag.VIEWPORT);
+        writeUser(viewport.getSource());
+        if (!writeFile(viewport.getResource())) return false;
+        writeVarInt(viewport.getStartLine());
+        writeVarInt(viewport.getNumberOfLines());
+
+      } else if (activity instanceof ChecksumActivity) {
+        final ChecksumActivity checksum = (ChecksumActivity) activity;
+
+        writeByte(ActivityTag.CHECKSUM);
+        writeUser(checksum.getSource());
+        if (!writeFile(checksum.getResource())) return false;
+        writeLong(checksum.getHash());
+        writeLong(checksum.getLength());
+        writeBoolean(checksum.getTimestamp() != null);
+
+        if (checksum.getTimestamp() != null) writeTimestamp(checksum.getTimestamp());
+
+        final long[] regionHashes = checksum.getRegionHashes();
+
+        if (regionHashes == null) {
+          writeVarInt(0);
+        } else {
+          writeVarInt(regionHashes.length);
+          writeVarInt(checksum.getRegionLines());
+
+          for (long regionHash : regionHashes) writeLong(regionHash);
+        }
+
+      } else if (activity instanceof EditorActivity) {
+        final EditorActivity editor = (EditorActivity) activity;
+
+        writeByte(ActivityTag.EDITOR);
+        writeUser(editor.getSource());
+        if (!writeFile(editor.getResource())) return false;
+        writeByte(editor.getType().ordinal());
+
+      } else if (activity instanceof NOPActivity) {
+        final NOPActivity nop = (NOPActivity) activity;
+
+        writeByte(ActivityTag.NOP);
+        writeUser(nop.getSource());
+        writeUser(nop.getTarget());
+        writeInt(nop.getID());
+
+      } else {
+        throw new IllegalStateException("unsupported activity: " + activity);
+      }
+
+      return true;
+    }
+
+    private void writeOperation(Operation operation) throws IOException {
+
+      if (operation instanceof InsertOperation) {
+        final InsertOperation insert = (InsertOperation) operation;
+
+        writeByte(OperationTag.INSERT);
+        writePosition(insert.getStartPosition());
+        writeVarInt(insert.getLineDelta());
+        writeVarInt(insert.getOffsetDelta());
+        writeString(insert.getText());
+        writePosition(insert.getOriginStartPosition());
+
+      } else if (operation instanceof DeleteOperation) {
+        final DeleteOperation delete = (DeleteOperation) operation;
+
+        writeByte(OperationTag.DELETE);
+        writePosition(delete.getStartPosition());
+        writeVarInt(delete.getLineDelta());
+        writeVarInt(delete.getOffsetDelta());
+        writeString(delete.getText());
+
+      } else if (operation instanceof SplitOperation) {
+        final SplitOperation split = (SplitOperation) operation;
+
+        writeByte(OperationTag.SPLIT);
+        writeOperation(split.getFirst());
+        writeOperation(split.getSecond());
+
+      } else if (operation instanceof TimestampOperation) {
+        writeByte(OperationTag.TIMESTAMP);
+
+      } else if (operation instanceof NoOperation) {
+        writeByte(OperationTag.NO);
+
+      } else {
+        throw new IllegalStateException("unsupported operation: " + operation);
+      }
+    }
+
+    private void writeTimestamp(Timestamp timestamp) throws IOException {
+      final JupiterVectorTime vectorTime = (JupiterVectorTime) timestamp;
+
+      writeVarInt(vectorTime.getLocalOperationCount());
+      writeVarInt(vectorTime.getRemoteOperationCount());
+    }
+
+    private void writePosition(TextPosition position) throws IOException {
+      writeVarInt(position.getLineNumber());
+      writeVarInt(position.getInLineOffset());
+    }
+
+    /**
+     * Writes a user as reference into the user table, the user is only written once per batch in
+     * the same form as in XML.
+     */
+    private void writeUser(User user) throws IOException {
+      final Integer index = users.get(user);
+
+      if (index != null) {
+        writeVarInt(index);
+        return;
+      }
+
+      users.put(user, users.size());
+      writeVarInt(users.size() - 1);
+      writeString(userConverter.toString(user));
+    }
+
+    /**
+     * Writes a file as reference into the file table, the reference point id and path are only
+     * written once per batch. A <code>null</code> file is encoded as reference <code>0</code>.
+     *
+     * @return <code>false</code> if the reference point of the file is not shared
+     */
+    private boolean writeFile(IFile file) throws IOException {
+      if (file == null) {
+        writeVarInt(0);
+        return true;
+      }
+
+      final Integer index = files.get(file);
+
+      if (index != null) {
+        writeVarInt(index + 1);
+        return true;
+      }
+
+      final String referencePointId = session.getReferencePointId(file.getReferencePoint());
+
+      if (referencePointId == null) return false;
+
+      files.put(file, files.size());
+      writeVarInt(files.size());
+      writeString(referencePointId);
+      writeString(pathFactory.fromPath(file.getReferencePointRelativePath()));
+      return true;
+    }
+
+    private void writeString(String value) throws IOException {
+      final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+      writeVarInt(bytes.length);
+      write(bytes);
+    }
+
+    /** Writes a non negative integer using 7 bits per byte. */
+    private void writeVarInt(int value) throws IOException {
+      if (value < 0) throw new IllegalArgumentException("value must not be negative: " + value);
+
+      while ((value & ~0x7F) != 0) {
+        writeByte((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+
+      writeByte(value);
+    }
+  }
+
+  private class Decoder extends DataInputStream {
+
+    private final List<User> users = new ArrayList<User>();
+    private final List<IFile> files = new ArrayList<IFile>();
+
+    private Decoder(InputStream in) {
+      super(in);
+    }
+
+    private IActivity readActivity() throws IOException {
+      final int tag = readUnsignedByte();
+
+      final User source = readUser();
+
+      switch (tag) {
+        case ActivityTag.TEXT_EDIT:
+          {
+            final IFile file = readFile();
+            final TextPosition startPosition = readPosition();
+            final String newText = readString();
+            final String replacedText = readString();
+
+            return TextEditActivity.buildTextEditActivity(
+                source, startPosition, newText, replacedText, file);
+          }
+
+        case ActivityTag.JUPITER:
+          {
+            final IFile file = readFile();
+            final Timestamp timestamp = readTimestamp();
+            final Operation operation = readOperation();
+
+            return new JupiterActivity(timestamp, operation, source, file);
+          }
+
+        case ActivityTag.TEXT_SELECTION:
+          {
+            final IFile file = readFile();
+
+            if (readBoolean())
+              return new TextSelectionActivity(source, TextSelection.EMPTY_SELECTION, file);
+
+            final TextPosition startPosition = readPosition();
+            final TextPosition endPosition = readPosition();
+            final boolean isBackwardsSelection = readBoolean();
+
+            return new TextSelectionActivity(
+                source, new TextSelection(startPosition, endPosition, isBackwardsSelection), file);
+          }
+
+        case ActivityTag.VIEWPORT:
+          {
+            final IFile file = readFile();
+            final int startLine = readVarInt();
+            final int numberOfLines = readVarInt();
+
+            return new ViewportActivity(source, startLine, numberOfLines, file);
+          }
+
+        case ActivityTag.CHECKSUM:
+          {
+            final IFile file = readFile();
+            final long hash = readLong();
+            final long length = readLong();
+            final Timestamp timestamp = readBoolean() ? readTimestamp() : null;
+            final int regionCount = readVarInt();
+
+            if (regionCount == 0)
+              return new ChecksumActivity(source, file, hash, length, timestamp);
+
+            final int regionLines = readVarInt();
+            final long[] regionHashes = new long[regionCount];
+
+            for (int i = 0; i < regionCount; i++) regionHashes[i] = readLong();
+
+            return new ChecksumActivity(
+                source, file, hash, length, timestamp, regionLines, regionHashes);
+          }
+
+        case ActivityTag.EDITOR:
+          {
+            final IFile file = readFile();
+            final int type = readUnsignedByte();
+
+            if (type >= EditorActivity.Type.values().length)
+              throw new IOException("unknown editor activity type: " + type);
+
+            return new EditorActivity(source, EditorActivity.Type.values()[type], file);
+          }
+
+        case ActivityTag.NOP:
+          {
+            final User target = readUser();
+            final int id = readInt();
+
+            return new NOPActivity(source, target, id);
+          }
+
+        default:
+          throw new IOException("unknown activity tag: " + tag);
+      }
+    }
+
+    private Operation readOperation() throws IOException {
+      final int tag = readUnsignedByte();
+
+      switch (tag) {
+        case OperationTag.INSERT:
+          {
+            final TextPosition startPosition = readPosition();
+            final int lineDelta = readVarInt();
+            final int offsetDelta = readVarInt();
+            final String text = readString();
+            final TextPosition originStartPosition = readPosition();
+
+            return new InsertOperation(
+                startPosition, lineDelta, offsetDelta, text, originStartPosition);
+          }
+
+        case OperationTag.DELETE:
+          {
+            final TextPosition startPosition = readPosition();
+            final int lineDelta = readVarInt();
+            final int offsetDelta = readVarInt();
+            final String text = readString();
+
+            return new DeleteOperation(startPosition, lineDelta, offsetDelta, text);
+          }
+
+        case OperationTag.SPLIT:
+          {
+            final Operation first = readOperation();
+            final Operation second = readOperation();
+
+            return new SplitOperation(first, second);
+          }
+
+        case OperationTag.TIMESTAMP:
+          return new TimestampOperation();
+
+        case OperationTag.NO:
+          return new NoOperation();
+
+        default:
+          throw new IOException("unknown operation tag: " + tag);
+      }
+    }
+
+    private Timestamp readTimestamp() throws IOException {
+      final int localOperationCount = readVarInt();
+      final int remoteOperationCount = readVarInt();
+
+      return new JupiterVectorTime(localOperationCount, remoteOperationCount);
+    }
+
+    private TextPosition readPosition() throws IOException {
+      final int lineNumber = readVarInt();
+      final int inLineOffset = readVarInt();
+
+      return new TextPosition(lineNumber, inLineOffset);
+    }
+
+    private User readUser() throws IOException {
+      final int index = readVarInt();
+
+      if (index < users.size()) return users.get(index);
+
+      if (index != users.size()) throw new IOException("invalid user reference: " + index);
+
+      final String id = readString();
+      final User user = (User) userConverter.fromString(id);
+
+      if (user == null) throw new IOException("user " + id + " is not part of the session");
+
+      users.add(user);
+      return user;
+    }
+
+    private IFile readFile() throws IOException {
+      final int index = readVarInt();
+
+      if (index == 0) return null;
+
+      if (index <= files.size()) return files.get(index - 1);
+
+      if (index != files.size() + 1) throw new IOException("invalid file reference: " + index);
+
+      final String referencePointId = readString();
+      final String path = readString();
+
+      final IReferencePoint referencePoint = session.getReferencePoint(referencePointId);
+
+      if (referencePoint == null)
+        throw new IOException(
+            "there is no shared reference point for id '" + referencePointId + "'");
+
+      final IPath relativePath = pathFactory.fromString(path);
+      final IFile file = referencePoint.getFile(relativePath);
+
+      files.add(file);
+      return file;
+    }
+
+    private String readString() throws IOException {
+      final int length = readVarInt();
+
+      if (length > available()) throw new EOFException("unexpected end of encoded activities");
+
+      final byte[] bytes = new byte[length];
+      readFully(bytes);
+
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int readVarInt() throws IOException {
+      int value = 0;
+
+      for (int shift = 0; shift < 32; shift += 7) {
+        final int b = read();
+
+        if (b == -1) throw new EOFException("unexpected end of encoded activities");
+
+        value |= (b & 0x7F) << shift;
+
+        if ((b & 0x80) == 0) {
+          if (value < 0) break;
+
+          return value;
+        }
+      }
+
+      throw new IOException("malformed variable length integer");
+    }
+  }
+}
@@ -2,6 +2,7 @@ package saros.activities;
 
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
+import java.util.Arrays;
 import java.util.Objects;
 import saros.concurrent.jupiter.Timestamp;
 import saros.filesystem.IFile;
@@ -15,6 +16,10 @@ import saros.session.User;
  *
  * <p>To indicate that a file is missing on the host NON_EXISTING_DOC is used.
  *
+ * <p>A ChecksumActivity may also contain the hashes of consecutive regions of the file with the
+ * same number of lines, so that a client can determine in which regions its copy of the file
+ * differs.
+ *
  * <p>A ChecksumActivity also may contain a {@link Timestamp} to indicate at which point of time the
  * checksum was created. A user can use this information to see whether the checksum can be used to
  * check for consistency or whether the local user has already written additional text which
@@ -32,6 +37,10 @@ public class ChecksumActivity extends AbstractResourceActivity<IFile> {
 
   @XStreamAsAttribute protected final Timestamp jupiterTimestamp;
 
+  @XStreamAsAttribute protected final int regionLines;
+
+  protected final long[] regionHashes;
+
   /**
    * Constructor for ChecksumActivities. Timestamp can be null. ChecksumActivities created by the
    * watchdog don't have access to the JupiterClients and therefore create an Activity without
@@ -48,16 +57,43 @@ public class ChecksumActivity extends AbstractResourceActivity<IFile> {
   public ChecksumActivity(
       User source, IFile file, long hash, long length, Timestamp jupiterTimestamp) {
 
+    this(source, file, hash, length, jupiterTimestamp, 0, null);
+  }
+
+  /**
+   * Constructor for ChecksumActivities that contain the hashes of the regions of the document.
+   *
+   * @param source The User that created this activity
+   * @param file The file represented by the document
+   * @param hash The hashcode of the document
+   * @param length The length of the document
+   * @param jupiterTimestamp The current jupiterTimestamp for this document, may be <code>null
+   *     </code>
+   * @param regionLines The number of lines of every region
+   * @param regionHashes The hashes of the regions, may be <code>null</code>
+   */
+  public ChecksumActivity(
+      User source,
+      IFile file,
+      long hash,
+      long length,
+      Timestamp jupiterTimestamp,
+      int regionLines,
+      long[] regionHashes) {
+
     super(source, file);
 
     this.hash = hash;
     this.length = length;
     this.jupiterTimestamp = jupiterTimestamp;
+    this.regionLines = regionHashes != null ? regionLines : 0;
+    this.regionHashes = regionHashes;
   }
 
   /** Returns a copy of the ChecksumActivity with a new {@link Timestamp}. */
   public ChecksumActivity withTimestamp(Timestamp jupiterTimestamp) {
-    return new ChecksumActivity(getSource(), getResource(), hash, length, jupiterTimestamp);
+    return new ChecksumActivity(
+        getSource(), getResource(), hash, length, jupiterTimestamp, regionLines, regionHashes);
   }
 
   @Override
@@ -70,6 +106,8 @@ public class ChecksumActivity extends AbstractResourceActivity<IFile> {
         + length
         + ", jupiterTimestamp: "
         + jupiterTimestamp
+        + ", regions: "
+        + (regionHashes != null ? regionHashes.length + "x" + regionLines : 0)
         + ")";
   }
 
@@ -85,6 +123,8 @@ public class ChecksumActivity extends AbstractResourceActivity<IFile> {
     result = prime * result + (int) (hash ^ (hash >>> 32));
     result = prime * result + (int) (length ^ (length >>> 32));
     result = prime * result + Objects.hashCode(jupiterTimestamp);
+    result = prime * result + regionLines;
+    result = prime * result + Arrays.hashCode(regionHashes);
     return result;
   }
 
@@ -99,6 +139,8 @@ public class ChecksumActivity extends AbstractResourceActivity<IFile> {
     if (this.hash != other.hash) return false;
     if (this.length != other.length) return false;
     if (!Objects.equals(this.jupiterTimestamp, other.jupiterTimestamp)) return false;
+    if (this.regionLines != other.regionLines) return false;
+    if (!Arrays.equals(this.regionHashes, other.regionHashes)) return false;
 
     return true;
   }
@@ -115,6 +157,24 @@ public class ChecksumActivity extends AbstractResourceActivity<IFile> {
     return hash;
   }
 
+  /**
+   * Returns the number of lines of every region whose hash is contained in this checksum.
+   *
+   * @return the number of lines, 0 if the checksum contains no region hashes
+   */
+  public int getRegionLines() {
+    return regionLines;
+  }
+
+  /**
+   * Returns the hashes of the consecutive regions of {@link #getRegionLines()} lines of the file.
+   *
+   * @return the hashes or <code>null</code> if the checksum contains no region hashes
+   */
+  public long[] getRegionHashes() {
+    return regionHashes;
+  }
+
   public boolean existsFile() {
     return !(this.length == NON_EXISTING_DOC && this.hash == NON_EXISTING_DOC);
   }
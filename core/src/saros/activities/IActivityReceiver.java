@@ -67,6 +67,10 @@ public interface IActivityReceiver {
     /*NOP*/
   }
 
+  default void receive(RegionRecoveryActivity regionRecoveryActivity) {
+    /*NOP*/
+  }
+
   default void receive(StartFollowingActivity startFollowingActivity) {
     /*NOP*/
   }
@@ -0,0 +1,14 @@
+package saros.activities;
+
+import java.util.List;
+import saros.session.User;
+
+/**
+ * This is an interface for activities that are sent to several specific users at once. In contrast
+ * to {@link ITargetedActivity} the activity is created only once and multicast to all of its
+ * targets.
+ */
+public interface IMulticastActivity extends IActivity {
+  /** @return the users that should receive this activity */
+  List<User> getTargets();
+}
@@ -0,0 +1,264 @@
+package saros.activities;
+
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import saros.editor.text.LineRange;
+import saros.filesystem.IFile;
+import saros.session.User;
+
+/**
+ * A RegionRecoveryActivity is exchanged between the host and an inconsistent user to recover only
+ * the regions of a file in which the user's copy differs from the host's copy.
+ *
+ * <p>The recovery of a file consists of three steps:
+ *
+ * <ol>
+ *   <li>The host resets the Jupiter state of the file for the user and sends a {@link
+ *       Type#REQUEST}. The user resets its Jupiter state as well and holds back all further Jupiter
+ *       activities of the file.
+ *   <li>The user replies with a {@link Type#DIGEST} that contains the block hashes of its copy.
+ *   <li>The host replies with a {@link Type#REPLACE} that contains the host's text of all regions
+ *       whose hashes differ. The user replaces its text of these regions and executes the held back
+ *       Jupiter activities afterwards.
+ * </ol>
+ */
+@XStreamAlias("regionRecoveryActivity")
+public class RegionRecoveryActivity extends AbstractResourceActivity<IFile>
+    implements ITargetedActivity {
+
+  public enum Type {
+    /** Sent by the host to start the recovery of a file */
+    REQUEST,
+    /** Sent by the user, contains the hashes of the blocks of the user's copy */
+    DIGEST,
+    /** Sent by the host, contains the text of the divergent regions */
+    REPLACE
+  }
+
+  @XStreamAsAttribute private final User target;
+
+  @XStreamAsAttribute protected final Type type;
+
+  @XStreamAsAttribute protected final String recoveryID;
+
+  @XStreamAsAttribute protected final int blockLines;
+
+  protected final long[] blockHashes;
+
+  protected final int[] startLines;
+
+  protected final int[] lineCounts;
+
+  protected final String[] texts;
+
+  private RegionRecoveryActivity(
+      User source,
+      User target,
+      IFile file,
+      Type type,
+      String recoveryID,
+      int blockLines,
+      long[] blockHashes,
+      int[] startLines,
+      int[] lineCounts,
+      String[] texts) {
+
+    super(source, file);
+
+    if (target == null) throw new IllegalArgumentException("target must not be null");
+
+    this.target = target;
+    this.type = type;
+    this.recoveryID = recoveryID;
+    this.blockLines = blockLines;
+    this.blockHashes = blockHashes;
+    this.startLines = startLines;
+    this.lineCounts = lineCounts;
+    this.texts = texts;
+  }
+
+  /**
+   * Creates the request of the host to start the recovery of a file.
+   *
+   * @param source the host
+   * @param target the inconsistent user
+   * @param file the file to recover
+   * @param recoveryID the id of the recovery, see {@link ChecksumErrorActivity#getRecoveryID()}
+   */
+  public static RegionRecoveryActivity request(
+      User source, User target, IFile file, String recoveryID) {
+    return new RegionRecoveryActivity(
+        source, target, file, Type.REQUEST, recoveryID, 0, null, null, null, null);
+  }
+
+  /**
+   * Creates the reply of the inconsistent user to a {@link Type#REQUEST}.
+   *
+   * @param source the inconsistent user
+   * @param target the host
+   * @param file the file to recover
+   * @param recoveryID the id of the recovery
+   * @param blockLines the number of lines of every block
+   * @param blockHashes the hashes of the blocks, <code>null</code> if the file does not exist
+   */
+  public static RegionRecoveryActivity digest(
+      User source, User target, IFile file, String recoveryID, int blockLines, long[] blockHashes) {
+    return new RegionRecoveryActivity(
+        source, target, file, Type.DIGEST, recoveryID, blockLines, blockHashes, null, null, null);
+  }
+
+  /**
+   * Creates the reply of the host to a {@link Type#DIGEST}.
+   *
+   * @param source the host
+   * @param target the inconsistent user
+   * @param file the file to recover
+   * @param recoveryID the id of the recovery
+   * @param regions the divergent regions, in ascending order
+   * @param texts the host's normalized text of every region
+   */
+  public static RegionRecoveryActivity replace(
+      User source,
+      User target,
+      IFile file,
+      String recoveryID,
+      List<LineRange> regions,
+      List<String> texts) {
+
+    if (regions.size() != texts.size())
+      throw new IllegalArgumentException("every region needs a text");
+
+    final int[] startLines = new int[regions.size()];
+    final int[] lineCounts = new int[regions.size()];
+
+    for (int i = 0; i < regions.size(); i++) {
+      startLines[i] = regions.get(i).getStartLine();
+      lineCounts[i] = regions.get(i).getNumberOfLines();
+    }
+
+    return new RegionRecoveryActivity(
+        source,
+        target,
+        file,
+        Type.REPLACE,
+        recoveryID,
+        0,
+        null,
+        startLines,
+        lineCounts,
+        texts.toArray(new String[texts.size()]));
+  }
+
+  @Override
+  public boolean isValid() {
+    return super.isValid() && (target != null) && (getResource() != null) && (type != null);
+  }
+
+  @Override
+  public User getTarget() {
+    return target;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public String getRecoveryID() {
+    return recoveryID;
+  }
+
+  /** Returns the number of lines of every block of a {@link Type#DIGEST}. */
+  public int getBlockLines() {
+    return blockLines;
+  }
+
+  /**
+   * Returns the block hashes of a {@link Type#DIGEST}.
+   *
+   * @return the hashes or <code>null</code> if the file does not exist on the side of the user
+   */
+  public long[] getBlockHashes() {
+    return blockHashes;
+  }
+
+  /** Returns the divergent regions of a {@link Type#REPLACE}, in ascending order. */
+  public List<LineRange> getRegions() {
+    if (startLines == null) return Collections.emptyList();
+
+    final List<LineRange> regions = new ArrayList<>(startLines.length);
+
+    for (int i = 0; i < startLines.length; i++)
+      regions.add(new LineRange(startLines[i], lineCounts[i]));
+
+    return regions;
+  }
+
+  /** Returns the host's text of the regions of a {@link Type#REPLACE}. */
+  public List<String> getTexts() {
+    return texts == null ? Collections.emptyList() : Arrays.asList(texts);
+  }
+
+  @Override
+  public void dispatch(IActivityReceiver receiver) {
+    receiver.receive(this);
+  }
+
+  @Override
+  public int hashCode() {
+    final int prime = 31;
+    int result = super.hashCode();
+    result = prime * result + Objects.hashCode(target);
+    result = prime * result + Objects.hashCode(type);
+    result = prime * result + Objects.hashCode(recoveryID);
+    result = prime * result + blockLines;
+    result = prime * result + Arrays.hashCode(blockHashes);
+    result = prime * result + Arrays.hashCode(startLines);
+    result = prime * result + Arrays.hashCode(lineCounts);
+    result = prime * result + Arrays.hashCode(texts);
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) return true;
+    if (!super.equals(obj)) return false;
+    if (!(obj instanceof RegionRecoveryActivity)) return false;
+
+    RegionRecoveryActivity other = (RegionRecoveryActivity) obj;
+
+    if (!Objects.equals(this.target, other.target)) return false;
+    if (this.type != other.type) return false;
+    if (!Objects.equals(this.recoveryID, other.recoveryID)) return false;
+    if (this.blockLines != other.blockLines) return false;
+    if (!Arrays.equals(this.blockHashes, other.blockHashes)) return false;
+    if (!Arrays.equals(this.startLines, other.startLines)) return false;
+    if (!Arrays.equals(this.lineCounts, other.lineCounts)) return false;
+    if (!Arrays.equals(this.texts, other.texts)) return false;
+
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "RegionRecoveryActivity(src: "
+        + getSource()
+        + ", target: "
+        + target
+        + ", file: "
+        + getResource()
+        + ", type: "
+        + type
+        + ", recoveryID: "
+        + recoveryID
+        + ", blocks: "
+        + (blockHashes == null ? 0 : blockHashes.length)
+        + ", regions: "
+        + getRegions()
+        + ")";
+  }
+}
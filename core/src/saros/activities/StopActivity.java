@@ -2,6 +2,10 @@ package saros.activities;
 
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
+import com.thoughtworks.xstream.annotations.XStreamImplicit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import saros.session.User;
 
@@ -9,14 +13,17 @@ import saros.session.User;
  * @JTourBusStop 3, StopManager:
  *
  * <p>The StopActivity is created by the StopManager#stop() method, it contains the kind of request
- * and the #user that should be stopped.
+ * and the #users that should be stopped.
  */
 /**
- * A StopActivity is used for signaling to a user that he should be stopped or started (meaning that
- * no more Activities should be generated by this user).
+ * A StopActivity is used for signaling to users that they should be stopped or started (meaning
+ * that no more Activities should be generated by these users).
+ *
+ * <p>An initiated request is multicast to all affected users at once, every affected user answers
+ * with its own acknowledgment.
  */
 @XStreamAlias("stopActivity")
-public class StopActivity extends AbstractActivity implements ITargetedActivity {
+public class StopActivity extends AbstractActivity implements IMulticastActivity {
 
   public enum Type {
     LOCKREQUEST,
@@ -30,8 +37,9 @@ public class StopActivity extends AbstractActivity implements ITargetedActivity
 
   @XStreamAsAttribute protected User initiator;
 
-  /** The user who has to be locked / unlocked. */
-  @XStreamAsAttribute protected final User affected;
+  /** The users who have to be locked / unlocked. */
+  @XStreamImplicit(itemFieldName = "affected")
+  protected final List<User> affected;
 
   @XStreamAsAttribute protected final Type type;
 
@@ -50,14 +58,33 @@ public class StopActivity extends AbstractActivity implements ITargetedActivity
    */
   public StopActivity(
       User source, User initiator, User affected, Type type, State state, String stopActivityID) {
+    this(source, initiator, Collections.singletonList(affected), type, state, stopActivityID);
+  }
+
+  /**
+   * @param source
+   * @param initiator The user who requested the lock/unlock (in most cases this should be the host)
+   * @param affected The users to be locked/unlocked by this Activity
+   * @param type
+   * @param state
+   * @param stopActivityID
+   */
+  public StopActivity(
+      User source,
+      User initiator,
+      List<User> affected,
+      Type type,
+      State state,
+      String stopActivityID) {
 
     super(source);
 
     if (initiator == null) throw new IllegalArgumentException("initiator must not be null");
-    if (affected == null) throw new IllegalArgumentException("affected must not be null");
+    if (affected == null || affected.isEmpty() || affected.contains(null))
+      throw new IllegalArgumentException("affected must not be null or empty");
 
     this.initiator = initiator;
-    this.affected = affected;
+    this.affected = new ArrayList<User>(affected);
     this.state = state;
     this.type = type;
     this.stopActivityID = stopActivityID;
@@ -65,7 +92,11 @@ public class StopActivity extends AbstractActivity implements ITargetedActivity
 
   @Override
   public boolean isValid() {
-    return super.isValid() && (initiator != null) && (affected != null);
+    return super.isValid()
+        && (initiator != null)
+        && (affected != null)
+        && !affected.isEmpty()
+        && !affected.contains(null);
   }
 
   @Override
@@ -97,9 +128,9 @@ public class StopActivity extends AbstractActivity implements ITargetedActivity
     return true;
   }
 
-  /** The user to be locked/unlocked by this Activity */
-  public User getAffected() {
-    return affected;
+  /** The users to be locked/unlocked by this Activity */
+  public List<User> getAffected() {
+    return Collections.unmodifiableList(affected);
   }
 
   /**
@@ -112,17 +143,17 @@ public class StopActivity extends AbstractActivity implements ITargetedActivity
   }
 
   /**
-   * Returns the JID of the user to whom this StopActivity should be sent.
+   * Returns the users to whom this StopActivity should be sent.
    *
-   * <p>This method is a convenience method for getting the affected user or initiator based on the
+   * <p>This method is a convenience method for getting the affected users or initiator based on the
    * state of this StopActivity.
    */
-  public User getRecipient() {
+  public List<User> getRecipients() {
     switch (getState()) {
       case INITIATED:
         return getAffected();
       case ACKNOWLEDGED:
-        return getInitiator();
+        return Collections.singletonList(getInitiator());
       default:
         throw new IllegalStateException(
             "StopActivity is in an illegal state to return a recipient");
@@ -130,16 +161,20 @@ public class StopActivity extends AbstractActivity implements ITargetedActivity
   }
 
   @Override
-  public User getTarget() {
-    return getRecipient();
+  public List<User> getTargets() {
+    return getRecipients();
   }
 
   public State getState() {
     return state;
   }
 
+  /**
+   * Creates the acknowledgment of this StopActivity by the given affected user. The acknowledgment
+   * only affects the acknowledging user.
+   */
   public StopActivity generateAcknowledgment(User source) {
-    return new StopActivity(source, initiator, affected, type, State.ACKNOWLEDGED, stopActivityID);
+    return new StopActivity(source, initiator, source, type, State.ACKNOWLEDGED, stopActivityID);
   }
 
   public Type getType() {
@@ -160,7 +195,7 @@ public class StopActivity extends AbstractActivity implements ITargetedActivity
         + state
         + ", initiator: "
         + initiator
-        + ", affected user: "
+        + ", affected users: "
         + affected
         + ", src: "
         + getSource()
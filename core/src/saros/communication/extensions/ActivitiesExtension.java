@@ -37,6 +37,7 @@ import saros.activities.JupiterActivity;
 import saros.activities.NOPActivity;
 import saros.activities.PermissionActivity;
 import saros.activities.ProgressActivity;
+import saros.activities.RegionRecoveryActivity;
 import saros.activities.ResourceTransportWrapper;
 import saros.activities.StartFollowingActivity;
 import saros.activities.StopActivity;
@@ -152,6 +153,7 @@ public class ActivitiesExtension extends SarosSessionPacketExtension {
           NOPActivity.class,
           PermissionActivity.class,
           ProgressActivity.class,
+          RegionRecoveryActivity.class,
           TargetedFileActivity.class,
           StartFollowingActivity.class,
           StopActivity.class,
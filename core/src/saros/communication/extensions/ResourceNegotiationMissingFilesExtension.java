@@ -3,6 +3,7 @@ package saros.communication.extensions;
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 import java.util.List;
 import saros.negotiation.FileList;
+import saros.negotiation.delta.FileSignature;
 
 @XStreamAlias(/* ResourceNegotiationMissingFiles */ "RNMF")
 public class ResourceNegotiationMissingFilesExtension extends ResourceNegotiationExtension {
@@ -25,7 +26,11 @@ public class ResourceNegotiationMissingFilesExtension extends ResourceNegotiatio
       extends ResourceNegotiationExtension.Provider<ResourceNegotiationMissingFilesExtension> {
 
     private Provider() {
-      super("rnmf", ResourceNegotiationMissingFilesExtension.class, FileList.class);
+      super(
+          "rnmf",
+          ResourceNegotiationMissingFilesExtension.class,
+          FileList.class,
+          FileSignature.class);
     }
   }
 }
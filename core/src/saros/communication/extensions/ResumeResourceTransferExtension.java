@@ -0,0 +1,67 @@
+package saros.communication.extensions;
+
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
+
+/**
+ * Requests the remote side to resume an interrupted file transfer of a resource negotiation from
+ * the last position the receiver acknowledges as checkpoint.
+ */
+@XStreamAlias(/* ResumeResourceTransfer */ "RRT")
+public class ResumeResourceTransferExtension extends ResourceNegotiationExtension {
+
+  public static final Provider PROVIDER = new Provider();
+
+  @XStreamAlias("a")
+  @XStreamAsAttribute
+  private final int attempt;
+
+  @XStreamAlias("cp")
+  @XStreamAsAttribute
+  private final long checkpoint;
+
+  @XStreamAlias("pr")
+  @XStreamAsAttribute
+  private final boolean partiallyReceived;
+
+  public ResumeResourceTransferExtension(
+      String sessionID,
+      String negotiationID,
+      int attempt,
+      long checkpoint,
+      boolean partiallyReceived) {
+    super(sessionID, negotiationID);
+    this.attempt = attempt;
+    this.checkpoint = checkpoint;
+    this.partiallyReceived = partiallyReceived;
+  }
+
+  /** Returns the number of the transfer attempt that is requested, starting with 1. */
+  public int getAttempt() {
+    return attempt;
+  }
+
+  /**
+   * Returns the position to resume the transfer at, its meaning depends on the kind of transfer,
+   * e.g. the number of received files or bytes.
+   */
+  public long getCheckpoint() {
+    return checkpoint;
+  }
+
+  /**
+   * Returns whether the file at the checkpoint was partially written before the transfer was
+   * interrupted. This file can no longer serve as base of a delta and has to be sent completely.
+   */
+  public boolean isPartiallyReceived() {
+    return partiallyReceived;
+  }
+
+  public static class Provider
+      extends ResourceNegotiationExtension.Provider<ResumeResourceTransferExtension> {
+
+    private Provider() {
+      super("rrt", ResumeResourceTransferExtension.class);
+    }
+  }
+}
@@ -20,9 +20,6 @@
  */
 package saros.concurrent.jupiter.internal;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
 import javax.swing.undo.CannotRedoException;
 import javax.swing.undo.CannotUndoException;
 import org.apache.log4j.Logger;
@@ -58,11 +55,11 @@ public class Jupiter implements Algorithm {
   protected final boolean isClientSide;
 
   /**
-   * A list that contains the JupiterActivities sent to the server which are to be acknowledged by
-   * the server before they can be removed. This list corresponds to the 'outgoing' list in the
-   * Jupiter pseudo code description.
+   * A log that contains the operations sent to the server which are to be acknowledged by the
+   * server before they can be removed. This log corresponds to the 'outgoing' list in the Jupiter
+   * pseudo code description.
    */
-  protected final List<OperationWrapper> ackJupiterActivityList;
+  protected final OperationLog ackJupiterActivityList;
 
   /**
    * Class constructor that creates a new Jupiter algorithm.
@@ -73,7 +70,7 @@ public class Jupiter implements Algorithm {
     this.inclusion = new GOTOInclusionTransformation();
     this.vectorTime = new JupiterVectorTime(0, 0);
     this.isClientSide = isClientSide;
-    this.ackJupiterActivityList = new ArrayList<OperationWrapper>();
+    this.ackJupiterActivityList = new OperationLog();
   }
 
   @Override
@@ -83,8 +80,7 @@ public class Jupiter implements Algorithm {
     JupiterActivity jupiterActivity = new JupiterActivity(this.vectorTime, op, source, file);
 
     // add(op, myMsgs) to outgoing;
-    this.ackJupiterActivityList.add(
-        new OperationWrapper(op, this.vectorTime.getLocalOperationCount()));
+    this.ackJupiterActivityList.add(op, this.vectorTime.getLocalOperationCount());
 
     // myMsgs = myMsgs + 1;
     this.vectorTime = this.vectorTime.incrementLocalOperationCount();
@@ -178,8 +174,7 @@ public class Jupiter implements Algorithm {
     TextPosition[] result = new TextPosition[textPositions.length];
     System.arraycopy(textPositions, 0, result, 0, textPositions.length);
     for (int i = 0; i < this.ackJupiterActivityList.size(); i++) {
-      OperationWrapper wrap = this.ackJupiterActivityList.get(i);
-      Operation ack = wrap.getOperation();
+      Operation ack = this.ackJupiterActivityList.get(i);
       for (int k = 0; k < textPositions.length; k++) {
         result[k] = transformIndex(result[k], ack);
       }
@@ -208,13 +203,7 @@ public class Jupiter implements Algorithm {
    * @param time the remote JupiterVectorTime
    */
   protected void discardAcknowledgedOperations(JupiterVectorTime time) {
-    Iterator<OperationWrapper> iter = this.ackJupiterActivityList.iterator();
-    while (iter.hasNext()) {
-      OperationWrapper wrap = iter.next();
-      if (wrap.getLocalOperationCount() < time.getRemoteOperationCount()) {
-        iter.remove();
-      }
-    }
+    this.ackJupiterActivityList.discardBefore(time.getRemoteOperationCount());
     // ASSERT msg.myMsgs == otherMsgs
     assert time.getLocalOperationCount() == this.vectorTime.getRemoteOperationCount()
         : "msg.myMsgs != otherMsgs !!";
@@ -232,8 +221,7 @@ public class Jupiter implements Algorithm {
     for (int ackJupiterActivityListCnt = 0;
         ackJupiterActivityListCnt < this.ackJupiterActivityList.size();
         ackJupiterActivityListCnt++) {
-      OperationWrapper wrap = this.ackJupiterActivityList.get(ackJupiterActivityListCnt);
-      Operation existingOp = wrap.getOperation();
+      Operation existingOp = this.ackJupiterActivityList.get(ackJupiterActivityListCnt);
 
       Operation transformedOp;
 
@@ -244,9 +232,7 @@ public class Jupiter implements Algorithm {
         transformedOp = this.inclusion.transform(newOp, existingOp, Boolean.FALSE);
         existingOp = this.inclusion.transform(existingOp, newOp, Boolean.TRUE);
       }
-      this.ackJupiterActivityList.set(
-          ackJupiterActivityListCnt,
-          new OperationWrapper(existingOp, wrap.getLocalOperationCount()));
+      this.ackJupiterActivityList.set(ackJupiterActivityListCnt, existingOp);
 
       newOp = transformedOp;
     }
@@ -261,8 +247,7 @@ public class Jupiter implements Algorithm {
    */
   protected void checkPreconditions(JupiterVectorTime time) throws TransformationException {
     if (!this.ackJupiterActivityList.isEmpty()
-        && (time.getRemoteOperationCount()
-            < this.ackJupiterActivityList.get(0).getLocalOperationCount())) {
+        && (time.getRemoteOperationCount() < this.ackJupiterActivityList.getFirstCount())) {
       // TODO improve exception message; what is precondition 1?
       throw new TransformationException("Precondition #1 violated.");
     } else if (time.getRemoteOperationCount() > this.vectorTime.getLocalOperationCount()) {
@@ -280,42 +265,6 @@ public class Jupiter implements Algorithm {
     }
   }
 
-  /**
-   * This is a simple helper class used in the implementation of the Jupiter algorithm. A
-   * OperationWrapper instance is created with an operation and the current local operation count
-   * and inserted into the outgoing queue (see {@link Jupiter#ackJupiterActivityList}).
-   *
-   * @valueObject Instances of this class should be treated as value objects and should be treated
-   *     as immutable.
-   * @see Jupiter#generateJupiterActivity(Operation, User, IFile)
-   * @see Jupiter#receiveJupiterActivity(JupiterActivity)
-   */
-  protected static class OperationWrapper {
-
-    protected final Operation op;
-
-    protected final int count;
-
-    OperationWrapper(Operation op, int count) {
-      this.op = op;
-      this.count = count;
-    }
-
-    Operation getOperation() {
-      return this.op;
-    }
-
-    int getLocalOperationCount() {
-      return this.count;
-    }
-
-    /** {@inheritDoc} */
-    @Override
-    public String toString() {
-      return ("OperationWrapper(" + this.op + ", " + this.count + ")");
-    }
-  }
-
   /**
    * Throws a CannotUndoException because undo is not supported by this implementation.
    *
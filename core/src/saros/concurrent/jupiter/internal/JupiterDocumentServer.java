@@ -1,6 +1,8 @@
 package saros.concurrent.jupiter.internal;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import org.apache.log4j.Logger;
@@ -9,6 +11,7 @@ import saros.activities.JupiterActivity;
 import saros.concurrent.jupiter.Operation;
 import saros.concurrent.jupiter.Timestamp;
 import saros.concurrent.jupiter.TransformationException;
+import saros.concurrent.jupiter.internal.text.OperationComposer;
 import saros.filesystem.IFile;
 import saros.session.User;
 
@@ -42,9 +45,8 @@ public class JupiterDocumentServer {
     return proxies.remove(user) != null;
   }
 
-  // FIXME why is this not synchronized ?!
-  public Map<User, JupiterActivity> transformJupiterActivity(final JupiterActivity activity)
-      throws TransformationException {
+  public synchronized Map<User, JupiterActivity> transformJupiterActivity(
+      final JupiterActivity activity) throws TransformationException {
 
     final Map<User, JupiterActivity> result = new HashMap<User, JupiterActivity>();
 
@@ -83,6 +85,60 @@ public class JupiterDocumentServer {
     return result;
   }
 
+  /**
+   * Transforms the given activities of the same user like {@link #transformJupiterActivity} but
+   * generates only one activity for every other user. It contains the composition of the operations
+   * of all given activities, so the other users have to transform and acknowledge only one
+   * operation. Activities that cannot be transformed are dropped.
+   *
+   * @param activities consecutive activities of the same user for the file of this server
+   * @return the activity to send for every other user, an empty map if none of the given activities
+   *     could be transformed
+   */
+  public synchronized Map<User, JupiterActivity> transformJupiterActivities(
+      final List<JupiterActivity> activities) {
+
+    final Map<User, JupiterActivity> result = new HashMap<User, JupiterActivity>();
+
+    if (activities.isEmpty()) return result;
+
+    final User source = activities.get(0).getSource();
+
+    final Jupiter sourceProxy = proxies.get(source);
+
+    if (sourceProxy == null)
+      throw new IllegalStateException("no proxy client registered for user: " + source);
+
+    final List<Operation> ops = new ArrayList<Operation>(activities.size());
+
+    for (final JupiterActivity activity : activities) {
+      if (!source.equals(activity.getSource()))
+        throw new IllegalArgumentException(
+            "activities of different users: " + source + ", " + activity.getSource());
+
+      try {
+        ops.add(sourceProxy.receiveJupiterActivity(activity));
+      } catch (TransformationException e) {
+        log.error("failed to transform jupiter activity: " + activity, e);
+      }
+    }
+
+    if (ops.isEmpty()) return result;
+
+    final Operation op = ops.size() == 1 ? ops.get(0) : OperationComposer.compose(ops);
+
+    for (final Entry<User, Jupiter> entry : proxies.entrySet()) {
+
+      final User user = entry.getKey();
+
+      if (user.equals(source)) continue;
+
+      result.put(user, entry.getValue().generateJupiterActivity(op, source, file));
+    }
+
+    return result;
+  }
+
   public synchronized void updateVectorTime(final User source, final User dest) {
     final Jupiter proxy = proxies.get(source);
 
@@ -105,7 +161,7 @@ public class JupiterDocumentServer {
     if (removeProxyClient(user)) addProxyClient(user);
   }
 
-  public Map<User, ChecksumActivity> withTimestamp(final ChecksumActivity activity)
+  public synchronized Map<User, ChecksumActivity> withTimestamp(final ChecksumActivity activity)
       throws TransformationException {
 
     final Map<User, ChecksumActivity> result = new HashMap<User, ChecksumActivity>();
@@ -0,0 +1,138 @@
+package saros.concurrent.jupiter.internal;
+
+import java.util.Arrays;
+import saros.concurrent.jupiter.Operation;
+
+/**
+ * The outgoing operations of a {@link Jupiter} instance that are not acknowledged yet, ordered by
+ * their local operation counts.
+ *
+ * <p>The operations are stored in a ring buffer, so acknowledged operations are discarded from the
+ * head without moving the remaining ones and operations are replaced in place when they are
+ * transformed. As every generated operation is added, the local operation counts of the contained
+ * operations are consecutive and only the count of the first operation has to be stored.
+ *
+ * <p>This class is not thread safe.
+ */
+final class OperationLog {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private Operation[] operations = new Operation[INITIAL_CAPACITY];
+
+  /** Index of the first operation in {@link #operations} */
+  private int head;
+
+  private int size;
+
+  /** Local operation count of the first operation */
+  private int firstCount;
+
+  /**
+   * Appends an operation.
+   *
+   * @param operation the operation
+   * @param count the local operation count at the time the operation was generated
+   * @throws IllegalArgumentException if the count does not follow the count of the last operation
+   */
+  void add(Operation operation, int count) {
+    if (size == 0) {
+      head = 0;
+      firstCount = count;
+    } else if (count != firstCount + size) {
+      throw new IllegalArgumentException(
+          "operation count " + count + " does not follow " + (firstCount + size - 1));
+    }
+
+    if (size == operations.length) grow();
+
+    operations[(head + size) & (operations.length - 1)] = operation;
+    size++;
+  }
+
+  /** Returns the operation at the given index, the oldest operation has index 0. */
+  Operation get(int index) {
+    return operations[toArrayIndex(index)];
+  }
+
+  /** Replaces the operation at the given index, e.g. by its transformed version. */
+  void set(int index, Operation operation) {
+    operations[toArrayIndex(index)] = operation;
+  }
+
+  /**
+   * Returns the local operation count of the oldest operation.
+   *
+   * @throws IllegalStateException if the log is empty
+   */
+  int getFirstCount() {
+    if (size == 0) throw new IllegalStateException("log is empty");
+
+    return firstCount;
+  }
+
+  /**
+   * Discards all operations whose local operation count is less than the given count, i.e. all
+   * operations acknowledged by a remote vector time with the given remote operation count.
+   */
+  void discardBefore(int count) {
+    final int discarded = Math.min(Math.max(count - firstCount, 0), size);
+
+    if (discarded == 0) return;
+
+    final int end = head + discarded;
+
+    // release the references, the range may wrap around the end of the array
+    if (end <= operations.length) {
+      Arrays.fill(operations, head, end, null);
+    } else {
+      Arrays.fill(operations, head, operations.length, null);
+      Arrays.fill(operations, 0, end - operations.length, null);
+    }
+
+    head = end & (operations.length - 1);
+    size -= discarded;
+    firstCount += discarded;
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  private int toArrayIndex(final int index) {
+    if (index < 0 || index >= size)
+      throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+
+    return (head + index) & (operations.length - 1);
+  }
+
+  /** Doubles the capacity, the capacity is always a power of two. */
+  private void grow() {
+    final Operation[] grown = new Operation[operations.length * 2];
+
+    final int headLength = Math.min(size, operations.length - head);
+
+    System.arraycopy(operations, head, grown, 0, headLength);
+    System.arraycopy(operations, 0, grown, headLength, size - headLength);
+
+    operations = grown;
+    head = 0;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder builder = new StringBuilder("OperationLog[");
+
+    for (int i = 0; i < size; i++) {
+      if (i > 0) builder.append(", ");
+
+      builder.append(firstCount + i).append(": ").append(get(i));
+    }
+
+    return builder.append("]").toString();
+  }
+}
@@ -1,14 +1,21 @@
 package saros.concurrent.management;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import org.apache.log4j.Logger;
 import saros.activities.ChecksumActivity;
+import saros.activities.FileActivity;
 import saros.activities.IActivity;
 import saros.activities.JupiterActivity;
+import saros.activities.RegionRecoveryActivity;
 import saros.activities.TextEditActivity;
 import saros.concurrent.jupiter.Operation;
 import saros.concurrent.jupiter.TransformationException;
+import saros.concurrent.watchdog.DocumentChecksum;
+import saros.editor.IEditorManager;
+import saros.editor.text.LineRange;
 import saros.filesystem.IFile;
 import saros.repackaged.picocontainer.Startable;
 import saros.session.ISarosSession;
@@ -22,6 +29,9 @@ import saros.session.ISarosSession;
  *
  * <p>When JupiterActivities are received from the server they are transformed by the
  * ConcurrentDocumentClient to TextEditActivities which can then be executed locally.
+ *
+ * <p>During the {@link RegionRecoveryActivity region recovery} of a file the JupiterActivities of
+ * the file are held back until the divergent regions are replaced.
  */
 public class ConcurrentDocumentClient implements Startable {
 
@@ -33,8 +43,14 @@ public class ConcurrentDocumentClient implements Startable {
 
   private final ResourceActivityFilter resourceActivityFilter;
 
-  public ConcurrentDocumentClient(ISarosSession sarosSession) {
+  private final IEditorManager editorManager;
+
+  /** The held back JupiterActivities of the files that are currently recovered */
+  private final Map<IFile, List<JupiterActivity>> recoveredFiles = new HashMap<>();
+
+  public ConcurrentDocumentClient(ISarosSession sarosSession, IEditorManager editorManager) {
     this.sarosSession = sarosSession;
+    this.editorManager = editorManager;
     this.jupiterClient = new JupiterClient(sarosSession);
 
     this.resourceActivityFilter = new ResourceActivityFilter(sarosSession, this::reset);
@@ -48,6 +64,7 @@ public class ConcurrentDocumentClient implements Startable {
   @Override
   public void stop() {
     resourceActivityFilter.dispose();
+    recoveredFiles.clear();
   }
 
   /**
@@ -118,11 +135,30 @@ public class ConcurrentDocumentClient implements Startable {
       }
 
       if (activity instanceof JupiterActivity) {
-        activities.addAll(receiveActivity((JupiterActivity) activity));
+        JupiterActivity jupiterActivity = (JupiterActivity) activity;
+        List<JupiterActivity> heldBack = recoveredFiles.get(jupiterActivity.getResource());
+
+        if (heldBack != null) heldBack.add(jupiterActivity);
+        else activities.addAll(receiveActivity(jupiterActivity));
 
       } else if (activity instanceof ChecksumActivity) {
-        activities.add(receiveChecksum((ChecksumActivity) activity));
+        ChecksumActivity checksumActivity = (ChecksumActivity) activity;
+
+        // the checksum cannot be verified before the recovery is finished
+        if (!recoveredFiles.containsKey(checksumActivity.getResource()))
+          activities.add(receiveChecksum(checksumActivity));
+
+      } else if (activity instanceof RegionRecoveryActivity) {
+        activities.addAll(receiveRecovery((RegionRecoveryActivity) activity));
+
       } else {
+        /*
+         * A recovery of the whole file replaces the region recovery. The
+         * content already contains the effects of the held back activities.
+         */
+        if (activity instanceof FileActivity && ((FileActivity) activity).isRecovery())
+          recoveredFiles.remove(((FileActivity) activity).getResource());
+
         activities.add(activity);
       }
 
@@ -149,6 +185,94 @@ public class ConcurrentDocumentClient implements Startable {
     return activity;
   }
 
+  /**
+   * Handles the steps of a region recovery that concern the local Jupiter state.
+   *
+   * <p>A request resets the JupiterClient of the file, as the JupiterServer was reset when the
+   * request was sent, and holds back all further JupiterActivities of the file. A replacement is
+   * transformed into TextEditActivities that replace the divergent regions, followed by the held
+   * back activities.
+   *
+   * @client
+   */
+  private List<IActivity> receiveRecovery(RegionRecoveryActivity recovery) {
+    final List<IActivity> activities = new ArrayList<IActivity>();
+
+    final IFile file = recovery.getResource();
+
+    switch (recovery.getType()) {
+      case REQUEST:
+        reset(file);
+
+        if (file.exists()) recoveredFiles.put(file, new ArrayList<JupiterActivity>());
+
+        break;
+
+      case REPLACE:
+        final List<JupiterActivity> heldBack = recoveredFiles.remove(file);
+
+        if (heldBack == null) {
+          log.warn("received replacement for file that is not recovered: " + recovery);
+          break;
+        }
+
+        activities.addAll(replaceRegions(recovery));
+
+        for (JupiterActivity jupiterActivity : heldBack)
+          activities.addAll(receiveActivity(jupiterActivity));
+
+        break;
+
+      default:
+        break;
+    }
+
+    activities.add(recovery);
+
+    return activities;
+  }
+
+  /**
+   * Creates the TextEditActivities that replace the divergent regions of the local content by the
+   * text of the host. The regions are replaced from the last to the first, so the positions of the
+   * preceding regions stay valid.
+   */
+  private List<TextEditActivity> replaceRegions(RegionRecoveryActivity recovery) {
+    final List<TextEditActivity> textEdits = new ArrayList<TextEditActivity>();
+
+    final IFile file = recovery.getResource();
+
+    final DocumentChecksum local = new DocumentChecksum(file);
+    local.update(editorManager.getNormalizedContent(file));
+
+    if (local.getLength() == DocumentChecksum.NOT_AVAILABLE) {
+      log.error("could not retrieve content of recovered file: " + file);
+      return textEdits;
+    }
+
+    final List<LineRange> regions = recovery.getRegions();
+    final List<String> texts = recovery.getTexts();
+
+    for (int i = regions.size() - 1; i >= 0; i--) {
+      final int startLine = regions.get(i).getStartLine();
+      final int endLine = startLine + regions.get(i).getNumberOfLines();
+
+      final String replacedText = local.getText(startLine, endLine);
+
+      if (replacedText.equals(texts.get(i))) continue;
+
+      textEdits.add(
+          TextEditActivity.buildTextEditActivity(
+              recovery.getSource(),
+              local.getPosition(startLine),
+              texts.get(i),
+              replacedText,
+              file));
+    }
+
+    return textEdits;
+  }
+
   /**
    * Transforms the JupiterActivity back into textEditActivities.
    *
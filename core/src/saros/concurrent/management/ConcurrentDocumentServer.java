@@ -129,6 +129,48 @@ public class ConcurrentDocumentServer implements Startable {
     return result;
   }
 
+  /**
+   * Transforms consecutive Jupiter activities of the same user for the same file on the server
+   * side. The operations of the activities are composed, so every other user receives only one
+   * activity.
+   *
+   * <p>Drops activities that are reported as filtered out by {@link
+   * ResourceActivityFilter#isFiltered(IActivity)}.
+   *
+   * @host
+   * @sarosThread Must be executed in the Saros dispatch thread.
+   * @notGUI This method may not be called from SWT, otherwise a deadlock might occur!!
+   * @param activities consecutive activities of the same user for the same file
+   * @return A list of QueueItems containing the activities and receivers
+   * @see #transformIncoming(IActivity)
+   */
+  public List<QueueItem> transformIncoming(final List<JupiterActivity> activities) {
+
+    assert sarosSession.isHost() : "CDS.transformIncoming must not be called on the client";
+
+    final List<JupiterActivity> unfiltered = new ArrayList<JupiterActivity>(activities.size());
+
+    for (final JupiterActivity activity : activities) {
+      if (resourceActivityFilter.isFiltered(activity))
+        log.debug("Ignored activity for already deleted resource: " + activity);
+      else unfiltered.add(activity);
+    }
+
+    final List<QueueItem> result = new ArrayList<QueueItem>();
+
+    if (unfiltered.isEmpty()) return result;
+
+    try {
+      for (final Entry<User, JupiterActivity> entry : server.transform(unfiltered).entrySet())
+        result.add(new QueueItem(entry.getKey(), entry.getValue()));
+
+    } catch (Exception e) {
+      log.error("failed to transform jupiter activities: " + unfiltered, e);
+    }
+
+    return result;
+  }
+
   /**
    * Does the actual work of transforming a clients JupiterActivity into specific JupiterActivities
    * for every client.
@@ -1,9 +1,10 @@
 package saros.concurrent.management;
 
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import saros.activities.ChecksumActivity;
 import saros.activities.JupiterActivity;
 import saros.concurrent.jupiter.TransformationException;
@@ -16,6 +17,9 @@ import saros.session.User;
  * A JupiterServer manages Jupiter server instances for a number of users AND number of files.
  *
  * <p>(in contrast to a JupiterDocumentServer which only handles a single file)
+ *
+ * <p>Activities of different files can be transformed concurrently. Activities of the same file are
+ * transformed one after another.
  */
 public class JupiterServer {
 
@@ -24,7 +28,7 @@ public class JupiterServer {
    *
    * @host
    */
-  private final HashMap<IFile, JupiterDocumentServer> concurrentDocuments = new HashMap<>();
+  private final Map<IFile, JupiterDocumentServer> concurrentDocuments = new ConcurrentHashMap<>();
 
   private final Set<User> currentClients = new HashSet<User>();
 
@@ -59,7 +63,19 @@ public class JupiterServer {
    *
    * @host
    */
-  private synchronized JupiterDocumentServer getServer(final IFile file) {
+  private JupiterDocumentServer getServer(final IFile file) {
+
+    final JupiterDocumentServer docServer = concurrentDocuments.get(file);
+
+    return docServer != null ? docServer : createServer(file);
+  }
+
+  /**
+   * Creates the JupiterDocumentServer for a given file unless it was already created concurrently.
+   *
+   * @host
+   */
+  private synchronized JupiterDocumentServer createServer(final IFile file) {
 
     JupiterDocumentServer docServer = concurrentDocuments.get(file);
 
@@ -85,11 +101,11 @@ public class JupiterServer {
     return docServer;
   }
 
-  public synchronized void reset(final IFile file, final User user) {
+  public void reset(final IFile file, final User user) {
     getServer(file).reset(user);
   }
 
-  public synchronized Map<User, JupiterActivity> transform(final JupiterActivity activity)
+  public Map<User, JupiterActivity> transform(final JupiterActivity activity)
       throws TransformationException {
 
     final JupiterDocumentServer docServer = getServer(activity.getResource());
@@ -97,7 +113,20 @@ public class JupiterServer {
     return docServer.transformJupiterActivity(activity);
   }
 
-  public synchronized Map<User, ChecksumActivity> withTimestamp(final ChecksumActivity activity)
+  /**
+   * Transforms consecutive activities of the same user for the same file and composes them into one
+   * activity for every other user.
+   *
+   * @see JupiterDocumentServer#transformJupiterActivities(List)
+   */
+  public Map<User, JupiterActivity> transform(final List<JupiterActivity> activities) {
+
+    final JupiterDocumentServer docServer = getServer(activities.get(0).getResource());
+
+    return docServer.transformJupiterActivities(activities);
+  }
+
+  public Map<User, ChecksumActivity> withTimestamp(final ChecksumActivity activity)
       throws TransformationException {
 
     final JupiterDocumentServer docServer = getServer(activity.getResource());
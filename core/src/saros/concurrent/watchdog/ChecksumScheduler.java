@@ -0,0 +1,210 @@
+package saros.concurrent.watchdog;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import saros.filesystem.IFile;
+import saros.session.User;
+import saros.util.Histogram;
+
+/**
+ * Decides when the checksum of an open document is calculated and whether it has to be broadcast.
+ *
+ * <p>Documents that were edited are checked soon after the edit, documents that were edited by
+ * several users or by a user with a high latency are checked even sooner, as their risk to become
+ * inconsistent is higher. The interval between the checks of idle documents grows with every check
+ * up to {@link #MAX_IDLE_INTERVAL}. A checksum that did not change since it was last broadcast is
+ * only broadcast again if there are new users or the last broadcast is older than {@link
+ * #REFRESH_INTERVAL}.
+ *
+ * <p>The scheduler records the latency between the first edit of a document and its next check. All
+ * times are in milliseconds. The scheduler is thread safe.
+ */
+final class ChecksumScheduler {
+
+  /** Interval after an edit of a document with a high risk of becoming inconsistent */
+  static final long RISKY_INTERVAL = 2000;
+
+  /** Interval after an edit of a document */
+  static final long EDITED_INTERVAL = 5000;
+
+  /** Initial interval between the checks of an idle document */
+  static final long IDLE_INTERVAL = 10000;
+
+  /** Maximum interval between the checks of an idle document */
+  static final long MAX_IDLE_INTERVAL = 160000;
+
+  /** Maximum time an unchanged checksum is not broadcast again */
+  static final long REFRESH_INTERVAL = 60000;
+
+  /** Interval in which the content of a document is read completely */
+  static final long FULL_UPDATE_INTERVAL = 60000;
+
+  private static final class Entry {
+    private long nextCheck;
+
+    /** The interval is doubled after every check without edits */
+    private long interval = IDLE_INTERVAL / 2;
+
+    /** Time of the first edit since the last check, -1 if there was none */
+    private long firstEditTime = -1;
+
+    private final Set<User> editors = new HashSet<>();
+    private boolean isRisky;
+
+    private long lastFullUpdate = -1;
+
+    private long broadcastTime = -1;
+    private long broadcastHash;
+    private long broadcastLength;
+    private Set<User> receivers = new HashSet<>();
+
+    private final Histogram checkLatency = new Histogram();
+
+    private Entry(long nextCheck) {
+      this.nextCheck = nextCheck;
+    }
+  }
+
+  private final Map<IFile, Entry> entries = new HashMap<>();
+
+  /**
+   * Records an edit of a document and schedules its next check accordingly.
+   *
+   * @param file the edited document
+   * @param user the user who edited the document
+   * @param isHighLatency whether the latency to the user is high
+   * @param now the current time
+   */
+  synchronized void edited(IFile file, User user, boolean isHighLatency, long now) {
+    final Entry entry = entries.get(file);
+
+    // unknown documents are checked as soon as they are opened
+    if (entry == null) return;
+
+    if (entry.firstEditTime < 0) entry.firstEditTime = now;
+
+    entry.editors.add(user);
+    entry.isRisky |= isHighLatency || entry.editors.size() > 1;
+
+    entry.nextCheck =
+        Math.min(entry.nextCheck, now + (entry.isRisky ? RISKY_INTERVAL : EDITED_INTERVAL));
+  }
+
+  /**
+   * Returns the documents that have to be checked now. Documents that are not contained in the
+   * given documents are forgotten, new documents are due immediately.
+   *
+   * @param files the currently open documents
+   * @param now the current time
+   * @return the documents to check, the most overdue first
+   */
+  synchronized List<IFile> getDueFiles(Collection<IFile> files, long now) {
+    entries.keySet().retainAll(files);
+
+    final List<IFile> dueFiles = new ArrayList<>();
+
+    for (IFile file : files) {
+      final Entry entry = entries.computeIfAbsent(file, f -> new Entry(now));
+
+      if (entry.nextCheck <= now) dueFiles.add(file);
+    }
+
+    dueFiles.sort((a, b) -> Long.compare(entries.get(a).nextCheck, entries.get(b).nextCheck));
+
+    return dueFiles;
+  }
+
+  /**
+   * Returns whether the content of the document has to be read completely to verify the
+   * incrementally updated checksum. If so, the full update is recorded.
+   *
+   * @param file the document
+   * @param now the current time
+   */
+  synchronized boolean needsFullUpdate(IFile file, long now) {
+    final Entry entry = entries.get(file);
+
+    if (entry == null) return true;
+
+    if (entry.lastFullUpdate >= 0 && now - entry.lastFullUpdate < FULL_UPDATE_INTERVAL)
+      return false;
+
+    entry.lastFullUpdate = now;
+    return true;
+  }
+
+  /**
+   * Returns whether the given checksum of a document has to be broadcast to the given users. If so,
+   * the broadcast is recorded.
+   *
+   * @param file the document
+   * @param hash the hash of the document
+   * @param length the length of the document
+   * @param users the users who will receive the broadcast
+   * @param now the current time
+   */
+  synchronized boolean needsBroadcast(
+      IFile file, long hash, long length, Collection<User> users, long now) {
+    final Entry entry = entries.get(file);
+
+    if (entry == null) return true;
+
+    final boolean isUnchanged =
+        entry.broadcastTime >= 0
+            && entry.broadcastHash == hash
+            && entry.broadcastLength == length
+            && now - entry.broadcastTime < REFRESH_INTERVAL
+            && entry.receivers.containsAll(users);
+
+    if (isUnchanged) return false;
+
+    entry.broadcastTime = now;
+    entry.broadcastHash = hash;
+    entry.broadcastLength = length;
+    entry.receivers = new HashSet<>(users);
+
+    return true;
+  }
+
+  /**
+   * Records the check of a document and schedules its next check.
+   *
+   * @param file the document
+   * @param now the current time
+   */
+  synchronized void checked(IFile file, long now) {
+    final Entry entry = entries.get(file);
+
+    if (entry == null) return;
+
+    if (entry.firstEditTime >= 0) {
+      entry.checkLatency.record(now - entry.firstEditTime);
+      entry.interval = IDLE_INTERVAL;
+    } else {
+      entry.interval = Math.min(entry.interval * 2, MAX_IDLE_INTERVAL);
+    }
+
+    entry.nextCheck = now + entry.interval;
+    entry.firstEditTime = -1;
+    entry.editors.clear();
+    entry.isRisky = false;
+  }
+
+  /**
+   * Returns the histogram of the latencies between the first edit of the document since its last
+   * check and its next check.
+   *
+   * @param file the document
+   * @return the histogram or <code>null</code> if the document is not scheduled
+   */
+  synchronized Histogram getCheckLatency(IFile file) {
+    final Entry entry = entries.get(file);
+
+    return entry != null ? entry.checkLatency : null;
+  }
+}
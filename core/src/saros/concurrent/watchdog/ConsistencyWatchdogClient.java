@@ -1,10 +1,13 @@
 package saros.concurrent.watchdog;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -15,8 +18,10 @@ import org.apache.log4j.Logger;
 import saros.activities.ChecksumActivity;
 import saros.activities.ChecksumErrorActivity;
 import saros.activities.FileActivity;
+import saros.activities.RegionRecoveryActivity;
 import saros.annotations.Component;
 import saros.editor.IEditorManager;
+import saros.editor.text.LineRange;
 import saros.filesystem.IFile;
 import saros.monitoring.IProgressMonitor;
 import saros.monitoring.NullProgressMonitor;
@@ -73,6 +78,9 @@ public class ConsistencyWatchdogClient extends AbstractActivityProducer implemen
 
   private final Set<IFile> filesWithWrongChecksums = new CopyOnWriteArraySet<>();
 
+  /** The line ranges in which the local files differ from the host's files */
+  private final Map<IFile, List<LineRange>> divergentRegions = new ConcurrentHashMap<>();
+
   private final RemoteProgressManager remoteProgressManager;
 
   private final ISarosSession session;
@@ -109,15 +117,55 @@ public class ConsistencyWatchdogClient extends AbstractActivityProducer implemen
         public void receive(FileActivity fileActivity) {
           if (!fileActivity.isRecovery()) return;
 
-          int currentValue;
-          while ((currentValue = filesRemaining.get()) > 0) {
-            if (filesRemaining.compareAndSet(currentValue, currentValue - 1)) {
+          fileRecovered();
+        }
+
+        @Override
+        public void receive(RegionRecoveryActivity regionRecovery) {
+          switch (regionRecovery.getType()) {
+            case REQUEST:
+              sendDigest(regionRecovery);
+              break;
+            case REPLACE:
+              fileRecovered();
+              break;
+            default:
               break;
-            }
           }
         }
       };
 
+  private void fileRecovered() {
+    int currentValue;
+    while ((currentValue = filesRemaining.get()) > 0) {
+      if (filesRemaining.compareAndSet(currentValue, currentValue - 1)) {
+        break;
+      }
+    }
+  }
+
+  /** Replies to a region recovery request with the block hashes of the local content. */
+  private void sendDigest(RegionRecoveryActivity request) {
+    final IFile file = request.getResource();
+
+    final DocumentChecksum checksum = new DocumentChecksum(file);
+
+    if (file.exists()) checksum.update(editorManager.getNormalizedContent(file));
+    else checksum.update(null);
+
+    final long[] blockHashes =
+        checksum.getLength() == DocumentChecksum.NOT_AVAILABLE ? null : checksum.getRegionHashes(0);
+
+    fireActivity(
+        RegionRecoveryActivity.digest(
+            session.getLocalUser(),
+            request.getSource(),
+            file,
+            request.getRecoveryID(),
+            DocumentChecksum.BLOCK_LINES,
+            blockHashes));
+  }
+
   @Override
   public void start() {
     inconsistencyToResolve.setValue(false);
@@ -132,6 +180,7 @@ public class ConsistencyWatchdogClient extends AbstractActivityProducer implemen
     session.removeActivityProducer(this);
 
     filesWithWrongChecksums.clear();
+    divergentRegions.clear();
 
     // abort running recoveries
     cancelRecovery.set(true);
@@ -145,6 +194,17 @@ public class ConsistencyWatchdogClient extends AbstractActivityProducer implemen
     return new HashSet<>(filesWithWrongChecksums);
   }
 
+  /**
+   * Returns the line ranges in which the given file differs from the host's version of the file, as
+   * determined by the last check of the file.
+   *
+   * @param file a file with a wrong checksum
+   * @return the line ranges, an empty list if the ranges are unknown or the file is consistent
+   */
+  public List<LineRange> getDivergentRegions(IFile file) {
+    return divergentRegions.getOrDefault(file, Collections.emptyList());
+  }
+
   /**
    * Start a consistency recovery by sending a checksum error to the host and waiting for his reply.
    * <br>
@@ -294,20 +354,33 @@ public class ConsistencyWatchdogClient extends AbstractActivityProducer implemen
       return true;
     }
 
-    if ((normalizedEditorContent.length() != checksum.getLength())
-        || (normalizedEditorContent.hashCode() != checksum.getHash())) {
+    final DocumentChecksum localChecksum = new DocumentChecksum(file);
+    localChecksum.update(normalizedEditorContent);
+
+    if ((localChecksum.getLength() != checksum.getLength())
+        || (localChecksum.getHash() != checksum.getHash())) {
 
       log.debug(
           String.format(
               "Inconsistency detected -> %s L(%d %s %d) H(%x %s %x)",
               file.toString(),
-              normalizedEditorContent.length(),
-              normalizedEditorContent.length() == checksum.getLength() ? "==" : "!=",
+              localChecksum.getLength(),
+              localChecksum.getLength() == checksum.getLength() ? "==" : "!=",
               checksum.getLength(),
-              normalizedEditorContent.hashCode(),
-              normalizedEditorContent.hashCode() == checksum.getHash() ? "==" : "!=",
+              localChecksum.getHash(),
+              localChecksum.getHash() == checksum.getHash() ? "==" : "!=",
               checksum.getHash()));
 
+      if (checksum.getRegionHashes() != null) {
+        final List<LineRange> regions =
+            localChecksum.getDivergentRegions(
+                checksum.getRegionLines(), checksum.getRegionHashes());
+
+        log.debug("Inconsistent regions of " + file + ": " + regions);
+
+        divergentRegions.put(file, regions);
+      }
+
       return true;
     }
 
@@ -325,6 +398,8 @@ public class ConsistencyWatchdogClient extends AbstractActivityProducer implemen
 
     boolean changed;
 
+    divergentRegions.remove(checksumActivity.getResource());
+
     if (isInconsistent(checksumActivity)) {
       changed = filesWithWrongChecksums.add(checksumActivity.getResource());
     } else {
@@ -2,17 +2,26 @@ package saros.concurrent.watchdog;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import org.apache.log4j.Logger;
 import saros.activities.ChecksumActivity;
 import saros.activities.ChecksumErrorActivity;
 import saros.activities.FileActivity.Purpose;
 import saros.activities.FileActivity.Type;
+import saros.activities.RegionRecoveryActivity;
 import saros.activities.TargetedFileActivity;
 import saros.annotations.Component;
 import saros.concurrent.management.ConcurrentDocumentServer;
 import saros.editor.IEditorManager;
+import saros.editor.text.LineRange;
 import saros.filesystem.IFile;
 import saros.repackaged.picocontainer.Startable;
 import saros.session.AbstractActivityConsumer;
@@ -28,6 +37,10 @@ import saros.util.ThreadUtils;
 /**
  * This component is responsible for handling Consistency Errors on the host. It both produces and
  * consumes activities.
+ *
+ * <p>The inconsistent user and all users with write access are stopped during a recovery. Existing
+ * files are recovered by exchanging block hashes with the inconsistent user, so only the divergent
+ * regions are sent, see {@link RegionRecoveryActivity}.
  */
 @Component(module = "consistency")
 public final class ConsistencyWatchdogHandler extends AbstractActivityProducer
@@ -35,6 +48,9 @@ public final class ConsistencyWatchdogHandler extends AbstractActivityProducer
 
   private static final Logger log = Logger.getLogger(ConsistencyWatchdogHandler.class);
 
+  /** Time to wait for the block hashes of the inconsistent user before recovering whole files */
+  private static final long REGION_RECOVERY_TIMEOUT = 30000;
+
   private final IEditorManager editorManager;
 
   private final ISarosSession session;
@@ -43,12 +59,35 @@ public final class ConsistencyWatchdogHandler extends AbstractActivityProducer
 
   private final UISynchronizer synchronizer;
 
+  /** The region recoveries of the files whose recovery was requested, by recovery id */
+  private final Map<String, Map<IFile, RegionRecovery>> pendingRecoveries =
+      new ConcurrentHashMap<>();
+
+  /** The region recovery of a single file */
+  private static final class RegionRecovery {
+    /** The content of the file at the time the recovery was requested */
+    private final DocumentChecksum snapshot;
+
+    /** Completes once the divergent regions were sent or the recovery was replaced */
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    private RegionRecovery(DocumentChecksum snapshot) {
+      this.snapshot = snapshot;
+    }
+  }
+
   private final IActivityConsumer consumer =
       new AbstractActivityConsumer() {
         @Override
         public void receive(ChecksumErrorActivity checksumError) {
           triggerRecovery(checksumError);
         }
+
+        @Override
+        public void receive(RegionRecoveryActivity regionRecovery) {
+          if (regionRecovery.getType() == RegionRecoveryActivity.Type.DIGEST)
+            handleDigest(regionRecovery);
+        }
       };
 
   @Override
@@ -100,64 +139,202 @@ public final class ConsistencyWatchdogHandler extends AbstractActivityProducer
 
   private void runRecovery(final ChecksumErrorActivity checksumError) throws CancellationException {
 
+    final User user = checksumError.getSource();
+    final String recoveryID = checksumError.getRecoveryID();
+
     List<StartHandle> startHandles = null;
 
     try {
+      /*
+       * All users who can edit the files have to be stopped, otherwise an
+       * edit could be transformed after the snapshot of a file was taken but
+       * before the Jupiter server of the inconsistent user was reset. The
+       * acknowledgments of the users are executed after their earlier
+       * activities, so these are already contained in the snapshots.
+       */
+      startHandles = session.getStopManager().stop(getEditingUsers(user), "Consistency recovery");
 
-      startHandles = session.getStopManager().stop(session.getUsers(), "Consistency recovery");
+      final Map<IFile, RegionRecovery> pending = new ConcurrentHashMap<>();
 
-      recoverFiles(checksumError);
+      pendingRecoveries.put(recoveryID, pending);
 
-      /*
-       * We have to start the StartHandle of the inconsistent user first
-       * (blocking!) because otherwise the other participants can be
-       * started before the inconsistent user completely processed the
-       * consistency recovery.
-       */
+      synchronizer.syncExec(
+          new Runnable() {
+            @Override
+            public void run() {
+              for (final IFile file : checksumError.getFiles())
+                requestRecovery(user, file, recoveryID, pending);
+            }
+          });
 
-      // find the StartHandle of the inconsistent user
-      StartHandle inconsistentStartHandle = null;
-      for (StartHandle startHandle : startHandles) {
-        if (checksumError.getSource().equals(startHandle.getUser())) {
-          inconsistentStartHandle = startHandle;
-          break;
-        }
-      }
-      if (inconsistentStartHandle == null) {
-        log.error("could not find start handle" + " of the inconsistent user");
-      } else {
-        // FIXME evaluate the return value
-        inconsistentStartHandle.startAndAwait();
-        startHandles.remove(inconsistentStartHandle);
-      }
+      awaitRegionRecoveries(user, pending);
+
+      synchronizer.syncExec(
+          new Runnable() {
+            @Override
+            public void run() {
+              // Tell the user that we sent all files
+              fireActivity(
+                  new ChecksumErrorActivity(session.getLocalUser(), user, null, recoveryID));
+            }
+          });
+
+    } catch (InterruptedException e) {
+      log.error("interrupted while recovering the files of user " + user);
+      Thread.currentThread().interrupt();
     } finally {
-      if (startHandles != null) for (StartHandle startHandle : startHandles) startHandle.start();
+      pendingRecoveries.remove(recoveryID);
+
+      if (startHandles != null) resume(user, startHandles);
+    }
+  }
+
+  /** Returns the inconsistent user and all users who can edit files. */
+  private List<User> getEditingUsers(final User inconsistentUser) {
+    final List<User> users = new ArrayList<>();
+
+    for (final User user : session.getUsers()) {
+      if (user.hasWriteAccess() || user.equals(inconsistentUser)) users.add(user);
+    }
+
+    return users;
+  }
+
+  /**
+   * Resumes the stopped users. The inconsistent user is resumed first (blocking!) because otherwise
+   * the other users can be resumed before the inconsistent user completely processed the recovery.
+   */
+  private void resume(final User inconsistentUser, final List<StartHandle> startHandles) {
+    for (final StartHandle startHandle : startHandles) {
+      // FIXME evaluate the return value
+      if (startHandle.getUser().equals(inconsistentUser)) startHandle.startAndAwait();
+    }
+
+    for (final StartHandle startHandle : startHandles) {
+      if (!startHandle.getUser().equals(inconsistentUser)) startHandle.start();
     }
   }
 
-  private void recoverFiles(final ChecksumErrorActivity checksumError) {
+  /**
+   * Starts the recovery of a single file for the given user. If the file exists, only its divergent
+   * regions are recovered, otherwise the user is told to remove it.
+   */
+  private void requestRecovery(
+      final User from,
+      final IFile file,
+      final String recoveryID,
+      final Map<IFile, RegionRecovery> pending) {
+
+    if (!file.exists()) {
+      recoverFile(from, file);
+      return;
+    }
+
+    final DocumentChecksum snapshot = new DocumentChecksum(file);
+    snapshot.update(editorManager.getNormalizedContent(file));
+
+    if (snapshot.getLength() == DocumentChecksum.NOT_AVAILABLE) {
+      recoverFile(from, file);
+      return;
+    }
+
+    /*
+     * All activities the user receives after the request are based on the
+     * snapshot, so the user has to have the content of the snapshot once it
+     * replaced the divergent regions.
+     */
+    concurrentDocumentServer.reset(from, file);
+
+    pending.put(file, new RegionRecovery(snapshot));
+
+    fireActivity(RegionRecoveryActivity.request(session.getLocalUser(), from, file, recoveryID));
+  }
+
+  /**
+   * Waits until the user replied to all recovery requests. Files whose recovery does not finish in
+   * time are recovered completely.
+   */
+  private void awaitRegionRecoveries(final User user, final Map<IFile, RegionRecovery> pending)
+      throws InterruptedException {
+
+    final List<CompletableFuture<Void>> recoveries = new ArrayList<>();
+
+    for (final RegionRecovery recovery : pending.values()) recoveries.add(recovery.done);
+
+    try {
+      CompletableFuture.allOf(recoveries.toArray(new CompletableFuture<?>[0]))
+          .get(REGION_RECOVERY_TIMEOUT, TimeUnit.MILLISECONDS);
+      return;
+    } catch (ExecutionException e) {
+      // the futures are never completed exceptionally
+      throw new IllegalStateException(e);
+    } catch (TimeoutException e) {
+      // recovered completely below
+    }
+
+    log.warn("user " + user + " did not reply to the recovery of " + pending.keySet() + " in time");
 
     synchronizer.syncExec(
         new Runnable() {
           @Override
           public void run() {
-
-            for (final IFile file : checksumError.getFiles()) {
-
-              recoverFile(checksumError.getSource(), file);
-
-              // Tell the user that we sent all files
-              fireActivity(
-                  new ChecksumErrorActivity(
-                      session.getLocalUser(),
-                      checksumError.getSource(),
-                      null,
-                      checksumError.getRecoveryID()));
+            for (final IFile file : new ArrayList<>(pending.keySet())) {
+              if (pending.remove(file) != null) recoverFile(user, file);
             }
           }
         });
   }
 
+  /** Replies to the block digest of a user with the text of the divergent regions. */
+  private void handleDigest(final RegionRecoveryActivity digest) {
+    final Map<IFile, RegionRecovery> pending = pendingRecoveries.get(digest.getRecoveryID());
+
+    final IFile file = digest.getResource();
+
+    final RegionRecovery recovery = pending != null ? pending.remove(file) : null;
+
+    if (recovery == null) {
+      log.warn("ignoring digest of unknown or finished recovery: " + digest);
+      return;
+    }
+
+    try {
+      replaceRegions(digest, recovery.snapshot);
+    } finally {
+      recovery.done.complete(null);
+    }
+  }
+
+  /** Sends the text of the regions of the snapshot that differ from the given digest. */
+  private void replaceRegions(
+      final RegionRecoveryActivity digest, final DocumentChecksum snapshot) {
+    final IFile file = digest.getResource();
+    final User from = digest.getSource();
+
+    if (digest.getBlockHashes() == null || digest.getBlockLines() != DocumentChecksum.BLOCK_LINES) {
+      recoverFile(from, file);
+      return;
+    }
+
+    final List<LineRange> regions = new ArrayList<>();
+    final List<String> texts = new ArrayList<>();
+
+    for (LineRange region : snapshot.getReplacementRegions(digest.getBlockHashes())) {
+      regions.add(region);
+      texts.add(
+          snapshot.getText(
+              region.getStartLine(), region.getStartLine() + region.getNumberOfLines()));
+    }
+
+    log.debug("recovering regions " + regions + " of " + file + " for user " + from);
+
+    fireActivity(
+        RegionRecoveryActivity.replace(
+            session.getLocalUser(), from, file, digest.getRecoveryID(), regions, texts));
+
+    fireChecksum(file);
+  }
+
   /**
    * Recover a single file for the given user (that is either send the file or tell the user to
    * remove it).
@@ -217,13 +394,27 @@ public final class ConsistencyWatchdogHandler extends AbstractActivityProducer
      * Immediately follow up with a new checksum activity so that the remote
      * side can verify the recovered file.
      */
+    fireChecksum(file);
+  }
 
+  private void fireChecksum(final IFile file) {
     DocumentChecksum checksum = new DocumentChecksum(file);
 
     String normalizedText = editorManager.getNormalizedContent(file);
 
     checksum.update(normalizedText);
 
-    fireActivity(new ChecksumActivity(user, file, checksum.getHash(), checksum.getLength(), null));
+    final int level = checksum.getRegionLevel(DocumentChecksum.MAX_REGIONS);
+    final long[] regionHashes = checksum.getRegionHashes(level);
+
+    fireActivity(
+        new ChecksumActivity(
+            session.getLocalUser(),
+            file,
+            checksum.getHash(),
+            checksum.getLength(),
+            null,
+            DocumentChecksum.getRegionLines(level),
+            regionHashes.length > 1 ? regionHashes : null));
   }
 }
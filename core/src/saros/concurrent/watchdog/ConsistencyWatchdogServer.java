@@ -1,8 +1,11 @@
 package saros.concurrent.watchdog;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -20,17 +23,27 @@ import saros.filesystem.IFile;
 import saros.repackaged.picocontainer.Startable;
 import saros.session.AbstractActivityProducer;
 import saros.session.ISarosSession;
+import saros.session.User;
+import saros.session.internal.ActivitySequencer;
 import saros.synchronize.Blockable;
 import saros.synchronize.StopManager;
 import saros.synchronize.UISynchronizer;
+import saros.util.Histogram;
 import saros.util.NamedThreadFactory;
 import saros.util.ThreadUtils;
 
 /**
  * The server side of the <i>consistency watchdog</i> infrastructure. It periodically checksums the
  * files associated with all locally and remotely open {@link IEditorManager editors} in the current
- * session. It then sends these checksums to all watchdog clients, which can compare them with their
- * own checksum calculations to detect inconsistencies and request file recovery if needed.
+ * session. How often a file is checked depends on how recently and by whom it was edited, see
+ * {@link ChecksumScheduler}. It then sends these checksums to all watchdog clients, which can
+ * compare them with their own checksum calculations to detect inconsistencies and request file
+ * recovery if needed.
+ *
+ * <p>The checksums are updated incrementally with every text edit, so only the hashes of the
+ * changed blocks of a document have to be calculated again. The hashes are calculated outside of
+ * the UI thread, the content of every document is read again periodically to verify the incremental
+ * updates.
  *
  * <p>This component is only run on the session's host.
  */
@@ -40,30 +53,45 @@ public class ConsistencyWatchdogServer extends AbstractActivityProducer
 
   private static final Logger log = Logger.getLogger(ConsistencyWatchdogServer.class);
 
-  private static final long CHECKSUM_CALCULATION_INTERVAL = 10000;
+  /** Interval in which the scheduler is asked for the files to check */
+  private static final long SCHEDULING_INTERVAL = 1000;
+
   private static final long TERMINATION_TIMEOUT = 10000;
 
+  /** Round trip time from which the latency to a user is considered high */
+  private static final long HIGH_LATENCY_THRESHOLD = 500;
+
   private final ISarosSession session;
   private final IEditorManager editorManager;
   private final UserEditorStateManager userEditorStateManager;
   private final StopManager stopManager;
   private final UISynchronizer synchronizer;
+  private final ActivitySequencer activitySequencer;
 
   private final Map<IFile, DocumentChecksum> documentChecksums = new HashMap<>();
+  private final ChecksumScheduler scheduler = new ChecksumScheduler();
   private ScheduledThreadPoolExecutor checksumCalculationExecutor;
   private Future<?> checksumCalculationFuture;
   private boolean blocked;
 
+  /** Remote users whose round trip time exceeds the {@link #HIGH_LATENCY_THRESHOLD} */
+  private volatile Set<User> highLatencyUsers = Collections.emptySet();
+
   private final Runnable checksumCalculation =
       new Runnable() {
         /**
-         * Called periodically to calculate new checksums for all editors and send them to clients.
+         * Called periodically to calculate new checksums for all due editors and send them to
+         * clients.
          */
         @Override
         public void run() {
+          final List<DocumentChecksum> checksums = new ArrayList<>();
+
+          highLatencyUsers = getHighLatencyUsers();
+
           /*
            * Run on the UI thread to guarantee that the editor contents won't
-           * be changed while we calculate the checksums. We also do this to
+           * be changed while we update the checksums. We also do this to
            * synchronize with block().
            */
           synchronizer.syncExec(
@@ -73,7 +101,33 @@ public class ConsistencyWatchdogServer extends AbstractActivityProducer
                     @Override
                     public void run() {
                       if (blocked) return;
-                      calculateChecksums();
+                      checksums.addAll(updateChecksums());
+                    }
+                  }));
+
+          if (checksums.isEmpty()) return;
+
+          /*
+           * Calculate the hashes of the changed blocks outside of the UI
+           * thread. Edits applied in the meantime only invalidate the
+           * affected blocks, which are calculated again on broadcast.
+           */
+          for (DocumentChecksum checksum : checksums) checksum.getHash();
+
+          synchronizer.syncExec(
+              ThreadUtils.wrapSafe(
+                  log,
+                  new Runnable() {
+                    @Override
+                    public void run() {
+                      if (blocked) return;
+
+                      final long now = System.currentTimeMillis();
+
+                      for (DocumentChecksum checksum : checksums) {
+                        if (broadcastChecksum(checksum, now))
+                          scheduler.checked(checksum.getFile(), now);
+                      }
                     }
                   }));
         }
@@ -82,15 +136,24 @@ public class ConsistencyWatchdogServer extends AbstractActivityProducer
   private ISharedEditorListener sharedEditorListener =
       new ISharedEditorListener() {
         /**
-         * Marks checksums as dirty as soon as their associated documents are modified. With this
-         * information, checksum calculation can be avoided when the document hasn't changed between
-         * checksum iterations.
+         * Applies the edits to the checksums of their documents as soon as the documents are
+         * modified. With this information, only the changed blocks have to be hashed again and
+         * reading the document content can be avoided between checksum iterations.
          */
         @Override
         public void textEdited(TextEditActivity textEdit) {
+          final User user = textEdit.getSource();
+
+          scheduler.edited(
+              textEdit.getResource(),
+              user,
+              highLatencyUsers.contains(user),
+              System.currentTimeMillis());
+
           DocumentChecksum checksum = documentChecksums.get(textEdit.getResource());
 
-          if (checksum != null) checksum.markDirty();
+          if (checksum != null && !checksum.applyEdit(textEdit))
+            log.debug("could not apply text edit to checksum, marking it as dirty: " + checksum);
         }
       };
 
@@ -102,18 +165,21 @@ public class ConsistencyWatchdogServer extends AbstractActivityProducer
    * @param stopManager {@link StopManager} to listen to for (un)block requests
    * @param synchronizer {@link UISynchronizer} to use
    * @param userEditorStateManager {@link UserEditorStateManager} to get remote editors
+   * @param activitySequencer {@link ActivitySequencer} to get the latencies to the users
    */
   public ConsistencyWatchdogServer(
       ISarosSession session,
       IEditorManager editorManager,
       StopManager stopManager,
       UISynchronizer synchronizer,
-      UserEditorStateManager userEditorStateManager) {
+      UserEditorStateManager userEditorStateManager,
+      ActivitySequencer activitySequencer) {
     this.session = session;
     this.editorManager = editorManager;
     this.stopManager = stopManager;
     this.synchronizer = synchronizer;
     this.userEditorStateManager = userEditorStateManager;
+    this.activitySequencer = activitySequencer;
   }
 
   @Override
@@ -133,7 +199,7 @@ public class ConsistencyWatchdogServer extends AbstractActivityProducer
 
     checksumCalculationFuture =
         checksumCalculationExecutor.scheduleWithFixedDelay(
-            checksumCalculation, 0, CHECKSUM_CALCULATION_INTERVAL, TimeUnit.MILLISECONDS);
+            checksumCalculation, 0, SCHEDULING_INTERVAL, TimeUnit.MILLISECONDS);
   }
 
   @Override
@@ -200,7 +266,40 @@ public class ConsistencyWatchdogServer extends AbstractActivityProducer
     blocked = false;
   }
 
-  private void calculateChecksums() {
+  /**
+   * Returns the histogram of the latencies between the first edit of the given file since its last
+   * check and the check, in milliseconds.
+   *
+   * @param file an open file
+   * @return the histogram or <code>null</code> if the file is not checked
+   */
+  public Histogram getCheckLatency(IFile file) {
+    return scheduler.getCheckLatency(file);
+  }
+
+  /**
+   * Returns the remote users whose round trip time exceeds the {@link #HIGH_LATENCY_THRESHOLD}. The
+   * latencies are looked up once per scheduling interval instead of on every text edit.
+   *
+   * @return the users with a high latency
+   */
+  private Set<User> getHighLatencyUsers() {
+    final Set<User> users = new HashSet<>();
+
+    for (User user : session.getRemoteUsers()) {
+      if (activitySequencer.getRoundTripTime(user.getJID()) >= HIGH_LATENCY_THRESHOLD)
+        users.add(user);
+    }
+
+    return users;
+  }
+
+  /**
+   * Updates the checksums of all open documents that are due to be checked.
+   *
+   * @return the checksums to broadcast
+   */
+  private List<DocumentChecksum> updateChecksums() {
     Set<IFile> localEditors = editorManager.getOpenEditors();
 
     Set<IFile> remoteEditors = userEditorStateManager.getOpenEditors();
@@ -225,13 +324,27 @@ public class ConsistencyWatchdogServer extends AbstractActivityProducer
     }
 
     /*
-     * Update or create checksums for all currently open documents.
+     * Update or create checksums for all currently open documents that are
+     * due to be checked.
      */
 
-    for (IFile file : allEditors) {
+    final long now = System.currentTimeMillis();
+
+    final List<DocumentChecksum> checksums = new ArrayList<>();
+
+    for (IFile file : scheduler.getDueFiles(allEditors, now)) {
+      DocumentChecksum checksum = documentChecksums.get(file);
+
+      if (checksum != null && scheduler.needsFullUpdate(file, now)) checksum.markDirty();
+
       updateChecksum(file, localEditors, remoteEditors);
-      broadcastChecksum(file);
+
+      checksum = documentChecksums.get(file);
+
+      if (checksum != null) checksums.add(checksum);
     }
+
+    return checksums;
   }
 
   private void updateChecksum(IFile file, Set<IFile> localEditors, Set<IFile> remoteEditors) {
@@ -246,7 +359,7 @@ public class ConsistencyWatchdogServer extends AbstractActivityProducer
      * Ensures that the watchdog server doesn't use outdated checksums for
      * files that no longer exist locally.
      */
-    if (checksum.getHash() != DocumentChecksum.NOT_AVAILABLE && !file.exists()) {
+    if (checksum.getLength() != DocumentChecksum.NOT_AVAILABLE && !file.exists()) {
 
       log.debug(
           "Updating checksum for "
@@ -287,10 +400,30 @@ public class ConsistencyWatchdogServer extends AbstractActivityProducer
     checksum.update(normalizedEditorContent);
   }
 
-  private void broadcastChecksum(IFile file) {
+  /**
+   * Broadcasts the given checksum unless it was already broadcast to all users.
+   *
+   * @return <code>true</code> if the checksum is up-to-date, <code>false</code> if the check has to
+   *     be repeated
+   */
+  private boolean broadcastChecksum(DocumentChecksum checksum, long now) {
+
+    /*
+     * The checksum may have been removed since the hashes were calculated
+     * because its editors were closed, or be outdated because an edit could
+     * not be applied to it.
+     */
+    if (documentChecksums.get(checksum.getFile()) != checksum || checksum.isDirty()) return false;
 
-    DocumentChecksum checksum = documentChecksums.get(file);
-    if (checksum == null) return;
+    if (!scheduler.needsBroadcast(
+        checksum.getFile(),
+        checksum.getHash(),
+        checksum.getLength(),
+        session.getRemoteUsers(),
+        now)) return true;
+
+    final int level = checksum.getRegionLevel(DocumentChecksum.MAX_REGIONS);
+    final long[] regionHashes = checksum.getRegionHashes(level);
 
     ChecksumActivity checksumActivity =
         new ChecksumActivity(
@@ -298,8 +431,12 @@ public class ConsistencyWatchdogServer extends AbstractActivityProducer
             checksum.getFile(),
             checksum.getHash(),
             checksum.getLength(),
-            null);
+            null,
+            DocumentChecksum.getRegionLines(level),
+            regionHashes.length > 1 ? regionHashes : null);
 
     fireActivity(checksumActivity);
+
+    return true;
   }
 }
@@ -1,10 +1,28 @@
 package saros.concurrent.watchdog;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import saros.activities.TextEditActivity;
+import saros.editor.text.LineRange;
+import saros.editor.text.TextPosition;
 import saros.filesystem.IFile;
+import saros.util.LineSeparatorNormalizationUtil;
 
 /**
  * Represents a checksum of a document in the workspace. It consists of the document's file, the
- * content length, and the content's string hash code.
+ * content length, and a hash of the content.
+ *
+ * <p>The hash is the root of a hash tree over blocks of {@link #BLOCK_LINES} lines of the
+ * normalized content. The checksum keeps a copy of the lines, so {@link #applyEdit text edits} only
+ * invalidate the hashes of the blocks they touch and the hashes of these blocks' ancestors. The
+ * hashes of the tree's inner nodes identify the regions of the document in which two checksums
+ * differ, see {@link #getDivergentRegions(int, long[])}.
+ *
+ * <p>This class is thread safe, so edits can be applied on the UI thread while the hashes are
+ * calculated on another thread. The lines of the changed blocks are copied while holding the lock,
+ * but hashed after releasing it, so the calculation of the hashes does not block the edits.
  */
 public class DocumentChecksum {
 
@@ -14,12 +32,44 @@ public class DocumentChecksum {
    */
   public static final int NOT_AVAILABLE = -1;
 
+  /** The number of lines hashed as one leaf of the hash tree */
+  public static final int BLOCK_LINES = 64;
+
+  /** The maximum number of region hashes sent with a checksum */
+  static final int MAX_REGIONS = 8;
+
+  /**
+   * The number of attempts to hash the changed blocks without holding the lock, the last attempt
+   * holds the lock so the content cannot change again
+   */
+  private static final int MAX_CALCULATION_ATTEMPTS = 3;
+
+  private static final String LINE_SEPARATOR =
+      LineSeparatorNormalizationUtil.NORMALIZED_LINE_SEPARATOR;
+
+  private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long PRIME = 0x100000001b3L;
+
   private final IFile file;
 
-  private int length;
-  private int hash;
+  /** The lines of the content, <code>null</code> if the document is not available */
+  private List<String> lines;
+
+  private int length = NOT_AVAILABLE;
   private boolean dirty;
 
+  /** Incremented whenever the content changes */
+  private long version;
+
+  /**
+   * The hash tree, the leaves are at level 0, <code>null</code> if it has to be rebuilt. A
+   * published tree is never modified, so it can be read without holding the lock.
+   */
+  private long[][] levels;
+
+  /** Blocks whose hashes are outdated */
+  private final BitSet staleBlocks = new BitSet();
+
   /**
    * Creates a new DocumentChecksum.
    *
@@ -47,73 +97,506 @@ public class DocumentChecksum {
    *
    * @return document content length, or {@link #NOT_AVAILABLE} if the document doesn't exist
    */
-  public int getLength() {
+  public synchronized int getLength() {
     return length;
   }
 
   /**
-   * Returns the hash code of the associated document's content.
+   * Returns the hash of the associated document's content. Calculates the hashes of all blocks that
+   * changed since the last call.
    *
    * <p>If the document's content is not available ({@link #update} was not called yet or called
    * with <code>null</code> the last time), {@link #NOT_AVAILABLE} is returned.
    *
-   * @return document content hash, or {@link #NOT_AVAILABLE} if not available, or {@link
-   *     #NOT_AVAILABLE} if not available
+   * @return document content hash, or {@link #NOT_AVAILABLE} if not available
    */
-  public int getHash() {
-    return hash;
+  public long getHash() {
+    final long[][] tree = calculate();
+
+    return tree == null ? NOT_AVAILABLE : tree[tree.length - 1][0];
+  }
+
+  /**
+   * Returns the version of the content, which changes whenever the content changes. It can be used
+   * to detect whether a hash returned by {@link #getHash()} is still up-to-date.
+   *
+   * @return the version of the content
+   */
+  public synchronized long getVersion() {
+    return version;
   }
 
   /**
-   * Returns whether the checksum (more specifically, what was calculated for {@link #getHash()} and
-   * {@link #getLength()} in the last call to {@link #update(String)}) is out-of-sync with the
-   * associated document's current content.
+   * Returns whether the checksum (more specifically, its copy of the content) is out-of-sync with
+   * the associated document's current content.
    *
-   * <p>Note that this determines whether {@link #update(String)} actually does any checksum
-   * calculations, so make sure to call {@link #markDirty()} to notify the checksum whenever the
-   * document changes.
+   * <p>Note that this determines whether {@link #update(String)} actually does read the content, so
+   * make sure to call {@link #markDirty()} to notify the checksum whenever the document changes in
+   * a way that is not {@link #applyEdit(TextEditActivity) applied} to the checksum.
    *
    * <p>A DocumentChecksum is automatically marked as dirty when it created.
    *
    * @return <code>true</code> if the checksum is out-of-sync, <code>false</code> if it is
    *     up-to-date
    */
-  public boolean isDirty() {
+  public synchronized boolean isDirty() {
     return dirty;
   }
 
-  /**
-   * Tells the checksum that its content length and hash code are out-of-date because the associated
-   * document changed.
-   */
-  public void markDirty() {
+  /** Tells the checksum that its content is out-of-date because the associated document changed. */
+  public synchronized void markDirty() {
     dirty = true;
   }
 
   /**
-   * Recalculates the checksum's content hash code and updates the returned content length, provided
-   * the checksum is marked as {@link #isDirty() dirty}. If not, it does nothing.
+   * Replaces the checksum's copy of the content, provided the checksum is marked as {@link
+   * #isDirty() dirty}. If not, it does nothing.
    *
    * <p>This method resets the checksum to be non-dirty.
    *
-   * @param documentContent the document's current content, or <code>null</code> if the document is
-   *     does not exist locally
+   * @param documentContent the document's current normalized content, or <code>null</code> if the
+   *     document is does not exist locally
    */
-  public void update(String documentContent) {
+  public synchronized void update(String documentContent) {
     if (!dirty) return;
 
     if (documentContent == null) {
-      length = hash = NOT_AVAILABLE;
+      lines = null;
+      length = NOT_AVAILABLE;
     } else {
+      lines = new ArrayList<>(Arrays.asList(documentContent.split(LINE_SEPARATOR, -1)));
       length = documentContent.length();
-      hash = documentContent.hashCode();
     }
 
+    levels = null;
+    staleBlocks.clear();
+    version++;
     dirty = false;
   }
 
+  /**
+   * Applies the given text edit of the associated document to the checksum's copy of the content.
+   * If the edit does not match the copy, the checksum is marked as {@link #isDirty() dirty}.
+   *
+   * @param edit a text edit of the associated document
+   * @return <code>true</code> if the edit was applied, <code>false</code> if the checksum is dirty
+   */
+  public synchronized boolean applyEdit(TextEditActivity edit) {
+    if (dirty || lines == null) return false;
+
+    final TextPosition start = edit.getStartPosition();
+    final String replacedText = edit.getReplacedText();
+    final String newText = edit.getNewText();
+
+    final int startLine = start.getLineNumber();
+    final int startOffset = start.getInLineOffset();
+
+    final int replacedLineCount = countLines(replacedText);
+    final int endLine = startLine + replacedLineCount - 1;
+
+    if (endLine >= lines.size() || startOffset > lines.get(startLine).length()) {
+      markDirty();
+      return false;
+    }
+
+    final String firstLine = lines.get(startLine);
+    final String lastLine = lines.get(endLine);
+
+    final int endOffset =
+        replacedLineCount == 1
+            ? startOffset + replacedText.length()
+            : replacedText.length() - replacedText.lastIndexOf(LINE_SEPARATOR) - 1;
+
+    if (endOffset > lastLine.length()
+        || !replacedText.equals(getText(startLine, startOffset, endLine, endOffset))) {
+      markDirty();
+      return false;
+    }
+
+    final List<String> newLines =
+        Arrays.asList(
+            (firstLine.substring(0, startOffset) + newText + lastLine.substring(endOffset))
+                .split(LINE_SEPARATOR, -1));
+
+    final List<String> replacedLines = lines.subList(startLine, endLine + 1);
+    replacedLines.clear();
+    replacedLines.addAll(newLines);
+
+    final int firstStaleBlock = startLine / BLOCK_LINES;
+
+    if (newLines.size() == replacedLineCount) {
+      staleBlocks.set(firstStaleBlock, (startLine + newLines.size() - 1) / BLOCK_LINES + 1);
+    } else {
+      // the following lines moved to other blocks
+      staleBlocks.set(firstStaleBlock, Math.max(getBlockCount(), firstStaleBlock + 1));
+    }
+
+    length += newText.length() - replacedText.length();
+    version++;
+
+    return true;
+  }
+
+  /**
+   * Returns the level of the hash tree whose nodes divide the document into at most the given
+   * number of regions.
+   *
+   * @param maxRegions the maximum number of regions
+   * @return the level, 0 is the level of the blocks
+   */
+  public synchronized int getRegionLevel(int maxRegions) {
+    int level = 0;
+
+    for (int nodes = getBlockCount(); nodes > maxRegions; nodes = (nodes + 1) / 2) level++;
+
+    return level;
+  }
+
+  /**
+   * Returns the number of lines covered by every node of the given level of the hash tree.
+   *
+   * @param level the level of the hash tree
+   * @return the number of lines of a region
+   */
+  public static int getRegionLines(int level) {
+    return BLOCK_LINES << level;
+  }
+
+  /**
+   * Returns the hashes of the nodes of the given level of the hash tree, i.e. of the regions of
+   * {@link #getRegionLines(int)} lines of the document.
+   *
+   * @param level the level of the hash tree
+   * @return the hashes of the regions, an empty array if the document is not available
+   */
+  public long[] getRegionHashes(int level) {
+    final long[][] tree = calculate();
+
+    if (tree == null) return new long[0];
+
+    return tree[Math.min(level, tree.length - 1)].clone();
+  }
+
+  /**
+   * Compares the given region hashes of another version of the document with the region hashes of
+   * this checksum.
+   *
+   * @param regionLines the number of lines of every region, see {@link #getRegionLines(int)}
+   * @param regionHashes the hashes of the regions of the other version
+   * @return the ranges of lines in which the versions differ, an empty list if they do not differ
+   *     or the given regions are not comparable
+   */
+  public List<LineRange> getDivergentRegions(int regionLines, long[] regionHashes) {
+    final List<LineRange> regions = new ArrayList<>();
+
+    final int level = Integer.numberOfTrailingZeros(regionLines / BLOCK_LINES);
+
+    if (regionLines <= 0 || getRegionLines(level) != regionLines) return regions;
+
+    // a lone node has the hash of its child, so above the root every level consists of the root
+    final long[] ownHashes = getRegionHashes(level);
+
+    // the content of an available document consists of at least one block
+    if (ownHashes.length == 0) return regions;
+
+    final int regionCount = Math.max(ownHashes.length, regionHashes.length);
+
+    LineRange current = null;
+
+    for (int i = 0; i < regionCount; i++) {
+      final boolean differs =
+          i >= ownHashes.length || i >= regionHashes.length || ownHashes[i] != regionHashes[i];
+
+      if (!differs) {
+        current = null;
+        continue;
+      }
+
+      if (current == null) {
+        current = new LineRange(i * regionLines, regionLines);
+        regions.add(current);
+      } else {
+        regions.set(
+            regions.size() - 1,
+            current =
+                new LineRange(current.getStartLine(), current.getNumberOfLines() + regionLines));
+      }
+    }
+
+    return regions;
+  }
+
+  /**
+   * Returns the regions of the content that have to be replaced in another version of the document
+   * to make it equal to this version, i.e. the regions of {@link #getDivergentRegions(int, long[])
+   * divergent blocks}. The text of a region is returned by {@link #getText(int, int)}.
+   *
+   * @param blockHashes the block hashes of the other version, see {@link #getRegionHashes(int)}
+   * @return the regions in ascending order
+   */
+  public List<LineRange> getReplacementRegions(long[] blockHashes) {
+    final List<LineRange> regions = getDivergentRegions(BLOCK_LINES, blockHashes);
+
+    final int lineCount = getLineCount();
+
+    if (lineCount == NOT_AVAILABLE) return regions;
+
+    for (int i = 0; i < regions.size(); i++) {
+      final LineRange region = regions.get(i);
+
+      /*
+       * The block hashes do not cover the line separator before the first
+       * line after the end of the content, so a region at the end of the
+       * content has to start with the line before it.
+       */
+      if (region.getStartLine() > 0
+          && region.getStartLine() + region.getNumberOfLines() >= lineCount) {
+        regions.set(i, new LineRange(region.getStartLine() - 1, region.getNumberOfLines() + 1));
+      }
+    }
+
+    return regions;
+  }
+
+  /**
+   * Returns the number of lines of the checksum's copy of the content.
+   *
+   * @return the number of lines, {@link #NOT_AVAILABLE} if the document is not available
+   */
+  public synchronized int getLineCount() {
+    return lines == null ? NOT_AVAILABLE : lines.size();
+  }
+
+  /**
+   * Returns the text of the given lines of the checksum's copy of the content. The text starts at
+   * the beginning of the start line and ends at the beginning of the end line, so it contains the
+   * line separators of the lines. Lines after the last line are treated as empty lines after the
+   * end of the content.
+   *
+   * @param startLine the first line
+   * @param endLine the line after the last line
+   * @return the text of the lines, an empty string if the document is not available
+   */
+  public synchronized String getText(int startLine, int endLine) {
+    if (lines == null || startLine >= lines.size() || endLine <= startLine) return "";
+
+    final StringBuilder text = new StringBuilder();
+
+    final int end = Math.min(endLine, lines.size());
+
+    for (int i = startLine; i < end; i++) {
+      text.append(lines.get(i));
+
+      if (i < lines.size() - 1) text.append(LINE_SEPARATOR);
+    }
+
+    return text.toString();
+  }
+
+  /**
+   * Returns the position at which the text returned by {@link #getText(int, int)} for the given
+   * start line starts.
+   *
+   * @param line the start line
+   * @return the beginning of the line or the end of the content if the line does not exist
+   */
+  public synchronized TextPosition getPosition(int line) {
+    if (lines == null || lines.isEmpty()) return new TextPosition(0, 0);
+
+    if (line < lines.size()) return new TextPosition(line, 0);
+
+    final int lastLine = lines.size() - 1;
+
+    return new TextPosition(lastLine, lines.get(lastLine).length());
+  }
+
   @Override
   public String toString() {
-    return file + " [" + this.length + "," + this.hash + "]";
+    return file + " [" + getLength() + "," + getHash() + "]";
+  }
+
+  /**
+   * Calculates the hashes of all stale blocks and of their ancestors. The lines of the stale blocks
+   * are copied while holding the lock and hashed after releasing it. The resulting hash tree is
+   * only published if the content did not change in the meantime, otherwise the calculation is
+   * repeated.
+   *
+   * <p>Must not be called while holding the lock.
+   *
+   * @return the up-to-date hash tree, <code>null</code> if the document is not available
+   */
+  private long[][] calculate() {
+    for (int attempt = 1; ; attempt++) {
+      final TreeUpdate update;
+
+      synchronized (this) {
+        if (lines == null) return null;
+
+        if (levels != null && levels[0].length == getBlockCount() && staleBlocks.isEmpty())
+          return levels;
+
+        update = new TreeUpdate();
+
+        if (attempt == MAX_CALCULATION_ATTEMPTS) return publish(update.build());
+      }
+
+      final long[][] tree = update.build();
+
+      synchronized (this) {
+        if (version == update.version) return publish(tree);
+      }
+    }
+  }
+
+  private long[][] publish(final long[][] tree) {
+    levels = tree;
+    staleBlocks.clear();
+
+    return tree;
+  }
+
+  /**
+   * A snapshot of the blocks whose hashes have to be calculated to bring the hash tree up-to-date.
+   * Must be created while holding the lock, but can be {@linkplain #build() built} without it.
+   */
+  private final class TreeUpdate {
+
+    private final long version = DocumentChecksum.this.version;
+
+    private final long[][] oldLevels = levels;
+
+    private final int blockCount = getBlockCount();
+
+    /** The stale blocks and copies of their lines */
+    private final int[] blocks;
+
+    private final String[][] blockLines;
+
+    private TreeUpdate() {
+      final BitSet hashedBlocks = new BitSet(blockCount);
+
+      for (int block = 0; block < blockCount; block++) {
+        if (oldLevels == null || block >= oldLevels[0].length || staleBlocks.get(block))
+          hashedBlocks.set(block);
+      }
+
+      blocks = hashedBlocks.stream().toArray();
+      blockLines = new String[blocks.length][];
+
+      for (int i = 0; i < blocks.length; i++) {
+        final int start = blocks[i] * BLOCK_LINES;
+        final int end = Math.min(lines.size(), start + BLOCK_LINES);
+
+        blockLines[i] = lines.subList(start, end).toArray(new String[end - start]);
+      }
+    }
+
+    /** Creates the updated hash tree, the old tree is not modified. */
+    private long[][] build() {
+      final long[] leaves = new long[blockCount];
+
+      if (oldLevels != null)
+        System.arraycopy(oldLevels[0], 0, leaves, 0, Math.min(blockCount, oldLevels[0].length));
+
+      for (int i = 0; i < blocks.length; i++) leaves[blocks[i]] = hashBlock(blockLines[i]);
+
+      if (oldLevels == null || oldLevels[0].length != blockCount) return rebuild(leaves);
+
+      final long[][] tree = new long[oldLevels.length][];
+      tree[0] = leaves;
+
+      BitSet staleNodes = new BitSet(blockCount);
+
+      for (int block : blocks) staleNodes.set(block);
+
+      for (int level = 1; level < tree.length; level++) {
+        final BitSet parents = new BitSet();
+
+        for (int node = staleNodes.nextSetBit(0); node >= 0; node = staleNodes.nextSetBit(node + 1))
+          parents.set(node / 2);
+
+        tree[level] = oldLevels[level].clone();
+
+        for (int node = parents.nextSetBit(0); node >= 0; node = parents.nextSetBit(node + 1))
+          tree[level][node] = hashNode(tree[level - 1], node);
+
+        staleNodes = parents;
+      }
+
+      return tree;
+    }
+  }
+
+  /** Creates the hash tree for the given leaves. */
+  private static long[][] rebuild(final long[] leaves) {
+    final List<long[]> tree = new ArrayList<>();
+    tree.add(leaves);
+
+    for (long[] level = leaves; level.length > 1; ) {
+      final long[] parents = new long[(level.length + 1) / 2];
+
+      for (int node = 0; node < parents.length; node++) parents[node] = hashNode(level, node);
+
+      tree.add(parents);
+      level = parents;
+    }
+
+    return tree.toArray(new long[tree.size()][]);
+  }
+
+  private int getBlockCount() {
+    return lines == null ? 0 : (lines.size() + BLOCK_LINES - 1) / BLOCK_LINES;
+  }
+
+  private static long hashBlock(final String[] blockLines) {
+    long hash = OFFSET_BASIS;
+
+    for (final String line : blockLines) {
+      // the hash codes of unchanged lines are cached by the strings
+      hash = (hash ^ line.hashCode()) * PRIME;
+      hash = (hash ^ line.length()) * PRIME;
+    }
+
+    return mix(hash);
+  }
+
+  /** Returns the hash of the parent of the given node and its sibling. */
+  private static long hashNode(final long[] level, final int parent) {
+    final int left = parent * 2;
+
+    if (left + 1 >= level.length) return level[left];
+
+    return mix(level[left] * PRIME + level[left + 1]);
+  }
+
+  /** The finalizer of the MurmurHash3 64 bit variant */
+  private static long mix(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+  private String getText(
+      final int startLine, final int startOffset, final int endLine, final int endOffset) {
+
+    if (startLine == endLine) return lines.get(startLine).substring(startOffset, endOffset);
+
+    final StringBuilder text = new StringBuilder(lines.get(startLine).substring(startOffset));
+
+    for (int i = startLine + 1; i < endLine; i++) text.append(LINE_SEPARATOR).append(lines.get(i));
+
+    return text.append(LINE_SEPARATOR).append(lines.get(endLine), 0, endOffset).toString();
+  }
+
+  private static int countLines(final String text) {
+    int count = 1;
+
+    for (int i = text.indexOf(LINE_SEPARATOR); i >= 0; i = text.indexOf(LINE_SEPARATOR, i + 1))
+      count++;
+
+    return count;
   }
 }
@@ -21,6 +21,7 @@ import saros.communication.extensions.PingExtension;
 import saros.communication.extensions.PongExtension;
 import saros.communication.extensions.ResourceNegotiationMissingFilesExtension;
 import saros.communication.extensions.ResourceNegotiationOfferingExtension;
+import saros.communication.extensions.ResumeResourceTransferExtension;
 import saros.communication.extensions.StartActivityQueuingRequest;
 import saros.communication.extensions.StartActivityQueuingResponse;
 import saros.communication.extensions.UserFinishedResourceNegotiationExtension;
@@ -128,6 +129,7 @@ public class ContainerContext implements IContainerContext {
       Class.forName(CancelResourceNegotiationExtension.class.getName());
       Class.forName(ResourceNegotiationOfferingExtension.class.getName());
       Class.forName(ResourceNegotiationMissingFilesExtension.class.getName());
+      Class.forName(ResumeResourceTransferExtension.class.getName());
 
       // General session extensions
       Class.forName(ActivitiesExtension.class.getName());
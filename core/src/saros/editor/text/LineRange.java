@@ -38,4 +38,9 @@ public class LineRange {
     result = prime * result + numberOfLines;
     return result;
   }
+
+  @Override
+  public String toString() {
+    return "LineRange(start: " + startLine + ", lines: " + numberOfLines + ")";
+  }
 }
@@ -6,6 +6,8 @@ import saros.filesystem.IFile;
  * An interface that can be used to access checksums. So they do not need to be recalculated as long
  * as they are not invalid.
  *
+ * <p>Implementations must be thread safe as checksums are looked up and added concurrently.
+ *
  * @author Stefan Rossbach
  */
 public interface IChecksumCache {
@@ -38,16 +38,18 @@ import org.jivesoftware.smack.packet.IQ;
 import org.jivesoftware.smack.packet.Packet;
 import org.jivesoftware.smack.packet.PacketExtension;
 import org.jivesoftware.smack.provider.IQProvider;
-import org.jivesoftware.smack.provider.PacketExtensionProvider;
 import org.jivesoftware.smack.provider.ProviderManager;
 import org.xmlpull.v1.XmlPullParser;
+import saros.net.IBinaryPacketExtension;
+import saros.net.IBinaryPacketExtensionProvider;
 
 /**
  * Flexible extension provider using XStream to serialize arbitrary data objects.
  *
- * <p>Supports PacketExtension and IQPackets
+ * <p>Supports PacketExtension and IQPackets. Packet extensions can additionally be marshalled into
+ * a binary form if a {@link BinaryCodec} is registered for the provider.
  */
-public class XStreamExtensionProvider<T> implements PacketExtensionProvider, IQProvider {
+public class XStreamExtensionProvider<T> implements IBinaryPacketExtensionProvider, IQProvider {
 
   private static final Logger log = Logger.getLogger(XStreamExtensionProvider.class);
 
@@ -59,6 +61,8 @@ public class XStreamExtensionProvider<T> implements PacketExtensionProvider, IQP
 
   private final XStream xstream;
 
+  private volatile BinaryCodec<T> binaryCodec;
+
   private Map<Class<? extends Converter>, ReplaceableConverter> replaceables;
   private Map<Class<? extends SingleValueConverter>, ReplaceableSingleValueConverter>
       replaceableSingles;
@@ -194,6 +198,56 @@ public class XStreamExtensionProvider<T> implements PacketExtensionProvider, IQP
     }
   }
 
+  /**
+   * Codec for marshalling payloads into a compact binary form and vice versa. Implementations must
+   * be thread safe.
+   */
+  public interface BinaryCodec<T> {
+
+    /**
+     * Encodes the given payload.
+     *
+     * @param payload the payload to encode
+     * @return the encoded payload or <code>null</code> if the payload cannot be encoded by this
+     *     codec
+     */
+    public byte[] encode(T payload);
+
+    /**
+     * Decodes a payload that was encoded with {@link #encode}.
+     *
+     * @param data the encoded payload
+     * @return the decoded payload
+     * @throws IOException if the data is malformed or was encoded with an unsupported version
+     */
+    public T decode(byte[] data) throws IOException;
+  }
+
+  /**
+   * Registers a codec that is used to marshal the payload of this provider into a binary form. This
+   * is useful if a codec cannot be used isolatedly, e.g. because it requires a running Saros
+   * session. An already registered codec will be replaced.
+   *
+   * @param codec the codec to register
+   */
+  public synchronized void registerBinaryCodec(BinaryCodec<T> codec) {
+    log.debug("Registering binary codec " + codec.getClass());
+    binaryCodec = codec;
+  }
+
+  /**
+   * Unregisters a previously registered codec. Nothing happens if the given codec is not the
+   * currently registered one.
+   *
+   * @param codec the codec to unregister
+   */
+  public synchronized void unregisterBinaryCodec(BinaryCodec<T> codec) {
+    if (binaryCodec != codec) return;
+
+    log.debug("Unregistering binary codec " + codec.getClass());
+    binaryCodec = null;
+  }
+
   public static class XStreamIQPacket<T> extends IQ {
 
     protected XStreamPacketExtension<T> child;
@@ -218,7 +272,7 @@ public class XStreamExtensionProvider<T> implements PacketExtensionProvider, IQP
     }
   }
 
-  public static class XStreamPacketExtension<T> implements PacketExtension {
+  public static class XStreamPacketExtension<T> implements IBinaryPacketExtension {
 
     /** Necessary for Smack */
     @XStreamAsAttribute protected String xmlns;
@@ -259,6 +313,13 @@ public class XStreamExtensionProvider<T> implements PacketExtensionProvider, IQP
       provider.xstream.marshal(this, new CompactWriter(writer));
       return writer.toString();
     }
+
+    @Override
+    public byte[] toBinary() {
+      final BinaryCodec<T> codec = provider.binaryCodec;
+
+      return codec == null ? null : codec.encode(payload);
+    }
   }
 
   /**
@@ -338,6 +399,15 @@ public class XStreamExtensionProvider<T> implements PacketExtensionProvider, IQP
     return null;
   }
 
+  @Override
+  public PacketExtension parseBinaryExtension(byte[] data) throws IOException {
+    final BinaryCodec<T> codec = binaryCodec;
+
+    if (codec == null) throw new IOException("no binary codec is registered for " + elementName);
+
+    return create(codec.decode(data));
+  }
+
   @SuppressWarnings("unchecked")
   public T parseString(String string) throws IOException {
     try {
@@ -30,7 +30,7 @@ public class CancelableInputStream extends InputStream {
   public int read(byte[] b, int off, int len) throws IOException {
     if (monitor.isCanceled()) throw new IOException("Processing was canceled!");
 
-    return super.read(b, off, len);
+    return in.read(b, off, len);
   }
 
   @Override
@@ -1,21 +1,28 @@
 package saros.negotiation;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import org.apache.log4j.Logger;
 import org.jivesoftware.smack.packet.Packet;
 import saros.communication.extensions.ResourceNegotiationMissingFilesExtension;
+import saros.communication.extensions.ResumeResourceTransferExtension;
 import saros.communication.extensions.StartActivityQueuingRequest;
 import saros.communication.extensions.StartActivityQueuingResponse;
 import saros.exceptions.LocalCancellationException;
+import saros.exceptions.OperationCanceledException;
 import saros.exceptions.SarosCancellationException;
 import saros.filesystem.FileSystem;
+import saros.filesystem.IFile;
 import saros.filesystem.IFolder;
 import saros.filesystem.IReferencePoint;
 import saros.filesystem.IResource;
@@ -24,6 +31,7 @@ import saros.filesystem.checksum.IChecksumCache;
 import saros.monitoring.IProgressMonitor;
 import saros.monitoring.SubProgressMonitor;
 import saros.negotiation.NegotiationTools.CancelOption;
+import saros.negotiation.delta.FileSignature;
 import saros.net.IReceiver;
 import saros.net.ITransmitter;
 import saros.net.PacketCollector;
@@ -49,8 +57,26 @@ public abstract class AbstractIncomingResourceNegotiation extends ResourceNegoti
 
   private static int MONITOR_WORK_SCALE = 1000;
 
+  /** Whether altered files are requested as delta to their local version. */
+  private static final boolean DELTA_TRANSFER =
+      Boolean.valueOf(System.getProperty("saros.negotiation.DELTA_TRANSFER", "true"));
+
+  /** Altered files smaller than this size in bytes are always requested completely. */
+  private static final long DELTA_MIN_FILE_SIZE =
+      Long.getLong("saros.negotiation.DELTA_MIN_FILE_SIZE", 32 * 1024);
+
+  /** Maximum size in bytes of all file signatures sent along with the missing files. */
+  private static final long DELTA_MAX_SIGNATURES_SIZE =
+      Long.getLong("saros.negotiation.DELTA_MAX_SIGNATURES_SIZE", 2 * 1024 * 1024);
+
   private final Map<String, ResourceNegotiationData> resourceNegotiationData;
 
+  /**
+   * Unaltered local files with the same content as missing files, by the qualified paths of the
+   * missing files. The remote side may send these missing files as copy of the local files.
+   */
+  protected final Map<String, IFile> localSources = new HashMap<String, IFile>();
+
   protected final FileReplacementInProgressObservable fileReplacementInProgressObservable;
 
   protected boolean running;
@@ -212,7 +238,62 @@ public abstract class AbstractIncomingResourceNegotiation extends ResourceNegoti
       throw new LocalCancellationException(
           "not connected to a XMPP server", CancelOption.DO_NOT_NOTIFY_PEER);
 
-    expectedTransfer = fileTransferManager.addExpectedTransferRequest(TRANSFER_ID_PREFIX + getID());
+    expectedTransfer = fileTransferManager.addExpectedTransferRequest(getTransferID(0));
+  }
+
+  /**
+   * Requests the remote side to resume the interrupted file transfer and waits until it does.
+   *
+   * @param attempt the number of the resumed transfer attempt, starting with 1
+   * @param checkpoint the position to resume the transfer at, e.g. the number of completely
+   *     received files or bytes
+   * @param partiallyReceived whether the file at the checkpoint was partially written
+   * @param cause the exception that interrupted the transfer
+   * @return the request of the resumed transfer
+   * @throws IOException the given cause if the transfer cannot be resumed
+   */
+  protected XMPPFileTransferRequest resumeTransfer(
+      final int attempt,
+      final long checkpoint,
+      final boolean partiallyReceived,
+      final IOException cause)
+      throws IOException, SarosCancellationException {
+
+    checkCancellation(CancelOption.NOTIFY_PEER);
+
+    if (attempt > MAX_TRANSFER_RESUMPTIONS) throw cause;
+
+    log.warn(this + " : file transfer interrupted, requesting to resume at " + checkpoint, cause);
+
+    expectedTransfer = fileTransferManager.addExpectedTransferRequest(getTransferID(attempt));
+
+    transmitter.send(
+        ISarosSession.SESSION_CONNECTION_ID,
+        getPeer(),
+        ResumeResourceTransferExtension.PROVIDER.create(
+            new ResumeResourceTransferExtension(
+                getSessionID(), getID(), attempt, checkpoint, partiallyReceived)));
+
+    final long deadline = System.currentTimeMillis() + TRANSFER_RESUMPTION_TIMEOUT;
+
+    while (true) {
+      checkCancellation(CancelOption.NOTIFY_PEER);
+
+      try {
+        return expectedTransfer.get(1000, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        if (System.currentTimeMillis() < deadline) continue;
+
+        log.error(this + " : " + getPeer() + " did not resume the file transfer");
+        throw cause;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new LocalCancellationException(
+            "interrupted while waiting for the resumed file transfer", CancelOption.NOTIFY_PEER);
+      } catch (ExecutionException e) {
+        throw new IOException(e.getMessage(), e.getCause());
+      }
+    }
   }
 
   /**
@@ -350,12 +431,18 @@ public abstract class AbstractIncomingResourceNegotiation extends ResourceNegoti
       final String id = entry.getKey();
       final IReferencePoint referencePoint = entry.getValue();
 
-      final FileList localReferencePointFileList =
-          FileListFactory.createFileList(
-              referencePoint,
-              checksumCache,
-              new SubProgressMonitor(
-                  monitor, 1 * MONITOR_WORK_SCALE, SubProgressMonitor.SUPPRESS_BEGINTASK));
+      final FileList localReferencePointFileList;
+
+      try {
+        localReferencePointFileList =
+            FileListFactory.createFileList(
+                referencePoint,
+                checksumCache,
+                new SubProgressMonitor(
+                    monitor, 1 * MONITOR_WORK_SCALE, SubProgressMonitor.SUPPRESS_BEGINTASK));
+      } catch (OperationCanceledException e) {
+        throw new LocalCancellationException(null, CancelOption.NOTIFY_PEER);
+      }
 
       final ResourceNegotiationData data = getResourceNegotiationData(id);
 
@@ -390,6 +477,15 @@ public abstract class AbstractIncomingResourceNegotiation extends ResourceNegoti
 
     final List<FileList> result = new ArrayList<FileList>();
 
+    long signaturesSize = 0;
+
+    final Map<Long, IFile> unalteredFiles =
+        ContentDeduplicator.ENABLED
+            ? getUnalteredFilesByChecksum(localReferencePointMapping, diffs)
+            : Collections.<Long, IFile>emptyMap();
+
+    final Map<IFile, String> contentHashes = new HashMap<IFile, String>();
+
     for (final Entry<String, IReferencePoint> entry : localReferencePointMapping.entrySet()) {
 
       final String id = entry.getKey();
@@ -445,12 +541,137 @@ public abstract class AbstractIncomingResourceNegotiation extends ResourceNegoti
 
       fileList.setReferencePointID(id);
 
+      if (!unalteredFiles.isEmpty())
+        addContentHashes(id, missingFiles, fileList, unalteredFiles, contentHashes);
+
+      if (DELTA_TRANSFER)
+        signaturesSize +=
+            addFileSignatures(
+                referencePoint,
+                diff.getAlteredFiles(),
+                fileList,
+                DELTA_MAX_SIGNATURES_SIZE - signaturesSize);
+
       result.add(fileList);
     }
 
     return result;
   }
 
+  /**
+   * Returns the local files that are not altered by the negotiation by their checksums. These files
+   * can be used as source of missing files with the same content.
+   */
+  private Map<Long, IFile> getUnalteredFilesByChecksum(
+      final Map<String, IReferencePoint> localReferencePointMapping,
+      final Map<String, FileListDiff> diffs) {
+
+    final Map<Long, IFile> result = new HashMap<Long, IFile>();
+
+    for (final Entry<String, IReferencePoint> entry : localReferencePointMapping.entrySet()) {
+      final String id = entry.getKey();
+      final FileList remoteFileList = getResourceNegotiationData(id).getFileList();
+
+      for (final String path : diffs.get(id).getUnalteredFiles()) {
+        final FileList.MetaData metaData = remoteFileList.getMetaData(path);
+
+        if (metaData != null) result.putIfAbsent(metaData.checksum, entry.getValue().getFile(path));
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Adds the content hashes of unaltered local files to the given file list for missing files whose
+   * checksum matches the local file, so the remote side does not have to send these files if their
+   * content really matches. The matching local files are remembered as {@link #localSources}.
+   *
+   * @param contentHashes the already calculated content hashes of local files
+   */
+  private void addContentHashes(
+      final String id,
+      final List<String> missingFiles,
+      final FileList fileList,
+      final Map<Long, IFile> unalteredFiles,
+      final Map<IFile, String> contentHashes) {
+
+    final FileList remoteFileList = getResourceNegotiationData(id).getFileList();
+
+    int count = 0;
+
+    for (final String path : missingFiles) {
+      final FileList.MetaData metaData = remoteFileList.getMetaData(path);
+
+      if (metaData == null) continue;
+
+      final IFile file = unalteredFiles.get(metaData.checksum);
+
+      if (file == null) continue;
+
+      try {
+        String hash = contentHashes.get(file);
+
+        if (hash == null) {
+          if (file.getSize() < ContentDeduplicator.MIN_FILE_SIZE) continue;
+
+          hash = ContentDeduplicator.hash(file);
+          contentHashes.put(file, hash);
+        }
+
+        fileList.addContentHash(path, hash);
+        localSources.put(id + PATH_DELIMITER + path, file);
+        count++;
+      } catch (IOException e) {
+        log.warn("failed to calculate content hash of file " + file, e);
+      }
+    }
+
+    if (count > 0)
+      log.debug(this + " : " + count + " missing file(s) may be copied from local files");
+  }
+
+  /**
+   * Adds the signatures of the local versions of the given altered files to the given file list, so
+   * the remote side only sends the blocks of these files that differ. Small files and files whose
+   * signature exceeds the remaining size are requested completely.
+   *
+   * @return the size of the added signatures
+   */
+  private long addFileSignatures(
+      final IReferencePoint referencePoint,
+      final List<String> alteredFiles,
+      final FileList fileList,
+      final long maxSize) {
+
+    long size = 0;
+
+    for (final String path : alteredFiles) {
+      if (fileList.getContentHash(path) != null) continue;
+
+      final IFile file = referencePoint.getFile(path);
+
+      try {
+        final long fileSize = file.getSize();
+        final int signatureSize = FileSignature.getSize(fileSize);
+
+        if (fileSize < DELTA_MIN_FILE_SIZE || size + signatureSize > maxSize) continue;
+
+        try (InputStream in = file.getContents()) {
+          fileList.addSignature(path, FileSignature.create(in, fileSize));
+        }
+
+        size += signatureSize;
+      } catch (IOException e) {
+        log.warn("failed to create signature of file " + file + ", requesting it completely", e);
+      }
+    }
+
+    if (size > 0) log.debug(this + " : requesting altered files as delta, signatures: " + size);
+
+    return size;
+  }
+
   /**
    * Waits for the activity queuing request from the remote side.
    *
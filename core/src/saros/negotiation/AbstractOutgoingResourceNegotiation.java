@@ -2,6 +2,7 @@ package saros.negotiation;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -10,10 +11,12 @@ import org.apache.log4j.Logger;
 import org.jivesoftware.smack.packet.Packet;
 import saros.communication.extensions.ResourceNegotiationMissingFilesExtension;
 import saros.communication.extensions.ResourceNegotiationOfferingExtension;
+import saros.communication.extensions.ResumeResourceTransferExtension;
 import saros.communication.extensions.StartActivityQueuingRequest;
 import saros.communication.extensions.StartActivityQueuingResponse;
 import saros.editor.IEditorManager;
 import saros.exceptions.LocalCancellationException;
+import saros.exceptions.OperationCanceledException;
 import saros.exceptions.SarosCancellationException;
 import saros.filesystem.IReferencePoint;
 import saros.filesystem.IWorkspace;
@@ -52,8 +55,13 @@ public abstract class AbstractOutgoingResourceNegotiation extends ResourceNegoti
 
   private PacketCollector startActivityQueuingResponseCollector;
 
+  private PacketCollector resumeTransferRequestCollector;
+
   private final AdditionalResourceDataFactory additionalResourceDataFactory;
 
+  /** The file lists sent to the remote side by their reference point IDs */
+  private final Map<String, FileList> sentFileLists = new HashMap<String, FileList>();
+
   protected AbstractOutgoingResourceNegotiation( //
       final JID peer, //
       final ResourceSharingData resourceSharingData, //
@@ -95,7 +103,13 @@ public abstract class AbstractOutgoingResourceNegotiation extends ResourceNegoti
     try {
       setup(monitor);
 
-      sendFileList(createResourceNegotiationDataList(resourceSharingData, monitor), monitor);
+      List<ResourceNegotiationData> resourceNegotiationData =
+          createResourceNegotiationDataList(resourceSharingData, monitor);
+
+      for (ResourceNegotiationData data : resourceNegotiationData)
+        sentFileLists.put(data.getReferencePointID(), data.getFileList());
+
+      sendFileList(resourceNegotiationData, monitor);
 
       monitor.subTask("");
 
@@ -300,11 +314,74 @@ public abstract class AbstractOutgoingResourceNegotiation extends ResourceNegoti
     startActivityQueuingResponseCollector =
         receiver.createCollector(
             StartActivityQueuingResponse.PROVIDER.getPacketFilter(getSessionID(), getID()));
+
+    resumeTransferRequestCollector =
+        receiver.createCollector(
+            ResumeResourceTransferExtension.PROVIDER.getPacketFilter(getSessionID(), getID()));
   }
 
   protected void deleteCollectors() {
     remoteFileListResponseCollector.cancel();
     startActivityQueuingResponseCollector.cancel();
+    resumeTransferRequestCollector.cancel();
+  }
+
+  /**
+   * Waits for the remote side to request the resumption of the interrupted file transfer.
+   *
+   * @param attempt the lowest expected number of the resumed transfer attempt, starting with 1
+   * @param cause the exception that interrupted the transfer
+   * @return the request of the remote side containing the number of the transfer attempt and the
+   *     position to resume the transfer at
+   * @throws IOException the given cause if the transfer cannot be resumed
+   */
+  protected ResumeResourceTransferExtension awaitTransferResumption(
+      final int attempt, final IOException cause) throws IOException, SarosCancellationException {
+
+    checkCancellation(CancelOption.NOTIFY_PEER);
+
+    if (attempt > MAX_TRANSFER_RESUMPTIONS) throw cause;
+
+    log.warn(this + " : file transfer interrupted, waiting for " + getPeer() + " to resume", cause);
+
+    while (true) {
+      final Packet packet =
+          collectPacket(resumeTransferRequestCollector, TRANSFER_RESUMPTION_TIMEOUT);
+
+      if (packet == null) {
+        log.error(this + " : " + getPeer() + " did not request to resume the file transfer");
+        throw cause;
+      }
+
+      final ResumeResourceTransferExtension request =
+          ResumeResourceTransferExtension.PROVIDER.getPayload(packet);
+
+      // requests of earlier attempts may arrive late
+      if (request.getAttempt() < attempt) continue;
+
+      if (request.getAttempt() > MAX_TRANSFER_RESUMPTIONS) throw cause;
+
+      log.debug(this + " : resuming file transfer at " + request.getCheckpoint());
+
+      return request;
+    }
+  }
+
+  /**
+   * Returns the checksum of a file as it was sent to the remote side.
+   *
+   * @param referencePointID the ID of the reference point of the file
+   * @param path the reference point relative path of the file
+   * @return the checksum or <code>null</code> if it is unknown
+   */
+  protected Long getSentChecksum(String referencePointID, String path) {
+    final FileList fileList = sentFileLists.get(referencePointID);
+
+    if (fileList == null) return null;
+
+    final FileList.MetaData metaData = fileList.getMetaData(path);
+
+    return metaData == null ? null : metaData.checksum;
   }
 
   protected List<ResourceNegotiationData> createResourceNegotiationDataList(
@@ -358,6 +435,8 @@ public abstract class AbstractOutgoingResourceNegotiation extends ResourceNegoti
 
         negData.add(data);
 
+      } catch (OperationCanceledException e) {
+        throw new LocalCancellationException(null, CancelOption.DO_NOT_NOTIFY_PEER);
       } catch (IOException e) {
         /*
          * avoid that the error is send to remote side (which is default
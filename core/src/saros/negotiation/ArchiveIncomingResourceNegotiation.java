@@ -1,12 +1,18 @@
 package saros.negotiation;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 import saros.exceptions.LocalCancellationException;
 import saros.exceptions.SarosCancellationException;
@@ -14,6 +20,7 @@ import saros.filesystem.IReferencePoint;
 import saros.filesystem.IResource;
 import saros.filesystem.IWorkspace;
 import saros.filesystem.checksum.IChecksumCache;
+import saros.monitoring.CancelableInputStream;
 import saros.monitoring.IProgressMonitor;
 import saros.monitoring.SubProgressMonitor;
 import saros.negotiation.NegotiationTools.CancelOption;
@@ -22,6 +29,7 @@ import saros.net.ITransmitter;
 import saros.net.xmpp.JID;
 import saros.net.xmpp.filetransfer.XMPPFileTransfer;
 import saros.net.xmpp.filetransfer.XMPPFileTransferManager;
+import saros.net.xmpp.filetransfer.XMPPFileTransferRequest;
 import saros.observables.FileReplacementInProgressObservable;
 import saros.session.ISarosSession;
 import saros.session.ISarosSessionManager;
@@ -35,6 +43,9 @@ public class ArchiveIncomingResourceNegotiation extends AbstractIncomingResource
 
   private static final Logger log = Logger.getLogger(ArchiveIncomingResourceNegotiation.class);
 
+  /** Qualified paths of the archive entries that contain a delta to the local file */
+  private Set<String> deltaEncodedEntries;
+
   public ArchiveIncomingResourceNegotiation(
       final JID peer, //
       final String negotiationID, //
@@ -69,26 +80,62 @@ public class ArchiveIncomingResourceNegotiation extends AbstractIncomingResource
       List<FileList> missingFiles)
       throws IOException, SarosCancellationException {
 
-    boolean filesMissing = false;
+    int filesMissing = 0;
 
-    for (FileList list : missingFiles) filesMissing |= list.getPaths().size() > 0;
+    for (FileList list : missingFiles) filesMissing += list.getPaths().size();
 
     // the host do not send an archive if we do not need any files
-    if (filesMissing) {
-      receiveAndUnpackArchive(referencePointMapping, monitor);
+    if (filesMissing > 0) {
+      deltaEncodedEntries = getDeltaEncodedEntries(missingFiles);
+      receiveAndUnpackArchive(referencePointMapping, filesMissing, monitor);
     }
   }
 
+  /** Returns the qualified paths of the missing files that are sent as delta. */
+  private static Set<String> getDeltaEncodedEntries(final List<FileList> missingFiles) {
+    final Set<String> entries = new HashSet<String>();
+
+    for (final FileList list : missingFiles) {
+      for (final String path : list.getPaths()) {
+        if (list.getSignature(path) != null)
+          entries.add(list.getReferencePointID() + PATH_DELIMITER + path);
+      }
+    }
+
+    return entries;
+  }
+
   /** Receives the archive with all missing files and unpacks it. */
   private void receiveAndUnpackArchive(
-      final Map<String, IReferencePoint> localReferencePointMapping, final IProgressMonitor monitor)
+      final Map<String, IReferencePoint> localReferencePointMapping,
+      final int fileCount,
+      final IProgressMonitor monitor)
       throws IOException, SarosCancellationException {
 
-    // waiting for the big archive to come in
-
     monitor.beginTask(null, 100);
 
-    File archiveFile = receiveArchive(new SubProgressMonitor(monitor, 50));
+    monitor.subTask("Host is compressing resource files. Waiting for the archive file...");
+    monitor.waitForCompletion(expectedTransfer);
+
+    final XMPPFileTransferRequest request;
+
+    try {
+      request = expectedTransfer.get();
+    } catch (InterruptedException | ExecutionException e) {
+      throw new IOException(e.getMessage(), e.getCause());
+    }
+
+    // a streamed archive has no size as it is sent while it is created
+    if (request.getFileSize() == 0) {
+      receiveAndUnpackArchiveStream(
+          localReferencePointMapping, request, fileCount, new SubProgressMonitor(monitor, 100));
+      monitor.done();
+      return;
+    }
+
+    // waiting for the big archive to come in
+
+    File archiveFile = receiveArchive(request, new SubProgressMonitor(monitor, 50));
 
     /*
      * FIXME at this point it makes no sense to report the cancellation to
@@ -118,7 +165,13 @@ public class ArchiveIncomingResourceNegotiation extends AbstractIncomingResource
       referencePointMapping.put(entry.getKey(), entry.getValue());
 
     final DecompressArchiveTask decompressTask =
-        new DecompressArchiveTask(archiveFile, referencePointMapping, PATH_DELIMITER, monitor);
+        new DecompressArchiveTask(
+            archiveFile,
+            referencePointMapping,
+            PATH_DELIMITER,
+            deltaEncodedEntries,
+            localSources,
+            monitor);
 
     long startTime = System.currentTimeMillis();
 
@@ -147,14 +200,73 @@ public class ArchiveIncomingResourceNegotiation extends AbstractIncomingResource
     // TODO: now add the checksums into the cache
   }
 
-  private File receiveArchive(IProgressMonitor monitor)
+  /** Unpacks the archive while it is received, so no temporary file is needed. */
+  private void receiveAndUnpackArchiveStream(
+      final Map<String, IReferencePoint> localReferencePointMapping,
+      final XMPPFileTransferRequest request,
+      final int fileCount,
+      final IProgressMonitor monitor)
       throws IOException, SarosCancellationException {
 
-    monitor.beginTask("Receiving archive file...", 100);
-    log.debug("waiting for incoming archive stream request");
+    log.debug(this + " : receiving and unpacking archive stream");
 
-    monitor.subTask("Host is compressing resource files. Waiting for the archive file...");
-    monitor.waitForCompletion(expectedTransfer);
+    long startTime = System.currentTimeMillis();
+
+    XMPPFileTransferRequest currentRequest = request;
+
+    int attempt = 0;
+    int unpackedEntryCount = 0;
+
+    /* an interrupted transfer is resumed after the last completely unpacked entry */
+    while (true) {
+      final DecompressArchiveTask decompressTask;
+
+      try (InputStream in = currentRequest.acceptStream()) {
+
+        decompressTask =
+            new DecompressArchiveTask(
+                in,
+                fileCount - unpackedEntryCount,
+                new HashMap<String, IReferencePoint>(localReferencePointMapping),
+                PATH_DELIMITER,
+                deltaEncodedEntries,
+                localSources,
+                monitor);
+
+        try {
+          workspace.run(
+              decompressTask, localReferencePointMapping.values().toArray(new IResource[0]));
+          break;
+        } catch (IOException e) {
+          unpackedEntryCount += decompressTask.getUnpackedEntryCount();
+
+          final String partiallyUnpackedEntry = decompressTask.getPartiallyUnpackedEntry();
+
+          // the local file is no longer the base of the delta, so it is sent completely
+          if (partiallyUnpackedEntry != null) deltaEncodedEntries.remove(partiallyUnpackedEntry);
+
+          currentRequest =
+              resumeTransfer(++attempt, unpackedEntryCount, partiallyUnpackedEntry != null, e);
+        }
+
+      } catch (saros.exceptions.OperationCanceledException e) {
+        LocalCancellationException canceled =
+            new LocalCancellationException(null, CancelOption.NOTIFY_PEER);
+        canceled.initCause(e);
+        throw canceled;
+      }
+    }
+
+    log.debug(
+        String.format(
+            "received and unpacked archive in %d s",
+            (System.currentTimeMillis() - startTime) / 1000));
+  }
+
+  private File receiveArchive(XMPPFileTransferRequest request, IProgressMonitor monitor)
+      throws IOException, SarosCancellationException {
+
+    monitor.beginTask("Receiving archive file...", 100);
     monitor.subTask("Receiving archive file...");
     log.debug(this + " : receiving archive");
 
@@ -163,12 +275,15 @@ public class ArchiveIncomingResourceNegotiation extends AbstractIncomingResource
     boolean transferFailed = true;
 
     try {
-      XMPPFileTransfer transfer = expectedTransfer.get().acceptFile(archiveFile);
+      try {
+        XMPPFileTransfer transfer = request.acceptFile(archiveFile);
+
+        monitorFileTransfer(transfer, monitor);
+      } catch (IOException e) {
+        resumeArchiveReception(archiveFile, e, monitor);
+      }
 
-      monitorFileTransfer(transfer, monitor);
       transferFailed = false;
-    } catch (InterruptedException | ExecutionException e) {
-      throw new IOException(e.getMessage(), e.getCause());
     } finally {
       if (transferFailed && !archiveFile.delete()) {
         log.warn("Could not clean up archive file " + archiveFile.getAbsolutePath());
@@ -186,4 +301,32 @@ public class ArchiveIncomingResourceNegotiation extends AbstractIncomingResource
 
     return archiveFile;
   }
+
+  /**
+   * Receives the rest of the archive after its transfer was interrupted. The remote side resumes
+   * the transfer at the number of bytes that were already stored in the given archive file.
+   */
+  private void resumeArchiveReception(
+      final File archiveFile, final IOException cause, final IProgressMonitor monitor)
+      throws IOException, SarosCancellationException {
+
+    IOException exception = cause;
+
+    for (int attempt = 1; ; attempt++) {
+      final long checkpoint = archiveFile.length();
+
+      final XMPPFileTransferRequest request = resumeTransfer(attempt, checkpoint, false, exception);
+
+      try (InputStream in = new CancelableInputStream(request.acceptStream(), monitor);
+          OutputStream out = new FileOutputStream(archiveFile, true)) {
+
+        IOUtils.copyLarge(in, out);
+        return;
+      } catch (IOException e) {
+        if (monitor.isCanceled()) throw new LocalCancellationException();
+
+        exception = e;
+      }
+    }
+  }
 }
@@ -1,12 +1,22 @@
 package saros.negotiation;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.log4j.Logger;
+import saros.communication.extensions.ResumeResourceTransferExtension;
 import saros.editor.IEditorManager;
 import saros.exceptions.LocalCancellationException;
 import saros.exceptions.OperationCanceledException;
@@ -18,6 +28,7 @@ import saros.filesystem.IWorkspace;
 import saros.filesystem.checksum.IChecksumCache;
 import saros.monitoring.IProgressMonitor;
 import saros.negotiation.NegotiationTools.CancelOption;
+import saros.negotiation.delta.FileSignature;
 import saros.net.IReceiver;
 import saros.net.ITransmitter;
 import saros.net.xmpp.JID;
@@ -31,12 +42,40 @@ import saros.synchronize.StartHandle;
 /**
  * Implementation of {@link AbstractOutgoingResourceNegotiation} utilizing a transferred zip archive
  * to exchange differences in the reference point files.
+ *
+ * <p>By default the archive is streamed, i.e. it is sent while it is created and the users stay
+ * stopped until the archive was sent. Otherwise the archive is created in a temporary file while
+ * the users are stopped and sent afterwards.
+ *
+ * <p>Files the remote side sent a {@link FileSignature signature} for are archived as delta to the
+ * version of the remote side. Files with the same content as a local file of the remote side or as
+ * another archived file are not archived at all but listed as copies.
  */
 public class ArchiveOutgoingResourceNegotiation extends AbstractOutgoingResourceNegotiation {
 
   private static final Logger log = Logger.getLogger(ArchiveOutgoingResourceNegotiation.class);
+
+  /** Whether the archive is sent while it is created instead of creating a temporary file first. */
+  private static final boolean STREAM_ARCHIVE =
+      Boolean.valueOf(System.getProperty("saros.negotiation.STREAM_ARCHIVE", "true"));
+
+  private static final int PIPE_BUFFER_SIZE = 64 * 1024;
+
   private File zipArchive = null;
 
+  /** Files to archive along with their qualified paths, <code>null</code> if there are none */
+  private List<Pair<IFile, String>> filesToArchive = null;
+
+  /** Signatures of old versions of the files to archive by their qualified paths */
+  private final Map<String, FileSignature> fileSignatures = new HashMap<>();
+
+  /** Qualified paths of files the remote side copies by the qualified paths of their sources */
+  private final Map<String, String> copiedFiles = new LinkedHashMap<>();
+
+  private final List<IResource> resourcesToLock = new ArrayList<IResource>();
+
+  private List<StartHandle> stoppedUsers = null;
+
   public ArchiveOutgoingResourceNegotiation( //
       final JID peer, //
       final ResourceSharingData resourceSharingData, //
@@ -73,7 +112,6 @@ public class ArchiveOutgoingResourceNegotiation extends AbstractOutgoingResource
   protected void prepareTransfer(IProgressMonitor monitor, List<FileList> fileLists)
       throws IOException, SarosCancellationException {
 
-    List<StartHandle> stoppedUsers = null;
     try {
       stoppedUsers = stopUsers(monitor);
       monitor.subTask("");
@@ -96,33 +134,55 @@ public class ArchiveOutgoingResourceNegotiation extends AbstractOutgoingResource
        */
       session.userStartedQueuing(user);
 
-      zipArchive = createResourceArchive(fileLists, monitor);
-      monitor.subTask("");
+      filesToArchive = collectFilesToArchive(fileLists);
+
+      if (filesToArchive != null && !STREAM_ARCHIVE) {
+        zipArchive = createResourceArchive(monitor);
+        monitor.subTask("");
+      }
     } finally {
-      if (stoppedUsers != null) startUsers(stoppedUsers);
+      // a streamed archive is read while it is sent, so the users are started afterwards
+      if (!STREAM_ARCHIVE || filesToArchive == null) startStoppedUsers();
     }
   }
 
   @Override
   protected void transfer(IProgressMonitor monitor, List<FileList> fileLists)
       throws SarosCancellationException, IOException {
-    if (zipArchive != null)
-      sendArchive(zipArchive, getPeer(), TRANSFER_ID_PREFIX + getID(), monitor);
+    if (zipArchive != null) sendArchive(zipArchive, getPeer(), monitor);
+    else if (filesToArchive != null) {
+      try {
+        streamArchive(getPeer(), monitor);
+      } finally {
+        startStoppedUsers();
+      }
+    }
   }
 
   @Override
   protected void cleanup(IProgressMonitor monitor) {
+    startStoppedUsers();
+
     if (zipArchive != null && !zipArchive.delete())
       log.warn("could not delete archive file: " + zipArchive.getAbsolutePath());
     super.cleanup(monitor);
   }
 
+  private void startStoppedUsers() {
+    if (stoppedUsers == null) return;
+
+    startUsers(stoppedUsers);
+    stoppedUsers = null;
+  }
+
   /**
+   * Collects the files to archive and the reference points to lock while the archive is created.
+   *
    * @param fileLists a list of file lists containing the files to archive
-   * @return zip file containing all files denoted by the file lists or <code>null</code> if the
-   *     file lists do not contain any files
+   * @return the files denoted by the file lists along with their qualified paths or <code>null
+   *     </code> if the file lists do not contain any files
    */
-  private File createResourceArchive(final List<FileList> fileLists, final IProgressMonitor monitor)
+  private List<Pair<IFile, String>> collectFilesToArchive(final List<FileList> fileLists)
       throws IOException, SarosCancellationException {
 
     boolean skip = true;
@@ -140,7 +200,7 @@ public class ArchiveOutgoingResourceNegotiation extends AbstractOutgoingResource
 
     final List<Pair<IFile, String>> filesToCompress = new ArrayList<>(fileCount);
 
-    final List<IResource> resourcesToLock = new ArrayList<IResource>();
+    final ContentDeduplicator<String> deduplicator = new ContentDeduplicator<>();
 
     for (final FileList list : fileLists) {
       final String referencePointID = list.getReferencePointID();
@@ -176,10 +236,68 @@ public class ArchiveOutgoingResourceNegotiation extends AbstractOutgoingResource
 
         filesToCompress.add(new ImmutablePair<>(file, qualifiedPath));
 
+        if (ContentDeduplicator.ENABLED)
+          deduplicator.add(
+              qualifiedPath,
+              file,
+              getSentChecksum(referencePointID, path),
+              list.getContentHash(path));
+
+        FileSignature signature = list.getSignature(path);
+
+        if (signature != null) fileSignatures.put(qualifiedPath, signature);
+
         aliasBuilder.setLength(prefixLength);
       }
     }
 
+    if (ContentDeduplicator.ENABLED) removeDuplicates(filesToCompress, deduplicator);
+
+    return filesToCompress;
+  }
+
+  /**
+   * Removes the files the remote side already has and all but the first of files with the same
+   * content from the given files to archive and adds them to the copied files instead.
+   */
+  private void removeDuplicates(
+      final List<Pair<IFile, String>> filesToCompress,
+      final ContentDeduplicator<String> deduplicator)
+      throws IOException {
+
+    deduplicator.run();
+
+    final Map<String, String> sourcesByHash = new HashMap<>();
+
+    filesToCompress.removeIf(
+        fileToCompress -> {
+          final String qualifiedPath = fileToCompress.getRight();
+
+          if (deduplicator.isLocallyAvailable(qualifiedPath)) {
+            copiedFiles.put(qualifiedPath, "");
+            return true;
+          }
+
+          final String hash = deduplicator.getHash(qualifiedPath);
+
+          if (hash == null) return false;
+
+          final String source = sourcesByHash.putIfAbsent(hash, qualifiedPath);
+
+          if (source == null) return false;
+
+          copiedFiles.put(qualifiedPath, source);
+          return true;
+        });
+
+    if (!copiedFiles.isEmpty())
+      log.debug(this + " : " + copiedFiles.size() + " file(s) are copied by the remote side");
+  }
+
+  /** @return zip file containing all files to archive */
+  private File createResourceArchive(final IProgressMonitor monitor)
+      throws IOException, SarosCancellationException {
+
     log.debug(this + " : creating archive");
 
     File tempArchive = null;
@@ -187,7 +305,7 @@ public class ArchiveOutgoingResourceNegotiation extends AbstractOutgoingResource
     try {
       tempArchive = File.createTempFile("saros_" + getID(), ".zip");
       workspace.run(
-          new CreateArchiveTask(tempArchive, filesToCompress, monitor),
+          new CreateArchiveTask(tempArchive, filesToArchive, fileSignatures, copiedFiles, monitor),
           resourcesToLock.toArray(new IResource[0]));
     } catch (OperationCanceledException e) {
       LocalCancellationException canceled = new LocalCancellationException();
@@ -200,19 +318,166 @@ public class ArchiveOutgoingResourceNegotiation extends AbstractOutgoingResource
     return tempArchive;
   }
 
-  private void sendArchive(
-      File archive, JID remoteContact, String transferID, IProgressMonitor monitor)
+  /**
+   * Sends the archive file. If the transfer is interrupted, it is resumed at the number of bytes
+   * the remote side acknowledges.
+   */
+  private void sendArchive(File archive, JID remoteContact, IProgressMonitor monitor)
       throws SarosCancellationException, IOException {
 
     log.debug(this + " : sending archive");
     monitor.beginTask("Sending archive file...", 100);
 
-    XMPPFileTransfer transfer =
-        fileTransferManager.fileSendStart(remoteContact, archive, transferID);
-    monitorFileTransfer(transfer, monitor);
+    try {
+      XMPPFileTransfer transfer =
+          fileTransferManager.fileSendStart(remoteContact, archive, getTransferID(0));
+      monitorFileTransfer(transfer, monitor);
+    } catch (IOException e) {
+      resumeArchiveTransfer(archive, remoteContact, e, monitor);
+    }
 
     monitor.done();
 
     log.debug(this + " : archive send");
   }
+
+  /** Sends the rest of the archive file whenever the remote side requests to resume. */
+  private void resumeArchiveTransfer(
+      File archive, JID remoteContact, IOException cause, IProgressMonitor monitor)
+      throws SarosCancellationException, IOException {
+
+    IOException exception = cause;
+    int attempt = 0;
+
+    while (true) {
+      ResumeResourceTransferExtension resumption = awaitTransferResumption(attempt + 1, exception);
+      attempt = resumption.getAttempt();
+
+      try {
+        sendArchiveFrom(archive, resumption.getCheckpoint(), remoteContact, attempt, monitor);
+        return;
+      } catch (IOException e) {
+        exception = e;
+      }
+    }
+  }
+
+  /** Sends the rest of the archive file starting at the given offset. */
+  private void sendArchiveFrom(
+      File archive, long offset, JID remoteContact, int attempt, IProgressMonitor monitor)
+      throws SarosCancellationException, IOException {
+
+    if (offset < 0 || offset > archive.length())
+      throw new IOException("cannot resume archive transfer at byte " + offset);
+
+    log.debug(this + " : resuming archive transfer at byte " + offset);
+
+    try (InputStream in = new FileInputStream(archive)) {
+      IOUtils.skipFully(in, offset);
+
+      XMPPFileTransfer transfer =
+          fileTransferManager.streamSendStart(remoteContact, getTransferID(attempt), in);
+
+      transfer.waitForTransferStart(monitor::isCanceled);
+
+      checkCancellation(CancelOption.NOTIFY_PEER);
+
+      awaitStreamTransferred(transfer, archive.length() - offset);
+    }
+  }
+
+  /**
+   * Creates the archive of all files to archive and sends it while it is created. If the transfer
+   * is interrupted, it is resumed with an archive of the files the remote side did not receive.
+   */
+  private void streamArchive(JID remoteContact, IProgressMonitor monitor)
+      throws SarosCancellationException, IOException {
+
+    int attempt = 0;
+
+    while (true) {
+      try {
+        streamArchive(remoteContact, getTransferID(attempt), monitor);
+        return;
+      } catch (IOException e) {
+        ResumeResourceTransferExtension resumption = awaitTransferResumption(attempt + 1, e);
+        attempt = resumption.getAttempt();
+        resumeArchiveAt(resumption.getCheckpoint(), resumption.isPartiallyReceived());
+      }
+    }
+  }
+
+  /**
+   * Removes the files the remote side received completely from the files to archive.
+   *
+   * @param unpackedEntryCount the number of archive entries the remote side unpacked completely
+   * @param partiallyReceived whether the remote side partially wrote the file of the next entry
+   */
+  private void resumeArchiveAt(long unpackedEntryCount, boolean partiallyReceived)
+      throws IOException {
+
+    if (unpackedEntryCount < 0 || unpackedEntryCount > filesToArchive.size())
+      throw new IOException("cannot resume archive transfer at entry " + unpackedEntryCount);
+
+    filesToArchive =
+        new ArrayList<>(filesToArchive.subList((int) unpackedEntryCount, filesToArchive.size()));
+
+    // the partially written file is no longer the base of the delta
+    if (partiallyReceived && !filesToArchive.isEmpty())
+      fileSignatures.remove(filesToArchive.get(0).getRight());
+
+    log.debug(this + " : resuming archive transfer, remaining files: " + filesToArchive.size());
+  }
+
+  /** Creates the archive of all files to archive and sends it while it is created. */
+  private void streamArchive(JID remoteContact, String transferID, IProgressMonitor monitor)
+      throws SarosCancellationException, IOException {
+
+    log.debug(this + " : streaming archive");
+
+    try (PipedInputStream in = new PipedInputStream(PIPE_BUFFER_SIZE)) {
+      final CountingOutputStream out = new CountingOutputStream(new PipedOutputStream(in));
+
+      try {
+        monitor.subTask("waiting for " + remoteContact.getName() + " to accept the archive");
+
+        final XMPPFileTransfer transfer =
+            fileTransferManager.streamSendStart(remoteContact, transferID, in);
+
+        transfer.waitForTransferStart(monitor::isCanceled);
+
+        checkCancellation(CancelOption.NOTIFY_PEER);
+
+        // closes the stream once the archive is complete
+        workspace.run(
+            new CreateArchiveTask(out, filesToArchive, fileSignatures, copiedFiles, monitor),
+            resourcesToLock.toArray(new IResource[0]));
+
+        awaitStreamTransferred(transfer, out.getByteCount());
+
+      } catch (OperationCanceledException e) {
+        LocalCancellationException canceled = new LocalCancellationException();
+        canceled.initCause(e);
+        throw canceled;
+      } finally {
+        IOUtils.closeQuietly(out);
+      }
+
+      log.debug(this + " : archive streamed, " + out.getByteCount() + " bytes sent");
+    }
+  }
+
+  /** Waits until the given amount of bytes was sent by the given transfer. */
+  private void awaitStreamTransferred(XMPPFileTransfer transfer, long bytes) throws IOException {
+    try {
+      while (!transfer.isDone() && transfer.getAmountWritten() != bytes) Thread.sleep(100);
+    } catch (InterruptedException e) {
+      log.error(this + ": archive transfer interrupted at closing", e);
+      Thread.currentThread().interrupt();
+    }
+
+    IOException exception = transfer.getException().orElse(null);
+
+    if (exception != null) throw exception;
+  }
 }
@@ -0,0 +1,144 @@
+package saros.negotiation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.log4j.Logger;
+import saros.filesystem.IFile;
+
+/**
+ * Finds the files of a resource negotiation whose content does not have to be sent, either because
+ * the receiving side already has a file with the same content or because a file with the same
+ * content is sent anyway. Candidates are found by the checksums of the file lists and confirmed by
+ * comparing the SHA-256 hashes of their content.
+ *
+ * @param <K> the type of the keys identifying the files
+ */
+final class ContentDeduplicator<K> {
+
+  private static final Logger log = Logger.getLogger(ContentDeduplicator.class);
+
+  /** Whether duplicate file content is only sent once. */
+  static final boolean ENABLED =
+      Boolean.valueOf(System.getProperty("saros.negotiation.DEDUPLICATION", "true"));
+
+  /** Files smaller than this size in bytes are always sent. */
+  static final long MIN_FILE_SIZE = Long.getLong("saros.negotiation.DEDUP_MIN_FILE_SIZE", 1024);
+
+  private static final int BUFFER_SIZE = 32 * 1024;
+
+  private static final class Candidate<K> {
+    private final K key;
+    private final IFile file;
+    private final String claimedHash;
+
+    private Candidate(K key, IFile file, String claimedHash) {
+      this.key = key;
+      this.file = file;
+      this.claimedHash = claimedHash;
+    }
+  }
+
+  /** Files that may have the same content as another file by their checksums */
+  private final Map<Long, List<Candidate<K>>> candidatesByChecksum = new HashMap<>();
+
+  /** Files the receiving side claims to have the content of */
+  private final List<Candidate<K>> claimedFiles = new ArrayList<>();
+
+  /** The content hashes of files that may have the same content as another file by their keys */
+  private final Map<K, String> hashes = new HashMap<>();
+
+  /** Keys of the files the receiving side has the content of */
+  private final Set<K> locallyAvailableFiles = new HashSet<>();
+
+  /**
+   * Adds a file to send.
+   *
+   * @param key the key identifying the file
+   * @param file the file
+   * @param checksum the checksum of the file from the file list or <code>null</code> if unknown
+   * @param claimedHash the hash of content the receiving side claims to have for this file or
+   *     <code>null</code>
+   */
+  void add(K key, IFile file, Long checksum, String claimedHash) {
+    final Candidate<K> candidate = new Candidate<>(key, file, claimedHash);
+
+    if (claimedHash != null) {
+      claimedFiles.add(candidate);
+      return;
+    }
+
+    if (checksum != null)
+      candidatesByChecksum.computeIfAbsent(checksum, k -> new ArrayList<>(1)).add(candidate);
+  }
+
+  /**
+   * Calculates the hashes of all files that may be duplicates, i.e. of files the receiving side
+   * claims to have and of files that have the same checksum as another file to send.
+   */
+  void run() throws IOException {
+    for (final Candidate<K> candidate : claimedFiles) {
+      if (candidate.claimedHash.equals(hash(candidate.file)))
+        locallyAvailableFiles.add(candidate.key);
+    }
+
+    for (final List<Candidate<K>> candidates : candidatesByChecksum.values()) {
+      if (candidates.size() < 2) continue;
+
+      for (final Candidate<K> candidate : candidates) {
+        if (candidate.file.getSize() >= MIN_FILE_SIZE)
+          hashes.put(candidate.key, hash(candidate.file));
+      }
+    }
+
+    log.debug(
+        "found "
+            + locallyAvailableFiles.size()
+            + " file(s) available on the receiving side and "
+            + hashes.size()
+            + " file(s) that may be sent more than once");
+  }
+
+  /** Returns whether the receiving side has the content of the file with the given key. */
+  boolean isLocallyAvailable(K key) {
+    return locallyAvailableFiles.contains(key);
+  }
+
+  /**
+   * Returns the content hash of the file with the given key if another file to send may have the
+   * same content, <code>null</code> otherwise.
+   */
+  String getHash(K key) {
+    return hashes.get(key);
+  }
+
+  /** Returns the Base64 encoded SHA-256 hash of the content of the given file. */
+  static String hash(final IFile file) throws IOException {
+    final MessageDigest digest;
+
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform has to support SHA-256
+      throw new IllegalStateException(e);
+    }
+
+    final byte[] buffer = new byte[BUFFER_SIZE];
+
+    try (InputStream in = file.getContents()) {
+      int read;
+
+      while ((read = in.read(buffer)) != -1) digest.update(buffer, 0, read);
+    }
+
+    return Base64.getEncoder().encodeToString(digest.digest());
+  }
+}
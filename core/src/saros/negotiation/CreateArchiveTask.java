@@ -1,15 +1,31 @@
 package saros.negotiation;
 
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Iterator;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.commons.lang3.time.StopWatch;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.log4j.Logger;
@@ -18,26 +34,180 @@ import saros.filesystem.IFile;
 import saros.filesystem.IWorkspaceRunnable;
 import saros.monitoring.IProgressMonitor;
 import saros.monitoring.NullProgressMonitor;
+import saros.negotiation.delta.DeltaEncoder;
+import saros.negotiation.delta.FileSignature;
 import saros.util.CoreUtils;
-
-// TODO java doc
+import saros.util.NamedThreadFactory;
+
+/**
+ * Creates a zip archive of the given files. The files are read in blocks which are deflated by a
+ * pool of worker threads, while the task itself writes the compressed blocks in order. Blocks of
+ * the same file are deflated independently, using the end of the preceding block as preset
+ * dictionary, and are concatenated to a single deflate stream.
+ *
+ * <p>Files that do not have to be transferred because the receiver can copy them from other files
+ * are listed in a last entry named {@value #COPIES_ENTRY_NAME}, which consists of the number of
+ * copies followed by the qualified paths of each copy and its source, all written by {@link
+ * DataOutputStream}. An empty source denotes a file the receiver already has locally.
+ *
+ * <p>Files with a signature of an old version are stored as delta to that version. Files of types
+ * that are already compressed are stored without compression. The compression level of all other
+ * files is adapted while the archive is created: it is lowered if writing the archive has to wait
+ * for the workers and raised if the workers have to wait for the archive to be written, e.g.
+ * because it is sent over a slow connection.
+ */
 public class CreateArchiveTask implements IWorkspaceRunnable {
 
+  /** Name of the entry listing the copied files, it does not contain a path delimiter */
+  static final String COPIES_ENTRY_NAME = "saros-copies";
+
   private static final int BUFFER_SIZE = 32 * 1024;
 
+  /** Size of the blocks the files are split into for compression */
+  private static final int BLOCK_SIZE = 1024 * 1024;
+
+  /** Size of the preset dictionary, i.e. the maximum distance of deflate back references */
+  private static final int DICTIONARY_SIZE = 32 * 1024;
+
+  private static final int COMPRESSION_THREADS =
+      Math.max(
+          1,
+          Integer.getInteger(
+              "saros.negotiation.ARCHIVE_COMPRESSION_THREADS",
+              Runtime.getRuntime().availableProcessors()));
+
+  /** Maximum number of blocks that are read but not yet written to the archive */
+  private static final int MAX_PENDING_BLOCKS = 2 * COMPRESSION_THREADS;
+
+  private static final int MIN_COMPRESSION_LEVEL = Deflater.BEST_SPEED;
+  private static final int MAX_COMPRESSION_LEVEL = Deflater.BEST_COMPRESSION;
+  private static final int INITIAL_COMPRESSION_LEVEL = 6;
+
+  /** Number of written blocks after which the compression level is adapted */
+  private static final int ADAPTION_INTERVAL = 8;
+
+  /** Minimum time in nanoseconds spent waiting within an interval to adapt the compression level */
+  private static final long MIN_ADAPTION_WAIT_TIME = TimeUnit.MILLISECONDS.toNanos(1);
+
+  /** File extensions of content that is already compressed */
+  private static final Set<String> INCOMPRESSIBLE_EXTENSIONS =
+      new HashSet<>(
+          Arrays.asList(
+              "7z", "avi", "bz2", "docx", "ear", "gif", "gz", "jar", "jpeg", "jpg", "mkv", "mov",
+              "mp3", "mp4", "ogg", "png", "pptx", "rar", "tgz", "war", "webm", "webp", "woff",
+              "woff2", "xlsx", "xz", "zip"));
+
+  private static final ThreadPoolExecutor compressionExecutor =
+      new ThreadPoolExecutor(
+          COMPRESSION_THREADS,
+          COMPRESSION_THREADS,
+          30,
+          TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>(),
+          new NamedThreadFactory("ArchiveCompression-"));
+
+  static {
+    compressionExecutor.allowCoreThreadTimeOut(true);
+  }
+
   private static final Logger log = Logger.getLogger(CreateArchiveTask.class);
 
+  /** A block of a file that is deflated by a worker thread. */
+  private static final class Block {
+    private final String path;
+    private final int length;
+    private final boolean isFirst;
+    private final boolean isLast;
+
+    /** CRC-32 checksum and size of the whole file, only set for the last block */
+    private final long crc;
+
+    private final long fileSize;
+
+    private final Future<byte[]> compressedData;
+
+    private Block(
+        String path,
+        int length,
+        boolean isFirst,
+        boolean isLast,
+        long crc,
+        long fileSize,
+        Future<byte[]> compressedData) {
+      this.path = path;
+      this.length = length;
+      this.isFirst = isFirst;
+      this.isLast = isLast;
+      this.crc = crc;
+      this.fileSize = fileSize;
+      this.compressedData = compressedData;
+    }
+  }
+
   private final File archive;
+  private final OutputStream archiveStream;
   private final List<Pair<IFile, String>> filesToCompress;
+  private final Map<String, FileSignature> fileSignatures;
+  private final Map<String, String> copiedFiles;
   private final IProgressMonitor monitor;
 
+  private final Deque<Block> pendingBlocks = new ArrayDeque<>();
+
+  private byte[] readBuffer = new byte[BLOCK_SIZE];
+
+  private int compressionLevel = INITIAL_COMPRESSION_LEVEL;
+
+  private long compressionWaitTime;
+  private long outputWaitTime;
+  private int blocksSinceAdaption;
+
+  private long totalRead;
+
+  /**
+   * Creates a task that writes the archive to the given file.
+   *
+   * @param archive the archive file
+   * @param filesToCompress the files to compress along with their qualified paths
+   * @param fileSignatures signatures of old versions of files by their qualified paths, the content
+   *     of these files is stored as delta to the old version
+   * @param copiedFiles qualified paths of files the receiver copies instead by the qualified paths
+   *     of their sources, an empty source denotes a file the receiver already has
+   * @param monitor monitor that is used for progress report and cancellation or <code>null</code>
+   *     to use the monitor provided by the {@link #run(IProgressMonitor)} method
+   */
   public CreateArchiveTask(
       final File archive,
       final List<Pair<IFile, String>> filesToCompress,
+      final Map<String, FileSignature> fileSignatures,
+      final Map<String, String> copiedFiles,
       final IProgressMonitor monitor) {
 
     this.archive = archive;
+    this.archiveStream = null;
     this.filesToCompress = filesToCompress;
+    this.fileSignatures = fileSignatures;
+    this.copiedFiles = copiedFiles;
+    this.monitor = monitor;
+  }
+
+  /**
+   * Creates a task that writes the archive to the given stream, e.g. to send it while it is being
+   * created. The stream is closed when the task is done.
+   *
+   * @see #CreateArchiveTask(File, List, Map, Map, IProgressMonitor)
+   */
+  public CreateArchiveTask(
+      final OutputStream archiveStream,
+      final List<Pair<IFile, String>> filesToCompress,
+      final Map<String, FileSignature> fileSignatures,
+      final Map<String, String> copiedFiles,
+      final IProgressMonitor monitor) {
+
+    this.archive = null;
+    this.archiveStream = archiveStream;
+    this.filesToCompress = filesToCompress;
+    this.fileSignatures = fileSignatures;
+    this.copiedFiles = copiedFiles;
     this.monitor = monitor;
   }
 
@@ -52,25 +222,22 @@ public class CreateArchiveTask implements IWorkspaceRunnable {
     StopWatch stopWatch = new StopWatch();
     stopWatch.start();
 
-    final Iterator<Pair<IFile, String>> fileIt = filesToCompress.iterator();
-
-    long totalRead = 0L;
-
     boolean cleanup = true;
 
-    byte[] buffer = new byte[BUFFER_SIZE];
+    ZipArchiveWriter zipWriter = null;
 
-    ZipOutputStream zipStream = null;
+    CountingOutputStream out = null;
 
     monitor.beginTask("Compressing files...", 100 /* percent */);
 
     try {
-      zipStream =
-          new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(archive), BUFFER_SIZE));
+      out =
+          new CountingOutputStream(
+              archiveStream != null ? archiveStream : new FileOutputStream(archive));
 
-      while (fileIt.hasNext()) {
-        Pair<IFile, String> fileToCompress = fileIt.next();
+      zipWriter = new ZipArchiveWriter(out, BUFFER_SIZE);
 
+      for (Pair<IFile, String> fileToCompress : filesToCompress) {
         IFile file = fileToCompress.getLeft();
         String qualifiedPath = fileToCompress.getRight();
 
@@ -78,38 +245,39 @@ public class CreateArchiveTask implements IWorkspaceRunnable {
 
         monitor.subTask("compressing file: " + qualifiedPath);
 
-        zipStream.putNextEntry(new ZipEntry(qualifiedPath));
-
         InputStream in = null;
 
         try {
-
-          int read = 0;
-
           in = file.getContents();
 
-          while ((read = in.read(buffer)) > 0) {
-
-            if (monitor.isCanceled())
-              throw new OperationCanceledException(
-                  "compressing of file '" + qualifiedPath + "' was canceled");
-
-            zipStream.write(buffer, 0, read);
+          final FileSignature signature = fileSignatures.get(qualifiedPath);
 
-            totalRead += read;
+          if (signature != null) in = new DeltaEncoder(in, signature);
 
-            updateMonitor(monitor, totalRead, totalSize);
-          }
+          compressFile(in, qualifiedPath, zipWriter, monitor, totalSize);
         } finally {
           IOUtils.closeQuietly(in);
         }
-        zipStream.closeEntry();
       }
 
-      zipStream.finish();
+      if (!copiedFiles.isEmpty()) {
+        try (InputStream in = new ByteArrayInputStream(createCopiesEntry(copiedFiles))) {
+          compressFile(in, COPIES_ENTRY_NAME, zipWriter, monitor, totalSize);
+        }
+      }
+
+      while (!pendingBlocks.isEmpty()) writeBlock(zipWriter, monitor, totalSize);
+
+      zipWriter.finish();
       cleanup = false;
     } finally {
-      IOUtils.closeQuietly(zipStream);
+      for (Block block : pendingBlocks) block.compressedData.cancel(false);
+
+      pendingBlocks.clear();
+
+      IOUtils.closeQuietly(zipWriter);
+      IOUtils.closeQuietly(out);
+      IOUtils.closeQuietly(archiveStream);
       if (cleanup && archive != null && archive.exists() && !archive.delete())
         log.warn("could not delete archive file: " + archive);
 
@@ -120,9 +288,219 @@ public class CreateArchiveTask implements IWorkspaceRunnable {
 
     log.debug(
         String.format(
-            "created archive %s I/O: [%s]",
-            archive.getAbsolutePath(),
-            CoreUtils.throughput(archive.length(), stopWatch.getTime())));
+            "created archive %s I/O: [%s], final compression level: %d",
+            archive != null ? archive.getAbsolutePath() : "stream",
+            CoreUtils.throughput(out.getByteCount(), stopWatch.getTime()),
+            compressionLevel));
+  }
+
+  private static byte[] createCopiesEntry(final Map<String, String> copiedFiles)
+      throws IOException {
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeInt(copiedFiles.size());
+
+      for (Map.Entry<String, String> copiedFile : copiedFiles.entrySet()) {
+        out.writeUTF(copiedFile.getKey());
+        out.writeUTF(copiedFile.getValue());
+      }
+    }
+
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Reads the given file content in blocks and submits them for compression. Pending blocks are
+   * written to the archive whenever too many are pending.
+   */
+  private void compressFile(
+      final InputStream in,
+      final String qualifiedPath,
+      final ZipArchiveWriter zipWriter,
+      final IProgressMonitor monitor,
+      final long totalSize)
+      throws IOException, OperationCanceledException {
+
+    final boolean isIncompressible = isIncompressible(qualifiedPath);
+
+    final CRC32 crc = new CRC32();
+
+    long fileSize = 0;
+    byte[] dictionary = null;
+    boolean isFirst = true;
+
+    byte[] data = readBlock(in);
+
+    while (true) {
+      if (monitor.isCanceled())
+        throw new OperationCanceledException(
+            "compressing of file '" + qualifiedPath + "' was canceled");
+
+      final byte[] nextData = data.length == BLOCK_SIZE ? readBlock(in) : new byte[0];
+      final boolean isLast = nextData.length == 0;
+
+      crc.update(data, 0, data.length);
+      fileSize += data.length;
+
+      final byte[] blockData = data;
+      final byte[] blockDictionary = dictionary;
+      final int level = isIncompressible ? Deflater.NO_COMPRESSION : compressionLevel;
+
+      final Future<byte[]> compressedData =
+          compressionExecutor.submit(() -> deflate(blockData, blockDictionary, level, isLast));
+
+      pendingBlocks.add(
+          new Block(
+              qualifiedPath,
+              data.length,
+              isFirst,
+              isLast,
+              isLast ? crc.getValue() : 0,
+              fileSize,
+              compressedData));
+
+      while (pendingBlocks.size() >= MAX_PENDING_BLOCKS) writeBlock(zipWriter, monitor, totalSize);
+
+      if (isLast) return;
+
+      dictionary = Arrays.copyOfRange(data, data.length - DICTIONARY_SIZE, data.length);
+      isFirst = false;
+      data = nextData;
+    }
+  }
+
+  /** Writes the oldest pending block to the archive as soon as it is compressed. */
+  private void writeBlock(
+      final ZipArchiveWriter zipWriter, final IProgressMonitor monitor, final long totalSize)
+      throws IOException {
+
+    final Block block = pendingBlocks.remove();
+
+    final long startTime = System.nanoTime();
+
+    final byte[] compressedData = getCompressedData(block);
+
+    final long compressedTime = System.nanoTime();
+
+    if (block.isFirst && block.isLast) {
+      zipWriter.writeEntry(
+          block.path, block.crc, block.fileSize, compressedData, compressedData.length);
+    } else {
+      if (block.isFirst) zipWriter.beginEntry(block.path);
+
+      zipWriter.writeData(compressedData, 0, compressedData.length);
+
+      if (block.isLast) zipWriter.endEntry(block.crc, block.fileSize);
+    }
+
+    adaptCompressionLevel(compressedTime - startTime, System.nanoTime() - compressedTime);
+
+    totalRead += block.length;
+
+    updateMonitor(monitor, totalRead, totalSize);
+  }
+
+  private static byte[] getCompressedData(final Block block) throws IOException {
+    try {
+      return block.compressedData.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while compressing file: " + block.path);
+    } catch (ExecutionException e) {
+      throw new IOException("failed to compress file: " + block.path, e.getCause());
+    }
+  }
+
+  /**
+   * Lowers the compression level if writing the archive mostly waits for the compression and raises
+   * it if the compression mostly waits for the archive to be written.
+   */
+  private void adaptCompressionLevel(final long compressionWait, final long outputWait) {
+    compressionWaitTime += compressionWait;
+    outputWaitTime += outputWait;
+
+    if (++blocksSinceAdaption < ADAPTION_INTERVAL) return;
+
+    if (compressionWaitTime + outputWaitTime >= MIN_ADAPTION_WAIT_TIME) {
+      if (compressionWaitTime > 2 * outputWaitTime)
+        compressionLevel = Math.max(MIN_COMPRESSION_LEVEL, compressionLevel - 1);
+      else if (outputWaitTime > 2 * compressionWaitTime)
+        compressionLevel = Math.min(MAX_COMPRESSION_LEVEL, compressionLevel + 1);
+    }
+
+    compressionWaitTime = 0;
+    outputWaitTime = 0;
+    blocksSinceAdaption = 0;
+  }
+
+  /**
+   * Reads the next block of the given stream. Returns an array of {@link #BLOCK_SIZE} bytes unless
+   * the end of the stream is reached.
+   */
+  private byte[] readBlock(final InputStream in) throws IOException {
+    int length = 0;
+
+    while (length < BLOCK_SIZE) {
+      final int read = in.read(readBuffer, length, BLOCK_SIZE - length);
+
+      if (read == -1) break;
+
+      length += read;
+    }
+
+    if (length < BLOCK_SIZE) return Arrays.copyOf(readBuffer, length);
+
+    final byte[] block = readBuffer;
+    readBuffer = new byte[BLOCK_SIZE];
+    return block;
+  }
+
+  /**
+   * Deflates the given block without zlib header. The last block of a file terminates the deflate
+   * stream, all other blocks are flushed to a byte boundary so that the blocks can be concatenated.
+   */
+  private static byte[] deflate(
+      final byte[] data, final byte[] dictionary, final int level, final boolean isLast) {
+
+    final Deflater deflater = new Deflater(level, true);
+
+    try {
+      if (dictionary != null) deflater.setDictionary(dictionary);
+
+      deflater.setInput(data);
+
+      if (isLast) deflater.finish();
+
+      byte[] buffer = new byte[data.length / 2 + 64];
+      int length = 0;
+
+      while (true) {
+        if (length == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+
+        length +=
+            deflater.deflate(
+                buffer,
+                length,
+                buffer.length - length,
+                isLast ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+
+        if (isLast ? deflater.finished() : length < buffer.length) break;
+      }
+
+      return Arrays.copyOf(buffer, length);
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static boolean isIncompressible(final String path) {
+    final int dot = path.lastIndexOf('.');
+
+    if (dot == -1 || dot < path.lastIndexOf('/')) return false;
+
+    return INCOMPRESSIBLE_EXTENSIONS.contains(path.substring(dot + 1).toLowerCase(Locale.ROOT));
   }
 
   private int lastWorked = 0;
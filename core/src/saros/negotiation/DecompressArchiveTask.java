@@ -1,12 +1,17 @@
 package saros.negotiation;
 
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Enumeration;
 import java.util.Map;
+import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
 import org.apache.log4j.Logger;
 import saros.exceptions.OperationCanceledException;
 import saros.filesystem.FileSystem;
@@ -16,6 +21,7 @@ import saros.filesystem.IWorkspace;
 import saros.filesystem.IWorkspaceRunnable;
 import saros.monitoring.CancelableInputStream;
 import saros.monitoring.IProgressMonitor;
+import saros.negotiation.delta.DeltaDecoder;
 import saros.session.ISarosSession;
 
 public class DecompressArchiveTask implements IWorkspaceRunnable {
@@ -23,9 +29,19 @@ public class DecompressArchiveTask implements IWorkspaceRunnable {
   private static final Logger log = Logger.getLogger(DecompressArchiveTask.class);
 
   private final File file;
+  private final InputStream archiveStream;
+  private final int entryCount;
   private final IProgressMonitor monitor;
   private final Map<String, IReferencePoint> idToReferencePointMapping;
   private final String delimiter;
+  private final Set<String> deltaEncodedEntries;
+  private final Map<String, IFile> localSources;
+
+  /** Number of entries that were unpacked completely, not counting the copies entry */
+  private int unpackedEntryCount;
+
+  /** Name of the entry that is being unpacked, <code>null</code> if none */
+  private String partiallyUnpackedEntry;
 
   /**
    * Creates a decompress task for an archive file that can be executed by {@link IWorkspace#run}.
@@ -35,6 +51,9 @@ public class DecompressArchiveTask implements IWorkspaceRunnable {
    * @param file Zip file containing the compressed data
    * @param idToReferencePointMapping map containing the id to reference point mapping (see also
    *     {@link ISarosSession#getReferencePointId(IReferencePoint)}
+   * @param deltaEncodedEntries names of the entries that contain a delta to the existing file
+   * @param localSources local files with the same content as files that are not contained in the
+   *     archive but copied, by the qualified paths of the copies
    * @param monitor monitor that is used for progress report and cancellation or <code>null</code>
    *     to use the monitor provided by the {@link #run(IProgressMonitor)} method
    */
@@ -42,10 +61,50 @@ public class DecompressArchiveTask implements IWorkspaceRunnable {
       final File file,
       final Map<String, IReferencePoint> idToReferencePointMapping,
       final String delimiter,
+      final Set<String> deltaEncodedEntries,
+      final Map<String, IFile> localSources,
       final IProgressMonitor monitor) {
     this.file = file;
+    this.archiveStream = null;
+    this.entryCount = 0;
+    this.idToReferencePointMapping = idToReferencePointMapping;
+    this.delimiter = delimiter;
+    this.deltaEncodedEntries = deltaEncodedEntries;
+    this.localSources = localSources;
+    this.monitor = monitor;
+  }
+
+  /**
+   * Creates a decompress task for an archive that is read from a stream, e.g. while it is still
+   * being received. Every entry is written to the workspace as soon as it was read. The stream is
+   * read until its end but not closed. <b>Important:</b> Existing files will be <b>overwritten
+   * without confirmation</b>!
+   *
+   * @param archiveStream stream providing the zip archive
+   * @param entryCount the expected number of entries, only used for progress report
+   * @param idToReferencePointMapping map containing the id to reference point mapping (see also
+   *     {@link ISarosSession#getReferencePointId(IReferencePoint)}
+   * @param deltaEncodedEntries names of the entries that contain a delta to the existing file
+   * @param localSources local files with the same content as files that are not contained in the
+   *     archive but copied, by the qualified paths of the copies
+   * @param monitor monitor that is used for progress report and cancellation or <code>null</code>
+   *     to use the monitor provided by the {@link #run(IProgressMonitor)} method
+   */
+  public DecompressArchiveTask(
+      final InputStream archiveStream,
+      final int entryCount,
+      final Map<String, IReferencePoint> idToReferencePointMapping,
+      final String delimiter,
+      final Set<String> deltaEncodedEntries,
+      final Map<String, IFile> localSources,
+      final IProgressMonitor monitor) {
+    this.file = null;
+    this.archiveStream = archiveStream;
+    this.entryCount = entryCount;
     this.idToReferencePointMapping = idToReferencePointMapping;
     this.delimiter = delimiter;
+    this.deltaEncodedEntries = deltaEncodedEntries;
+    this.localSources = localSources;
     this.monitor = monitor;
   }
 
@@ -58,6 +117,13 @@ public class DecompressArchiveTask implements IWorkspaceRunnable {
   public void run(IProgressMonitor monitor) throws IOException, OperationCanceledException {
     if (this.monitor != null) monitor = this.monitor;
 
+    if (archiveStream != null) unpackStream(monitor);
+    else unpackFile(monitor);
+  }
+
+  private void unpackFile(final IProgressMonitor monitor)
+      throws IOException, OperationCanceledException {
+
     ZipFile zipFile = null;
 
     try {
@@ -71,67 +137,179 @@ public class DecompressArchiveTask implements IWorkspaceRunnable {
 
         final ZipEntry entry = entries.nextElement();
 
-        final String entryName = entry.getName();
+        unpackEntry(entry.getName(), zipFile.getInputStream(entry), monitor);
+        entryUnpacked(entry.getName());
+      }
+    } finally {
+      if (monitor != null) monitor.done();
+
+      try {
+        if (zipFile != null) zipFile.close();
+      } catch (IOException e) {
+        log.warn("failed to close zip file " + zipFile.getName() + " : " + e.getMessage());
+      }
+    }
+  }
+
+  private void unpackStream(final IProgressMonitor monitor)
+      throws IOException, OperationCanceledException {
+
+    try {
+      monitor.beginTask("Unpacking archive to workspace", entryCount);
+
+      final ZipInputStream zipStream =
+          new ZipInputStream(new CloseShieldInputStream(archiveStream));
+
+      ZipEntry entry;
+
+      while ((entry = zipStream.getNextEntry()) != null) {
+        unpackEntry(entry.getName(), new CloseShieldInputStream(zipStream), monitor);
+        entryUnpacked(entry.getName());
+      }
+
+      // consume the central directory so the sender can complete the transfer
+      IOUtils.skip(archiveStream, Long.MAX_VALUE);
+    } finally {
+      monitor.done();
+    }
+  }
+
+  private void unpackEntry(
+      final String entryName, final InputStream inZip, final IProgressMonitor monitor)
+      throws IOException, OperationCanceledException {
 
-        if (monitor.isCanceled()) throw new OperationCanceledException();
+    if (monitor.isCanceled()) throw new OperationCanceledException();
 
-        final int delimiterIdx = entry.getName().indexOf(delimiter);
+    if (entryName.equals(CreateArchiveTask.COPIES_ENTRY_NAME)) {
+      copyFiles(inZip, monitor);
+      return;
+    }
 
-        if (delimiterIdx == -1) {
-          log.warn("skipping zip entry " + entryName + ", entry is not valid");
+    final int delimiterIdx = entryName.indexOf(delimiter);
 
-          monitor.worked(1);
-          continue;
-        }
+    if (delimiterIdx == -1) {
+      log.warn("skipping zip entry " + entryName + ", entry is not valid");
 
-        final String id = entryName.substring(0, delimiterIdx);
+      monitor.worked(1);
+      return;
+    }
 
-        final String path = entryName.substring(delimiterIdx + 1, entryName.length());
+    final String id = entryName.substring(0, delimiterIdx);
 
-        final IReferencePoint referencePoint = idToReferencePointMapping.get(id);
+    final String path = entryName.substring(delimiterIdx + 1, entryName.length());
 
-        if (referencePoint == null) {
-          log.warn("skipping zip entry " + entryName + ", unknown reference point id: " + id);
+    final IReferencePoint referencePoint = idToReferencePointMapping.get(id);
 
-          monitor.worked(1);
-          continue;
-        }
+    if (referencePoint == null) {
+      log.warn("skipping zip entry " + entryName + ", unknown reference point id: " + id);
 
-        final IFile decompressedFile = referencePoint.getFile(path);
+      monitor.worked(1);
+      return;
+    }
 
-        FileSystem.createFolder(decompressedFile);
+    final IFile decompressedFile = referencePoint.getFile(path);
 
-        monitor.subTask("decompressing: " + path);
+    partiallyUnpackedEntry = entryName;
 
-        final InputStream inZip = zipFile.getInputStream(entry);
+    FileSystem.createFolder(decompressedFile);
 
-        CancelableInputStream in;
-        in = new CancelableInputStream(inZip, monitor);
+    monitor.subTask("decompressing: " + path);
 
-        try {
-          if (!decompressedFile.exists()) decompressedFile.create(in);
-          else decompressedFile.setContents(in);
-        } catch (IOException e) {
-          /* if triggered by check in CancelableInputStream */
-          if (monitor.isCanceled()) {
-            throw new OperationCanceledException();
-          } else {
-            throw e;
-          }
-        }
+    InputStream in = new CancelableInputStream(inZip, monitor);
 
-        monitor.worked(1);
+    try {
+      if (deltaEncodedEntries.contains(entryName)) in = DeltaDecoder.create(decompressedFile, in);
 
-        if (log.isTraceEnabled()) log.trace("file written to disk: " + path);
+      if (!decompressedFile.exists()) decompressedFile.create(in);
+      else decompressedFile.setContents(in);
+    } catch (IOException e) {
+      /* if triggered by check in CancelableInputStream */
+      if (monitor.isCanceled()) {
+        throw new OperationCanceledException();
+      } else {
+        throw e;
       }
     } finally {
-      if (monitor != null) monitor.done();
+      if (in instanceof DeltaDecoder) in.close();
+    }
 
-      try {
-        if (zipFile != null) zipFile.close();
-      } catch (IOException e) {
-        log.warn("failed to close zip file " + zipFile.getName() + " : " + e.getMessage());
+    monitor.worked(1);
+
+    if (log.isTraceEnabled()) log.trace("file written to disk: " + path);
+  }
+
+  /**
+   * Returns the number of entries that were unpacked completely, not counting the entry listing the
+   * copied files. If the task failed, these are the first entries of the archive.
+   */
+  public int getUnpackedEntryCount() {
+    return unpackedEntryCount;
+  }
+
+  /**
+   * Returns the name of the entry whose file was partially written when the task failed.
+   *
+   * @return the name of the entry or <code>null</code> if no file was partially written
+   */
+  public String getPartiallyUnpackedEntry() {
+    return partiallyUnpackedEntry;
+  }
+
+  private void entryUnpacked(final String entryName) {
+    partiallyUnpackedEntry = null;
+
+    if (!entryName.equals(CreateArchiveTask.COPIES_ENTRY_NAME)) unpackedEntryCount++;
+  }
+
+  /**
+   * Creates the files listed in the given copies entry from their sources, i.e. from files that
+   * were unpacked before or from the local sources.
+   */
+  private void copyFiles(final InputStream inZip, final IProgressMonitor monitor)
+      throws IOException, OperationCanceledException {
+
+    final DataInputStream in = new DataInputStream(inZip);
+
+    final int count = in.readInt();
+
+    for (int i = 0; i < count; i++) {
+      if (monitor.isCanceled()) throw new OperationCanceledException();
+
+      final String target = in.readUTF();
+      final String source = in.readUTF();
+
+      final IFile targetFile = getFile(target);
+      final IFile sourceFile = source.isEmpty() ? localSources.get(target) : getFile(source);
+
+      if (targetFile == null || sourceFile == null)
+        throw new IOException("cannot copy file " + target + ", its source is unknown");
+
+      FileSystem.createFolder(targetFile);
+
+      monitor.subTask("copying: " + target);
+
+      try (InputStream sourceIn = sourceFile.getContents()) {
+        if (!targetFile.exists()) targetFile.create(sourceIn);
+        else targetFile.setContents(sourceIn);
       }
+
+      monitor.worked(1);
+
+      if (log.isTraceEnabled()) log.trace("file copied from " + sourceFile + ": " + target);
     }
   }
+
+  /** Returns the file with the given qualified path or <code>null</code> if it is unknown. */
+  private IFile getFile(final String qualifiedPath) {
+    final int delimiterIdx = qualifiedPath.indexOf(delimiter);
+
+    if (delimiterIdx == -1) return null;
+
+    final IReferencePoint referencePoint =
+        idToReferencePointMapping.get(qualifiedPath.substring(0, delimiterIdx));
+
+    if (referencePoint == null) return null;
+
+    return referencePoint.getFile(qualifiedPath.substring(delimiterIdx + 1));
+  }
 }
@@ -24,10 +24,13 @@ import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
 import com.thoughtworks.xstream.annotations.XStreamOmitField;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import saros.negotiation.delta.FileSignature;
 
 /**
  * A FileList is a list of resources -- files and folders -- which belong to the same reference
@@ -300,6 +303,15 @@ public class FileList {
 
   private File root;
 
+  /** Signatures of files the remote side has an old version of, <code>null</code> if none */
+  private Map<String, FileSignature> signatures;
+
+  /**
+   * Content hashes of files the remote side has local files with the same content of, <code>null
+   * </code> if none
+   */
+  private Map<String, String> contentHashes;
+
   MetaData getMetaData(String path) {
     return root.getMetaData(path);
   }
@@ -337,6 +349,42 @@ public class FileList {
     return root.contains(path);
   }
 
+  void addSignature(String path, FileSignature signature) {
+    if (signatures == null) signatures = new HashMap<String, FileSignature>();
+
+    signatures.put(path, signature);
+  }
+
+  /**
+   * Returns the signature of the old version of the file with the given path that the creator of
+   * this list has. The file should then be sent as delta to this old version.
+   *
+   * @param path the path of the file
+   * @return the signature or <code>null</code> if the whole file should be sent
+   */
+  public FileSignature getSignature(String path) {
+    return signatures == null ? null : signatures.get(path);
+  }
+
+  void addContentHash(String path, String hash) {
+    if (contentHashes == null) contentHashes = new HashMap<String, String>();
+
+    contentHashes.put(path, hash);
+  }
+
+  /**
+   * Returns the content hash of a file that the creator of this list already has and assumes to
+   * have the same content as the file with the given path. The file does not have to be sent if its
+   * content has the same hash.
+   *
+   * @param path the path of the file
+   * @return the Base64 encoded SHA-256 hash of the content or <code>null</code> if the file should
+   *     be sent
+   */
+  public String getContentHash(String path) {
+    return contentHashes == null ? null : contentHashes.get(path);
+  }
+
   @XStreamOmitField private volatile List<String> cachedList = null;
 
   /**
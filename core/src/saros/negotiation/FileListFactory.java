@@ -1,11 +1,19 @@
 package saros.negotiation;
 
 import java.io.IOException;
-import java.util.Collections;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import org.apache.log4j.Logger;
+import saros.exceptions.OperationCanceledException;
 import saros.filesystem.FileSystem;
 import saros.filesystem.IFile;
 import saros.filesystem.IFolder;
@@ -15,6 +23,7 @@ import saros.filesystem.checksum.IChecksumCache;
 import saros.monitoring.IProgressMonitor;
 import saros.monitoring.NullProgressMonitor;
 import saros.negotiation.FileList.MetaData;
+import saros.util.NamedThreadFactory;
 
 /**
  * Offers two ways to create {@link FileList file lists}.
@@ -29,6 +38,33 @@ public class FileListFactory {
 
   private static final Logger log = Logger.getLogger(FileListFactory.class);
 
+  /**
+   * Max number of files whose checksums are calculated concurrently. Reading the files is I/O
+   * bound, so more threads than CPU cores do not speed up the calculation on most disks.
+   */
+  private static final int CHECKSUM_THREADS =
+      Math.max(
+          1,
+          Integer.getInteger(
+              "saros.negotiation.CHECKSUM_THREADS",
+              Math.min(4, Runtime.getRuntime().availableProcessors())));
+
+  /** Interval in milliseconds in which the progress monitor is checked for cancellation. */
+  private static final long CANCELLATION_CHECK_INTERVAL = 200;
+
+  private static final ThreadPoolExecutor checksumExecutor =
+      new ThreadPoolExecutor(
+          CHECKSUM_THREADS,
+          CHECKSUM_THREADS,
+          30,
+          TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>(),
+          new NamedThreadFactory("FileListChecksum-"));
+
+  static {
+    checksumExecutor.allowCoreThreadTimeOut(true);
+  }
+
   private FileListFactory() {
     // NOP
   }
@@ -59,7 +95,11 @@ public class FileListFactory {
    * Creates a file list for the given reference point.
    *
    * <p>Uses the given checksum cache for the checksum calculation. Reports progress to the passed
-   * progress monitor if present.
+   * progress monitor if present. The checksums are calculated concurrently while the members of the
+   * reference point are collected, so the checksum cache must be thread safe.
+   *
+   * <p>If the progress monitor is canceled the calculation is aborted, no incomplete file list is
+   * returned.
    *
    * @param referencePoint the reference point for which to create a file list
    * @param checksumCache the checksum cache to use during the checksum calculation
@@ -67,45 +107,49 @@ public class FileListFactory {
    * @return a file list for the given reference point
    * @throws IOException if the the members contained in the reference point or one of its folders
    *     or the charset of a contained file could not be obtained
+   * @throws OperationCanceledException if the progress monitor was canceled
    */
   public static FileList createFileList(
       final IReferencePoint referencePoint,
       final IChecksumCache checksumCache,
       final IProgressMonitor suggestedMonitor)
-      throws IOException {
+      throws IOException, OperationCanceledException {
 
     FileList list = new FileList();
 
-    List<IFile> files = calculateMembers(list, referencePoint);
-
     IProgressMonitor monitor =
         suggestedMonitor != null ? suggestedMonitor : new NullProgressMonitor();
 
-    calculateChecksums(list, files, checksumCache, monitor);
+    ChecksumCalculator calculator = new ChecksumCalculator(checksumCache);
+
+    try {
+      calculateMembers(list, referencePoint, calculator);
+
+      calculator.awaitChecksums(monitor);
+    } finally {
+      calculator.cancel();
+    }
 
     return list;
   }
 
   /**
    * Calculates all files contained in the given reference point and adds them to the given file
-   * list. Returns a list of all found files.
+   * list. The checksum calculation of every found file is passed to the given calculator.
    *
    * @param list the file list
    * @param referencePoint the reference point for which to calculate the members
-   * @return a list of all found files
+   * @param calculator the calculator to calculate the checksums of the found files
    * @throws IOException if the members contained in the reference point or one of its folders or
    *     the charset of a contained file could not be obtained
    */
-  private static List<IFile> calculateMembers(
-      final FileList list, final IReferencePoint referencePoint) throws IOException {
-
-    List<IResource> resources = referencePoint.members();
-
-    if (resources.isEmpty()) return Collections.emptyList();
-
-    Deque<IResource> stack = new LinkedList<>(resources);
+  private static void calculateMembers(
+      final FileList list,
+      final IReferencePoint referencePoint,
+      final ChecksumCalculator calculator)
+      throws IOException {
 
-    List<IFile> files = new LinkedList<>();
+    Deque<IResource> stack = new ArrayDeque<>(referencePoint.members());
 
     while (!stack.isEmpty()) {
       IResource resource = stack.pop();
@@ -118,10 +162,10 @@ public class FileListFactory {
 
       switch (resource.getType()) {
         case FILE:
-          files.add((IFile) resource);
           MetaData data = new MetaData();
           list.addPath(path, data, false);
           list.addEncoding(((IFile) resource).getCharset());
+          calculator.submit((IFile) resource, data);
           break;
 
         case FOLDER:
@@ -130,33 +174,95 @@ public class FileListFactory {
           break;
       }
     }
-
-    return files;
   }
 
   /**
-   * Calculates the checksums of the given files and adds them to the given file list.
-   *
-   * @param list the file list
-   * @param files the files for which to calculate the checksum
-   * @param checksumCache the checksum cache to use during the checksum calculation
-   * @param monitor the progress monitor to report to
+   * Calculates the checksums of files in the background. The number of concurrently read files is
+   * bounded by {@link #CHECKSUM_THREADS}.
    */
-  private static void calculateChecksums(
-      final FileList list,
-      final List<IFile> files,
-      final IChecksumCache checksumCache,
-      final IProgressMonitor monitor) {
+  private static final class ChecksumCalculator {
 
-    monitor.beginTask("Calculating checksums...", files.size());
+    private final IChecksumCache checksumCache;
+
+    private final CompletionService<IFile> completionService =
+        new ExecutorCompletionService<>(checksumExecutor);
+
+    private final List<Future<IFile>> pendingChecksums = new ArrayList<>();
+
+    private ChecksumCalculator(final IChecksumCache checksumCache) {
+      this.checksumCache = checksumCache;
+    }
+
+    /** Schedules the calculation of the checksum of the given file. */
+    private void submit(final IFile file, final MetaData data) {
+      pendingChecksums.add(
+          completionService.submit(
+              () -> {
+                calculateChecksum(file, data);
+                return file;
+              }));
+    }
+
+    /**
+     * Waits until the checksums of all submitted files are calculated. Reports the progress to the
+     * given monitor.
+     *
+     * @throws OperationCanceledException if the monitor is canceled before all checksums are
+     *     calculated
+     */
+    private void awaitChecksums(final IProgressMonitor monitor)
+        throws IOException, OperationCanceledException {
+      final int files = pendingChecksums.size();
+
+      monitor.beginTask("Calculating checksums...", files);
+
+      for (int done = 0; done < files; ) {
+        if (monitor.isCanceled())
+          throw new OperationCanceledException("calculation of checksums was canceled");
+
+        final Future<IFile> checksum;
+
+        try {
+          checksum = completionService.poll(CANCELLATION_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("interrupted while calculating checksums", e);
+        }
+
+        if (checksum == null) continue;
+
+        final IFile file;
+
+        try {
+          file = checksum.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("interrupted while calculating checksums", e);
+        } catch (ExecutionException e) {
+          throw new IOException("failed to calculate checksum", e.getCause());
+        }
 
-    for (IFile file : files) {
-      try {
         monitor.subTask(
             file.getReferencePoint().getName() + ": " + file.getReferencePointRelativePath());
 
-        MetaData data = list.getMetaData(file.getReferencePointRelativePath().toPortableString());
+        monitor.worked(1);
+        done++;
+      }
+    }
+
+    /** Cancels the calculation of all checksums that are not calculated yet. */
+    private void cancel() {
+      for (Future<IFile> checksum : pendingChecksums) checksum.cancel(false);
+    }
 
+    /**
+     * Calculates the checksum of the given file and stores it in the given meta data.
+     *
+     * @param file the file for which to calculate the checksum
+     * @param data the meta data of the file
+     */
+    private void calculateChecksum(final IFile file, final MetaData data) {
+      try {
         Long checksum = null;
 
         if (checksumCache != null) checksum = checksumCache.getChecksum(file);
@@ -172,8 +278,6 @@ public class FileListFactory {
       } catch (IOException e) {
         log.error(e);
       }
-
-      monitor.worked(1);
     }
   }
 }
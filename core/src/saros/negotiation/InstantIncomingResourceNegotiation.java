@@ -19,6 +19,7 @@ import saros.net.IReceiver;
 import saros.net.ITransmitter;
 import saros.net.xmpp.JID;
 import saros.net.xmpp.filetransfer.XMPPFileTransferManager;
+import saros.net.xmpp.filetransfer.XMPPFileTransferRequest;
 import saros.observables.FileReplacementInProgressObservable;
 import saros.session.ISarosSession;
 import saros.session.ISarosSessionManager;
@@ -79,15 +80,37 @@ public class InstantIncomingResourceNegotiation extends AbstractIncomingResource
     monitor.subTask("Host is starting to send...");
     log.debug(this + ": Host is starting to send...");
 
-    try (InputStream transmissionStream = expectedTransfer.get().acceptStream();
-        CountingInputStream countStream = new CountingInputStream(transmissionStream);
-        IncomingStreamProtocol isp = new IncomingStreamProtocol(countStream, session, monitor)) {
-      isp.receiveStream();
-      log.debug("stream bytes received: " + countStream.getByteCount());
+    XMPPFileTransferRequest request;
+
+    try {
+      request = expectedTransfer.get();
     } catch (InterruptedException | ExecutionException e) {
       throw new LocalCancellationException(e.getMessage(), CancelOption.NOTIFY_PEER);
     }
 
+    int attempt = 0;
+    int receivedFileCount = 0;
+    boolean partiallyReceived = false;
+
+    /* an interrupted transfer is resumed after the last completely received file */
+    while (true) {
+      try (InputStream transmissionStream = request.acceptStream();
+          CountingInputStream countStream = new CountingInputStream(transmissionStream);
+          IncomingStreamProtocol isp =
+              new IncomingStreamProtocol(countStream, session, localSources, monitor)) {
+        try {
+          isp.receiveStream();
+        } finally {
+          receivedFileCount += isp.getReceivedFileCount();
+          partiallyReceived = isp.hasPartiallyReceivedFile();
+        }
+        log.debug("stream bytes received: " + countStream.getByteCount());
+        break;
+      } catch (IOException e) {
+        request = resumeTransfer(++attempt, receivedFileCount, partiallyReceived, e);
+      }
+    }
+
     log.debug(this + ": stream transmission done");
     monitor.done();
   }
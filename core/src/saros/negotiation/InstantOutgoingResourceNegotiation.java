@@ -4,18 +4,21 @@ import java.io.IOException;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.log4j.Logger;
+import saros.activities.TextEditActivity;
+import saros.communication.extensions.ResumeResourceTransferExtension;
+import saros.editor.FollowModeManager;
+import saros.editor.FollowModeStates;
 import saros.editor.IEditorManager;
 import saros.editor.ISharedEditorListener;
+import saros.editor.remote.EditorState;
 import saros.editor.remote.UserEditorStateManager;
 import saros.exceptions.LocalCancellationException;
 import saros.exceptions.SarosCancellationException;
@@ -25,6 +28,7 @@ import saros.filesystem.IWorkspace;
 import saros.filesystem.checksum.IChecksumCache;
 import saros.monitoring.IProgressMonitor;
 import saros.negotiation.NegotiationTools.CancelOption;
+import saros.negotiation.delta.FileSignature;
 import saros.negotiation.stream.OutgoingStreamProtocol;
 import saros.net.IReceiver;
 import saros.net.ITransmitter;
@@ -41,18 +45,38 @@ public class InstantOutgoingResourceNegotiation extends AbstractOutgoingResource
 
   private static final Logger log = Logger.getLogger(InstantOutgoingResourceNegotiation.class);
 
-  /** used as LIFO queue * */
-  private final Deque<IFile> openedFiles = new LinkedBlockingDeque<>();
+  /** decides which file is sent next, may change while sending * */
+  private final TransferScheduler scheduler = new TransferScheduler();
 
-  private Set<IFile> transferList;
-  private Set<IFile> transmittedFiles;
+  /** files that are or were opened or edited, their editors are saved before sending * */
+  private final Set<IFile> editedFiles = ConcurrentHashMap.newKeySet();
 
-  /** receive open editors to prioritize these files * */
+  /** reference points whose editors were saved * */
+  private final Set<IReferencePoint> savedReferencePoints = new HashSet<>();
+
+  /** transmitted files in the order they were sent, used to resume an interrupted transfer * */
+  private final List<IFile> transmissionOrder = new ArrayList<>();
+
+  /** signatures of old versions of files the client has, these files are sent as delta * */
+  private final Map<IFile, FileSignature> fileSignatures = new HashMap<>();
+
+  /** finds files the client has or that have the same content as another file * */
+  private final ContentDeduplicator<IFile> deduplicator = new ContentDeduplicator<>();
+
+  /** transmitted files that may have the same content as other files by their content hashes * */
+  private final Map<String, IFile> transmittedFilesByHash = new HashMap<>();
+
+  /** receive activated and edited editors to prioritize these files * */
   private final ISharedEditorListener listener =
       new ISharedEditorListener() {
         @Override
         public void editorActivated(User user, IFile file) {
-          fileOpened(file);
+          prioritize(file, TransferScheduler.ACTIVE_EDITOR);
+        }
+
+        @Override
+        public void textEdited(TextEditActivity textEdit) {
+          prioritize(textEdit.getResource(), TransferScheduler.MODIFIED);
         }
       };
 
@@ -94,9 +118,25 @@ public class InstantOutgoingResourceNegotiation extends AbstractOutgoingResource
 
     /* get all opened editors */
     editorManager.addSharedEditorListener(listener);
-    Set<IFile> openEditors = session.getComponent(UserEditorStateManager.class).getOpenEditors();
-    for (IFile remoteOpenFile : openEditors) fileOpened(remoteOpenFile);
-    for (IFile localOpenFile : editorManager.getOpenEditors()) fileOpened(localOpenFile);
+    UserEditorStateManager editorStates = session.getComponent(UserEditorStateManager.class);
+    for (IFile remoteOpenFile : editorStates.getOpenEditors())
+      prioritize(remoteOpenFile, TransferScheduler.OPEN_EDITOR);
+    for (IFile localOpenFile : editorManager.getOpenEditors())
+      prioritize(localOpenFile, TransferScheduler.OPEN_EDITOR);
+
+    /* the active editors of followed users are shown to their followers too */
+    FollowModeStates followModeStates =
+        session.getComponent(FollowModeManager.class).getFollowModeStates();
+    for (User user : session.getRemoteUsers()) {
+      EditorState activeEditor = editorStates.getState(user).getActiveEditorState();
+      if (activeEditor == null) continue;
+
+      prioritize(
+          activeEditor.getFile(),
+          followModeStates.getFollower(user) != null
+              ? TransferScheduler.FOLLOWED_EDITOR | TransferScheduler.ACTIVE_EDITOR
+              : TransferScheduler.ACTIVE_EDITOR);
+    }
   }
 
   @Override
@@ -111,10 +151,7 @@ public class InstantOutgoingResourceNegotiation extends AbstractOutgoingResource
     if (remoteUser == null)
       throw new LocalCancellationException(null, CancelOption.DO_NOT_NOTIFY_PEER);
 
-    int fileCount = 0;
     for (final FileList list : fileLists) {
-      fileCount += list.getPaths().size();
-
       final String referencePointID = list.getReferencePointID();
       final IReferencePoint referencePoint =
           resourceSharingData.getReferencePoint(referencePointID);
@@ -125,34 +162,56 @@ public class InstantOutgoingResourceNegotiation extends AbstractOutgoingResource
             CancelOption.NOTIFY_PEER);
     }
 
-    createTransferList(fileLists, fileCount);
-    transmittedFiles = new HashSet<>(fileCount * 2);
+    createTransferList(fileLists);
+
+    deduplicator.run();
   }
 
   @Override
   protected void transfer(IProgressMonitor monitor, List<FileList> fileLists)
       throws SarosCancellationException, IOException {
-    if (transferList.isEmpty()) return;
+    if (scheduler.size() == 0) return;
 
     log.debug(this + ": file transfer start");
     assert fileTransferManager != null;
 
     String message = "Sending files to " + getPeer().getName() + "...";
-    monitor.beginTask(message, transferList.size());
+    monitor.beginTask(message, scheduler.size());
 
+    int attempt = 0;
+    long writtenBytes = 0;
+
+    while (true) {
+      try {
+        writtenBytes += sendStream(attempt, monitor);
+        break;
+      } catch (IOException e) {
+        ResumeResourceTransferExtension resumption = awaitTransferResumption(attempt + 1, e);
+        attempt = resumption.getAttempt();
+        resumeAt(resumption.getCheckpoint(), resumption.isPartiallyReceived());
+      }
+    }
+
+    monitor.done();
+    log.debug(this + ": file transfer done, " + writtenBytes + " bytes sent");
+  }
+
+  /** sends all files that were not transmitted yet and returns the number of sent bytes * */
+  private long sendStream(int attempt, IProgressMonitor monitor)
+      throws SarosCancellationException, IOException {
     long writtenBytes = 0;
     try (PipedInputStream in = new PipedInputStream();
         CountingOutputStream out = new CountingOutputStream(new PipedOutputStream(in)); ) {
 
       monitor.subTask("waiting for client to accept file transfer");
       XMPPFileTransfer transfer =
-          fileTransferManager.streamSendStart(getPeer(), TRANSFER_ID_PREFIX + getID(), in);
+          fileTransferManager.streamSendStart(getPeer(), getTransferID(attempt), in);
       transfer.waitForTransferStart(monitor::isCanceled);
 
       checkCancellation(CancelOption.NOTIFY_PEER);
 
       OutgoingStreamProtocol osp = new OutgoingStreamProtocol(out, resourceSharingData, monitor);
-      sendRemainingPreferOpenedFirst(osp);
+      sendRemaining(osp);
       osp.close();
 
       /* await sending is done before closing stream */
@@ -172,8 +231,27 @@ public class InstantOutgoingResourceNegotiation extends AbstractOutgoingResource
       writtenBytes = out.getByteCount();
     }
 
-    monitor.done();
-    log.debug(this + ": file transfer done, " + writtenBytes + " bytes sent");
+    return writtenBytes;
+  }
+
+  /**
+   * forgets the transmission of all files after the given number of files the client received
+   * completely, so these files are sent again *
+   */
+  private void resumeAt(long receivedFileCount, boolean partiallyReceived) throws IOException {
+    if (receivedFileCount < 0 || receivedFileCount > transmissionOrder.size())
+      throw new IOException("cannot resume file transfer at file " + receivedFileCount);
+
+    List<IFile> lostFiles =
+        transmissionOrder.subList((int) receivedFileCount, transmissionOrder.size());
+
+    /* the client may have written parts of the interrupted file, so it is no base for a delta */
+    if (partiallyReceived && !lostFiles.isEmpty()) fileSignatures.remove(lostFiles.get(0));
+
+    for (IFile file : lostFiles) scheduler.reschedule(file);
+
+    transmittedFilesByHash.values().removeAll(lostFiles);
+    lostFiles.clear();
   }
 
   @Override
@@ -186,58 +264,77 @@ public class InstantOutgoingResourceNegotiation extends AbstractOutgoingResource
     super.cleanup(monitor);
   }
 
-  private void createTransferList(List<FileList> fileLists, int fileCount) {
-    List<IFile> files = new ArrayList<>(fileCount);
+  private void createTransferList(List<FileList> fileLists) {
     for (final FileList list : fileLists) {
-      IReferencePoint referencePoint =
-          resourceSharingData.getReferencePoint(list.getReferencePointID());
-      for (String file : list.getPaths()) {
-        files.add(referencePoint.getFile(file));
+      String referencePointID = list.getReferencePointID();
+      IReferencePoint referencePoint = resourceSharingData.getReferencePoint(referencePointID);
+      for (String path : list.getPaths()) {
+        IFile file = referencePoint.getFile(path);
+        scheduler.add(file, getSize(file), file.getReferencePointRelativePath().segmentCount());
+
+        if (ContentDeduplicator.ENABLED)
+          deduplicator.add(
+              file, file, getSentChecksum(referencePointID, path), list.getContentHash(path));
+
+        FileSignature signature = list.getSignature(path);
+        if (signature != null) fileSignatures.put(file, signature);
       }
     }
+  }
+
+  private void prioritize(IFile file, int reason) {
+    if (file == null) return;
 
-    /* sort hierarchy based, top files are seen first in project explorer */
-    Collections.sort(
-        files,
-        new Comparator<IFile>() {
-          @Override
-          public int compare(IFile a, IFile b) {
-            int lenA = a.getReferencePointRelativePath().segmentCount();
-            int lenB = b.getReferencePointRelativePath().segmentCount();
-            return Integer.valueOf(lenA).compareTo(Integer.valueOf(lenB));
-          }
-        });
-
-    /* LinkedHashSet for fast lookup while keeping sort order */
-    transferList = new LinkedHashSet<>(files);
+    editedFiles.add(file);
+    scheduler.prioritize(file, reason);
+    log.debug(this + ": prioritized " + file + " for reason " + reason);
   }
 
-  private void fileOpened(IFile file) {
-    if (file != null) {
-      openedFiles.addFirst(file);
-      log.debug(this + ": added " + file + " to open files queue");
+  /**
+   * sends all files in the order of the scheduler, which is asked again before each file as the
+   * users may open or edit other files meanwhile *
+   */
+  private void sendRemaining(OutgoingStreamProtocol osp)
+      throws IOException, LocalCancellationException {
+    IFile file;
+    while ((file = scheduler.poll()) != null) {
+      /* opened files could be changed meanwhile */
+      if (editedFiles.contains(file) && savedReferencePoints.add(file.getReferencePoint()))
+        editorManager.saveEditors(file.getReferencePoint());
+
+      send(osp, file);
+      transmissionOrder.add(file);
     }
   }
 
-  private void sendRemainingPreferOpenedFirst(OutgoingStreamProtocol osp)
+  /** sends the file as copy if the client has its content or it was transmitted before * */
+  private void send(OutgoingStreamProtocol osp, IFile file)
       throws IOException, LocalCancellationException {
-    for (IFile file : transferList) {
-      while (!openedFiles.isEmpty()) {
-        IFile openFile = openedFiles.poll();
-        /* open files could be changed meanwhile */
-        editorManager.saveEditors(openFile.getReferencePoint());
-        sendIfRequired(osp, openFile);
-      }
+    if (deduplicator.isLocallyAvailable(file)) {
+      osp.streamCopy(file, null);
+      return;
+    }
 
-      sendIfRequired(osp, file);
+    String hash = deduplicator.getHash(file);
+    IFile source = hash != null ? transmittedFilesByHash.get(hash) : null;
+
+    if (source != null) {
+      osp.streamCopy(file, source);
+      return;
     }
+
+    osp.streamFile(file, fileSignatures.get(file));
+
+    if (hash != null) transmittedFilesByHash.put(hash, file);
   }
 
-  private void sendIfRequired(OutgoingStreamProtocol osp, IFile file)
-      throws IOException, LocalCancellationException {
-    if (transferList.contains(file) && !transmittedFiles.contains(file)) {
-      osp.streamFile(file);
-      transmittedFiles.add(file);
+  /** returns the size of the file or a large value if it is unknown, so it is sent late * */
+  private static long getSize(IFile file) {
+    try {
+      return file.getSize();
+    } catch (IOException e) {
+      log.warn("failed to get size of " + file, e);
+      return Long.MAX_VALUE;
     }
   }
 }
@@ -45,6 +45,14 @@ public abstract class ResourceNegotiation extends Negotiation {
   protected static final long PACKET_TIMEOUT =
       Long.getLong("saros.negotiation.resource.PACKET_TIMEOUT", 30000L);
 
+  /** Maximum number of times an interrupted file transfer is resumed */
+  protected static final int MAX_TRANSFER_RESUMPTIONS =
+      Integer.getInteger("saros.negotiation.resource.MAX_TRANSFER_RESUMPTIONS", 3);
+
+  /** Timeout for resuming an interrupted file transfer */
+  protected static final long TRANSFER_RESUMPTION_TIMEOUT =
+      Long.getLong("saros.negotiation.resource.TRANSFER_RESUMPTION_TIMEOUT", 60000L);
+
   protected final ISarosSessionManager sessionManager;
 
   protected final ISarosSession session;
@@ -87,6 +95,18 @@ public abstract class ResourceNegotiation extends Negotiation {
     return sessionID;
   }
 
+  /**
+   * Returns the id of the file transfer of this negotiation.
+   *
+   * @param attempt the number of the transfer attempt, 0 for the initial transfer and above for
+   *     resumed transfers
+   */
+  protected final String getTransferID(final int attempt) {
+    final String transferID = TRANSFER_ID_PREFIX + getID();
+
+    return attempt == 0 ? transferID : transferID + "/" + attempt;
+  }
+
   @Override
   protected void notifyCancellation(SarosCancellationException exception) {
 
@@ -0,0 +1,144 @@
+package saros.negotiation;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import saros.filesystem.IFile;
+
+/**
+ * Decides the order in which the files of an instant resource negotiation are sent. Every file has
+ * a weight, i.e. the sum of the reasons why the remote side may need it soon, and files are sent by
+ * descending weight. Within the same weight, smaller files are preferred over larger ones and files
+ * higher in the hierarchy over deeper nested ones.
+ *
+ * <p>The weights may change while the files are sent, e.g. if a user activates an editor. The
+ * scheduler is thread safe.
+ */
+final class TransferScheduler {
+
+  /** The file is the active editor of a user that is followed by another user. */
+  static final int FOLLOWED_EDITOR = 16;
+
+  /** The file is the active editor of a user. */
+  static final int ACTIVE_EDITOR = 8;
+
+  /** The file is opened in an editor of a user. */
+  static final int OPEN_EDITOR = 4;
+
+  /** The file was modified since the negotiation started. */
+  static final int MODIFIED = 2;
+
+  private static final class Entry implements Comparable<Entry> {
+    private final IFile file;
+    private final double smallness;
+    private final int depth;
+    private final long sequence;
+
+    private int weight;
+
+    private Entry(IFile file, long size, int depth, long sequence, int weight) {
+      this.file = file;
+      this.smallness = getSmallness(size);
+      this.depth = depth;
+      this.sequence = sequence;
+      this.weight = weight;
+    }
+
+    private double getPriority() {
+      return weight + smallness;
+    }
+
+    @Override
+    public int compareTo(Entry other) {
+      int result = Double.compare(other.getPriority(), getPriority());
+
+      if (result == 0) result = Integer.compare(depth, other.depth);
+
+      if (result == 0) result = Long.compare(sequence, other.sequence);
+
+      return result;
+    }
+  }
+
+  /** All added files */
+  private final Map<IFile, Entry> entries = new HashMap<>();
+
+  /** Weights of files that were prioritized before they were added */
+  private final Map<IFile, Integer> pendingWeights = new HashMap<>();
+
+  /** Files that are still to be sent */
+  private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+
+  private long sequence;
+
+  /**
+   * Adds a file to send.
+   *
+   * @param file the file
+   * @param size the size of the file in bytes
+   * @param depth the number of segments of the reference point relative path of the file
+   */
+  synchronized void add(IFile file, long size, int depth) {
+    final Integer weight = pendingWeights.remove(file);
+
+    final Entry entry = new Entry(file, size, depth, sequence++, weight != null ? weight : 0);
+
+    entries.put(file, entry);
+    queue.add(entry);
+  }
+
+  /**
+   * Raises the weight of the given file by the given reason. The weight is not raised if the file
+   * was already prioritized for that reason.
+   *
+   * @param file the file, it does not have to be added yet
+   * @param reason one of the reasons, e.g. {@link #ACTIVE_EDITOR}
+   */
+  synchronized void prioritize(IFile file, int reason) {
+    final Entry entry = entries.get(file);
+
+    if (entry == null) {
+      pendingWeights.merge(file, reason, (a, b) -> a | b);
+      return;
+    }
+
+    if ((entry.weight & reason) != 0) return;
+
+    final boolean isQueued = queue.remove(entry);
+
+    entry.weight |= reason;
+
+    if (isQueued) queue.add(entry);
+  }
+
+  /**
+   * Removes the file with the highest priority from the files to send.
+   *
+   * @return the file or <code>null</code> if all files were sent
+   */
+  synchronized IFile poll() {
+    final Entry entry = queue.poll();
+
+    return entry != null ? entry.file : null;
+  }
+
+  /**
+   * Adds a file again that was already returned by {@link #poll()}, e.g. because it was not
+   * received.
+   */
+  synchronized void reschedule(IFile file) {
+    final Entry entry = entries.get(file);
+
+    if (entry != null && !queue.contains(entry)) queue.add(entry);
+  }
+
+  /** Returns the number of added files. */
+  synchronized int size() {
+    return entries.size();
+  }
+
+  /** Returns a value between 0 and 1 that is the larger the smaller the given size is. */
+  private static double getSmallness(long size) {
+    return 1 / (1 + Math.log1p(Math.max(size, 0) / 1024.0) / Math.log(2));
+  }
+}
@@ -0,0 +1,299 @@
+package saros.negotiation;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Writes zip archives whose entries are already deflated, e.g. by several threads at once. All
+ * entries use the deflate method and UTF-8 encoded names. Zip64 extensions are written if the
+ * archive gets too large or contains too many entries for the original format.
+ *
+ * <p>An entry is either written at once by {@link #writeEntry} if its checksum and sizes are known
+ * in advance, or piecewise by {@link #beginEntry}, {@link #writeData} and {@link #endEntry} in
+ * which case its checksum and sizes are written in a data descriptor after the data.
+ */
+final class ZipArchiveWriter implements Closeable {
+
+  private static final int LOCAL_FILE_HEADER = 0x04034b50;
+  private static final int DATA_DESCRIPTOR = 0x08074b50;
+  private static final int CENTRAL_FILE_HEADER = 0x02014b50;
+  private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+  private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR = 0x07064b50;
+  private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+
+  private static final int VERSION = 20;
+  private static final int VERSION_ZIP64 = 45;
+
+  private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+  private static final int FLAG_UTF8 = 0x0800;
+
+  private static final int METHOD_DEFLATED = 8;
+
+  private static final short ZIP64_EXTRA_FIELD = 0x0001;
+
+  private static final long MAX_32 = 0xFFFFFFFFL;
+  private static final int MAX_16 = 0xFFFF;
+
+  private static final class Entry {
+    private final byte[] name;
+    private final int flags;
+    private final long offset;
+
+    private long crc;
+    private long size;
+    private long compressedSize;
+
+    private Entry(byte[] name, int flags, long offset) {
+      this.name = name;
+      this.flags = flags;
+      this.offset = offset;
+    }
+  }
+
+  private final OutputStream out;
+
+  private final ByteBuffer header = ByteBuffer.allocate(128).order(ByteOrder.LITTLE_ENDIAN);
+
+  private final List<Entry> entries = new ArrayList<>();
+
+  private final int dosTime = toDosTime(System.currentTimeMillis());
+
+  /** Number of bytes written so far */
+  private long offset;
+
+  private Entry currentEntry;
+
+  ZipArchiveWriter(final OutputStream out, final int bufferSize) {
+    this.out = new BufferedOutputStream(out, bufferSize);
+  }
+
+  /**
+   * Writes a complete entry.
+   *
+   * @param name the name of the entry
+   * @param crc the CRC-32 checksum of the uncompressed data
+   * @param size the size of the uncompressed data
+   * @param data the deflated data
+   * @param length the length of the deflated data
+   */
+  void writeEntry(String name, long crc, long size, byte[] data, int length) throws IOException {
+    final Entry entry = startEntry(name, FLAG_UTF8);
+
+    entry.crc = crc;
+    entry.size = size;
+    entry.compressedSize = length;
+
+    writeLocalFileHeader(entry);
+    write(data, 0, length);
+
+    entries.add(entry);
+  }
+
+  /** Starts an entry whose data is written by {@link #writeData}. */
+  void beginEntry(String name) throws IOException {
+    if (currentEntry != null) throw new IllegalStateException("entry is not ended");
+
+    currentEntry = startEntry(name, FLAG_UTF8 | FLAG_DATA_DESCRIPTOR);
+
+    writeLocalFileHeader(currentEntry);
+  }
+
+  /** Writes deflated data of the entry started by {@link #beginEntry}. */
+  void writeData(byte[] data, int off, int length) throws IOException {
+    if (currentEntry == null) throw new IllegalStateException("no entry begun");
+
+    write(data, off, length);
+    currentEntry.compressedSize += length;
+  }
+
+  /**
+   * Ends the entry started by {@link #beginEntry}.
+   *
+   * @param crc the CRC-32 checksum of the uncompressed data
+   * @param size the size of the uncompressed data
+   */
+  void endEntry(long crc, long size) throws IOException {
+    if (currentEntry == null) throw new IllegalStateException("no entry begun");
+
+    final Entry entry = currentEntry;
+
+    currentEntry = null;
+
+    entry.crc = crc;
+    entry.size = size;
+
+    header.clear();
+    header.putInt(DATA_DESCRIPTOR);
+    header.putInt((int) entry.crc);
+
+    // the same condition as used by java.util.zip.ZipInputStream
+    if (entry.size > MAX_32 || entry.compressedSize > MAX_32) {
+      header.putLong(entry.compressedSize);
+      header.putLong(entry.size);
+    } else {
+      header.putInt((int) entry.compressedSize);
+      header.putInt((int) entry.size);
+    }
+
+    writeHeader();
+
+    entries.add(entry);
+  }
+
+  /** Writes the central directory. No entries can be written afterwards. */
+  void finish() throws IOException {
+    if (currentEntry != null) throw new IllegalStateException("entry is not ended");
+
+    final long centralDirectoryOffset = offset;
+
+    for (Entry entry : entries) writeCentralFileHeader(entry);
+
+    final long centralDirectorySize = offset - centralDirectoryOffset;
+
+    final boolean zip64 =
+        entries.size() >= MAX_16
+            || centralDirectoryOffset >= MAX_32
+            || centralDirectorySize >= MAX_32;
+
+    if (zip64) {
+      final long zip64EndOffset = offset;
+
+      header.clear();
+      header.putInt(ZIP64_END_OF_CENTRAL_DIRECTORY);
+      header.putLong(44);
+      header.putShort((short) VERSION_ZIP64);
+      header.putShort((short) VERSION_ZIP64);
+      header.putInt(0);
+      header.putInt(0);
+      header.putLong(entries.size());
+      header.putLong(entries.size());
+      header.putLong(centralDirectorySize);
+      header.putLong(centralDirectoryOffset);
+      writeHeader();
+
+      header.clear();
+      header.putInt(ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR);
+      header.putInt(0);
+      header.putLong(zip64EndOffset);
+      header.putInt(1);
+      writeHeader();
+    }
+
+    header.clear();
+    header.putInt(END_OF_CENTRAL_DIRECTORY);
+    header.putShort((short) 0);
+    header.putShort((short) 0);
+    header.putShort((short) Math.min(entries.size(), MAX_16));
+    header.putShort((short) Math.min(entries.size(), MAX_16));
+    header.putInt((int) Math.min(centralDirectorySize, MAX_32));
+    header.putInt((int) Math.min(centralDirectoryOffset, MAX_32));
+    header.putShort((short) 0);
+    writeHeader();
+
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+
+  private Entry startEntry(final String name, final int flags) {
+    return new Entry(name.getBytes(StandardCharsets.UTF_8), flags, offset);
+  }
+
+  private void writeLocalFileHeader(final Entry entry) throws IOException {
+    final boolean hasDataDescriptor = (entry.flags & FLAG_DATA_DESCRIPTOR) != 0;
+
+    header.clear();
+    header.putInt(LOCAL_FILE_HEADER);
+    header.putShort((short) VERSION);
+    header.putShort((short) entry.flags);
+    header.putShort((short) METHOD_DEFLATED);
+    header.putInt(dosTime);
+    header.putInt(hasDataDescriptor ? 0 : (int) entry.crc);
+    header.putInt(hasDataDescriptor ? 0 : (int) entry.compressedSize);
+    header.putInt(hasDataDescriptor ? 0 : (int) entry.size);
+    header.putShort((short) entry.name.length);
+    header.putShort((short) 0);
+    writeHeader();
+
+    write(entry.name, 0, entry.name.length);
+  }
+
+  private void writeCentralFileHeader(final Entry entry) throws IOException {
+    int zip64Fields = 0;
+
+    if (entry.size >= MAX_32) zip64Fields++;
+    if (entry.compressedSize >= MAX_32) zip64Fields++;
+    if (entry.offset >= MAX_32) zip64Fields++;
+
+    final int version = zip64Fields > 0 ? VERSION_ZIP64 : VERSION;
+
+    header.clear();
+    header.putInt(CENTRAL_FILE_HEADER);
+    header.putShort((short) version);
+    header.putShort((short) version);
+    header.putShort((short) entry.flags);
+    header.putShort((short) METHOD_DEFLATED);
+    header.putInt(dosTime);
+    header.putInt((int) entry.crc);
+    header.putInt((int) Math.min(entry.compressedSize, MAX_32));
+    header.putInt((int) Math.min(entry.size, MAX_32));
+    header.putShort((short) entry.name.length);
+    header.putShort((short) (zip64Fields > 0 ? 4 + zip64Fields * 8 : 0));
+    header.putShort((short) 0);
+    header.putShort((short) 0);
+    header.putShort((short) 0);
+    header.putInt(0);
+    header.putInt((int) Math.min(entry.offset, MAX_32));
+    writeHeader();
+
+    write(entry.name, 0, entry.name.length);
+
+    if (zip64Fields == 0) return;
+
+    header.clear();
+    header.putShort(ZIP64_EXTRA_FIELD);
+    header.putShort((short) (zip64Fields * 8));
+
+    if (entry.size >= MAX_32) header.putLong(entry.size);
+    if (entry.compressedSize >= MAX_32) header.putLong(entry.compressedSize);
+    if (entry.offset >= MAX_32) header.putLong(entry.offset);
+
+    writeHeader();
+  }
+
+  private void writeHeader() throws IOException {
+    write(header.array(), 0, header.position());
+  }
+
+  private void write(final byte[] data, final int off, final int length) throws IOException {
+    out.write(data, off, length);
+    offset += length;
+  }
+
+  private static int toDosTime(final long time) {
+    final Calendar calendar = Calendar.getInstance();
+    calendar.setTimeInMillis(time);
+
+    final int year = calendar.get(Calendar.YEAR);
+
+    if (year < 1980) return (1 << 21) | (1 << 16);
+
+    return (year - 1980) << 25
+        | (calendar.get(Calendar.MONTH) + 1) << 21
+        | calendar.get(Calendar.DAY_OF_MONTH) << 16
+        | calendar.get(Calendar.HOUR_OF_DAY) << 11
+        | calendar.get(Calendar.MINUTE) << 5
+        | calendar.get(Calendar.SECOND) >> 1;
+  }
+}
@@ -0,0 +1,160 @@
+package saros.negotiation.delta;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import saros.filesystem.IFile;
+
+/**
+ * Decodes a delta created by a {@link DeltaEncoder}, i.e. returns the current content of a file
+ * given the delta and the old version of the file the signature was created of. The delta is read
+ * exactly up to its end.
+ */
+public class DeltaDecoder extends InputStream {
+
+  private static final Logger log = Logger.getLogger(DeltaDecoder.class);
+
+  private static final int MD5_LENGTH = 16;
+
+  private final RandomAccessFile oldVersion;
+
+  private final File oldVersionCopy;
+
+  private final DataInputStream delta;
+
+  private final MessageDigest contentDigest = FileSignature.createDigest();
+
+  private int blockSize = -1;
+
+  /** Number of bytes left of the current operation */
+  private long remaining;
+
+  private boolean isCopying;
+
+  private boolean isFinished;
+
+  private boolean isClosed;
+
+  private DeltaDecoder(final File oldVersionCopy, final InputStream delta) throws IOException {
+    this.oldVersion = new RandomAccessFile(oldVersionCopy, "r");
+    this.oldVersionCopy = oldVersionCopy;
+    this.delta = new DataInputStream(delta);
+  }
+
+  /**
+   * Returns a stream of the content that is decoded from the given delta and the current content of
+   * the given file. The current content is copied to a temporary file first, so the file can be
+   * overwritten with the stream.
+   *
+   * @param file the file whose content the signature was created of
+   * @param delta the delta which is read until its end but not closed
+   */
+  public static DeltaDecoder create(final IFile file, final InputStream delta) throws IOException {
+    final File copy = File.createTempFile("saros_delta_", null);
+
+    try {
+      try (InputStream in = file.getContents();
+          OutputStream out = new FileOutputStream(copy)) {
+        IOUtils.copy(in, out);
+      }
+
+      return new DeltaDecoder(copy, delta);
+    } catch (IOException | RuntimeException e) {
+      deleteCopy(copy);
+      throw e;
+    }
+  }
+
+  @Override
+  public int read() throws IOException {
+    final byte[] b = new byte[1];
+
+    return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+  }
+
+  @Override
+  public int read(final byte[] b, final int off, final int len) throws IOException {
+    if (len == 0) return 0;
+
+    while (remaining == 0) {
+      if (isFinished) return -1;
+
+      readOperation();
+    }
+
+    final int length = (int) Math.min(len, remaining);
+
+    final int read = isCopying ? oldVersion.read(b, off, length) : delta.read(b, off, length);
+
+    if (read == -1)
+      throw new EOFException(
+          isCopying ? "old version of the file is too short" : "unexpected end of delta");
+
+    contentDigest.update(b, off, read);
+    remaining -= read;
+
+    return read;
+  }
+
+  /** Closes the old version of the file and deletes its copy. The delta is not closed. */
+  @Override
+  public void close() throws IOException {
+    if (isClosed) return;
+
+    isClosed = true;
+
+    try {
+      oldVersion.close();
+    } finally {
+      deleteCopy(oldVersionCopy);
+    }
+  }
+
+  private void readOperation() throws IOException {
+    if (blockSize == -1) blockSize = delta.readInt();
+
+    final int operation = delta.readUnsignedByte();
+
+    switch (operation) {
+      case DeltaEncoder.COPY:
+        final int block = delta.readInt();
+        final int count = delta.readInt();
+
+        oldVersion.seek((long) block * blockSize);
+        remaining = (long) count * blockSize;
+        isCopying = true;
+        break;
+
+      case DeltaEncoder.LITERAL:
+        remaining = delta.readInt();
+        isCopying = false;
+        break;
+
+      case DeltaEncoder.END:
+        final byte[] expectedDigest = new byte[MD5_LENGTH];
+        delta.readFully(expectedDigest);
+
+        isFinished = true;
+
+        if (!MessageDigest.isEqual(expectedDigest, contentDigest.digest()))
+          throw new IOException("decoded content does not match the checksum of the delta");
+
+        break;
+
+      default:
+        throw new IOException("invalid delta operation: " + operation);
+    }
+  }
+
+  private static void deleteCopy(final File copy) {
+    if (!copy.delete()) log.warn("could not delete temporary file: " + copy.getAbsolutePath());
+  }
+}
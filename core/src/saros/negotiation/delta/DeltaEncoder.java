@@ -0,0 +1,276 @@
+package saros.negotiation.delta;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes the content of a file as a delta to an old version of the file whose {@link FileSignature
+ * signature} is given, in the way of rsync. Blocks of the content that match a block of the old
+ * version are encoded as references to the block, all other bytes are encoded literally. The
+ * encoded delta is read from this stream and decoded by a {@link DeltaDecoder}.
+ *
+ * <p>The delta is self-delimiting and consists of the block size followed by a sequence of
+ * operations:
+ *
+ * <ul>
+ *   <li>{@link #COPY}, the index of the first block and the number of consecutive blocks to copy
+ *       from the old version
+ *   <li>{@link #LITERAL}, the number of bytes and the bytes themselves
+ *   <li>{@link #END} and the MD5 digest of the whole content to verify the decoded content
+ * </ul>
+ */
+public class DeltaEncoder extends InputStream {
+
+  static final int END = 0;
+  static final int COPY = 1;
+  static final int LITERAL = 2;
+
+  /** Maximum number of bytes of a literal operation */
+  private static final int MAX_LITERAL_SIZE = 64 * 1024;
+
+  /** Buffer that exposes its content to avoid copying it */
+  private static final class OperationBuffer extends ByteArrayOutputStream {
+    private byte[] getBuffer() {
+      return buf;
+    }
+  }
+
+  private final InputStream in;
+
+  private final FileSignature signature;
+
+  private final int blockSize;
+
+  /** Indices of the blocks of the old version by their weak checksums */
+  private final Map<Integer, List<Integer>> blocksByChecksum = new HashMap<>();
+
+  private final RollingChecksum checksum;
+
+  private final MessageDigest blockDigest = FileSignature.createDigest();
+
+  private final MessageDigest contentDigest = FileSignature.createDigest();
+
+  /**
+   * The read content. Bytes from {@link #literalStart} to {@link #windowStart} are not encoded yet,
+   * the window of one block starts at {@link #windowStart}, the buffer is filled up to {@link
+   * #end}.
+   */
+  private final byte[] buffer;
+
+  private int literalStart;
+  private int windowStart;
+  private int end;
+
+  private boolean isChecksumValid;
+
+  /** Whether the current window was already compared with the blocks of the old version */
+  private boolean isWindowChecked;
+
+  private boolean isEndOfContent;
+
+  /** The current run of blocks to copy */
+  private int copyStart;
+
+  private int copyCount;
+
+  private final OperationBuffer operations = new OperationBuffer();
+  private final DataOutputStream operationsOut = new DataOutputStream(operations);
+
+  /** Position of the next byte in {@link #operations} to return */
+  private int position;
+
+  private boolean isFinished;
+
+  /**
+   * @param in the current content of the file, closed along with this stream
+   * @param signature the signature of the old version of the file
+   */
+  public DeltaEncoder(final InputStream in, final FileSignature signature) throws IOException {
+    this.in = in;
+    this.signature = signature;
+    this.blockSize = signature.getBlockSize();
+    this.checksum = new RollingChecksum(blockSize);
+    this.buffer = new byte[MAX_LITERAL_SIZE + blockSize];
+
+    for (int block = 0; block < signature.getBlockCount(); block++)
+      blocksByChecksum
+          .computeIfAbsent(signature.getWeakChecksum(block), k -> new ArrayList<>(1))
+          .add(block);
+
+    operationsOut.writeInt(blockSize);
+  }
+
+  @Override
+  public int read() throws IOException {
+    final byte[] b = new byte[1];
+
+    return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+  }
+
+  @Override
+  public int read(final byte[] b, final int off, final int len) throws IOException {
+    if (len == 0) return 0;
+
+    while (position == operations.size()) {
+      if (isFinished) return -1;
+
+      operations.reset();
+      position = 0;
+
+      encode();
+    }
+
+    final int length = Math.min(len, operations.size() - position);
+
+    System.arraycopy(operations.getBuffer(), position, b, off, length);
+    position += length;
+
+    return length;
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  /** Encodes the content until at least one operation is written or the content is encoded. */
+  private void encode() throws IOException {
+    while (operations.size() == 0 && !isFinished) {
+
+      if (end - windowStart < blockSize) {
+        if (isEndOfContent) finish();
+        else fill();
+
+        continue;
+      }
+
+      if (!isChecksumValid) {
+        checksum.reset(buffer, windowStart);
+        isChecksumValid = true;
+      }
+
+      if (!isWindowChecked) {
+        final int block = findBlock();
+
+        if (block != -1) {
+          addCopy(block);
+          continue;
+        }
+
+        isWindowChecked = true;
+      }
+
+      if (windowStart + blockSize == end) {
+        if (isEndOfContent) finish();
+        else fill();
+
+        continue;
+      }
+
+      checksum.roll(buffer[windowStart], buffer[windowStart + blockSize]);
+      windowStart++;
+      isWindowChecked = false;
+
+      if (windowStart - literalStart == MAX_LITERAL_SIZE) writeLiteral(windowStart);
+    }
+  }
+
+  /** Returns the block of the old version that matches the current window or -1. */
+  private int findBlock() {
+    final List<Integer> blocks = blocksByChecksum.get(checksum.getValue());
+
+    if (blocks == null) return -1;
+
+    final long strongChecksum =
+        FileSignature.getStrongChecksum(blockDigest, buffer, windowStart, blockSize);
+
+    // prefer the block that continues the current run
+    final int nextBlock = copyStart + copyCount;
+
+    if (copyCount > 0
+        && blocks.contains(nextBlock)
+        && signature.getStrongChecksum(nextBlock) == strongChecksum) return nextBlock;
+
+    for (final int block : blocks)
+      if (signature.getStrongChecksum(block) == strongChecksum) return block;
+
+    return -1;
+  }
+
+  private void addCopy(final int block) throws IOException {
+    writeLiteral(windowStart);
+
+    if (copyCount > 0 && copyStart + copyCount == block) {
+      copyCount++;
+    } else {
+      writeCopy();
+      copyStart = block;
+      copyCount = 1;
+    }
+
+    windowStart += blockSize;
+    literalStart = windowStart;
+    isChecksumValid = false;
+  }
+
+  /** Writes the bytes from {@link #literalStart} to the given position as literal operation. */
+  private void writeLiteral(final int to) throws IOException {
+    if (to == literalStart) return;
+
+    writeCopy();
+
+    operationsOut.writeByte(LITERAL);
+    operationsOut.writeInt(to - literalStart);
+    operationsOut.write(buffer, literalStart, to - literalStart);
+
+    literalStart = to;
+  }
+
+  private void writeCopy() throws IOException {
+    if (copyCount == 0) return;
+
+    operationsOut.writeByte(COPY);
+    operationsOut.writeInt(copyStart);
+    operationsOut.writeInt(copyCount);
+
+    copyCount = 0;
+  }
+
+  private void finish() throws IOException {
+    writeLiteral(end);
+    writeCopy();
+
+    operationsOut.writeByte(END);
+    operationsOut.write(contentDigest.digest());
+
+    isFinished = true;
+  }
+
+  /** Discards the encoded bytes from the buffer and reads more content into it. */
+  private void fill() throws IOException {
+    if (literalStart > 0) {
+      System.arraycopy(buffer, literalStart, buffer, 0, end - literalStart);
+
+      windowStart -= literalStart;
+      end -= literalStart;
+      literalStart = 0;
+    }
+
+    final int read = in.read(buffer, end, buffer.length - end);
+
+    if (read == -1) {
+      isEndOfContent = true;
+      return;
+    }
+
+    contentDigest.update(buffer, end, read);
+    end += read;
+  }
+}
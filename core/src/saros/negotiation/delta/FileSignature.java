@@ -0,0 +1,134 @@
+package saros.negotiation.delta;
+
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
+import com.thoughtworks.xstream.annotations.XStreamOmitField;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * The block signature of a file, i.e. a weak rolling checksum and a strong checksum of every
+ * complete block of the file. It is sent by the side that already has an old version of a file, so
+ * the other side can encode the current version of the file as a delta which only contains the
+ * blocks that differ (see {@link DeltaEncoder}).
+ */
+@XStreamAlias("sig")
+public class FileSignature {
+
+  private static final int MIN_BLOCK_SIZE = 2 * 1024;
+  private static final int MAX_BLOCK_SIZE = 128 * 1024;
+
+  /** Bytes per block, i.e. the weak checksum and the first 8 bytes of the MD5 digest */
+  private static final int BYTES_PER_BLOCK = 4 + 8;
+
+  @XStreamAlias("bs")
+  @XStreamAsAttribute
+  private final int blockSize;
+
+  /** Base64 encoded checksums of all blocks */
+  @XStreamAlias("c")
+  private final String checksums;
+
+  @XStreamOmitField private transient ByteBuffer decodedChecksums;
+
+  private FileSignature(final int blockSize, final byte[] checksums) {
+    this.blockSize = blockSize;
+    this.checksums = Base64.getEncoder().encodeToString(checksums);
+  }
+
+  /**
+   * Creates the signature of the given file content.
+   *
+   * @param in the content of the file
+   * @param size the size of the file, used to determine the block size
+   */
+  public static FileSignature create(final InputStream in, final long size) throws IOException {
+    final int blockSize = getBlockSize(size);
+    final int blockCount = (int) (size / blockSize);
+
+    final ByteBuffer checksums = ByteBuffer.allocate(blockCount * BYTES_PER_BLOCK);
+
+    final MessageDigest digest = createDigest();
+
+    final byte[] block = new byte[blockSize];
+
+    for (int i = 0; i < blockCount && readBlock(in, block) == blockSize; i++) {
+      checksums.putInt(RollingChecksum.of(block, 0, blockSize));
+      checksums.putLong(getStrongChecksum(digest, block, 0, blockSize));
+    }
+
+    // the file may have been truncated since the size was determined
+    return new FileSignature(blockSize, Arrays.copyOf(checksums.array(), checksums.position()));
+  }
+
+  /** Returns the size of the signature of a file of the given size in bytes. */
+  public static int getSize(final long size) {
+    return (int) (size / getBlockSize(size)) * BYTES_PER_BLOCK;
+  }
+
+  /** Returns the block size for a file of the given size, i.e. its square root within bounds. */
+  static int getBlockSize(final long size) {
+    final int blockSize = (int) Math.sqrt(size) & ~7;
+
+    return Math.max(MIN_BLOCK_SIZE, Math.min(MAX_BLOCK_SIZE, blockSize));
+  }
+
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  public int getBlockCount() {
+    return getChecksums().capacity() / BYTES_PER_BLOCK;
+  }
+
+  int getWeakChecksum(final int block) {
+    return getChecksums().getInt(block * BYTES_PER_BLOCK);
+  }
+
+  long getStrongChecksum(final int block) {
+    return getChecksums().getLong(block * BYTES_PER_BLOCK + 4);
+  }
+
+  private ByteBuffer getChecksums() {
+    if (decodedChecksums == null)
+      decodedChecksums = ByteBuffer.wrap(Base64.getDecoder().decode(checksums));
+
+    return decodedChecksums;
+  }
+
+  /** Returns the first 8 bytes of the MD5 digest of the given block. */
+  static long getStrongChecksum(
+      final MessageDigest digest, final byte[] data, final int offset, final int length) {
+
+    digest.update(data, offset, length);
+    return ByteBuffer.wrap(digest.digest()).getLong();
+  }
+
+  static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform has to support MD5
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static int readBlock(final InputStream in, final byte[] block) throws IOException {
+    int length = 0;
+
+    while (length < block.length) {
+      final int read = in.read(block, length, block.length - length);
+
+      if (read == -1) break;
+
+      length += read;
+    }
+
+    return length;
+  }
+}
@@ -0,0 +1,54 @@
+package saros.negotiation.delta;
+
+/**
+ * The weak rolling checksum of rsync. It is calculated over a window of bytes which can be moved by
+ * one byte in constant time.
+ */
+final class RollingChecksum {
+
+  private final int windowSize;
+
+  private int a;
+  private int b;
+
+  RollingChecksum(final int windowSize) {
+    this.windowSize = windowSize;
+  }
+
+  /** Calculates the checksum of the window starting at the given offset. */
+  void reset(final byte[] data, final int offset) {
+    a = 0;
+    b = 0;
+
+    for (int i = 0; i < windowSize; i++) {
+      final int value = data[offset + i] & 0xFF;
+
+      a += value;
+      b += (windowSize - i) * value;
+    }
+  }
+
+  /**
+   * Moves the window by one byte.
+   *
+   * @param removed the first byte of the current window
+   * @param added the byte following the current window
+   */
+  void roll(final byte removed, final byte added) {
+    final int removedValue = removed & 0xFF;
+
+    a += (added & 0xFF) - removedValue;
+    b += a - windowSize * removedValue;
+  }
+
+  int getValue() {
+    return (b << 16) | (a & 0xFFFF);
+  }
+
+  /** Returns the checksum of the given window. */
+  static int of(final byte[] data, final int offset, final int length) {
+    final RollingChecksum checksum = new RollingChecksum(length);
+    checksum.reset(data, offset);
+    return checksum.getValue();
+  }
+}
@@ -27,11 +27,16 @@ import saros.monitoring.IProgressMonitor;
  * </tr>
  * <tr>
  * <td>{@code long}</td>
- * <td>{@code long} of <em>fileSize</em></td>
+ * <td>{@code long} of <em>fileSize</em>, {@code -1} if the content is a delta, {@code -2} if the
+ * file is a copy</td>
  * </tr>
  * <tr>
  * <td>defined by <em>fileSize</em></td>
- * <td>{@code bytestream} of <em>fileContent</em></td>
+ * <td>{@code bytestream} of <em>fileContent</em> or, if the content is a delta, the self-delimiting
+ * delta created by {@link saros.negotiation.delta.DeltaEncoder} or, if the file is a copy, the
+ * <em>referencePointID</em> and <em>fileName</em> of its source encoded via
+ * {@link java.io.DataOutputStream#writeUTF(String)}. An empty source <em>referencePointID</em>
+ * denotes a local file of the receiver.</td>
  * </tr>
  * </table>
  *
@@ -56,6 +61,12 @@ import saros.monitoring.IProgressMonitor;
 //  the used sharing model
 abstract class AbstractStreamProtocol {
 
+  /** File size that denotes that the content of the file is sent as delta */
+  static final long DELTA_ENCODED = -1;
+
+  /** File size that denotes that the file is a copy of another file */
+  static final long COPY = -2;
+
   IProgressMonitor monitor;
 
   public AbstractStreamProtocol(IProgressMonitor monitor) {
@@ -1,16 +1,22 @@
 package saros.negotiation.stream;
 
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.CountingInputStream;
 import org.apache.log4j.Logger;
 import saros.exceptions.LocalCancellationException;
 import saros.filesystem.FileSystem;
 import saros.filesystem.IFile;
 import saros.monitoring.IProgressMonitor;
 import saros.negotiation.NegotiationTools.CancelOption;
+import saros.negotiation.delta.DeltaDecoder;
 import saros.session.ISarosSession;
 
 /** Implements Stream processing in {@link AbstractStreamProtocol} format. */
@@ -20,10 +26,26 @@ public class IncomingStreamProtocol extends AbstractStreamProtocol implements Au
 
   private DataInputStream in;
   private ISarosSession session;
+  private Map<String, IFile> localSources;
+  private int receivedFileCount;
+  private boolean isWritingFile;
 
   public IncomingStreamProtocol(InputStream in, ISarosSession session, IProgressMonitor monitor) {
+    this(in, session, Collections.emptyMap(), monitor);
+  }
+
+  /**
+   * @param localSources local files with the same content as files that may be sent as copy, by the
+   *     reference point IDs and paths of the copies separated by a colon
+   */
+  public IncomingStreamProtocol(
+      InputStream in,
+      ISarosSession session,
+      Map<String, IFile> localSources,
+      IProgressMonitor monitor) {
     super(monitor);
     this.session = session;
+    this.localSources = localSources;
     this.in = new DataInputStream(in);
   }
 
@@ -55,11 +77,31 @@ public class IncomingStreamProtocol extends AbstractStreamProtocol implements Au
       FileSystem.createFolder(file);
 
       long fileSize = in.readLong();
-      try (BoundedInputStream fileIn = new BoundedInputStream(in, fileSize)) {
-        fileIn.setPropagateClose(false);
 
-        if (file.exists()) file.setContents(fileIn);
-        else file.create(fileIn);
+      isWritingFile = true;
+
+      if (fileSize == COPY) {
+        IFile source = readSource(referencePointID, fileName);
+
+        try (InputStream fileIn = source.getContents()) {
+          if (file.exists()) file.setContents(fileIn);
+          else file.create(fileIn);
+        }
+      } else if (fileSize == DELTA_ENCODED) {
+        try (InputStream fileIn = DeltaDecoder.create(file, new CloseShieldInputStream(in))) {
+          file.setContents(fileIn);
+        }
+      } else {
+        BoundedInputStream boundedIn = new BoundedInputStream(in, fileSize);
+        boundedIn.setPropagateClose(false);
+
+        try (CountingInputStream fileIn = new CountingInputStream(boundedIn)) {
+          if (file.exists()) file.setContents(fileIn);
+          else file.create(fileIn);
+
+          if (fileIn.getByteCount() != fileSize)
+            throw new EOFException("stream ended within file " + fileName);
+        }
       }
 
       if (monitor.isCanceled()) {
@@ -67,10 +109,39 @@ public class IncomingStreamProtocol extends AbstractStreamProtocol implements Au
             "User canceled transmission", CancelOption.NOTIFY_PEER);
       }
 
+      isWritingFile = false;
+      receivedFileCount++;
       monitor.worked(1);
     }
   }
 
+  /**
+   * Returns whether a file was partially written, i.e. whether its content was being received when
+   * the stream was interrupted.
+   */
+  public boolean hasPartiallyReceivedFile() {
+    return isWritingFile;
+  }
+
+  /** Returns the number of files that were received completely. */
+  public int getReceivedFileCount() {
+    return receivedFileCount;
+  }
+
+  private IFile readSource(String referencePointID, String fileName) throws IOException {
+    String sourceReferencePointID = in.readUTF();
+    String sourceFileName = in.readUTF();
+
+    IFile source =
+        sourceReferencePointID.isEmpty()
+            ? localSources.get(referencePointID + ":" + fileName)
+            : session.getReferencePoint(sourceReferencePointID).getFile(sourceFileName);
+
+    if (source == null) throw new IOException("source of copied file " + fileName + " is unknown");
+
+    return source;
+  }
+
   @Override
   public void close() {
     IOUtils.closeQuietly(in);
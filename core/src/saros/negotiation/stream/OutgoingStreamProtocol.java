@@ -10,6 +10,8 @@ import saros.filesystem.IFile;
 import saros.monitoring.IProgressMonitor;
 import saros.negotiation.NegotiationTools.CancelOption;
 import saros.negotiation.ResourceSharingData;
+import saros.negotiation.delta.DeltaEncoder;
+import saros.negotiation.delta.FileSignature;
 
 /** Implements Stream creation in {@link AbstractStreamProtocol} format. */
 public class OutgoingStreamProtocol extends AbstractStreamProtocol {
@@ -39,13 +41,29 @@ public class OutgoingStreamProtocol extends AbstractStreamProtocol {
    * @throws LocalCancellationException on local user cancellation
    */
   public void streamFile(IFile file) throws IOException, LocalCancellationException {
+    streamFile(file, null);
+  }
+
+  /**
+   * Sends a File to {@code OutputStream out} via in {@link AbstractStreamProtocol} defined
+   * protocol. If a signature is given, only a delta to the old version of the file is sent.
+   *
+   * @param file the file to send
+   * @param signature the signature of the old version of the file the receiver has or <code>null
+   *     </code> to send the whole file
+   * @throws IOException if any file or stream operation fails
+   * @throws LocalCancellationException on local user cancellation
+   */
+  public void streamFile(IFile file, FileSignature signature)
+      throws IOException, LocalCancellationException {
     String message = "sending " + displayName(file);
     log.debug(message);
     monitor.subTask(message);
 
-    writeHeader(file, file.getSize());
+    writeHeader(file, signature != null ? DELTA_ENCODED : file.getSize());
 
-    try (InputStream fileIn = file.getContents()) {
+    try (InputStream fileIn =
+        signature != null ? new DeltaEncoder(file.getContents(), signature) : file.getContents()) {
       int readBytes = 0;
       /* buffer the file content and send to stream */
       while (readBytes != -1) {
@@ -61,13 +79,42 @@ public class OutgoingStreamProtocol extends AbstractStreamProtocol {
     monitor.worked(1);
   }
 
+  /**
+   * Sends a File to {@code OutputStream out} as copy of another file, i.e. without its content.
+   *
+   * @param file the file to send
+   * @param source a file with the same content that was sent before or <code>null</code> if the
+   *     receiver already has a local file with the same content
+   * @throws IOException if any stream operation fails
+   */
+  public void streamCopy(IFile file, IFile source) throws IOException {
+    String message = "sending " + displayName(file);
+    log.debug(message + " as copy");
+    monitor.subTask(message);
+
+    writeHeader(file, COPY);
+
+    if (source != null) {
+      writeName(source);
+    } else {
+      out.writeUTF("");
+      out.writeUTF("");
+    }
+
+    monitor.worked(1);
+  }
+
   private void writeHeader(IFile file, long fileSize) throws IOException {
+    writeName(file);
+    out.writeLong(fileSize);
+  }
+
+  private void writeName(IFile file) throws IOException {
     String referencePointID = resourceSharingData.getReferencePointID(file.getReferencePoint());
     String fileName = file.getReferencePointRelativePath().toPortableString();
 
     out.writeUTF(referencePointID);
     out.writeUTF(fileName);
-    out.writeLong(fileSize);
   }
 
   /**
@@ -0,0 +1,21 @@
+package saros.net;
+
+import org.jivesoftware.smack.packet.PacketExtension;
+
+/**
+ * A packet extension that can be marshalled into a compact binary representation in addition to its
+ * XML representation. The binary representation is only used when transmitting the extension over a
+ * connection whose remote side announced that it is able to decode binary content.
+ *
+ * @see IBinaryPacketExtensionProvider
+ */
+public interface IBinaryPacketExtension extends PacketExtension {
+
+  /**
+   * Returns the binary representation of this packet extension.
+   *
+   * @return the binary representation or <code>null</code> if this extension currently cannot be
+   *     represented in binary form, in which case the caller has to fall back to {@link #toXML()}
+   */
+  public byte[] toBinary();
+}
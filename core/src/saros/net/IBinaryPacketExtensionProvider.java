@@ -0,0 +1,21 @@
+package saros.net;
+
+import java.io.IOException;
+import org.jivesoftware.smack.packet.PacketExtension;
+import org.jivesoftware.smack.provider.PacketExtensionProvider;
+
+/**
+ * A packet extension provider that is also able to restore packet extensions from the binary
+ * representation created by {@link IBinaryPacketExtension#toBinary()}.
+ */
+public interface IBinaryPacketExtensionProvider extends PacketExtensionProvider {
+
+  /**
+   * Restores a packet extension from its binary representation.
+   *
+   * @param data the binary representation of the packet extension
+   * @return the restored packet extension
+   * @throws IOException if the data is malformed or cannot be decoded by this provider
+   */
+  public PacketExtension parseBinaryExtension(byte[] data) throws IOException;
+}
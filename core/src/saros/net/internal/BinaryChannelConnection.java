@@ -2,7 +2,6 @@ package saros.net.internal;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
@@ -10,8 +9,16 @@ import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.net.ProtocolException;
 import java.net.SocketException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 import org.apache.log4j.Logger;
 import saros.net.stream.ByteStream;
 import saros.net.stream.StreamMode;
@@ -24,7 +31,9 @@ import saros.net.xmpp.JID;
  * <p>The threading requirements of this class are the following:
  *
  * <p>send() is a reentrant method for sending data. Any number of threads can call it in parallel.
- * <b>Note:</b> The maximum number of concurrent threads is 32 !
+ * The packets are written by a dedicated writer thread. Packets that fit into a single chunk are
+ * written before the remaining chunks of larger packets, the chunks of larger packets are written
+ * in turns, so a large transfer never delays small packets by more than one chunk.
  *
  * @author sszuecs
  * @author coezbek
@@ -44,26 +53,155 @@ public class BinaryChannelConnection implements IByteStreamConnection {
 
     private static final int NAMESPACE_UPDATE = 0x64;
     private static final int ELEMENT_NAME_UPDATE = 0x65;
+    private static final int CAPABILITIES = 0x66;
+  }
+
+  private static class Flag {
+    /* flags of a transfer description, do not exceed 0xFF ! */
+
+    private static final int COMPRESS = 0x01;
+    private static final int BINARY = 0x02;
+    private static final int STREAM_COMPRESS = 0x04;
+  }
+
+  private static class Capability {
+    /*
+     * capabilities announced to the remote side after initialization, older
+     * versions close the connection on the CAPABILITIES opcode
+     */
+
+    private static final int BINARY_CONTENT = 0x01;
+    private static final int STREAM_COMPRESSION = 0x02;
+
+    private static final int LOCAL = BINARY_CONTENT | STREAM_COMPRESSION;
   }
 
   /** Max size of data chunks */
   private static final int CHUNKSIZE = 32 * 1024 - 1;
 
+  /** Max number of chunks a fragmented packet may consist of */
+  private static final int MAX_CHUNKS = (Integer.MAX_VALUE - 8) / CHUNKSIZE;
+
+  /**
+   * Max size of data that is compressed with the compression stream of the connection. The limit
+   * ensures that the compressed data always fits into a single chunk.
+   */
+  private static final int MAX_STREAM_COMPRESSION_SIZE = CHUNKSIZE / 2;
+
+  /**
+   * Max number of large packets whose chunks are written in turns, must be less than the number of
+   * fragment ids so small packets never wait for an id
+   */
+  private static final int MAX_INTERLEAVED_PACKETS = 16;
+
+  /** Max size of the inflate buffer that is kept for the next packet */
+  private static final int MAX_RETAINED_INFLATE_BUFFER_SIZE = 1024 * 1024;
+
+  /**
+   * Buffer a fragmented packet is reassembled in. The buffer is allocated once from the number of
+   * chunks of the transfer description, so the chunks are read directly into their final position.
+   */
+  private static class FragmentBuffer {
+    private final boolean streamCompressed;
+    private byte[] data;
+    private int length;
+
+    private FragmentBuffer(boolean streamCompressed) {
+      this.streamCompressed = streamCompressed;
+    }
+  }
+
+  /** A packet that is queued for sending by the writer thread. */
+  private static class OutgoingPacket {
+    private final String namespace;
+    private final String elementName;
+    private final int flags;
+
+    private byte[] data;
+    private int length;
+
+    /* only accessed by the writer thread */
+    private int fragmentId = -1;
+    private int offset;
+
+    /* guarded by this */
+    private boolean done;
+    private IOException failure;
+
+    private OutgoingPacket(String namespace, String elementName, int flags, byte[] data) {
+      this.namespace = namespace;
+      this.elementName = elementName;
+      this.flags = flags;
+      this.data = data;
+      this.length = data.length;
+    }
+
+    private boolean isStreamCompressed() {
+      return (flags & Flag.STREAM_COMPRESS) != 0;
+    }
+
+    private synchronized void complete(IOException failure) {
+      if (done) return;
+
+      this.failure = failure;
+      done = true;
+      notifyAll();
+    }
+
+    /**
+     * Waits until the packet was written.
+     *
+     * @return the number of bytes of the packet that were written
+     * @throws IOException if the packet could not be written
+     */
+    private synchronized long await() throws IOException {
+      try {
+        while (!done) wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("interrupted while waiting for the packet to be sent");
+      }
+
+      if (failure != null) throw failure;
+
+      return length;
+    }
+  }
+
   private IByteStreamConnectionListener listener;
   private ReceiverThread receiveThread;
+  private WriterThread writeThread;
 
   private final JID remoteAddress;
   private final JID localAddress;
 
   private final String connectionID;
 
+  /** Fragment ids, only accessed by the writer thread */
   private IDPool idPool = new IDPool();
 
+  /** Packets that fit into a single chunk, guarded by this */
+  private final Deque<OutgoingPacket> urgentPackets = new ArrayDeque<OutgoingPacket>();
+
+  /** Large packets that are not interleaved yet, guarded by this */
+  private final Deque<OutgoingPacket> bulkPackets = new ArrayDeque<OutgoingPacket>();
+
+  /** Large packets whose chunks are written in turns, guarded by this */
+  private final Deque<OutgoingPacket> interleavedPackets = new ArrayDeque<OutgoingPacket>();
+
+  /* only accessed by the writer thread */
+  private OutgoingPacket currentPacket;
+  private final List<OutgoingPacket> writtenPackets = new ArrayList<OutgoingPacket>();
+
   private boolean connected;
   private boolean initialized;
 
-  private Map<Integer, ByteArrayOutputStream> pendingFragmentedPackets =
-      new HashMap<Integer, ByteArrayOutputStream>();
+  private boolean announceCapabilities;
+
+  private volatile int remoteCapabilities;
+
+  private Map<Integer, FragmentBuffer> pendingFragmentedPackets =
+      new HashMap<Integer, FragmentBuffer>();
   private Map<Integer, BinaryXMPPExtension> pendingXMPPExtensions =
       new HashMap<Integer, BinaryXMPPExtension>();
 
@@ -74,14 +212,35 @@ public class BinaryChannelConnection implements IByteStreamConnection {
   private StreamMode mode;
 
   private Map<Integer, String> inNamespaceCache = new HashMap<Integer, String>();
-  private Map<String, Integer> outNamespaceCache = new HashMap<String, Integer>();
-
   private Map<Integer, String> inElementNameCache = new HashMap<Integer, String>();
+
+  /* only accessed by the writer thread */
+  private Map<String, Integer> outNamespaceCache = new HashMap<String, Integer>();
   private Map<String, Integer> outElementNameCache = new HashMap<String, Integer>();
 
   private int nextNamespaceId = 0;
   private int nextElementNameId = 0;
 
+  /*
+   * Packets are either compressed on their own or, if both sides support it,
+   * as a segment of a compression stream that spans all packets of the
+   * connection and is sync flushed after every packet. The stream keeps its
+   * history so even small packets (e.g. single keystrokes) shrink.
+   */
+
+  /** Compresses packets on their own, guarded by itself */
+  private final Deflater packetDeflater = new Deflater(Deflater.DEFLATED);
+
+  /** Compresses stream segments, only accessed by the writer thread */
+  private final Deflater streamDeflater = new Deflater(Deflater.DEFLATED);
+
+  private final byte[] streamDeflateBuffer = new byte[CHUNKSIZE];
+
+  /* only accessed by the receiver thread */
+  private final Inflater packetInflater = new Inflater();
+  private final Inflater streamInflater = new Inflater();
+  private byte[] inflateBuffer = new byte[CHUNKSIZE];
+
   private class ReceiverThread extends Thread {
 
     @Override
@@ -104,11 +263,40 @@ public class BinaryChannelConnection implements IByteStreamConnection {
       } catch (Exception e) {
         log.error(connection + " internal error: " + e.getMessage(), e);
       } finally {
+        packetInflater.end();
+        streamInflater.end();
         close();
       }
     }
   }
 
+  private class WriterThread extends Thread {
+
+    @Override
+    public void run() {
+      String connection = BinaryChannelConnection.this.toString();
+
+      log.debug(connection + " WriterThread started.");
+
+      IOException failure = null;
+
+      try {
+        writePackets();
+      } catch (IOException e) {
+        failure = e;
+
+        if (isConnected()) log.error(connection + " network error: " + e.getMessage(), e);
+      } catch (Exception e) {
+        failure = new IOException("internal error: " + e.getMessage(), e);
+        log.error(connection + " internal error: " + e.getMessage(), e);
+      } finally {
+        streamDeflater.end();
+        close();
+        failPendingPackets(failure);
+      }
+    }
+  }
+
   private IBinaryXMPPExtensionReceiver receiver;
 
   public BinaryChannelConnection(
@@ -151,6 +339,19 @@ public class BinaryChannelConnection implements IByteStreamConnection {
     receiveThread.start();
     connected = true;
     initialized = true;
+
+    // the writer thread is not running yet, so the capabilities are always sent first
+    if (announceCapabilities) {
+      try {
+        sendCapabilities(Capability.LOCAL);
+      } catch (IOException e) {
+        log.warn("failed to announce capabilities on connection " + this + ": " + e.getMessage());
+      }
+    }
+
+    writeThread = new WriterThread();
+    writeThread.setName("BinaryChannelWriter-" + remoteAddress.getName());
+    writeThread.start();
   }
 
   @Override
@@ -174,9 +375,14 @@ public class BinaryChannelConnection implements IByteStreamConnection {
         log.error("failed to gracefully close connection " + this, e);
       } finally {
         connected = false;
+        notifyAll();
       }
     }
 
+    synchronized (packetDeflater) {
+      packetDeflater.end();
+    }
+
     assert receiveThread != null;
 
     if (Thread.currentThread() != receiveThread) {
@@ -192,6 +398,17 @@ public class BinaryChannelConnection implements IByteStreamConnection {
       }
     }
 
+    if (writeThread != null && Thread.currentThread() != writeThread) {
+      try {
+        writeThread.join(TERMINATE_TIMEOUT);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+
+      if (writeThread.isAlive())
+        log.warn("timeout while waiting for the writer of binary channel " + this);
+    }
+
     listener.connectionClosed(connectionID, this);
   }
 
@@ -201,82 +418,63 @@ public class BinaryChannelConnection implements IByteStreamConnection {
   }
 
   @Override
-  public JID getRemoteAddress() {
-    return remoteAddress;
+  public synchronized void announceCapabilities() {
+    if (initialized) throw new IllegalStateException("connection is already initialized");
+
+    announceCapabilities = true;
   }
 
   @Override
-  public void send(TransferDescription data, byte[] content) throws IOException {
-
-    if (!isConnected()) throw new EOFException("connection is closed");
-
-    final int fragmentId = idPool.nextID();
-
-    if (fragmentId < 0) throw new IOException("concurrent access threshold exceeded");
+  public boolean isBinaryContentSupported() {
+    return (remoteCapabilities & Capability.BINARY_CONTENT) != 0;
+  }
 
-    try {
+  @Override
+  public boolean isStreamCompressionSupported() {
+    return (remoteCapabilities & Capability.STREAM_COMPRESSION) != 0;
+  }
 
-      Integer namespaceId;
-      Integer elementNameId;
+  @Override
+  public JID getRemoteAddress() {
+    return remoteAddress;
+  }
 
-      synchronized (this) {
-        final String namespace = data.getNamespace();
-        namespaceId = outNamespaceCache.get(namespace);
+  @Override
+  public long send(TransferDescription data, byte[] content) throws IOException {
 
-        if (namespaceId == null) {
-          if (nextNamespaceId > 255) throw new IOException("namespace cache limit exceeded");
+    if (!isConnected()) throw new EOFException("connection is closed");
 
-          namespaceId = Integer.valueOf(nextNamespaceId++);
-          outNamespaceCache.put(namespace, namespaceId);
+    assert content.length > 0;
 
-          if (log.isTraceEnabled())
-            log.trace(
-                "updated outgoing namespace cache, id: "
-                    + namespaceId
-                    + " , namespace: "
-                    + namespace);
-
-          outputStream.write(Opcode.NAMESPACE_UPDATE);
-          outputStream.write(namespaceId);
-          outputStream.writeUTF(namespace);
-        }
+    int flags = 0;
 
-        final String elementName = data.getElementName();
-        elementNameId = outElementNameCache.get(elementName);
+    if (data.binaryContent()) flags |= Flag.BINARY;
 
-        if (elementNameId == null) {
-          if (nextElementNameId > 65535) throw new IOException("element name cache limit exceeded");
+    if (data.compressContent()
+        && isStreamCompressionSupported()
+        && content.length <= MAX_STREAM_COMPRESSION_SIZE) {
 
-          elementNameId = Integer.valueOf(nextElementNameId++);
-          outElementNameCache.put(elementName, elementNameId);
+      // compressed by the writer thread to retain the order of the segments
+      flags |= Flag.COMPRESS | Flag.STREAM_COMPRESS;
 
-          if (log.isTraceEnabled())
-            log.trace(
-                "updated outgoing element name cache, id: "
-                    + elementNameId
-                    + " , element name: "
-                    + elementName);
-
-          outputStream.write(Opcode.ELEMENT_NAME_UPDATE);
-          outputStream.writeShort(elementNameId);
-          outputStream.writeUTF(elementName);
-        }
-      }
+    } else if (data.compressContent()) {
+      flags |= Flag.COMPRESS;
+      content = deflate(content);
+    }
 
-      assert content.length > 0;
+    final OutgoingPacket packet =
+        new OutgoingPacket(data.getNamespace(), data.getElementName(), flags, content);
 
-      int chunks = ((content.length - 1) / CHUNKSIZE) + 1;
+    synchronized (this) {
+      if (!connected) throw new EOFException("connection is closed");
 
-      sendTransferDescription(
-          fragmentId, chunks, namespaceId, elementNameId, data.compressContent());
+      if (packet.isStreamCompressed() || packet.length <= CHUNKSIZE) urgentPackets.add(packet);
+      else bulkPackets.add(packet);
 
-      splitAndSend(content, chunks, fragmentId);
-    } catch (IOException e) {
-      close();
-      throw e;
-    } finally {
-      idPool.freeID(fragmentId);
+      notifyAll();
     }
+
+    return packet.await();
   }
 
   /**
@@ -314,9 +512,13 @@ public class BinaryChannelConnection implements IByteStreamConnection {
                     + chunks);
           }
 
+          if (chunks <= 0 || chunks > MAX_CHUNKS)
+            throw new ProtocolException(
+                "chunks field contains corrupted value: 0 < " + chunks + " <= " + MAX_CHUNKS);
+
           final int namespaceId = inputStream.readUnsignedByte();
           final int elementNameId = inputStream.readUnsignedShort();
-          final int compressed = inputStream.readUnsignedByte();
+          final int flags = inputStream.readUnsignedByte();
 
           final String namespace = inNamespaceCache.get(Integer.valueOf(namespaceId));
 
@@ -328,7 +530,8 @@ public class BinaryChannelConnection implements IByteStreamConnection {
           transferDescription.setRecipient(localAddress);
           transferDescription.setNamespace(namespace);
           transferDescription.setElementName(elementName);
-          transferDescription.setCompressContent(compressed == 1);
+          transferDescription.setCompressContent((flags & Flag.COMPRESS) != 0);
+          transferDescription.setBinaryContent((flags & Flag.BINARY) != 0);
 
           BinaryXMPPExtension oldTransferObject =
               pendingXMPPExtensions.put(
@@ -336,6 +539,9 @@ public class BinaryChannelConnection implements IByteStreamConnection {
 
           if (oldTransferObject != null)
             throw new IOException("replaced a XMPP extension that is still transmitted");
+
+          pendingFragmentedPackets.put(
+              fragmentId, new FragmentBuffer((flags & Flag.STREAM_COMPRESS) != 0));
           break;
 
         case Opcode.DATA:
@@ -360,32 +566,48 @@ public class BinaryChannelConnection implements IByteStreamConnection {
                     + " <= "
                     + CHUNKSIZE);
 
-          byte[] payload = new byte[payloadLength];
-          inputStream.readFully(payload);
+          final BinaryXMPPExtension pendingTransferObject = pendingXMPPExtensions.get(fragmentId);
 
-          ByteArrayOutputStream out = pendingFragmentedPackets.get(fragmentId);
+          if (pendingTransferObject == null)
+            throw new ProtocolException("received data for unknown transfer: id=" + fragmentId);
 
-          if (out == null) {
-            out = new ByteArrayOutputStream(payloadLength * 2);
-            pendingFragmentedPackets.put(fragmentId, out);
-          }
+          final FragmentBuffer buffer = pendingFragmentedPackets.get(fragmentId);
 
-          out.write(payload);
-          out.flush();
+          if (buffer.data == null) {
+            /*
+             * packets that fit into one chunk are read into a buffer of
+             * exactly their size, otherwise all chunks but the last one
+             * are full so the buffer is only slightly too large
+             */
+            final int missingChunks = pendingTransferObject.getChunkCount();
 
-          if (!pendingXMPPExtensions.get(fragmentId).isLastChunk()) break;
+            buffer.data = new byte[missingChunks == 1 ? payloadLength : missingChunks * CHUNKSIZE];
+          }
 
-          pendingFragmentedPackets.remove(fragmentId);
+          if (payloadLength > buffer.data.length - buffer.length)
+            throw new ProtocolException("received more data than announced: id=" + fragmentId);
 
-          BinaryXMPPExtension fullyReceivedTransferObject =
-              pendingXMPPExtensions.remove(fragmentId);
+          inputStream.readFully(buffer.data, buffer.length, payloadLength);
+          buffer.length += payloadLength;
 
-          payload = out.toByteArray();
-          out = null; // help GC
+          if (!pendingTransferObject.isLastChunk()) break;
 
-          fullyReceivedTransferObject.setPayload(payload.length, payload);
+          pendingFragmentedPackets.remove(fragmentId);
+          pendingXMPPExtensions.remove(fragmentId);
+
+          if (pendingTransferObject.getTransferDescription().compressContent()) {
+            final byte[] inflatedPayload =
+                inflate(
+                    buffer.streamCompressed ? streamInflater : packetInflater,
+                    buffer.data,
+                    buffer.length);
+
+            pendingTransferObject.setPayload(buffer.length, inflatedPayload);
+          } else {
+            pendingTransferObject.setPayload(buffer.length, buffer.data, buffer.length);
+          }
 
-          return fullyReceivedTransferObject;
+          return pendingTransferObject;
 
         case Opcode.ELEMENT_NAME_UPDATE:
           if (log.isTraceEnabled()) {
@@ -418,6 +640,19 @@ public class BinaryChannelConnection implements IByteStreamConnection {
 
           break;
 
+        case Opcode.CAPABILITIES:
+          remoteCapabilities = inputStream.readInt();
+
+          if (log.isTraceEnabled()) {
+            log.trace(
+                "processing opcode 0x"
+                    + Integer.toHexString(opcode).toUpperCase()
+                    + " [CAP]: capabilities=0x"
+                    + Integer.toHexString(remoteCapabilities).toUpperCase());
+          }
+
+          break;
+
         default:
           close();
           throw new ProtocolException(
@@ -430,8 +665,195 @@ public class BinaryChannelConnection implements IByteStreamConnection {
     throw new InterruptedIOException("interrupted while reading stream data");
   }
 
-  private synchronized void sendData(int fragmentId, byte[] data, int offset, int length)
-      throws IOException {
+  /**
+   * Writes the queued packets until the connection is closed. The stream is flushed and the senders
+   * are notified as soon as no further small packet is pending.
+   */
+  private void writePackets() throws IOException {
+    while (true) {
+      currentPacket = pollPacket();
+
+      if (currentPacket == null) {
+        flush();
+        currentPacket = takePacket();
+      }
+
+      if (currentPacket == null) return;
+
+      if (!writeNextChunk(currentPacket)) {
+        synchronized (this) {
+          interleavedPackets.add(currentPacket);
+        }
+
+        currentPacket = null;
+        continue;
+      }
+
+      writtenPackets.add(currentPacket);
+      currentPacket = null;
+
+      if (!hasUrgentPackets()) flush();
+    }
+  }
+
+  /**
+   * Returns the next packet to write or <code>null</code> if there is currently none. Small packets
+   * are returned first, large packets are returned in turns.
+   */
+  private synchronized OutgoingPacket pollPacket() {
+    if (!urgentPackets.isEmpty()) return urgentPackets.poll();
+
+    while (interleavedPackets.size() < MAX_INTERLEAVED_PACKETS && !bulkPackets.isEmpty())
+      interleavedPackets.add(bulkPackets.poll());
+
+    return interleavedPackets.poll();
+  }
+
+  /**
+   * Waits for the next packet to write.
+   *
+   * @return the next packet or <code>null</code> if the connection was closed
+   */
+  private synchronized OutgoingPacket takePacket() throws InterruptedIOException {
+    while (connected) {
+      final OutgoingPacket packet = pollPacket();
+
+      if (packet != null) return packet;
+
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException("interrupted while waiting for packets to send");
+      }
+    }
+
+    return null;
+  }
+
+  private synchronized boolean hasUrgentPackets() {
+    return !urgentPackets.isEmpty();
+  }
+
+  private void flush() throws IOException {
+    outputStream.flush();
+
+    for (OutgoingPacket packet : writtenPackets) packet.complete(null);
+
+    writtenPackets.clear();
+  }
+
+  /** Fails all packets that were not sent yet. */
+  private void failPendingPackets(IOException failure) {
+    final List<OutgoingPacket> packets = new ArrayList<OutgoingPacket>(writtenPackets);
+
+    if (currentPacket != null) packets.add(currentPacket);
+
+    synchronized (this) {
+      packets.addAll(urgentPackets);
+      packets.addAll(interleavedPackets);
+      packets.addAll(bulkPackets);
+
+      urgentPackets.clear();
+      interleavedPackets.clear();
+      bulkPackets.clear();
+    }
+
+    if (failure == null) failure = new EOFException("connection is closed");
+
+    for (OutgoingPacket packet : packets) packet.complete(failure);
+  }
+
+  /**
+   * Writes the next chunk of the given packet. The transfer description is written before the first
+   * chunk.
+   *
+   * @return <code>true</code> if the packet was written completely, <code>false</code> otherwise
+   */
+  private boolean writeNextChunk(OutgoingPacket packet) throws IOException {
+
+    if (packet.fragmentId < 0) {
+      packet.fragmentId = idPool.nextID();
+
+      if (packet.fragmentId < 0) throw new IllegalStateException("no fragment id available");
+
+      final int namespaceId = getNamespaceId(packet.namespace);
+      final int elementNameId = getElementNameId(packet.elementName);
+
+      if (packet.isStreamCompressed()) streamCompress(packet);
+
+      final int chunks = ((packet.length - 1) / CHUNKSIZE) + 1;
+
+      sendTransferDescription(packet.fragmentId, chunks, namespaceId, elementNameId, packet.flags);
+    }
+
+    final int length = Math.min(packet.length - packet.offset, CHUNKSIZE);
+
+    sendData(packet.fragmentId, packet.data, packet.offset, length);
+
+    packet.offset += length;
+
+    if (packet.offset < packet.length) return false;
+
+    idPool.freeID(packet.fragmentId);
+    packet.data = null; // help GC
+
+    return true;
+  }
+
+  /**
+   * Returns the id of the given namespace. If the namespace has no id yet a new id is assigned and
+   * sent to the remote side.
+   */
+  private int getNamespaceId(String namespace) throws IOException {
+    Integer namespaceId = outNamespaceCache.get(namespace);
+
+    if (namespaceId != null) return namespaceId;
+
+    if (nextNamespaceId > 255) throw new IOException("namespace cache limit exceeded");
+
+    namespaceId = Integer.valueOf(nextNamespaceId++);
+    outNamespaceCache.put(namespace, namespaceId);
+
+    if (log.isTraceEnabled())
+      log.trace(
+          "updated outgoing namespace cache, id: " + namespaceId + " , namespace: " + namespace);
+
+    outputStream.write(Opcode.NAMESPACE_UPDATE);
+    outputStream.write(namespaceId);
+    outputStream.writeUTF(namespace);
+
+    return namespaceId;
+  }
+
+  /**
+   * Returns the id of the given element name. If the element name has no id yet a new id is
+   * assigned and sent to the remote side.
+   */
+  private int getElementNameId(String elementName) throws IOException {
+    Integer elementNameId = outElementNameCache.get(elementName);
+
+    if (elementNameId != null) return elementNameId;
+
+    if (nextElementNameId > 65535) throw new IOException("element name cache limit exceeded");
+
+    elementNameId = Integer.valueOf(nextElementNameId++);
+    outElementNameCache.put(elementName, elementNameId);
+
+    if (log.isTraceEnabled())
+      log.trace(
+          "updated outgoing element name cache, id: "
+              + elementNameId
+              + " , element name: "
+              + elementName);
+
+    outputStream.write(Opcode.ELEMENT_NAME_UPDATE);
+    outputStream.writeShort(elementNameId);
+    outputStream.writeUTF(elementName);
+
+    return elementNameId;
+  }
+
+  private void sendData(int fragmentId, byte[] data, int offset, int length) throws IOException {
 
     if (log.isTraceEnabled()) {
       log.trace("sending data: id=" + fragmentId + ", len=" + length + " bytes");
@@ -441,11 +863,21 @@ public class BinaryChannelConnection implements IByteStreamConnection {
     outputStream.writeShort(fragmentId);
     outputStream.writeInt(length);
     outputStream.write(data, offset, length);
+  }
+
+  private void sendCapabilities(int capabilities) throws IOException {
+
+    if (log.isTraceEnabled()) {
+      log.trace("sending capabilities: 0x" + Integer.toHexString(capabilities).toUpperCase());
+    }
+
+    outputStream.write(Opcode.CAPABILITIES);
+    outputStream.writeInt(capabilities);
     outputStream.flush();
   }
 
-  private synchronized void sendTransferDescription(
-      int fragmentId, int chunks, int namespaceId, int elementNameId, boolean compress)
+  private void sendTransferDescription(
+      int fragmentId, int chunks, int namespaceId, int elementNameId, int flags)
       throws IOException {
 
     if (log.isTraceEnabled()) {
@@ -457,23 +889,95 @@ public class BinaryChannelConnection implements IByteStreamConnection {
     outputStream.writeInt(chunks);
     outputStream.write(namespaceId);
     outputStream.writeShort(elementNameId);
-    outputStream.write(compress ? 1 : 0);
+    outputStream.write(flags);
+  }
+
+  /**
+   * Compresses the data of the given packet as the next segment of the compression stream of this
+   * connection. The packet must be written before the next packet is compressed as the compressed
+   * data is stored in a shared buffer.
+   */
+  private void streamCompress(OutgoingPacket packet) throws IOException {
+
+    streamDeflater.setInput(packet.data, 0, packet.length);
+
+    final int length =
+        streamDeflater.deflate(
+            streamDeflateBuffer, 0, streamDeflateBuffer.length, Deflater.SYNC_FLUSH);
+
+    if (!streamDeflater.needsInput() || length == streamDeflateBuffer.length)
+      throw new IOException("compressed data exceeds the chunk size");
+
+    packet.data = streamDeflateBuffer;
+    packet.length = length;
+  }
+
+  /** Compresses the given data on its own. */
+  private byte[] deflate(byte[] data) throws IOException {
+    synchronized (packetDeflater) {
+      if (!isConnected()) throw new EOFException("connection is closed");
+
+      packetDeflater.reset();
+      packetDeflater.setInput(data);
+      packetDeflater.finish();
+
+      byte[] buffer = new byte[Math.max(64, data.length / 2)];
+      int length = 0;
+
+      while (!packetDeflater.finished()) {
+        if (length == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+
+        length += packetDeflater.deflate(buffer, length, buffer.length - length);
+      }
+
+      return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+    }
   }
 
-  /** Splits the given data into chunks of CHUNKSIZE to send the BinaryPackets. */
-  private void splitAndSend(byte[] data, int chunks, int fragmentId) throws IOException {
+  /**
+   * Decompresses the given data. If the data is a segment of the compression stream of the remote
+   * side the data is decompressed up to the sync flush marker, otherwise up to the end of the
+   * compressed data.
+   */
+  private byte[] inflate(Inflater inflater, byte[] data, int length) throws IOException {
+
+    final boolean isStream = inflater == streamInflater;
+
+    inflater.setInput(data, 0, length);
+
+    byte[] buffer = inflateBuffer;
 
-    int offset = 0;
-    int length = 0;
+    if (buffer.length < length * 2) buffer = new byte[length * 2];
 
-    while (chunks-- > 0) {
+    int size = 0;
 
-      length = Math.min(data.length - offset, CHUNKSIZE);
+    try {
+      while (!inflater.finished()) {
+        if (size == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+
+        size += inflater.inflate(buffer, size, buffer.length - size);
+
+        if (inflater.needsDictionary())
+          throw new ProtocolException("compressed data requires an unknown dictionary");
+
+        if (inflater.needsInput() && size < buffer.length) break;
+      }
+    } catch (DataFormatException e) {
+      throw new ProtocolException("failed to inflate data: " + e.getMessage());
+    }
 
-      sendData(fragmentId, data, offset, length);
+    if (!isStream) {
+      if (!inflater.finished())
+        throw new ProtocolException("failed to inflate data: unexpected end of compressed data");
 
-      offset += length;
+      inflater.reset();
+    } else if (inflater.finished()) {
+      throw new ProtocolException("compression stream was terminated by the remote side");
     }
+
+    if (buffer.length <= MAX_RETAINED_INFLATE_BUFFER_SIZE) inflateBuffer = buffer;
+
+    return Arrays.copyOf(buffer, size);
   }
 
   @Override
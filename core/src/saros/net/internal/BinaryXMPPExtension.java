@@ -1,5 +1,6 @@
 package saros.net.internal;
 
+import java.util.Arrays;
 import saros.net.stream.StreamMode;
 
 public final class BinaryXMPPExtension {
@@ -10,6 +11,7 @@ public final class BinaryXMPPExtension {
   private long transferredSize;
   private long uncompressedSize;
   private byte[] payload;
+  private int payloadLength;
   private long transferDuration;
   private StreamMode transferMode;
 
@@ -28,9 +30,27 @@ public final class BinaryXMPPExtension {
    * not</b> be modified directly.
    */
   byte[] getPayload() {
+    if (payload != null && payload.length != payloadLength)
+      payload = Arrays.copyOf(payload, payloadLength);
+
+    return payload;
+  }
+
+  /**
+   * Returns the buffer containing the binary form of the XMPP packet extension. Only the first
+   * {@link #getPayloadLength()} bytes of the buffer are valid. Unlike {@link #getPayload()} this
+   * method never copies the data. <b>Note:</b>The returned byte array <b>must not</b> be modified
+   * directly.
+   */
+  byte[] getPayloadBuffer() {
     return payload;
   }
 
+  /** Returns the length of the binary form of the XMPP packet extension. */
+  int getPayloadLength() {
+    return payloadLength;
+  }
+
   /** Returns the transfer description of this transfer object. */
   // public for STF
   public TransferDescription getTransferDescription() {
@@ -65,13 +85,34 @@ public final class BinaryXMPPExtension {
    * @throws IllegalStateException if there are still missing chunks, see also {@link #isLastChunk}
    */
   void setPayload(long originalSize, byte[] data) {
+    setPayload(originalSize, data, data.length);
+  }
+
+  /**
+   * Sets the data for this XMPP packet extension.
+   *
+   * @param originalSize the original size of the received data
+   * @param data the buffer containing the binary form of the XMPP packet extension
+   * @param length the number of valid bytes in the buffer
+   * @throws IllegalStateException if there are still missing chunks, see also {@link #isLastChunk}
+   */
+  void setPayload(long originalSize, byte[] data, int length) {
 
     if (chunkCount > 0)
       throw new IllegalStateException("there are chunks missing: " + chunkCount + " > 0");
 
+    if (length < 0 || length > data.length)
+      throw new IllegalArgumentException("invalid payload length: " + length);
+
     payload = data;
+    payloadLength = length;
     transferredSize = originalSize;
-    uncompressedSize = data.length;
+    uncompressedSize = length;
+  }
+
+  /** Returns the number of chunks that have not arrived yet. */
+  int getChunkCount() {
+    return chunkCount;
   }
 
   /**
@@ -44,12 +44,20 @@ public class DataTransferManager implements IConnectionListener, IConnectionMana
 
   private static final String OUT = "out";
 
+  /**
+   * Service discovery feature of clients that understand the announcement of capabilities on their
+   * byte stream connections.
+   */
+  private static final String CAPABILITIES_FEATURE = "saros:bytestream:capabilities";
+
   private volatile JID currentLocalJID;
 
   private Connection xmppConnection;
 
   private int serviceMask = -1;
 
+  private final XMPPConnectionService connectionService;
+
   private final IStreamService mainService;
 
   private final IStreamService fallbackService;
@@ -123,6 +131,10 @@ public class DataTransferManager implements IConnectionListener, IConnectionMana
             }
           }
 
+          if (connectionService.isFeatureSupported(
+              connection.getRemoteAddress(), CAPABILITIES_FEATURE))
+            connection.announceCapabilities();
+
           connection.initialize();
         }
 
@@ -139,10 +151,12 @@ public class DataTransferManager implements IConnectionListener, IConnectionMana
       @Nullable @Socks5StreamService IStreamService mainService,
       @Nullable @IBBStreamService IStreamService fallbackService) {
 
+    this.connectionService = connectionService;
     this.fallbackService = fallbackService;
     this.mainService = mainService;
     this.setStreamServices();
 
+    connectionService.addFeature(CAPABILITIES_FEATURE);
     connectionService.addListener(this);
   }
 
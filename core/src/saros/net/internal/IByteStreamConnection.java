@@ -21,13 +21,16 @@ public interface IByteStreamConnection {
 
   /**
    * If this call returns the data has been send successfully, otherwise an IOException is thrown
-   * with the reason why the transfer failed.
+   * with the reason why the transfer failed. If the transfer description requests compression the
+   * content is compressed by the connection.
    *
    * @param data The data to be sent.
+   * @return the number of bytes of the content that were actually transmitted, i.e the size after
+   *     compression
    * @throws IOException if the send failed
    * @blocking Send the given data as a blocking operation.
    */
-  public void send(TransferDescription data, byte[] content) throws IOException;
+  public long send(TransferDescription data, byte[] content) throws IOException;
 
   /**
    * Returns the connection id of this connection.
@@ -38,5 +41,31 @@ public interface IByteStreamConnection {
 
   public StreamMode getMode();
 
+  /**
+   * Enables the announcement of the local capabilities to the remote side during the
+   * initialization. Older versions reject the announcement, so this must only be called if the
+   * remote side advertised that it understands it.
+   *
+   * @throws IllegalStateException if the connection is already initialized
+   */
+  public void announceCapabilities();
+
+  /**
+   * Returns whether the remote side of this connection announced that it is able to decode payloads
+   * that are marshalled in binary form instead of XML.
+   *
+   * @return <code>true</code> if binary content can be sent, <code>false</code> otherwise
+   */
+  public boolean isBinaryContentSupported();
+
+  /**
+   * Returns whether the remote side of this connection announced that it is able to decompress
+   * payloads that are compressed as segments of a single compression stream. Stream compression
+   * keeps the compression history between packets so even very small payloads can be compressed.
+   *
+   * @return <code>true</code> if stream compression is used, <code>false</code> otherwise
+   */
+  public boolean isStreamCompressionSupported();
+
   public void setBinaryXMPPExtensionReceiver(IBinaryXMPPExtensionReceiver receiver);
 }
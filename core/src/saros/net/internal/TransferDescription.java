@@ -25,6 +25,9 @@ public class TransferDescription {
   /** Field used to indicate that the payload may be compressed. */
   private boolean compress;
 
+  /** Field used to indicate that the payload is in binary form instead of XML. */
+  private boolean binary;
+
   public static TransferDescription newDescription() {
     return new TransferDescription();
   }
@@ -74,6 +77,15 @@ public class TransferDescription {
     return compress;
   }
 
+  TransferDescription setBinaryContent(boolean binary) {
+    this.binary = binary;
+    return this;
+  }
+
+  public boolean binaryContent() {
+    return binary;
+  }
+
   @Override
   public String toString() {
     return "TransferDescription [elementName="
@@ -86,6 +98,8 @@ public class TransferDescription {
         + sender
         + ", compress="
         + compress
+        + ", binary="
+        + binary
         + "]";
   }
 }
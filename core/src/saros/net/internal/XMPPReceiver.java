@@ -1,15 +1,12 @@
 package saros.net.internal;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.zip.DataFormatException;
-import java.util.zip.Inflater;
 import org.apache.log4j.Logger;
 import org.jivesoftware.smack.Connection;
 import org.jivesoftware.smack.PacketListener;
@@ -24,6 +21,7 @@ import org.xmlpull.v1.XmlPullParser;
 import saros.annotations.Component;
 import saros.net.ConnectionState;
 import saros.net.DispatchThreadContext;
+import saros.net.IBinaryPacketExtensionProvider;
 import saros.net.IPacketInterceptor;
 import saros.net.IReceiver;
 import saros.net.ITransferListener;
@@ -38,8 +36,6 @@ public class XMPPReceiver implements IReceiver, IBinaryXMPPExtensionReceiver {
 
   private static final Logger log = Logger.getLogger(XMPPReceiver.class);
 
-  private static final int CHUNKSIZE = 16 * 1024;
-
   private final DispatchThreadContext dispatchThreadContext;
 
   private final Map<PacketListener, PacketFilter> listeners =
@@ -222,20 +218,6 @@ public class XMPPReceiver implements IReceiver, IBinaryXMPPExtensionReceiver {
               + extension.getTransferMode()
               + "]");
 
-    if (extension.getTransferDescription().compressContent()) {
-      byte[] payload = extension.getPayload();
-      long compressedPayloadLength = payload.length;
-
-      try {
-        payload = inflate(payload);
-      } catch (IOException e) {
-        log.error("could not decompress extension payload", e);
-        return null;
-      }
-
-      extension.setPayload(compressedPayloadLength, payload);
-    }
-
     notifyDataReceived(
         extension.getTransferMode(),
         extension.getCompressedSize(),
@@ -248,11 +230,19 @@ public class XMPPReceiver implements IReceiver, IBinaryXMPPExtensionReceiver {
     String namespace = description.getNamespace();
     // IQ provider?
 
-    PacketExtensionProvider provider =
-        (PacketExtensionProvider)
-            ProviderManager.getInstance().getExtensionProvider(name, namespace);
+    Object provider = ProviderManager.getInstance().getExtensionProvider(name, namespace);
 
-    if (provider == null) {
+    if (description.binaryContent() && !(provider instanceof IBinaryPacketExtensionProvider)) {
+      log.warn(
+          "could not deserialize binary transfer object because no binary provider with namespace '"
+              + namespace
+              + "' and element name '"
+              + name
+              + "' is installed");
+      return null;
+    }
+
+    if (!(provider instanceof PacketExtensionProvider)) {
       log.warn(
           "could not deserialize transfer object because no provider with namespace '"
               + namespace
@@ -262,16 +252,50 @@ public class XMPPReceiver implements IReceiver, IBinaryXMPPExtensionReceiver {
       return null;
     }
 
-    PacketExtension packetExtension = null;
+    PacketExtension packetExtension;
+
+    if (description.binaryContent()) {
+      try {
+        packetExtension =
+            ((IBinaryPacketExtensionProvider) provider)
+                .parseBinaryExtension(extension.getPayload());
+      } catch (IOException e) {
+        log.error("could not deserialize binary transfer object payload: " + e.getMessage(), e);
+        return null;
+      }
+    } else {
+      packetExtension = parseXMLExtension((PacketExtensionProvider) provider, extension);
+
+      if (packetExtension == null) return null;
+    }
+
+    Packet packet = new Message();
+    packet.setPacketID(Packet.ID_NOT_AVAILABLE);
+    packet.setFrom(description.getSender().toString());
+    packet.setTo(description.getRecipient().toString());
+    packet.addExtension(packetExtension);
+
+    return packet;
+  }
+
+  /**
+   * Parses the XML payload of the given {@link BinaryXMPPExtension} using the given provider.
+   *
+   * @return the parsed packet extension or <code>null</code> if the payload could not be parsed
+   */
+  private PacketExtension parseXMLExtension(
+      PacketExtensionProvider provider, BinaryXMPPExtension extension) {
 
     try {
-      parser.setInput(new ByteArrayInputStream(extension.getPayload()), "UTF-8");
+      parser.setInput(
+          new ByteArrayInputStream(extension.getPayloadBuffer(), 0, extension.getPayloadLength()),
+          "UTF-8");
       /*
        * We have to skip the empty start tag because Smack expects a
        * parser that already has started parsing.
        */
       parser.next();
-      packetExtension = provider.parseExtension(parser);
+      return provider.parseExtension(parser);
     } catch (Exception e) {
       log.error("could not deserialize transfer object payload: " + e.getMessage(), e);
 
@@ -279,14 +303,6 @@ public class XMPPReceiver implements IReceiver, IBinaryXMPPExtensionReceiver {
       parser = new MXParser();
       return null;
     }
-
-    Packet packet = new Message();
-    packet.setPacketID(Packet.ID_NOT_AVAILABLE);
-    packet.setFrom(description.getSender().toString());
-    packet.setTo(description.getRecipient().toString());
-    packet.addExtension(packetExtension);
-
-    return packet;
   }
 
   private void notifyDataReceived(
@@ -303,25 +319,4 @@ public class XMPPReceiver implements IReceiver, IBinaryXMPPExtensionReceiver {
       }
     }
   }
-
-  private static byte[] inflate(byte[] input) throws IOException {
-
-    ByteArrayOutputStream bos;
-    Inflater decompressor = new Inflater();
-
-    decompressor.setInput(input, 0, input.length);
-    bos = new ByteArrayOutputStream(input.length);
-
-    byte[] buf = new byte[CHUNKSIZE];
-
-    try {
-      while (!decompressor.finished()) {
-        int count = decompressor.inflate(buf);
-        bos.write(buf, 0, count);
-      }
-      return bos.toByteArray();
-    } catch (DataFormatException e) {
-      throw new IOException("failed to inflate data", e);
-    }
-  }
 }
@@ -19,10 +19,8 @@
  */
 package saros.net.internal;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.zip.Deflater;
 import org.apache.log4j.Logger;
 import org.jivesoftware.smack.Connection;
 import org.jivesoftware.smack.packet.Message;
@@ -30,6 +28,7 @@ import org.jivesoftware.smack.packet.Packet;
 import org.jivesoftware.smack.packet.PacketExtension;
 import saros.annotations.Component;
 import saros.net.ConnectionState;
+import saros.net.IBinaryPacketExtension;
 import saros.net.IPacketInterceptor;
 import saros.net.ITransferListener;
 import saros.net.ITransmitter;
@@ -47,12 +46,13 @@ public class XMPPTransmitter implements ITransmitter, IConnectionListener {
 
   private static final Logger log = Logger.getLogger(XMPPTransmitter.class);
 
-  /** size in bytes that a packet extension must exceed to be compressed */
+  /**
+   * size in bytes that a packet extension must exceed to be compressed, does not apply to
+   * connections that use stream compression
+   */
   private static final int PACKET_EXTENSION_COMPRESS_THRESHOLD =
       Integer.getInteger("saros.net.transmitter.PACKET_EXTENSION_COMPRESS_THRESHOLD", 32);
 
-  private static final int CHUNKSIZE = 16 * 1024;
-
   private final DataTransferManager dataManager;
 
   private Connection connection;
@@ -110,9 +110,18 @@ public class XMPPTransmitter implements ITransmitter, IConnectionListener {
             .setElementName(extension.getElementName())
             .setNamespace(extension.getNamespace());
 
-    byte[] data = extension.toXML().getBytes("UTF-8");
+    byte[] data = null;
+
+    if (extension instanceof IBinaryPacketExtension && connection.isBinaryContentSupported()) {
+      data = ((IBinaryPacketExtension) extension).toBinary();
 
-    if (data.length > PACKET_EXTENSION_COMPRESS_THRESHOLD) {
+      if (data != null) transferDescription.setBinaryContent(true);
+    }
+
+    if (data == null) data = extension.toXML().getBytes("UTF-8");
+
+    if (data.length > PACKET_EXTENSION_COMPRESS_THRESHOLD
+        || connection.isStreamCompressionSupported()) {
       transferDescription.setCompressContent(true);
     }
 
@@ -208,14 +217,13 @@ public class XMPPTransmitter implements ITransmitter, IConnectionListener {
               + " byte(s), connection="
               + connection);
 
-    long sizeUncompressed = payload.length;
-
-    if (description.compressContent()) payload = deflate(payload);
+    final long sizeUncompressed = payload.length;
+    final long sizeCompressed;
 
     final long transferStartTime = System.currentTimeMillis();
 
     try {
-      connection.send(description, payload);
+      sizeCompressed = connection.send(description, payload);
     } catch (IOException e) {
       log.error(
           "failed to send " + description + ", connection=" + connection + ":" + e.getMessage(), e);
@@ -224,7 +232,7 @@ public class XMPPTransmitter implements ITransmitter, IConnectionListener {
 
     notifyDataSent(
         connection.getMode(),
-        payload.length,
+        sizeCompressed,
         sizeUncompressed,
         System.currentTimeMillis() - transferStartTime);
   }
@@ -243,22 +251,4 @@ public class XMPPTransmitter implements ITransmitter, IConnectionListener {
       }
     }
   }
-
-  private static byte[] deflate(byte[] input) {
-
-    Deflater compressor = new Deflater(Deflater.DEFLATED);
-    compressor.setInput(input);
-    compressor.finish();
-
-    ByteArrayOutputStream bos = new ByteArrayOutputStream(input.length);
-
-    byte[] buf = new byte[CHUNKSIZE];
-
-    while (!compressor.finished()) {
-      int count = compressor.deflate(buf);
-      bos.write(buf, 0, count);
-    }
-
-    return bos.toByteArray();
-  }
 }
@@ -5,7 +5,9 @@ import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.CountDownLatch;
 import org.apache.log4j.Logger;
 import org.bitlet.weupnp.GatewayDevice;
@@ -80,6 +82,9 @@ public class XMPPConnectionService {
   private final List<IConnectionListener> listeners =
       new CopyOnWriteArrayList<IConnectionListener>();
 
+  /** Features that are advertised via service discovery on every connection. */
+  private final Set<String> features = new CopyOnWriteArraySet<String>();
+
   private final IStunService stunService;
 
   private final IUPnPService upnpService;
@@ -263,6 +268,12 @@ public class XMPPConnectionService {
        */
       connection.addConnectionListener(smackConnectionListener);
 
+      // the features must be known before the entity capabilities are sent
+      final ServiceDiscoveryManager discoveryManager =
+          ServiceDiscoveryManager.getInstanceFor(connection);
+
+      for (String feature : features) discoveryManager.addFeature(feature);
+
       connection.login(username, password, resource);
 
       sendAvailablePresenceWithClientIdentifier();
@@ -343,6 +354,41 @@ public class XMPPConnectionService {
     return connection;
   }
 
+  /**
+   * Adds a feature that is advertised to other entities via service discovery. Features that are
+   * added while connected are advertised after the next connect.
+   *
+   * @param feature the namespace of the feature
+   */
+  public void addFeature(String feature) {
+    features.add(feature);
+  }
+
+  /**
+   * Returns whether the given entity advertises the given feature via service discovery. The
+   * features of other Saros clients are usually answered from the entity capabilities cache.
+   *
+   * @param jid the JID of the entity
+   * @param feature the namespace of the feature
+   * @return <code>true</code> if the entity advertises the feature, <code>false</code> if it does
+   *     not, if the discovery failed or if the service is not connected
+   * @blocking if the features of the entity are not cached
+   */
+  public boolean isFeatureSupported(JID jid, String feature) {
+    final Connection currentConnection = connection;
+
+    if (currentConnection == null || !currentConnection.isConnected()) return false;
+
+    try {
+      return ServiceDiscoveryManager.getInstanceFor(currentConnection)
+          .discoverInfo(jid.toString())
+          .containsFeature(feature);
+    } catch (XMPPException e) {
+      log.warn("service discovery for " + jid + " failed: " + e.getMessage());
+      return false;
+    }
+  }
+
   public void addListener(IConnectionListener listener) {
     listeners.add(listener);
   }
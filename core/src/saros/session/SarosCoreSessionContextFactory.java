@@ -1,5 +1,6 @@
 package saros.session;
 
+import saros.activities.BinaryActivityCodec;
 import saros.concurrent.management.ConcurrentDocumentClient;
 import saros.concurrent.management.ConcurrentDocumentServer;
 import saros.concurrent.management.HeartbeatDispatcher;
@@ -55,6 +56,9 @@ public class SarosCoreSessionContextFactory implements ISarosSessionContextFacto
     container.addComponent(ResourceTransportWrapperConverter.class);
     container.addComponent(UserConverter.class);
 
+    // Session-dependent binary activity codec
+    container.addComponent(BinaryActivityCodec.class);
+
     // Other
     container.addComponent(ActivityHandler.class);
     container.addComponent(ActivitySequencer.class);
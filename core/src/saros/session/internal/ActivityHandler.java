@@ -1,13 +1,19 @@
 package saros.session.internal;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.LinkedBlockingQueue;
 import org.apache.log4j.Logger;
 import saros.activities.ActivityOptimizer;
 import saros.activities.ChecksumActivity;
+import saros.activities.DeletionAcknowledgmentActivity;
+import saros.activities.FileActivity;
 import saros.activities.IActivity;
+import saros.activities.IMulticastActivity;
 import saros.activities.IResourceActivity;
 import saros.activities.ITargetedActivity;
 import saros.activities.JupiterActivity;
@@ -15,6 +21,7 @@ import saros.activities.QueueItem;
 import saros.concurrent.management.ConcurrentDocumentClient;
 import saros.concurrent.management.ConcurrentDocumentServer;
 import saros.concurrent.management.TransformationResult;
+import saros.filesystem.IFile;
 import saros.filesystem.IResource;
 import saros.repackaged.picocontainer.Startable;
 import saros.session.IActivityHandlerCallback;
@@ -55,6 +62,18 @@ public final class ActivityHandler implements Startable {
     DISPATCH_MODE = dispatchModeToUse;
   }
 
+  /**
+   * Number of threads the host uses to transform activities of different files concurrently. A
+   * value of zero transforms all activities in the thread that is handling the incoming activities.
+   * Uses at least two threads so a long running transformation does not stall the other files.
+   */
+  private static final int TRANSFORMATION_THREADS =
+      Math.max(
+          0,
+          Integer.getInteger(
+              "saros.session.TRANSFORMATION_THREADS",
+              Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()))));
+
   private final LinkedBlockingQueue<List<IActivity>> dispatchQueue =
       new LinkedBlockingQueue<List<IActivity>>();
 
@@ -68,6 +87,28 @@ public final class ActivityHandler implements Startable {
 
   private final UISynchronizer synchronizer;
 
+  /**
+   * Lanes in which the host transforms the activities of a file, <code>null</code> if the local
+   * user is not the host or the activities are transformed without using lanes.
+   */
+  private final SerialLaneExecutor<IFile> transformationLanes;
+
+  /**
+   * Retains the order of the activities across the transformation lanes. An activity that is not
+   * transformed in a lane is a barrier: it is handled after all earlier activities of all senders
+   * were transformed, and all later activities are deferred until it was handled.
+   */
+  private final Object laneLock = new Object();
+
+  /** Number of submitted but not yet transformed activity groups, guarded by laneLock */
+  private int pendingLaneGroups;
+
+  /** Whether a thread is currently handling or resuming the deferred groups, guarded by laneLock */
+  private boolean isDraining;
+
+  /** Groups that have to wait for the pending lane groups, guarded by laneLock */
+  private final Deque<List<IActivity>> deferredGroups = new ArrayDeque<List<IActivity>>();
+
   /*
    * We must use a thread for synchronous execution otherwise we would block
    * the DispatchThreadContext which handles the dispatching of all network
@@ -136,33 +177,194 @@ public final class ActivityHandler implements Startable {
     this.documentServer = documentServer;
     this.documentClient = documentClient;
     this.synchronizer = synchronizer;
+
+    this.transformationLanes =
+        documentServer != null && TRANSFORMATION_THREADS > 0
+            ? new SerialLaneExecutor<IFile>("activity-transformer-", TRANSFORMATION_THREADS)
+            : null;
   }
 
   /**
    * Transforms and dispatches the activities. The {@linkplain IActivityHandlerCallback callback}
    * will be notified about the results.
    *
+   * <p>On the host the activities that belong to a file are transformed in the lane of that file,
+   * i.e activities of different files are transformed concurrently while the order of the
+   * activities of each file is retained. All other activities are handled one at a time after all
+   * already submitted activities were transformed, and the activities received after them are not
+   * transformed before. This method never waits for a lane, activities that have to wait are
+   * deferred and handled by the lane that finishes last.
+   *
    * @param activities an <b>immutable</b> list containing the activities
    */
   public synchronized void handleIncomingActivities(List<IActivity> activities) {
 
-    if (session.isHost()) {
-      /**
-       * @JTourBusStop 8, Activity sending, Activity Server:
-       *
-       * <p>This is where the server (or server-part of the host) receives activities. The Server
-       * may transform activities again if necessary and afterward sends them to the correct
-       * clients. (Note that the callback.send() methods get an actual list of recipients.)
-       */
-      TransformationResult result = directServerActivities(activities);
-      for (QueueItem item : result.getSendToPeers()) {
-        List<User> recipients = getRecipientsForQueueItem(item);
-        callback.send(recipients, item.activity);
+    if (!session.isHost()) {
+      dispatchActivities(activities);
+      return;
+    }
+
+    if (transformationLanes == null) {
+      transformAndDispatchActivities(activities);
+      return;
+    }
+
+    int start = 0;
+
+    while (start < activities.size()) {
+      final IActivity first = activities.get(start);
+      final IFile lane = getTransformationLane(first);
+
+      int end = start + 1;
+
+      while (end < activities.size()
+          && Objects.equals(lane, getTransformationLane(activities.get(end)))) end++;
+
+      handleGroup(activities.subList(start, end), lane);
+
+      start = end;
+    }
+  }
+
+  /**
+   * Transforms the given activities in their lane or directly if they have no lane. The group is
+   * deferred if earlier activities are still waiting, or if it has no lane and earlier activities
+   * are still being transformed.
+   */
+  private void handleGroup(final List<IActivity> group, final IFile lane) {
+    synchronized (laneLock) {
+      if (isDraining || !deferredGroups.isEmpty() || (lane == null && pendingLaneGroups > 0)) {
+        deferredGroups.add(group);
+        return;
       }
 
-      activities = result.getLocalActivities();
+      if (lane != null) {
+        submitLaneGroup(group, lane);
+        return;
+      }
+
+      isDraining = true;
+    }
+
+    ThreadUtils.runSafeSync(log, () -> transformAndDispatchActivities(group));
+    drain();
+  }
+
+  /** Transforms the given group in its lane, must be called while holding the lane lock. */
+  private void submitLaneGroup(final List<IActivity> group, final IFile lane) {
+    pendingLaneGroups++;
+
+    transformationLanes.execute(
+        lane,
+        () -> {
+          try {
+            transformAndDispatchActivities(group);
+          } finally {
+            laneGroupDone();
+          }
+        });
+  }
+
+  private void laneGroupDone() {
+    synchronized (laneLock) {
+      pendingLaneGroups--;
+
+      if (pendingLaneGroups > 0 || isDraining || deferredGroups.isEmpty()) return;
+
+      isDraining = true;
     }
 
+    drain();
+  }
+
+  /**
+   * Handles the deferred groups until a group has to wait for the lanes again. The caller must have
+   * marked the deferred groups as draining, so the groups without a lane are handled one at a time.
+   */
+  private void drain() {
+    while (true) {
+      final List<IActivity> group;
+
+      synchronized (laneLock) {
+        group = deferredGroups.peek();
+
+        if (group == null) {
+          isDraining = false;
+          return;
+        }
+
+        final IFile lane = getTransformationLane(group.get(0));
+
+        if (lane != null) {
+          deferredGroups.poll();
+          submitLaneGroup(group, lane);
+          continue;
+        }
+
+        // resumed by the last pending lane group
+        if (pendingLaneGroups > 0) {
+          isDraining = false;
+          return;
+        }
+
+        deferredGroups.poll();
+      }
+
+      ThreadUtils.runSafeSync(log, () -> transformAndDispatchActivities(group));
+    }
+  }
+
+  /**
+   * Returns the file whose transformation lane must be used to transform the given activity.
+   *
+   * @return the file or <code>null</code> if the activity must not be transformed concurrently to
+   *     any other activity
+   */
+  private static IFile getTransformationLane(final IActivity activity) {
+    /*
+     * File activities change the set of files whose activities are filtered
+     * or transformed and so must not be handled concurrently.
+     */
+    if (!(activity instanceof IResourceActivity)
+        || activity instanceof FileActivity
+        || activity instanceof DeletionAcknowledgmentActivity) return null;
+
+    final IResource resource = ((IResourceActivity<? extends IResource>) activity).getResource();
+
+    if (resource == null || resource.getType() != IResource.Type.FILE) return null;
+
+    return (IFile) resource;
+  }
+
+  /**
+   * Transforms the activities on the host, sends the transformed activities to the remote users and
+   * dispatches the activities that have to be executed locally.
+   *
+   * @param activities an <b>immutable</b> list containing the activities
+   */
+  private void transformAndDispatchActivities(List<IActivity> activities) {
+    /**
+     * @JTourBusStop 8, Activity sending, Activity Server:
+     *
+     * <p>This is where the server (or server-part of the host) receives activities. The Server may
+     * transform activities again if necessary and afterward sends them to the correct clients.
+     * (Note that the callback.send() methods get an actual list of recipients.)
+     */
+    TransformationResult result = directServerActivities(activities);
+    for (QueueItem item : result.getSendToPeers()) {
+      List<User> recipients = getRecipientsForQueueItem(item);
+      callback.send(recipients, item.activity);
+    }
+
+    dispatchActivities(result.getLocalActivities());
+  }
+
+  /**
+   * Dispatches the activities for their execution.
+   *
+   * @param activities an <b>immutable</b> list containing the activities
+   */
+  private void dispatchActivities(List<IActivity> activities) {
     /**
      * @JTourBusStop 9, Activity sending, Client Receiver:
      *
@@ -265,6 +467,8 @@ public final class ActivityHandler implements Startable {
 
   @Override
   public void stop() {
+    if (transformationLanes != null) stopTransformationLanes();
+
     if (DISPATCH_MODE == DISPATCH_MODE_ASYNC) return;
 
     dispatchQueue.add(POISON_PILL);
@@ -281,6 +485,17 @@ public final class ActivityHandler implements Startable {
     if (dispatchThread.isAlive()) log.error(dispatchThread.getName() + " thread is still running");
   }
 
+  private void stopTransformationLanes() {
+    try {
+      if (!transformationLanes.shutdown(TIMEOUT))
+        log.error("transformation of pending activities did not finish in time");
+    } catch (InterruptedException e) {
+      log.warn("interrupted while waiting for the transformation of pending activities");
+
+      Thread.currentThread().interrupt();
+    }
+  }
+
   /**
    * Executes the current activities by dispatching the received activities to the SWT EDT.
    *
@@ -402,16 +617,39 @@ public final class ActivityHandler implements Startable {
     final List<User> remoteUsers = session.getRemoteUsers();
     final List<User> allUsers = session.getUsers();
 
-    for (IActivity activity : activities) {
+    for (int i = 0; i < activities.size(); i++) {
+      IActivity activity = activities.get(i);
+
       documentServer.handleResourceChange(activity);
 
-      if (activity instanceof JupiterActivity || activity instanceof ChecksumActivity) {
+      if (activity instanceof JupiterActivity) {
+        /*
+         * compose the edits of a typing user, so the other users receive
+         * and transform them as one operation
+         */
+        List<JupiterActivity> edits = new ArrayList<JupiterActivity>();
+        edits.add((JupiterActivity) activity);
+
+        while (i + 1 < activities.size() && isSameDocumentEdit(activity, activities.get(i + 1))) {
+          i++;
+          documentServer.handleResourceChange(activities.get(i));
+          edits.add((JupiterActivity) activities.get(i));
+        }
+
+        if (edits.size() == 1) result.addAll(documentServer.transformIncoming(activity));
+        else result.addAll(documentServer.transformIncoming(edits));
+
+      } else if (activity instanceof ChecksumActivity) {
 
         result.addAll(documentServer.transformIncoming(activity));
       } else if (activity instanceof ITargetedActivity) {
         ITargetedActivity target = (ITargetedActivity) activity;
         result.add(new QueueItem(target.getTarget(), activity));
 
+      } else if (activity instanceof IMulticastActivity) {
+        IMulticastActivity multicast = (IMulticastActivity) activity;
+        result.add(new QueueItem(multicast.getTargets(), activity));
+
       } else if (remoteUsers.size() > 0) {
 
         // We must not send the activity back to the sender
@@ -433,4 +671,15 @@ public final class ActivityHandler implements Startable {
     }
     return result;
   }
+
+  /**
+   * Returns whether the given activity is a Jupiter activity of the same user for the same file as
+   * the given Jupiter activity.
+   */
+  private static boolean isSameDocumentEdit(final IActivity edit, final IActivity activity) {
+    return activity instanceof JupiterActivity
+        && edit.getSource().equals(activity.getSource())
+        && Objects.equals(
+            ((JupiterActivity) edit).getResource(), ((JupiterActivity) activity).getResource());
+  }
 }
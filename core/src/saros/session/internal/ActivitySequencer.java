@@ -24,7 +24,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -39,17 +38,26 @@ import saros.activities.IActivity;
 import saros.communication.extensions.ActivitiesExtension;
 import saros.net.DispatchThreadContext;
 import saros.net.IReceiver;
+import saros.net.ITransferListener;
 import saros.net.ITransmitter;
+import saros.net.stream.StreamMode;
 import saros.net.xmpp.JID;
 import saros.repackaged.picocontainer.Startable;
 import saros.session.ISarosSession;
 import saros.session.User;
+import saros.util.Histogram;
 import saros.util.ThreadUtils;
 
 /**
  * The ActivitySequencer is responsible for making sure that transformed {@linkplain IActivity
  * activities} are sent and received in the right order.
  *
+ * <p>Outgoing activities are sent in batches. Each round sends at most {@link #batchMaxBytes} to
+ * every user, so a large backlog for one user does not delay the activities for the other users.
+ * During bursts, i.e. if activities are added shortly after a packet was sent, activities are held
+ * back up to {@link #batchMaxDelay} milliseconds, but not longer than the current transmission or
+ * half of the round trip time to the user, so bursts result in fewer but larger packets.
+ *
  * @author rdjemili
  * @author coezbek
  * @author marrin
@@ -64,6 +72,20 @@ public class ActivitySequencer implements Startable {
   /** Sequence numbers for outgoing and incoming activities start with this value. */
   private static final int FIRST_SEQUENCE_NUMBER = 0;
 
+  /** Encoded size of an activity (without file content) that is assumed until it was measured. */
+  private static final int INITIAL_ACTIVITY_SIZE = 512;
+
+  /**
+   * Weight of a new sample of a smoothed value, as used for the smoothed round trip time of TCP.
+   */
+  private static final double SMOOTHING_FACTOR = 1.0 / 8.0;
+
+  /**
+   * Weight of a new sample of the round trip time variation, as used for the round trip time
+   * variation of TCP.
+   */
+  private static final double VARIATION_FACTOR = 1.0 / 4.0;
+
   private static class SequencedActivities {
     private final int sequenceNumber;
     private final List<IActivity> activites;
@@ -84,6 +106,21 @@ public class ActivitySequencer implements Startable {
     private int nextSequenceNumber;
     private final Deque<T> activities = new LinkedList<T>();
 
+    /* only used for outgoing activities */
+
+    /** Size of the file content of the buffered activities */
+    private long contentSize;
+
+    /** Time the first of the buffered activities was added */
+    private long firstActivityTime;
+
+    /** Time the last packet was sent completely */
+    private long lastSendTime;
+
+    private double smoothedSendTime;
+    private double smoothedRoundTripTime;
+    private double roundTripTimeVariation;
+
     private ActivityBuffer(int firstSequenceNumber) {
       nextSequenceNumber = firstSequenceNumber;
     }
@@ -113,6 +150,20 @@ public class ActivitySequencer implements Startable {
             synchronized (bufferedOutgoingActivities) {
               if (stopSending) return;
 
+              final long delay = getBatchDelay(System.currentTimeMillis());
+
+              if (delay != 0) {
+                try {
+                  // a negative delay means that there are no activities to send
+                  if (delay < 0) bufferedOutgoingActivities.wait();
+                  else bufferedOutgoingActivities.wait(delay);
+
+                  continue send;
+                } catch (InterruptedException e) {
+                  return;
+                }
+              }
+
               for (Entry<JID, ActivityBuffer<IActivity>> entry :
                   bufferedOutgoingActivities.entrySet()) {
 
@@ -120,9 +171,10 @@ public class ActivitySequencer implements Startable {
 
                 if (buffer == null || buffer.activities.isEmpty()) continue;
 
-                List<IActivity> optimizedActivities = ActivityOptimizer.optimize(buffer.activities);
+                queueDepths.record(buffer.activities.size());
+
+                List<IActivity> optimizedActivities = ActivityOptimizer.optimize(nextBatch(buffer));
 
-                buffer.activities.clear();
                 buffer.isInTransmission = true;
 
                 int currentSequenceNumber = buffer.nextSequenceNumber;
@@ -132,19 +184,14 @@ public class ActivitySequencer implements Startable {
                     entry.getKey(),
                     new SequencedActivities(optimizedActivities, currentSequenceNumber));
               }
-
-              if (activitiesToSend.isEmpty()) {
-                try {
-                  bufferedOutgoingActivities.wait();
-                  continue send;
-                } catch (InterruptedException e) {
-                  return;
-                }
-              }
             }
 
             for (Entry<JID, SequencedActivities> e : activitiesToSend.entrySet()) {
+              final long sendStartTime = System.currentTimeMillis();
+
               sendActivities(e.getKey(), e.getValue().activites, e.getValue().sequenceNumber);
+
+              updateSendTime(e.getKey(), sendStartTime, System.currentTimeMillis());
             }
 
             synchronized (bufferedOutgoingActivities) {
@@ -165,6 +212,48 @@ public class ActivitySequencer implements Startable {
         }
       };
 
+  /** Records the size of the packets sent by the activity sender thread. */
+  private final ITransferListener transferListener =
+      new ITransferListener() {
+
+        @Override
+        public void sent(
+            StreamMode mode, long sizeCompressed, long sizeUncompressed, long duration) {
+          if (Thread.currentThread() == activitySendThread) lastPacketSize = sizeUncompressed;
+        }
+
+        @Override
+        public void received(
+            StreamMode mode, long sizeCompressed, long sizeUncompressed, long duration) {
+          // NOP
+        }
+      };
+
+  /**
+   * Max time in milliseconds activities are held back during a burst to send them together with the
+   * following ones.
+   */
+  private final long batchMaxDelay =
+      Math.max(0, Long.getLong("saros.session.ACTIVITY_BATCH_MAX_DELAY", 25L));
+
+  /**
+   * Max size in bytes of the activities sent to a user in one packet. File activities are measured
+   * by their content, all other activities by the average encoded size of the previously sent
+   * activities.
+   */
+  private final long batchMaxBytes =
+      Math.max(1, Long.getLong("saros.session.ACTIVITY_BATCH_MAX_BYTES", 256L * 1024L));
+
+  /** Number of threads waiting in {@link #flush}, guarded by bufferedOutgoingActivities */
+  private int pendingFlushes;
+
+  /* only accessed by the activity sender thread */
+  private double averageActivitySize = INITIAL_ACTIVITY_SIZE;
+  private long lastPacketSize;
+
+  private final Histogram queueDepths = new Histogram();
+  private final Histogram batchSizes = new Histogram();
+
   private volatile IActivitySequencerCallback callback;
 
   private boolean started = false;
@@ -249,6 +338,8 @@ public class ActivitySequencer implements Startable {
     receiver.addPacketListener(
         activitiesPacketListener, ActivitiesExtension.PROVIDER.getPacketFilter(currentSessionID));
 
+    transmitter.addTransferListener(transferListener);
+
     activitySendThread = ThreadUtils.runSafeAsync("activity-sender", log, activitySender);
   }
 
@@ -291,6 +382,13 @@ public class ActivitySequencer implements Startable {
     if (activitySendThread.isAlive())
       log.error(activitySendThread.getName() + " thread is still running");
 
+    transmitter.removeTransferListener(transferListener);
+
+    if (log.isDebugEnabled()) {
+      log.debug("outgoing queue depths: " + queueDepths);
+      log.debug("outgoing batch sizes: " + batchSizes);
+    }
+
     synchronized (bufferedOutgoingActivities) {
       bufferedOutgoingActivities.clear();
       bufferedOutgoingActivities.notifyAll();
@@ -378,7 +476,11 @@ public class ActivitySequencer implements Startable {
                   + activity);
           continue;
         }
+
+        if (buffer.activities.isEmpty()) buffer.firstActivityTime = System.currentTimeMillis();
+
         buffer.activities.add(activity);
+        buffer.contentSize += getContentSize(activity);
       }
 
       // ActivitySender thread is flushing the buffers
@@ -426,20 +528,194 @@ public class ActivitySequencer implements Startable {
   public void flush(User user) {
 
     synchronized (bufferedOutgoingActivities) {
-      while (true) {
-        ActivityBuffer<IActivity> buffer = bufferedOutgoingActivities.get(user.getJID());
+      // the buffered activities are sent without any further delay
+      pendingFlushes++;
+      bufferedOutgoingActivities.notifyAll();
 
-        if (buffer == null || (buffer.activities.size() == 0 && !buffer.isInTransmission)) break;
+      try {
+        while (true) {
+          ActivityBuffer<IActivity> buffer = bufferedOutgoingActivities.get(user.getJID());
+
+          if (buffer == null || (buffer.activities.size() == 0 && !buffer.isInTransmission)) break;
 
-        try {
-          bufferedOutgoingActivities.wait();
-        } catch (InterruptedException e) {
-          return;
+          try {
+            bufferedOutgoingActivities.wait();
+          } catch (InterruptedException e) {
+            return;
+          }
         }
+      } finally {
+        pendingFlushes--;
+      }
+    }
+  }
+
+  /**
+   * Updates the round trip time to the given user. The round trip time limits how long activities
+   * for the user are held back during bursts.
+   *
+   * @param jid the JID of the user
+   * @param roundTripTime the measured round trip time in milliseconds
+   */
+  public void updateRoundTripTime(JID jid, long roundTripTime) {
+    synchronized (bufferedOutgoingActivities) {
+      ActivityBuffer<IActivity> buffer = bufferedOutgoingActivities.get(jid);
+
+      if (buffer == null) return;
+
+      if (buffer.smoothedRoundTripTime == 0) {
+        buffer.smoothedRoundTripTime = roundTripTime;
+        buffer.roundTripTimeVariation = roundTripTime / 2.0;
+        return;
       }
+
+      buffer.roundTripTimeVariation +=
+          (Math.abs(roundTripTime - buffer.smoothedRoundTripTime) - buffer.roundTripTimeVariation)
+              * VARIATION_FACTOR;
+
+      buffer.smoothedRoundTripTime +=
+          (roundTripTime - buffer.smoothedRoundTripTime) * SMOOTHING_FACTOR;
+    }
+  }
+
+  /**
+   * Returns the jitter of the round trip time to the given user, i.e. the smoothed mean deviation
+   * of the measured round trip times.
+   *
+   * @param jid the JID of the user
+   * @return the jitter in milliseconds or -1 if the round trip time was not measured yet
+   */
+  public long getJitter(JID jid) {
+    synchronized (bufferedOutgoingActivities) {
+      ActivityBuffer<IActivity> buffer = bufferedOutgoingActivities.get(jid);
+
+      if (buffer == null || buffer.smoothedRoundTripTime == 0) return -1;
+
+      return Math.round(buffer.roundTripTimeVariation);
     }
   }
 
+  /**
+   * Returns the smoothed round trip time to the given user.
+   *
+   * @param jid the JID of the user
+   * @return the round trip time in milliseconds or -1 if it was not measured yet
+   */
+  public long getRoundTripTime(JID jid) {
+    synchronized (bufferedOutgoingActivities) {
+      ActivityBuffer<IActivity> buffer = bufferedOutgoingActivities.get(jid);
+
+      if (buffer == null || buffer.smoothedRoundTripTime == 0) return -1;
+
+      return Math.round(buffer.smoothedRoundTripTime);
+    }
+  }
+
+  /**
+   * Returns the histogram of the number of buffered activities for a user whenever activities are
+   * sent to the user.
+   */
+  public Histogram getQueueDepthHistogram() {
+    return queueDepths;
+  }
+
+  /** Returns the histogram of the number of activities per sent packet. */
+  public Histogram getBatchSizeHistogram() {
+    return batchSizes;
+  }
+
+  /**
+   * Returns how long the activity sender has to wait until it has to send the buffered activities.
+   * Must be called while holding the lock of bufferedOutgoingActivities.
+   *
+   * @return the delay in milliseconds, 0 if the activities have to be sent now or -1 if there are
+   *     no buffered activities
+   */
+  private long getBatchDelay(final long currentTime) {
+    long delay = -1;
+
+    for (ActivityBuffer<IActivity> buffer : bufferedOutgoingActivities.values()) {
+      if (buffer == null || buffer.activities.isEmpty()) continue;
+
+      if (pendingFlushes > 0 || getBufferedSize(buffer) >= batchMaxBytes) return 0;
+
+      final long remaining = buffer.firstActivityTime + getCoalescingDelay(buffer) - currentTime;
+
+      if (remaining <= 0) return 0;
+
+      delay = delay < 0 ? remaining : Math.min(delay, remaining);
+    }
+
+    return delay;
+  }
+
+  /**
+   * Returns how long activities for the user of the given buffer are held back. Activities are only
+   * held back during a burst, so an activity that follows a period without activities is sent
+   * immediately.
+   */
+  private long getCoalescingDelay(ActivityBuffer<IActivity> buffer) {
+    if (buffer.firstActivityTime - buffer.lastSendTime > batchMaxDelay) return 0;
+
+    final double delay = Math.max(buffer.smoothedSendTime, buffer.smoothedRoundTripTime / 2);
+
+    return Math.min(batchMaxDelay, Math.round(delay));
+  }
+
+  /** Returns the estimated encoded size of the buffered activities. */
+  private long getBufferedSize(ActivityBuffer<IActivity> buffer) {
+    return buffer.contentSize + Math.round(buffer.activities.size() * averageActivitySize);
+  }
+
+  /**
+   * Removes the next activities to send from the given buffer. The activities are limited to {@link
+   * #batchMaxBytes} but contain at least one activity. Must be called while holding the lock of
+   * bufferedOutgoingActivities.
+   */
+  private List<IActivity> nextBatch(ActivityBuffer<IActivity> buffer) {
+    final List<IActivity> batch = new ArrayList<IActivity>();
+
+    long batchSize = 0;
+
+    while (!buffer.activities.isEmpty()) {
+      final IActivity activity = buffer.activities.peek();
+      final long contentSize = getContentSize(activity);
+      final long activitySize = contentSize + Math.round(averageActivitySize);
+
+      if (!batch.isEmpty() && batchSize + activitySize > batchMaxBytes) break;
+
+      buffer.activities.poll();
+      buffer.contentSize -= contentSize;
+
+      batch.add(activity);
+      batchSize += activitySize;
+    }
+
+    if (!buffer.activities.isEmpty()) buffer.firstActivityTime = System.currentTimeMillis();
+
+    return batch;
+  }
+
+  private void updateSendTime(JID jid, long sendStartTime, long sendEndTime) {
+    synchronized (bufferedOutgoingActivities) {
+      ActivityBuffer<IActivity> buffer = bufferedOutgoingActivities.get(jid);
+
+      if (buffer == null) return;
+
+      buffer.lastSendTime = sendEndTime;
+      buffer.smoothedSendTime +=
+          (sendEndTime - sendStartTime - buffer.smoothedSendTime) * SMOOTHING_FACTOR;
+    }
+  }
+
+  private static long getContentSize(IActivity activity) {
+    if (!(activity instanceof FileActivity)) return 0;
+
+    final byte[] content = ((FileActivity) activity).getContent();
+
+    return content == null ? 0 : content.length;
+  }
+
   private void unregisterUser(JID jid) {
     /*
      * FIXME This stuff is to lazy if called outside the UI-Thread as it is
@@ -462,80 +738,46 @@ public class ActivitySequencer implements Startable {
 
     if (activities.size() == 0) return;
 
-    /*
-     * HACK the following logic tries to reduce the HEAP usage while
-     * marshalling and sending the data. It is still possible to trigger out
-     * of memory errors.
-     *
-     * We do not try to marshal more than 256 kB of data. FileActivities are
-     * measured by their content. In addition every activity is approximated
-     * as 512 bytes. Marshalled activities can only be garbage collected
-     * after the activity packet was send.
-     *
-     * Remark: The hack is very sloppy and allow larger sizes depending on
-     * how large a file activity is.
-     */
-
-    final int maxFileActivitySize = 256 * 1024; // 256 kB
-    final int minActivitySize = 512; // bytes
-    int currentFileActivitySize = 0;
-
-    final List<IActivity> activitiesToMarshall = new ArrayList<IActivity>();
-    final Iterator<IActivity> it = activities.iterator();
-
-    while (it.hasNext()) {
-
-      final IActivity activity = it.next();
+    final PacketExtension activityPacketExtension =
+        ActivitiesExtension.PROVIDER.create(
+            new ActivitiesExtension(currentSessionID, activities, sequenceNumber));
 
-      if (activity instanceof FileActivity) {
-        final byte[] fileContent = ((FileActivity) (activity)).getContent();
+    if (log.isTraceEnabled()) {
+      log.trace(
+          "send ("
+              + String.format("%03d", activities.size())
+              + ") "
+              + recipient
+              + " -> "
+              + activities);
+    } else if (log.isDebugEnabled()) {
+      log.debug("send (" + String.format("%03d", activities.size()) + ") " + recipient);
+    }
 
-        if (fileContent != null) currentFileActivitySize += fileContent.length;
-      }
+    lastPacketSize = -1;
 
-      currentFileActivitySize += minActivitySize;
+    try {
+      transmitter.send(ISarosSession.SESSION_CONNECTION_ID, recipient, activityPacketExtension);
+    } catch (IOException e) {
+      log.error("failed to sent activities: " + activities, e);
 
-      activitiesToMarshall.add(activity);
+      unregisterUser(recipient);
+      notifyTransmissionError(recipient);
+      return;
+    }
 
-      if (it.hasNext() && currentFileActivitySize < maxFileActivitySize) continue;
+    batchSizes.record(activities.size());
 
-      /* ensure to make a copy of the list otherwise the content will be removed later in the loop.
-       * If the marshalling is delayed in the ITransmitter this would cause errors.
-       */
+    if (lastPacketSize < 0) return;
 
-      final PacketExtension activityPacketExtension =
-          ActivitiesExtension.PROVIDER.create(
-              new ActivitiesExtension(
-                  currentSessionID,
-                  new ArrayList<IActivity>(activitiesToMarshall),
-                  sequenceNumber));
+    long contentSize = 0;
 
-      if (log.isTraceEnabled()) {
-        log.trace(
-            "send ("
-                + String.format("%03d", activities.size())
-                + ") "
-                + recipient
-                + " -> "
-                + activities);
-      } else if (log.isDebugEnabled()) {
-        log.debug("send (" + String.format("%03d", activities.size()) + ") " + recipient);
-      }
+    for (IActivity activity : activities) contentSize += getContentSize(activity);
 
-      try {
-        transmitter.send(ISarosSession.SESSION_CONNECTION_ID, recipient, activityPacketExtension);
-      } catch (IOException e) {
-        log.error("failed to sent activities: " + activities, e);
+    final double activitySize =
+        Math.max(0, lastPacketSize - contentSize) / (double) activities.size();
 
-        unregisterUser(recipient);
-        notifyTransmissionError(recipient);
-        return;
-      } finally {
-        sequenceNumber += activitiesToMarshall.size();
-        activitiesToMarshall.clear();
-        currentFileActivitySize = 0;
-      }
-    }
+    averageActivitySize += (activitySize - averageActivitySize) * SMOOTHING_FACTOR;
   }
 
   private void receiveActivities(Packet activityPacket) {
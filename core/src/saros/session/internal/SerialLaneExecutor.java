@@ -0,0 +1,177 @@
+package saros.session.internal;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Logger;
+import saros.util.NamedThreadFactory;
+import saros.util.ThreadUtils;
+
+/**
+ * Executes tasks on a shared pool of worker threads while preserving the submission order of all
+ * tasks that were submitted for the same lane. Tasks of different lanes may be executed
+ * concurrently.
+ *
+ * @param <K> the type of the keys identifying the lanes
+ */
+final class SerialLaneExecutor<K> {
+
+  private static final Logger log = Logger.getLogger(SerialLaneExecutor.class);
+
+  /**
+   * Maximum number of tasks a lane executes in a row before it yields its worker thread to other
+   * lanes.
+   */
+  private static final int MAX_TASKS_PER_RUN = 16;
+
+  private final class Lane implements Runnable {
+    private final K key;
+    private final Deque<Runnable> tasks = new ArrayDeque<Runnable>();
+
+    private Lane(K key) {
+      this.key = key;
+    }
+
+    @Override
+    public void run() {
+      boolean reschedule = true;
+
+      try {
+        for (int executed = 0; executed < MAX_TASKS_PER_RUN; executed++) {
+          final Runnable task;
+
+          synchronized (SerialLaneExecutor.this) {
+            task = tasks.poll();
+
+            if (task == null) {
+              lanes.remove(key);
+              reschedule = false;
+              return;
+            }
+          }
+
+          try {
+            task.run();
+          } finally {
+            taskDone();
+          }
+        }
+
+        synchronized (SerialLaneExecutor.this) {
+          if (tasks.isEmpty()) {
+            lanes.remove(key);
+            reschedule = false;
+          }
+        }
+      } finally {
+        /*
+         * give other lanes a chance or continue after a task failed with an
+         * error, the lane remains registered so its tasks keep their order
+         */
+        if (reschedule) schedule(this);
+      }
+    }
+  }
+
+  /** All lanes that have pending tasks, guarded by this */
+  private final Map<K, Lane> lanes = new HashMap<K, Lane>();
+
+  /** Number of submitted but not yet executed tasks, guarded by this */
+  private int pendingTasks;
+
+  private final ThreadPoolExecutor executor;
+
+  /**
+   * Creates a new executor.
+   *
+   * @param name the name of the worker threads
+   * @param threads the maximum number of worker threads, must be greater than zero
+   */
+  SerialLaneExecutor(final String name, final int threads) {
+    executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            60,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new NamedThreadFactory(name));
+
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Executes the given task after all tasks that were previously submitted for the same lane were
+   * executed.
+   *
+   * @param key the key of the lane
+   * @param task the task to execute
+   */
+  void execute(final K key, final Runnable task) {
+    Lane lane;
+    boolean isNewLane;
+
+    synchronized (this) {
+      lane = lanes.get(key);
+      isNewLane = lane == null;
+
+      if (isNewLane) {
+        lane = new Lane(key);
+        lanes.put(key, lane);
+      }
+
+      lane.tasks.add(ThreadUtils.wrapSafe(log, task));
+      pendingTasks++;
+    }
+
+    if (isNewLane) schedule(lane);
+  }
+
+  /**
+   * Executes all already submitted tasks and stops the worker threads afterwards. Tasks that are
+   * submitted after this call are discarded.
+   *
+   * @param timeout the maximum time in milliseconds to wait for the pending tasks
+   * @return <code>true</code> if all pending tasks were executed, <code>false</code> otherwise
+   * @throws InterruptedException if the current thread was interrupted while waiting
+   */
+  boolean shutdown(final long timeout) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + timeout;
+
+    synchronized (this) {
+      long remaining;
+
+      while (pendingTasks > 0 && (remaining = deadline - System.currentTimeMillis()) > 0)
+        wait(remaining);
+    }
+
+    executor.shutdown();
+
+    return executor.awaitTermination(
+        Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+  }
+
+  private void schedule(final Lane lane) {
+    try {
+      executor.execute(lane);
+    } catch (RejectedExecutionException e) {
+      log.warn("discarding tasks of lane " + lane.key + " because the executor is shut down");
+
+      synchronized (this) {
+        pendingTasks -= lane.tasks.size();
+        lane.tasks.clear();
+        lanes.remove(lane.key);
+        notifyAll();
+      }
+    }
+  }
+
+  private synchronized void taskDone() {
+    if (--pendingTasks == 0) notifyAll();
+  }
+}
@@ -8,86 +8,52 @@ import saros.communication.extensions.PingExtension;
 import saros.communication.extensions.PongExtension;
 import saros.net.IReceiver;
 import saros.net.ITransmitter;
+import saros.net.xmpp.JID;
 import saros.session.ISarosSession;
 import saros.session.ISarosSessionManager;
 import saros.session.internal.ActivitySequencer;
-import saros.util.ThreadUtils;
 
 /**
  * Component for detecting network errors on the client side of a session.
  *
+ * <p>The host is watched for session packets. Every ping of the host is answered with a pong so the
+ * host can measure the round trip time.
+ *
  * @author srossbach
  */
 public final class ClientSessionTimeoutHandler extends SessionTimeoutHandler {
 
   private static final Logger log = Logger.getLogger(ClientSessionTimeoutHandler.class);
 
-  private boolean shutdown;
-
-  private boolean pingReceived;
-
-  private long lastPingReceived;
+  private volatile boolean shutdown;
 
-  private Thread workerThread;
+  /** The JID of the session's host */
+  private final JID host;
 
   private final PacketListener pingPacketListener =
       new PacketListener() {
 
         @Override
         public void processPacket(Packet packet) {
-          synchronized (ClientSessionTimeoutHandler.this) {
-            lastPingReceived = System.currentTimeMillis();
-            pingReceived = true;
-            ClientSessionTimeoutHandler.this.notifyAll();
-          }
+          scheduler.execute(sendPong);
         }
       };
 
-  private final Runnable clientSessionTimeoutWatchdog =
+  private final Runnable sendPong =
       new Runnable() {
 
         @Override
         public void run() {
-          while (true) {
-
-            boolean abort = false;
-
-            synchronized (ClientSessionTimeoutHandler.this) {
-              while (!pingReceived && !shutdown) {
-                try {
-                  ClientSessionTimeoutHandler.this.wait(PING_PONG_UPDATE_DELAY);
-                } catch (InterruptedException e) {
-                  if (!shutdown) log.error("watchdog shutdown prematurely", e);
-
-                  return;
-                }
-
-                if ((System.currentTimeMillis() - lastPingReceived) > PING_PONG_TIMEOUT) {
-                  abort = true;
-                  break;
-                }
-              }
-
-              if (shutdown) return;
-
-              pingReceived = false;
-            }
-
-            if (abort) {
-              log.error("no ping received, reached timeout = " + PING_PONG_TIMEOUT);
-              handleNetworkError(session.getHost().getJID(), "rx");
-              return;
-            }
-
-            try {
-              transmitter.send(
-                  ISarosSession.SESSION_CONNECTION_ID,
-                  session.getHost().getJID(),
-                  PongExtension.PROVIDER.create(new PongExtension(currentSessionID)));
-            } catch (IOException e) {
-              log.error("failed to send pong", e);
-              handleNetworkError(session.getHost().getJID(), "tx");
-            }
+          if (shutdown) return;
+
+          try {
+            transmitter.send(
+                ISarosSession.SESSION_CONNECTION_ID,
+                host,
+                PongExtension.PROVIDER.create(new PongExtension(currentSessionID)));
+          } catch (IOException e) {
+            log.error("failed to send pong", e);
+            handleNetworkError(host, "tx");
           }
         }
       };
@@ -99,6 +65,8 @@ public final class ClientSessionTimeoutHandler extends SessionTimeoutHandler {
       ITransmitter transmitter,
       IReceiver receiver) {
     super(session, sessionManager, sequencer, transmitter, receiver);
+
+    this.host = session.getHost().getJID();
   }
 
   @Override
@@ -109,34 +77,18 @@ public final class ClientSessionTimeoutHandler extends SessionTimeoutHandler {
 
     super.start();
 
-    lastPingReceived = System.currentTimeMillis();
-
     receiver.addPacketListener(
         pingPacketListener, PingExtension.PROVIDER.getPacketFilter(currentSessionID));
 
-    workerThread =
-        ThreadUtils.runSafeAsync("client-network-watchdog", log, clientSessionTimeoutWatchdog);
+    watch(host);
   }
 
   @Override
   public void stop() {
+    shutdown = true;
+
     super.stop();
 
     receiver.removePacketListener(pingPacketListener);
-
-    synchronized (this) {
-      shutdown = true;
-      notifyAll();
-    }
-
-    try {
-      workerThread.join(TIMEOUT);
-    } catch (InterruptedException e) {
-      log.warn("interrupted while waiting for " + workerThread.getName() + " thread to terminate");
-
-      Thread.currentThread().interrupt();
-    }
-
-    if (workerThread.isAlive()) log.error(workerThread.getName() + " thread is still running");
   }
 }
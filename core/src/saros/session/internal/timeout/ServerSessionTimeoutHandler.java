@@ -1,10 +1,10 @@
 package saros.session.internal.timeout;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Iterator;
-import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import org.apache.log4j.Logger;
 import org.jivesoftware.smack.PacketListener;
 import org.jivesoftware.smack.packet.Packet;
@@ -18,32 +18,60 @@ import saros.session.ISarosSessionManager;
 import saros.session.ISessionListener;
 import saros.session.User;
 import saros.session.internal.ActivitySequencer;
-import saros.util.ThreadUtils;
 
 /**
  * Component for detecting network errors on the server side of a session.
  *
+ * <p>Every remote user is watched for session packets and pinged periodically. The round trip times
+ * of the pings are passed to the {@link ActivitySequencer}.
+ *
  * @author srossbach
  */
 public final class ServerSessionTimeoutHandler extends SessionTimeoutHandler {
 
-  private static final Logger log = Logger.getLogger(ClientSessionTimeoutHandler.class);
-
-  private Thread workerThread;
+  private static final Logger log = Logger.getLogger(ServerSessionTimeoutHandler.class);
 
-  private boolean shutdown;
+  private volatile boolean shutdown;
 
-  /** List containing the current users of the session including their last pong response time. */
-  private final List<UserPongStatus> currentUsers = new ArrayList<UserPongStatus>();
+  /** The pings of the current users of the session by their JID. */
+  private final Map<JID, UserPing> currentUsers = new ConcurrentHashMap<JID, UserPing>();
 
-  private static class UserPongStatus {
+  private final class UserPing implements Runnable {
 
     private final User user;
-    private volatile long lastPongReceivedTime;
 
-    private UserPongStatus(User user) {
+    private final JID jid;
+
+    /** Time the last unanswered ping was sent or 0 if there is none */
+    private volatile long pingSentTime;
+
+    private ScheduledFuture<?> task;
+
+    private UserPing(User user) {
       this.user = user;
-      this.lastPongReceivedTime = System.currentTimeMillis();
+      this.jid = user.getJID();
+    }
+
+    @Override
+    public void run() {
+      if (shutdown || !user.isInSession()) return;
+
+      pingSentTime = System.currentTimeMillis();
+
+      try {
+        transmitter.send(
+            ISarosSession.SESSION_CONNECTION_ID,
+            jid,
+            PingExtension.PROVIDER.create(new PingExtension(currentSessionID)));
+      } catch (IOException e) {
+
+        removeUser(this);
+
+        if (!user.isInSession()) return;
+
+        log.error("failed to send ping to: " + user, e);
+        handleNetworkError(jid, "tx");
+      }
     }
   }
 
@@ -53,12 +81,15 @@ public final class ServerSessionTimeoutHandler extends SessionTimeoutHandler {
         @Override
         public void processPacket(Packet packet) {
           JID jid = new JID(packet.getFrom());
-          synchronized (ServerSessionTimeoutHandler.this) {
-            for (UserPongStatus status : currentUsers) {
-              if (status.user.getJID().strictlyEquals(jid))
-                status.lastPongReceivedTime = System.currentTimeMillis();
-            }
-          }
+          UserPing ping = currentUsers.get(jid);
+
+          if (ping == null || !ping.jid.strictlyEquals(jid)) return;
+
+          long pingSentTime = ping.pingSentTime;
+          ping.pingSentTime = 0;
+
+          if (pingSentTime != 0)
+            sequencer.updateRoundTripTime(jid, System.currentTimeMillis() - pingSentTime);
         }
       };
 
@@ -66,78 +97,13 @@ public final class ServerSessionTimeoutHandler extends SessionTimeoutHandler {
       new ISessionListener() {
         @Override
         public void userJoined(User user) {
-          synchronized (ServerSessionTimeoutHandler.this) {
-            if (!user.isLocal()) currentUsers.add(new UserPongStatus(user));
-          }
+          if (!user.isLocal()) addUser(user);
         }
-      };
-
-  private final Runnable serverSessionTimeoutWatchdog =
-      new Runnable() {
 
         @Override
-        public void run() {
-          while (true) {
-
-            removeInactiveUsers();
-
-            final long pingUserStartTime = System.currentTimeMillis();
-
-            final List<User> usersToPing = getCurrentUsers();
-            final List<User> removedUsers = new ArrayList<User>();
-
-            for (User user : usersToPing) {
-              synchronized (ServerSessionTimeoutHandler.this) {
-                if (shutdown) return;
-              }
-
-              try {
-                transmitter.send(
-                    ISarosSession.SESSION_CONNECTION_ID,
-                    user.getJID(),
-                    PingExtension.PROVIDER.create(new PingExtension(currentSessionID)));
-              } catch (IOException e) {
-
-                removedUsers.add(user);
-
-                if (!user.isInSession()) continue;
-
-                log.error("failed to send ping to: " + user, e);
-                handleNetworkError(user.getJID(), "tx");
-              }
-            }
-
-            removeUsers(removedUsers);
-
-            long pingUserDurationTime = System.currentTimeMillis() - pingUserStartTime;
-
-            final List<User> usersToRemove =
-                getTimedOutUsers(System.currentTimeMillis(), PING_PONG_TIMEOUT);
-
-            for (User user : usersToRemove) {
-              log.error(
-                  "no pong received from user "
-                      + user
-                      + ", reached timeout = "
-                      + PING_PONG_TIMEOUT);
-              handleNetworkError(user.getJID(), "rx");
-            }
-
-            removeUsers(usersToRemove);
-
-            if (pingUserDurationTime > PING_PONG_UPDATE_DELAY) continue;
-
-            synchronized (ServerSessionTimeoutHandler.this) {
-              if (shutdown) return;
-
-              try {
-                ServerSessionTimeoutHandler.this.wait(PING_PONG_UPDATE_DELAY);
-              } catch (InterruptedException e) {
-                if (!shutdown) log.error("watchdog shutdown prematurely", e);
-
-                return;
-              }
-            }
+        public void userLeft(User user) {
+          for (UserPing ping : currentUsers.values()) {
+            if (ping.user == user) removeUser(ping);
           }
         }
       };
@@ -163,92 +129,42 @@ public final class ServerSessionTimeoutHandler extends SessionTimeoutHandler {
         pongPacketListener, PongExtension.PROVIDER.getPacketFilter(currentSessionID));
 
     session.addListener(sessionListener);
-
-    workerThread =
-        ThreadUtils.runSafeAsync("server-network-watchdog", log, serverSessionTimeoutWatchdog);
   }
 
   @Override
   public void stop() {
+    shutdown = true;
+
     super.stop();
 
     receiver.removePacketListener(pongPacketListener);
 
     session.removeListener(sessionListener);
 
-    synchronized (this) {
-      shutdown = true;
-      notifyAll();
-    }
-
-    try {
-      workerThread.join(TIMEOUT);
-    } catch (InterruptedException e) {
-      log.warn("interrupted while waiting for " + workerThread.getName() + " thread to terminate");
-
-      Thread.currentThread().interrupt();
-    }
-
-    if (workerThread.isAlive()) log.error(workerThread.getName() + " thread is still running");
-  }
-
-  private synchronized List<User> getTimedOutUsers(final long currentTime, final long timeout) {
-    List<User> users = new ArrayList<User>();
-
-    for (Iterator<UserPongStatus> it = currentUsers.iterator(); it.hasNext(); ) {
-
-      UserPongStatus status = it.next();
-
-      if (currentTime - status.lastPongReceivedTime > timeout) {
-        users.add(status.user);
-        it.remove();
-      }
-    }
-
-    return users;
+    for (UserPing ping : currentUsers.values()) removeUser(ping);
   }
 
-  /**
-   * Returns all users that are currently marked as <tt>inSession</tt> from the {@link
-   * #currentUsers} list.
-   */
-  private synchronized List<User> getCurrentUsers() {
-    List<User> users = new ArrayList<User>();
+  /** Starts pinging and watching the given user. */
+  private synchronized void addUser(final User user) {
+    if (shutdown) return;
 
-    for (Iterator<UserPongStatus> it = currentUsers.iterator(); it.hasNext(); ) {
+    final UserPing ping = new UserPing(user);
+    final UserPing previous = currentUsers.put(ping.jid, ping);
 
-      UserPongStatus status = it.next();
+    if (previous != null) previous.task.cancel(false);
 
-      if (status.user.isInSession()) users.add(status.user);
-    }
+    watch(ping.jid);
 
-    return users;
+    ping.task =
+        scheduler.scheduleWithFixedDelay(ping, 0, PING_PONG_UPDATE_DELAY, TimeUnit.MILLISECONDS);
   }
 
-  /**
-   * Removes the all users from the {@link #currentUsers} list that are no longer marked as
-   * <tt>inSession</tt>.
-   */
-  private synchronized void removeInactiveUsers() {
-    for (Iterator<UserPongStatus> it = currentUsers.iterator(); it.hasNext(); ) {
+  /** Stops pinging and watching the user of the given ping. */
+  private synchronized void removeUser(final UserPing ping) {
+    if (!currentUsers.remove(ping.jid, ping)) return;
 
-      UserPongStatus status = it.next();
+    ping.task.cancel(false);
 
-      if (!status.user.isInSession()) it.remove();
-    }
-  }
-
-  /** Removes the given users from the {@link #currentUsers} list. */
-  private synchronized void removeUsers(final Collection<User> users) {
-    for (User user : users) {
-      for (Iterator<UserPongStatus> it = currentUsers.iterator(); it.hasNext(); ) {
-        UserPongStatus status = it.next();
-
-        if (status.user == user) {
-          it.remove();
-          break;
-        }
-      }
-    }
+    unwatch(ping.jid);
   }
 }
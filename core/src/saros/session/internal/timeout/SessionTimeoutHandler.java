@@ -1,6 +1,23 @@
 package saros.session.internal.timeout;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import org.apache.log4j.Logger;
+import org.jivesoftware.smack.PacketListener;
+import org.jivesoftware.smack.filter.OrFilter;
+import org.jivesoftware.smack.filter.PacketFilter;
+import org.jivesoftware.smack.packet.Packet;
+import saros.communication.extensions.ActivitiesExtension;
+import saros.communication.extensions.KickUserExtension;
+import saros.communication.extensions.LeaveSessionExtension;
+import saros.communication.extensions.PingExtension;
+import saros.communication.extensions.PongExtension;
+import saros.communication.extensions.UserFinishedResourceNegotiationExtension;
+import saros.communication.extensions.UserListExtension;
+import saros.communication.extensions.UserListReceivedExtension;
 import saros.net.IReceiver;
 import saros.net.ITransmitter;
 import saros.net.xmpp.JID;
@@ -11,21 +28,24 @@ import saros.session.SessionEndReason;
 import saros.session.User;
 import saros.session.internal.ActivitySequencer;
 import saros.session.internal.IActivitySequencerCallback;
+import saros.util.NamedThreadFactory;
 import saros.util.ThreadUtils;
 
 /**
  * Abstract base class that is already capable of detecting and handling network errors occurred in
  * the {@link ActivitySequencer} component.
  *
+ * <p>The liveness of the watched peers is tracked without dedicated threads. Every session packet
+ * received from a peer counts as a sign of life (an implicit pong). Every peer has a deadline on a
+ * scheduler that is shared by all sessions. The deadline is not moved when a packet arrives but
+ * only rescheduled when it expires, so receiving a packet is just a volatile write.
+ *
  * @author srossbach
  */
 abstract class SessionTimeoutHandler implements Startable {
 
   private static final Logger log = Logger.getLogger(SessionTimeoutHandler.class);
 
-  /** Join timeout when stopping this component */
-  protected static final long TIMEOUT = 10000L;
-
   /**
    * Total timeout in milliseconds to remove a user(host) or stop the session(client) if no ping or
    * pong packet is received.
@@ -37,6 +57,16 @@ abstract class SessionTimeoutHandler implements Startable {
   protected static final long PING_PONG_UPDATE_DELAY =
       Long.getLong("saros.session.timeout.PING_PONG_UPDATE_DELAY", 30000L);
 
+  /** Scheduler for the pings and deadlines of all sessions. */
+  protected static final ScheduledThreadPoolExecutor scheduler =
+      new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("session-timeout-"));
+
+  static {
+    scheduler.setKeepAliveTime(60, TimeUnit.SECONDS);
+    scheduler.allowCoreThreadTimeOut(true);
+    scheduler.setRemoveOnCancelPolicy(true);
+  }
+
   /** Current session the component is run with. */
   protected final ISarosSession session;
 
@@ -48,7 +78,7 @@ abstract class SessionTimeoutHandler implements Startable {
   /** Current id of the session. */
   protected final String currentSessionID;
 
-  private final ActivitySequencer sequencer;
+  protected final ActivitySequencer sequencer;
 
   private final IActivitySequencerCallback callback =
       new IActivitySequencerCallback() {
@@ -58,6 +88,59 @@ abstract class SessionTimeoutHandler implements Startable {
         }
       };
 
+  /** The watched peers by their JID. */
+  private final Map<JID, Peer> peers = new ConcurrentHashMap<JID, Peer>();
+
+  private final PacketListener sessionPacketListener =
+      new PacketListener() {
+        @Override
+        public void processPacket(Packet packet) {
+          Peer peer = peers.get(new JID(packet.getFrom()));
+
+          if (peer != null && peer.jid.strictlyEquals(new JID(packet.getFrom())))
+            peer.lastPacketReceivedTime = System.currentTimeMillis();
+        }
+      };
+
+  private final class Peer implements Runnable {
+    private final JID jid;
+
+    private volatile long lastPacketReceivedTime = System.currentTimeMillis();
+
+    /** The pending deadline, guarded by this peer */
+    private ScheduledFuture<?> deadline;
+
+    private Peer(JID jid) {
+      this.jid = jid;
+    }
+
+    private synchronized void schedule(long delay) {
+      if (peers.get(jid) != this) return;
+
+      deadline = scheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void cancel() {
+      if (deadline != null) deadline.cancel(false);
+    }
+
+    @Override
+    public void run() {
+      final long remainingTime =
+          lastPacketReceivedTime + PING_PONG_TIMEOUT - System.currentTimeMillis();
+
+      if (remainingTime > 0) {
+        schedule(remainingTime);
+        return;
+      }
+
+      if (!peers.remove(jid, this)) return;
+
+      log.error("no packet received from " + jid + ", reached timeout = " + PING_PONG_TIMEOUT);
+      handleNetworkError(jid, "rx");
+    }
+  }
+
   protected SessionTimeoutHandler(
       ISarosSession session,
       ISarosSessionManager sessionManager,
@@ -75,11 +158,60 @@ abstract class SessionTimeoutHandler implements Startable {
   @Override
   public void start() {
     sequencer.setCallback(callback);
+
+    receiver.addPacketListener(sessionPacketListener, getSessionPacketFilter());
   }
 
   @Override
   public void stop() {
     sequencer.setCallback(null);
+
+    receiver.removePacketListener(sessionPacketListener);
+
+    for (Peer peer : peers.values()) unwatch(peer.jid);
+  }
+
+  /**
+   * Starts watching the given peer. If no session packet is received from the peer for {@link
+   * #PING_PONG_TIMEOUT} milliseconds a network error is handled.
+   *
+   * @param jid the {@linkplain JID} of the peer
+   */
+  protected final void watch(final JID jid) {
+    final Peer peer = new Peer(jid);
+    final Peer previous = peers.put(jid, peer);
+
+    if (previous != null) previous.cancel();
+
+    peer.schedule(PING_PONG_TIMEOUT);
+  }
+
+  /**
+   * Stops watching the given peer.
+   *
+   * @param jid the {@linkplain JID} of the peer
+   */
+  protected final void unwatch(final JID jid) {
+    final Peer peer = peers.remove(jid);
+
+    if (peer != null) peer.cancel();
+  }
+
+  /** Returns a filter that accepts all packets of the current session. */
+  private PacketFilter getSessionPacketFilter() {
+    final OrFilter filter = new OrFilter();
+
+    filter.addFilter(ActivitiesExtension.PROVIDER.getPacketFilter(currentSessionID));
+    filter.addFilter(PingExtension.PROVIDER.getPacketFilter(currentSessionID));
+    filter.addFilter(PongExtension.PROVIDER.getPacketFilter(currentSessionID));
+    filter.addFilter(UserListExtension.PROVIDER.getPacketFilter(currentSessionID));
+    filter.addFilter(UserListReceivedExtension.PROVIDER.getPacketFilter(currentSessionID));
+    filter.addFilter(
+        UserFinishedResourceNegotiationExtension.PROVIDER.getPacketFilter(currentSessionID));
+    filter.addFilter(LeaveSessionExtension.PROVIDER.getPacketFilter(currentSessionID));
+    filter.addFilter(KickUserExtension.PROVIDER.getPacketFilter(currentSessionID));
+
+    return filter;
   }
 
   /**
@@ -1,5 +1,10 @@
 package saros.synchronize;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.log4j.Logger;
 import saros.session.User;
@@ -22,8 +27,11 @@ public class StartHandle {
   /** Each start handle may be only started once. This boolean guards this. */
   protected AtomicBoolean startCalled = new AtomicBoolean(false);
 
-  /** Each start handle may be acknowledged once to have been started. */
-  protected AtomicBoolean acknowledged = new AtomicBoolean(false);
+  /**
+   * Each start handle may be acknowledged once to have been started. The future completes
+   * exceptionally if the acknowledgment will not arrive.
+   */
+  protected final CompletableFuture<Void> acknowledgment = new CompletableFuture<Void>();
 
   StartHandle(User user, StopManager stopManager, String id) {
     this.user = user;
@@ -92,18 +100,16 @@ public class StartHandle {
    */
   public boolean await() {
 
-    long timeoutToExceed = System.currentTimeMillis() + StopManager.TIMEOUT;
-
     try {
-      while (!acknowledged.get()
-          && (System.currentTimeMillis() < timeoutToExceed)
-          && user.isInSession()) Thread.sleep(stopManager.MILLISTOWAIT);
+      acknowledgment.get(StopManager.TIMEOUT, TimeUnit.MILLISECONDS);
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
       log.error("Code not designed to be interruptible", e);
+    } catch (CancellationException | ExecutionException | TimeoutException e) {
+      // not acknowledged
     }
 
-    return acknowledged.get();
+    return isAcknowledged();
   }
 
   /**
@@ -122,11 +128,20 @@ public class StartHandle {
 
   /** Remember that the stopped user has acknowledged this handle. */
   void acknowledge() {
-    if (!acknowledged.compareAndSet(false, true)) {
+    if (!acknowledgment.complete(null)) {
       log.warn("Acknowledge should only be called once per handle", new StackTrace());
     }
   }
 
+  /** Remember that the stopped user will not acknowledge this handle. */
+  void abort() {
+    acknowledgment.completeExceptionally(new CancellationException());
+  }
+
+  private boolean isAcknowledged() {
+    return acknowledgment.isDone() && !acknowledgment.isCompletedExceptionally();
+  }
+
   @Override
   public int hashCode() {
     final int prime = 31;
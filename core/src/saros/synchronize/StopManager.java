@@ -1,19 +1,25 @@
 package saros.synchronize;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.Set;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import org.apache.log4j.Logger;
 import saros.activities.StopActivity;
 import saros.activities.StopActivity.State;
@@ -26,8 +32,9 @@ import saros.session.AbstractActivityProducer;
 import saros.session.IActivityConsumer;
 import saros.session.IActivityConsumer.Priority;
 import saros.session.ISarosSession;
+import saros.session.ISessionListener;
 import saros.session.User;
-import saros.util.ThreadUtils;
+import saros.util.NamedThreadFactory;
 
 /**
  * The @StopManager class is used to coordinate blocking of user input between different Saros
@@ -40,6 +47,11 @@ import saros.util.ThreadUtils;
  * end of the execution of the {@link #stop} method all Saros Users are stopped or all of them are
  * started.
  *
+ * <p>A stop request is multicast to all affected users as a single {@link StopActivity}. The
+ * acknowledgment of every user completes a future, a user who does not acknowledge the request in
+ * time or leaves the session completes its future exceptionally. No thread is occupied while
+ * waiting for the acknowledgments besides the thread that called {@link #stop}.
+ *
  * <p>A StartHandle will be returned for each stopped user, it can be used to remove the block of
  * remote users.
  */
@@ -50,9 +62,6 @@ public final class StopManager extends AbstractActivityProducer implements Start
 
   private static final Random RANDOM = new Random();
 
-  // Waits MILLISTOWAIT ms until the next test for progress cancellation
-  public final int MILLISTOWAIT = 100;
-
   /** Timeout to abort waiting for a response */
   static final long TIMEOUT = 20000;
 
@@ -70,19 +79,39 @@ public final class StopManager extends AbstractActivityProducer implements Start
       Collections.synchronizedMap(new HashMap<User, List<StartHandle>>());
 
   /**
-   * For every initiated unlock (identified by its StopActivity id) there is one acknowledgment
+   * For every initiated unlock (identified by its StartHandle) there is one acknowledgment
    * expected.
    */
-  private Map<String, StartHandle> startsToBeAcknowledged =
-      Collections.synchronizedMap(new HashMap<String, StartHandle>());
+  private final Map<StartHandle, StartHandle> startsToBeAcknowledged =
+      new ConcurrentHashMap<StartHandle, StartHandle>();
+
+  /**
+   * For every remote user of an initiated StopActivity (type: LockRequest) there is one
+   * acknowledgment expected. The future is completed with the StartHandle of the user once the
+   * acknowledgment arrives.
+   */
+  private final Map<StartHandle, CompletableFuture<StartHandle>> expectedAcknowledgments =
+      new ConcurrentHashMap<StartHandle, CompletableFuture<StartHandle>>();
+
+  /** Guards the registration of new requests against the stopping of the component */
+  private final Object lifecycleLock = new Object();
 
-  /** For every initiated StopActivity (type: LockRequest) there is one acknowledgment expected. */
-  private Set<StopActivity> expectedAcknowledgments =
-      Collections.synchronizedSet(new HashSet<StopActivity>());
+  /**
+   * Completes the futures of users who did not respond in time exceptionally, <code>null</code> if
+   * the component is not started
+   */
+  private ScheduledExecutorService deadlines;
 
-  private final Object notificationLock = new Object();
   /** Indicates of the component is stopped; */
-  private boolean isStopped = false;
+  private volatile boolean isStopped = false;
+
+  private final ISessionListener sessionListener =
+      new ISessionListener() {
+        @Override
+        public void userLeft(User user) {
+          abortPendingRequests(user, "user " + user + " left the session");
+        }
+      };
 
   public StopManager(ISarosSession session) {
     this.sarosSession = session;
@@ -115,9 +144,9 @@ public final class StopManager extends AbstractActivityProducer implements Start
   private void handleStopActivity(final StopActivity stopActivity) {
     assert sarosSession != null;
 
-    User user = stopActivity.getRecipient();
+    User localUser = sarosSession.getLocalUser();
 
-    if (user.isRemote())
+    if (!stopActivity.getRecipients().contains(localUser))
       throw new IllegalArgumentException("Received StopActivity which is not for the local user");
 
     if (stopActivity.getType() == Type.LOCKREQUEST) {
@@ -127,32 +156,28 @@ public final class StopManager extends AbstractActivityProducer implements Start
        * he is locked. Then he acknowledges.
        */
       if (stopActivity.getState() == State.INITIATED) {
-        addStartHandle(generateStartHandle(stopActivity));
+        addStartHandle(new StartHandle(localUser, this, stopActivity.getActivityID()));
         // locks session and acknowledges
 
         lockSession(true);
-        fireActivity(stopActivity.generateAcknowledgment(sarosSession.getLocalUser()));
+        fireActivity(stopActivity.generateAcknowledgment(localUser));
 
         return;
       }
       if (stopActivity.getState() == State.ACKNOWLEDGED) {
-        synchronized (notificationLock) {
-          if (!expectedAcknowledgments.contains(stopActivity)) {
-            log.warn("Received unexpected StopActivity: " + stopActivity);
-            return;
-          }
-
-          /**
-           * Remove from the expectedAcknowledgements set and inform who ever has been waiting for
-           * that to happen. Warn if the removal is failing besides the above check.
-           */
-          if (!expectedAcknowledgments.remove(stopActivity)) {
-            log.warn("Received unexpected " + "StopActivity acknowledgement: " + stopActivity);
-            return;
-          }
-
-          notificationLock.notifyAll();
+        /*
+         * Complete the future of the acknowledging user, the thread that is
+         * waiting in the stop method will notice it.
+         */
+        CompletableFuture<StartHandle> acknowledgment =
+            expectedAcknowledgments.remove(generateStartHandle(stopActivity));
+
+        if (acknowledgment == null) {
+          log.warn("Received unexpected StopActivity acknowledgement: " + stopActivity);
+          return;
         }
+
+        acknowledgment.complete(generateStartHandle(stopActivity));
         return;
       }
     }
@@ -160,14 +185,14 @@ public final class StopManager extends AbstractActivityProducer implements Start
     if (stopActivity.getType() == Type.UNLOCKREQUEST) {
       if (stopActivity.getState() == State.INITIATED) {
 
-        executeUnlock(generateStartHandle(stopActivity));
+        executeUnlock(new StartHandle(localUser, this, stopActivity.getActivityID()));
         // sends an acknowledgment
-        fireActivity(stopActivity.generateAcknowledgment(sarosSession.getLocalUser()));
+        fireActivity(stopActivity.generateAcknowledgment(localUser));
         return;
       }
 
       if (stopActivity.getState() == State.ACKNOWLEDGED) {
-        StartHandle handle = startsToBeAcknowledged.remove(stopActivity.getActivityID());
+        StartHandle handle = startsToBeAcknowledged.remove(generateStartHandle(stopActivity));
         if (handle == null) {
           log.error("StartHandle for " + stopActivity + " could not be found.");
           return;
@@ -188,64 +213,24 @@ public final class StopManager extends AbstractActivityProducer implements Start
    * @param cause the cause for stopping as it is displayed in the progress monitor
    * @noGUI this method must not be called from the GUI thread.
    * @blocking returning after the given users acknowledged the stop
-   * @throws CancellationException if the timeout is exceeded
+   * @throws CancellationException if the timeout is exceeded or the StopManager is not started
    */
   public List<StartHandle> stop(final Collection<User> users, final String cause)
       throws CancellationException {
 
-    final List<StartHandle> resultingHandles =
-        Collections.synchronizedList(new LinkedList<StartHandle>());
-    final LinkedList<Thread> threads = new LinkedList<Thread>();
-
-    final AtomicBoolean isTimeout = new AtomicBoolean(false);
-
-    for (final User user : users) {
-      threads.add(
-          ThreadUtils.runSafeAsync(
-              "stop-" + user + "-" + cause,
-              log,
-              new Runnable() {
-                @Override
-                public void run() {
-                  try {
-                    StartHandle startHandle = stop(user, cause);
-                    resultingHandles.add(startHandle);
-                    log.debug("added " + startHandle + " to resulting handles.");
-                  } catch (CancellationException e) {
-                    isTimeout.set(true);
-                    log.error("user " + user + " did not respond");
-                  } catch (InterruptedException e) {
-                    isTimeout.set(true);
-                    log.error("waiting for response of user " + user + " was interrupted");
-                  }
-                }
-              }));
-    }
+    final Map<StartHandle, CompletableFuture<StartHandle>> acknowledgments = request(users, cause);
 
-    /**
-     * We have started all threads and we will wait for all of them to finish now. This is the
-     * safest and most simple approach to avoid ending up with ConcurrentModificationExceptions that
-     * might happen when we resume the remote users while some threads still need to be executed.
+    /*
+     * Wait for all acknowledgments, even if one of them already failed, so no
+     * user is resumed while the request is still in flight. The futures
+     * complete at the latest when the timeout is exceeded. This wait ignores
+     * interrupts as we would end up with inconsistent state otherwise.
      */
-    while (!threads.isEmpty()) {
-      try {
-        threads.getFirst().join();
-        threads.removeFirst();
-      } catch (InterruptedException e) {
-        // We need to ignore this right now as we would end up with
-        // inconsistent state at the end of this method. Some remote
-        // Users might be blocked already and would remain blocked. We
-        // will just need to try again until all threads have terminated
-      }
-    }
+    CompletableFuture.allOf(acknowledgments.values().toArray(new CompletableFuture<?>[0]))
+        .handle((result, error) -> null)
+        .join();
 
-    if (isTimeout.get()) {
-      // Restart the already stopped users
-      log.error("some users do not respond, restarting already stopped users");
-      for (StartHandle startHandle : resultingHandles) startHandle.start();
-      throw new CancellationException();
-    }
-    return resultingHandles;
+    return collect(acknowledgments);
   }
 
   /**
@@ -267,89 +252,144 @@ public final class StopManager extends AbstractActivityProducer implements Start
    * @param cause the cause for stopping as it is displayed in the progress monitor
    * @noGUI this method must not be called from the GUI thread.
    * @blocking returning after the given user acknowledged the stop
-   * @throws CancellationException if the timeout is exceeded
+   * @throws CancellationException if the timeout is exceeded or the StopManager is not started
    * @throws InterruptedException
    */
   public StartHandle stop(User user, String cause)
       throws CancellationException, InterruptedException {
-    assert sarosSession != null;
 
-    // Creating StopActivity for asking user to stop
-    User localUser = sarosSession.getLocalUser();
-    final StopActivity stopActivity =
-        new StopActivity(
-            localUser,
-            localUser,
-            user,
-            Type.LOCKREQUEST,
-            State.INITIATED,
-            new SimpleDateFormat("HHmmssSS").format(new Date()) + RANDOM.nextLong());
+    final Map<StartHandle, CompletableFuture<StartHandle>> acknowledgments =
+        request(Collections.singletonList(user), cause);
 
-    StartHandle handle = generateStartHandle(stopActivity);
-    addStartHandle(handle);
+    final StartHandle handle = acknowledgments.keySet().iterator().next();
 
-    // Short cut if affected user is local
-    if (user.isLocal()) {
-      lockSession(true);
-      return handle;
+    try {
+      acknowledgments.get(handle).get(TIMEOUT, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      /*
+       * the user may respond later ... do not care to check if the user is
+       * still in session ... just try to resume ... it does not matter if
+       * it fails
+       */
+      abort(handle, "waiting for response of user " + user + " was interrupted");
+      handle.start();
+      throw e;
+    } catch (ExecutionException | TimeoutException e) {
+      abort(handle, "user " + user + " did not respond");
     }
 
-    StopActivity expectedAck = stopActivity.generateAcknowledgment(user);
-    expectedAcknowledgments.add(expectedAck);
+    return collect(acknowledgments).get(0);
+  }
 
-    fireActivity(stopActivity);
+  /**
+   * Adds a StartHandle for every given user and multicasts a single lock request to the remote
+   * users. Local users are stopped immediately.
+   *
+   * @return the StartHandle of every given user (in the same order) mapped to a future that
+   *     completes once the user acknowledged the request, or exceptionally if the user did not
+   *     respond in time, left the session or the StopManager has been stopped
+   * @throws CancellationException if the StopManager is not started
+   */
+  private Map<StartHandle, CompletableFuture<StartHandle>> request(
+      Collection<User> users, String cause) throws CancellationException {
+    assert sarosSession != null;
 
-    // Block until user acknowledged
+    final User localUser = sarosSession.getLocalUser();
+    final String id = new SimpleDateFormat("HHmmssSS").format(new Date()) + RANDOM.nextLong();
 
-    long timeoutToExceed = System.currentTimeMillis() + StopManager.TIMEOUT;
+    final Map<StartHandle, CompletableFuture<StartHandle>> acknowledgments =
+        new LinkedHashMap<StartHandle, CompletableFuture<StartHandle>>();
 
-    boolean isInterrupted = false;
-    boolean acknowledged = false;
-    synchronized (notificationLock) {
-      while ((System.currentTimeMillis() < timeoutToExceed) && user.isInSession()) {
+    final List<User> remoteUsers = new ArrayList<User>(users.size());
 
-        acknowledged = !expectedAcknowledgments.contains(expectedAck);
+    boolean isLocalUserAffected = false;
 
-        if (acknowledged && isStopped) {
-          acknowledged = false;
-          break;
+    /*
+     * register the requests under the lock, so the StopManager cannot be
+     * stopped halfway and abort only some of them
+     */
+    synchronized (lifecycleLock) {
+      if (isStopped || deadlines == null)
+        throw new CancellationException("the StopManager is not started");
+
+      for (final User user : users) {
+        final StartHandle handle = new StartHandle(user, this, id);
+        addStartHandle(handle);
+
+        // Short cut if affected user is local
+        if (user.isLocal()) {
+          isLocalUserAffected = true;
+          acknowledgments.put(handle, CompletableFuture.completedFuture(handle));
+          continue;
         }
 
-        if (acknowledged) break;
+        final CompletableFuture<StartHandle> acknowledgment = new CompletableFuture<StartHandle>();
+        expectedAcknowledgments.put(handle, acknowledgment);
+        acknowledgments.put(handle, acknowledgment);
+        remoteUsers.add(user);
 
-        try {
-          notificationLock.wait(1000);
-        } catch (InterruptedException e) {
-          isInterrupted = true;
-          break;
-        }
+        scheduleDeadline(handle, acknowledgment);
       }
     }
 
-    // clean up
-    expectedAcknowledgments.remove(expectedAck);
+    if (isLocalUserAffected) lockSession(true);
 
-    /*
-     * the user did respond or we got interrupted ... do not care to check
-     * if the user is still in session ... just try to resume ... it does
-     * not matter if it fails
-     */
+    if (remoteUsers.isEmpty()) return acknowledgments;
 
-    if (isInterrupted) {
-      handle.start();
-      throw new InterruptedException();
+    log.debug("requesting stop of " + remoteUsers + " (id: " + id + ", cause: " + cause + ")");
+
+    fireActivity(
+        new StopActivity(localUser, localUser, remoteUsers, Type.LOCKREQUEST, State.INITIATED, id));
+
+    // the users may have left before the session listener noticed the request
+    for (User user : remoteUsers) {
+      if (!user.isInSession() || isStopped)
+        abort(new StartHandle(user, this, id), "user " + user + " is not in the session");
     }
 
-    if (!acknowledged) {
-      log.warn("No acknowledgment arrived, gave up waiting");
+    return acknowledgments;
+  }
 
-      handle.start();
-      throw new CancellationException();
+  /**
+   * Returns the StartHandles of the given completed acknowledgments. If one of the users did not
+   * acknowledge the request, all users are resumed.
+   *
+   * @throws CancellationException if one of the users did not acknowledge the request
+   */
+  private List<StartHandle> collect(
+      Map<StartHandle, CompletableFuture<StartHandle>> acknowledgments)
+      throws CancellationException {
+
+    final List<StartHandle> resultingHandles = new ArrayList<StartHandle>(acknowledgments.size());
+
+    final List<StartHandle> failedHandles = new ArrayList<StartHandle>();
+
+    for (Map.Entry<StartHandle, CompletableFuture<StartHandle>> entry :
+        acknowledgments.entrySet()) {
+
+      final StartHandle startHandle = entry.getKey();
+
+      if (entry.getValue().isDone() && !entry.getValue().isCompletedExceptionally()) {
+        resultingHandles.add(startHandle);
+        log.debug("added " + startHandle + " to resulting handles.");
+      } else {
+        failedHandles.add(startHandle);
+      }
     }
 
-    log.debug("Acknowledgment arrived " + user);
+    if (failedHandles.isEmpty()) return resultingHandles;
 
-    return handle;
+    /*
+     * the users did respond or we got interrupted ... do not care to check
+     * if the users are still in session ... just try to resume ... it does
+     * not matter if it fails
+     */
+    log.error("some users do not respond, restarting already stopped users");
+
+    for (StartHandle startHandle : resultingHandles) startHandle.start();
+    for (StartHandle startHandle : failedHandles) startHandle.start();
+
+    throw new CancellationException();
   }
 
   /**
@@ -409,7 +449,7 @@ public final class StopManager extends AbstractActivityProducer implements Start
       return;
     }
 
-    startsToBeAcknowledged.put(handle.getHandleID(), handle);
+    startsToBeAcknowledged.put(handle, handle);
 
     final StopActivity activity =
         new StopActivity(
@@ -427,6 +467,10 @@ public final class StopManager extends AbstractActivityProducer implements Start
      * notified.
      */
     fireActivity(activity);
+
+    // there will be no acknowledgment if the user already left
+    if (!handle.getUser().isInSession() && startsToBeAcknowledged.remove(handle) != null)
+      handle.abort();
   }
 
   /**
@@ -463,11 +507,57 @@ public final class StopManager extends AbstractActivityProducer implements Start
     return result;
   }
 
+  /** Generates the StartHandle of the user who acknowledged the given StopActivity. */
   private StartHandle generateStartHandle(StopActivity stopActivity) {
-    User user = stopActivity.getAffected();
+    User user = stopActivity.getSource();
     return new StartHandle(user, this, stopActivity.getActivityID());
   }
 
+  /**
+   * Completes the given acknowledgment exceptionally if it is still pending when the {@link
+   * #TIMEOUT} is exceeded. Must be called while holding the {@link #lifecycleLock} of a started
+   * StopManager.
+   */
+  private void scheduleDeadline(
+      final StartHandle handle, final CompletableFuture<StartHandle> acknowledgment) {
+
+    final ScheduledFuture<?> deadline =
+        deadlines.schedule(
+            () -> abort(handle, "user " + handle.getUser() + " did not respond"),
+            TIMEOUT,
+            TimeUnit.MILLISECONDS);
+
+    acknowledgment.whenComplete((result, error) -> deadline.cancel(false));
+  }
+
+  /**
+   * Completes the expected acknowledgment of the given StartHandle exceptionally, if it is still
+   * pending.
+   */
+  private void abort(StartHandle handle, String reason) {
+    CompletableFuture<StartHandle> acknowledgment = expectedAcknowledgments.remove(handle);
+
+    if (acknowledgment == null) return;
+
+    log.warn(reason + ", gave up waiting for acknowledgment of " + handle);
+    acknowledgment.completeExceptionally(new TimeoutException(reason));
+  }
+
+  /**
+   * Aborts all pending lock and unlock requests of the given user or of all users if the user is
+   * <code>null</code>.
+   */
+  private void abortPendingRequests(User user, String reason) {
+    for (StartHandle handle : expectedAcknowledgments.keySet()) {
+      if (user == null || user.equals(handle.getUser())) abort(handle, reason);
+    }
+
+    for (StartHandle handle : startsToBeAcknowledged.keySet()) {
+      if ((user == null || user.equals(handle.getUser()))
+          && startsToBeAcknowledged.remove(handle) != null) handle.abort();
+    }
+  }
+
   public void addBlockable(Blockable stoppable) {
     blockables.add(stoppable);
   }
@@ -480,18 +570,6 @@ public final class StopManager extends AbstractActivityProducer implements Start
     return blocked;
   }
 
-  private void clearExpectedAcknowledgments() {
-    /**
-     * Clear the expectedAcknowledgements and inform the threads that are blocked in the stop method
-     * that there will be no response.
-     */
-    synchronized (this) {
-      expectedAcknowledgments.clear();
-      isStopped = true;
-      notifyAll();
-    }
-  }
-
   private Object resumeLock = new Object();
 
   /**
@@ -514,7 +592,15 @@ public final class StopManager extends AbstractActivityProducer implements Start
 
   @Override
   public void start() {
+    synchronized (lifecycleLock) {
+      isStopped = false;
+      deadlines =
+          Executors.newSingleThreadScheduledExecutor(
+              new NamedThreadFactory("stop-deadlines", false));
+    }
+
     sarosSession.addActivityConsumer(consumer, Priority.ACTIVE);
+    sarosSession.addListener(sessionListener);
 
     /**
      * @JTourBusStop 3, Activity sending, An example of an IActivityProducer:
@@ -528,8 +614,24 @@ public final class StopManager extends AbstractActivityProducer implements Start
   @Override
   public void stop() {
     sarosSession.removeActivityConsumer(consumer);
+    sarosSession.removeListener(sessionListener);
     sarosSession.removeActivityProducer(this);
     lockSession(false);
-    clearExpectedAcknowledgments();
+
+    /*
+     * inform the threads that are blocked in the stop method that there will
+     * be no response
+     */
+    final ScheduledExecutorService executor;
+
+    synchronized (lifecycleLock) {
+      isStopped = true;
+      executor = deadlines;
+      deadlines = null;
+    }
+
+    abortPendingRequests(null, "session is stopping");
+
+    if (executor != null) executor.shutdownNow();
   }
 }
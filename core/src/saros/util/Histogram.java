@@ -0,0 +1,100 @@
+package saros.util;
+
+import java.util.Locale;
+
+/**
+ * Thread safe histogram of non-negative values with buckets of exponentially growing size. Bucket 0
+ * counts the value 0, bucket <code>i</code> counts the values from <code>2^(i-1)</code> to <code>
+ * 2^i - 1</code>.
+ */
+public final class Histogram {
+
+  private static final int BUCKETS = Long.SIZE;
+
+  private final long[] counts = new long[BUCKETS];
+
+  private long count;
+  private long sum;
+  private long max;
+
+  /**
+   * Records the given value. Negative values are recorded as 0.
+   *
+   * @param value the value to record
+   */
+  public synchronized void record(long value) {
+    if (value < 0) value = 0;
+
+    counts[getBucket(value)]++;
+    count++;
+    sum += value;
+    max = Math.max(max, value);
+  }
+
+  /** Returns a copy of the counts of all buckets. */
+  public synchronized long[] getCounts() {
+    return counts.clone();
+  }
+
+  /** Returns the number of recorded values. */
+  public synchronized long getCount() {
+    return count;
+  }
+
+  /** Returns the largest recorded value or 0 if no value was recorded. */
+  public synchronized long getMax() {
+    return max;
+  }
+
+  /** Returns the mean of the recorded values or 0 if no value was recorded. */
+  public synchronized double getMean() {
+    return count == 0 ? 0 : (double) sum / count;
+  }
+
+  /** Returns the index of the bucket the given non-negative value is counted in. */
+  public static int getBucket(long value) {
+    return BUCKETS - Long.numberOfLeadingZeros(value);
+  }
+
+  /** Returns the smallest value that is counted in the given bucket. */
+  public static long getLowerBound(int bucket) {
+    return bucket == 0 ? 0 : 1L << (bucket - 1);
+  }
+
+  /**
+   * Returns the non-empty buckets, e.g. <code>[1]=3, [2-3]=5, [8-15]=1 (count=9, mean=3.1, max=9)
+   * </code>.
+   */
+  @Override
+  public synchronized String toString() {
+    final StringBuilder builder = new StringBuilder();
+
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      if (counts[bucket] == 0) continue;
+
+      final long lowerBound = getLowerBound(bucket);
+      final long upperBound = bucket == 0 ? 0 : lowerBound * 2 - 1;
+
+      if (builder.length() > 0) builder.append(", ");
+
+      builder.append('[').append(lowerBound);
+
+      if (upperBound != lowerBound) builder.append('-').append(upperBound);
+
+      builder.append("]=").append(counts[bucket]);
+    }
+
+    if (builder.length() > 0) builder.append(' ');
+
+    builder
+        .append("(count=")
+        .append(count)
+        .append(", mean=")
+        .append(String.format(Locale.ROOT, "%.1f", getMean()))
+        .append(", max=")
+        .append(max)
+        .append(')');
+
+    return builder.toString();
+  }
+}
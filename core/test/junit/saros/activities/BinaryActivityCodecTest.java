@@ -0,0 +1,171 @@
+package saros.activities;
+
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+import saros.communication.extensions.ActivitiesExtension;
+import saros.concurrent.jupiter.internal.JupiterVectorTime;
+import saros.concurrent.jupiter.internal.text.DeleteOperation;
+import saros.concurrent.jupiter.internal.text.InsertOperation;
+import saros.concurrent.jupiter.internal.text.NoOperation;
+import saros.concurrent.jupiter.internal.text.SplitOperation;
+import saros.concurrent.jupiter.internal.text.TimestampOperation;
+import saros.editor.text.TextPosition;
+import saros.editor.text.TextSelection;
+import saros.filesystem.IFile;
+import saros.filesystem.IFolder;
+import saros.filesystem.IPath;
+import saros.filesystem.IPathFactory;
+import saros.filesystem.IReferencePoint;
+import saros.filesystem.IResource.Type;
+import saros.misc.xstream.UserConverter;
+import saros.net.xmpp.JID;
+import saros.session.ISarosSession;
+import saros.session.User;
+
+public class BinaryActivityCodecTest {
+
+  private static final JID ALICE_JID = new JID("alice@junit");
+  private static final JID BOB_JID = new JID("bob@junit");
+
+  private final User alice = new User(ALICE_JID, true, true, null);
+  private final User bob = new User(BOB_JID, false, false, null);
+
+  private IFile file;
+
+  private BinaryActivityCodec codec;
+
+  @Before
+  public void setUp() {
+    IPath path = EasyMock.createMock(IPath.class);
+    IPathFactory pathFactory = EasyMock.createMock(IPathFactory.class);
+    IReferencePoint referencePoint = EasyMock.createNiceMock(IReferencePoint.class);
+    file = EasyMock.createNiceMock(IFile.class);
+
+    expect(pathFactory.fromPath(path)).andStubReturn("src/Main.java");
+    expect(pathFactory.fromString("src/Main.java")).andStubReturn(path);
+
+    expect(referencePoint.getFile(path)).andStubReturn(file);
+
+    expect(file.getReferencePoint()).andStubReturn(referencePoint);
+    expect(file.getReferencePointRelativePath()).andStubReturn(path);
+    expect(file.getType()).andStubReturn(Type.FILE);
+
+    ISarosSession session = EasyMock.createMock(ISarosSession.class);
+    expect(session.getReferencePointId(referencePoint)).andStubReturn("ABC");
+    expect(session.getReferencePoint("ABC")).andStubReturn(referencePoint);
+    expect(session.getUser(ALICE_JID)).andStubReturn(alice);
+    expect(session.getUser(BOB_JID)).andStubReturn(bob);
+
+    EasyMock.replay(path, pathFactory, referencePoint, file, session);
+
+    codec = new BinaryActivityCodec(session, pathFactory, new UserConverter(session));
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    List<IActivity> activities = new ArrayList<IActivity>();
+
+    activities.add(
+        TextEditActivity.buildTextEditActivity(
+            alice, new TextPosition(3, 4), "foo\nbar", "äöü", file));
+
+    activities.add(
+        new JupiterActivity(
+            new JupiterVectorTime(12, 7),
+            new SplitOperation(
+                new DeleteOperation(new TextPosition(1, 2), 0, 3, "abc"),
+                new InsertOperation(new TextPosition(1, 2), 1, 0, "x\n", new TextPosition(0, 200))),
+            alice,
+            file));
+
+    activities.add(new JupiterActivity(new JupiterVectorTime(0, 0), new NoOperation(), bob, file));
+
+    activities.add(
+        new JupiterActivity(new JupiterVectorTime(1, 1), new TimestampOperation(), alice, file));
+
+    activities.add(
+        new TextSelectionActivity(
+            alice, new TextSelection(new TextPosition(1, 1), new TextPosition(4, 2), true), file));
+
+    activities.add(new TextSelectionActivity(bob, TextSelection.EMPTY_SELECTION, file));
+    activities.add(new ViewportActivity(alice, 100, 42, file));
+    activities.add(new ChecksumActivity(alice, file, -12345L, 678L, new JupiterVectorTime(2, 3)));
+    activities.add(new ChecksumActivity(alice, file, ChecksumActivity.NON_EXISTING_DOC, -1, null));
+    activities.add(
+        new ChecksumActivity(alice, file, 42L, 9000L, null, 128, new long[] {-1L, 0L, 1L}));
+    activities.add(new EditorActivity(alice, EditorActivity.Type.ACTIVATED, null));
+    activities.add(new EditorActivity(bob, EditorActivity.Type.SAVED, file));
+    activities.add(new NOPActivity(alice, bob, 4711));
+
+    ActivitiesExtension extension = new ActivitiesExtension("Session-ID", activities, 1234);
+
+    byte[] data = codec.encode(extension);
+
+    ActivitiesExtension decoded = codec.decode(data);
+
+    assertEquals("Session-ID", decoded.getSessionID());
+    assertEquals(1234, decoded.getSequenceNumber());
+    assertEquals(activities, decoded.getActivities());
+  }
+
+  @Test
+  public void testEncodingIsCompact() {
+    List<IActivity> activities = new ArrayList<IActivity>();
+
+    for (int i = 0; i < 16; i++) {
+      activities.add(
+          new JupiterActivity(
+              new JupiterVectorTime(i, 0),
+              new InsertOperation(new TextPosition(10, i), 0, 1, "a"),
+              alice,
+              file));
+    }
+
+    ActivitiesExtension extension = new ActivitiesExtension("Session-ID", activities, 0);
+
+    byte[] data = codec.encode(extension);
+
+    assertTrue("binary encoding is not smaller than 32 bytes per keystroke", data.length < 16 * 32);
+  }
+
+  @Test
+  public void testUnsupportedActivityIsNotEncoded() {
+    IFolder folder = EasyMock.createNiceMock(IFolder.class);
+    EasyMock.replay(folder);
+
+    List<IActivity> activities =
+        Arrays.asList(new NOPActivity(alice, bob, 0), new FolderCreatedActivity(alice, folder));
+
+    assertNull(codec.encode(new ActivitiesExtension("Session-ID", activities, 0)));
+  }
+
+  @Test(expected = IOException.class)
+  public void testUnsupportedVersion() throws IOException {
+    List<IActivity> activities = Arrays.asList(new NOPActivity(alice, bob, 0));
+
+    byte[] data = codec.encode(new ActivitiesExtension("Session-ID", activities, 0));
+
+    data[0] = (byte) (BinaryActivityCodec.VERSION + 1);
+
+    codec.decode(data);
+  }
+
+  @Test(expected = IOException.class)
+  public void testTruncatedData() throws IOException {
+    List<IActivity> activities = Arrays.asList(new ViewportActivity(alice, 1, 2, file));
+
+    byte[] data = codec.encode(new ActivitiesExtension("Session-ID", activities, 0));
+
+    codec.decode(Arrays.copyOf(data, data.length - 1));
+  }
+}
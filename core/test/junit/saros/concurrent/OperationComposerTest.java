@@ -0,0 +1,92 @@
+package saros.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static saros.test.util.OperationHelper.D;
+import static saros.test.util.OperationHelper.EOL;
+import static saros.test.util.OperationHelper.I;
+import static saros.test.util.OperationHelper.NOP;
+
+import java.util.Arrays;
+import java.util.List;
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+import saros.concurrent.jupiter.Operation;
+import saros.concurrent.jupiter.internal.text.NoOperation;
+import saros.concurrent.jupiter.internal.text.OperationComposer;
+import saros.concurrent.jupiter.internal.text.SplitOperation;
+import saros.concurrent.jupiter.test.util.Document;
+import saros.filesystem.IFile;
+
+/** Tests the composition of operations that are performed after each other. */
+public class OperationComposerTest {
+
+  private IFile file;
+
+  @Before
+  public void setUp() {
+    file = EasyMock.createNiceMock(IFile.class);
+  }
+
+  @Test
+  public void testTyping() {
+    List<Operation> ops = Arrays.asList(I(4, "a"), I(5, "b"), I(6, EOL), I(1, 0, "c"));
+
+    assertEquals(I(4, "ab" + EOL + "c"), OperationComposer.compose(ops));
+    assertSameEffect("0123456789", ops);
+  }
+
+  @Test
+  public void testBackspaceAndDelete() {
+    List<Operation> backspaces = Arrays.asList(D(6, "6"), D(5, "5"), D(4, "4"));
+
+    assertEquals(D(4, "456"), OperationComposer.compose(backspaces));
+    assertSameEffect("0123456789", backspaces);
+
+    List<Operation> deletes = Arrays.asList(D(4, "4"), D(4, "5"), D(4, "6"));
+
+    assertEquals(D(4, "456"), OperationComposer.compose(deletes));
+    assertSameEffect("0123456789", deletes);
+  }
+
+  @Test
+  public void testTypedAndRemoved() {
+    List<Operation> ops = Arrays.asList(I(4, "a"), I(5, "b"), D(5, "b"), D(4, "a"), NOP());
+
+    assertEquals(new NoOperation(), OperationComposer.compose(ops));
+    assertSameEffect("0123456789", ops);
+  }
+
+  @Test
+  public void testNotAdjacent() {
+    List<Operation> ops = Arrays.asList(I(1, "a"), I(2, "b"), D(9, "7"), I(0, "c"));
+
+    Operation composed = OperationComposer.compose(ops);
+
+    assertTrue(composed instanceof SplitOperation);
+    assertEquals(3, composed.getTextOperations().size());
+    assertSameEffect("0123456789", ops);
+  }
+
+  @Test
+  public void testSplitOperationsAreFlattened() {
+    List<Operation> ops =
+        Arrays.asList(new SplitOperation(I(0, "a"), I(5, "b")), I(6, "c"), I(1, "d"));
+
+    assertEquals(3, OperationComposer.compose(ops).getTextOperations().size());
+    assertSameEffect("0123456789", ops);
+  }
+
+  private void assertSameEffect(String content, List<Operation> ops) {
+    Document expected = new Document(content, file);
+
+    for (Operation op : ops) expected.execOperation(op);
+
+    Document actual = new Document(content, file);
+
+    actual.execOperation(OperationComposer.compose(ops));
+
+    assertEquals(expected.getDocument(), actual.getDocument());
+  }
+}
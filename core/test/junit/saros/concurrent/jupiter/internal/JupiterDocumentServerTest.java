@@ -0,0 +1,122 @@
+package saros.concurrent.jupiter.internal;
+
+import static org.junit.Assert.assertEquals;
+import static saros.test.util.OperationHelper.D;
+import static saros.test.util.OperationHelper.I;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+import saros.activities.JupiterActivity;
+import saros.concurrent.jupiter.Operation;
+import saros.concurrent.jupiter.TransformationException;
+import saros.concurrent.jupiter.test.util.Document;
+import saros.concurrent.jupiter.test.util.JupiterTestCase;
+import saros.filesystem.IFile;
+import saros.session.User;
+
+public class JupiterDocumentServerTest {
+
+  private static final String CONTENT = "0123456789";
+
+  private final User alice = JupiterTestCase.createUser("alice");
+  private final User bob = JupiterTestCase.createUser("bob");
+
+  private IFile file;
+
+  private JupiterDocumentServer server;
+
+  private Jupiter aliceClient;
+  private Jupiter bobClient;
+
+  private Document aliceDocument;
+  private Document bobDocument;
+
+  @Before
+  public void setUp() {
+    file = EasyMock.createNiceMock(IFile.class);
+    EasyMock.replay(file);
+
+    server = new JupiterDocumentServer(file);
+    server.addProxyClient(alice);
+    server.addProxyClient(bob);
+
+    aliceClient = new Jupiter(true);
+    bobClient = new Jupiter(true);
+
+    aliceDocument = new Document(CONTENT, file);
+    bobDocument = new Document(CONTENT, file);
+  }
+
+  @Test
+  public void testComposedActivitiesConverge() throws TransformationException {
+    List<JupiterActivity> typed = edit(alice, I(4, "a"), I(5, "b"), I(6, "c"));
+    List<JupiterActivity> deleted = edit(bob, D(5, "5"), D(5, "6"));
+
+    Map<User, JupiterActivity> forBob = server.transformJupiterActivities(typed);
+    Map<User, JupiterActivity> forAlice = server.transformJupiterActivities(deleted);
+
+    assertEquals(Collections.singleton(bob), forBob.keySet());
+    assertEquals(I(4, "abc"), forBob.get(bob).getOperation());
+    assertEquals(D(8, "56"), forAlice.get(alice).getOperation());
+
+    receive(bob, forBob.get(bob));
+    receive(alice, forAlice.get(alice));
+
+    assertEquals("0123abc4789", aliceDocument.getDocument());
+    assertEquals(aliceDocument.getDocument(), bobDocument.getDocument());
+
+    /* the composed operations must have been acknowledged consistently */
+    List<JupiterActivity> typedAgain = edit(alice, I(0, "x"));
+    List<JupiterActivity> typedConcurrently = edit(bob, I(11, "y"), I(12, "z"));
+
+    receive(bob, server.transformJupiterActivities(typedAgain).get(bob));
+    receive(alice, server.transformJupiterActivities(typedConcurrently).get(alice));
+
+    assertEquals("x0123abc4789yz", aliceDocument.getDocument());
+    assertEquals(aliceDocument.getDocument(), bobDocument.getDocument());
+  }
+
+  @Test
+  public void testComposedAndSingleActivitiesConverge() throws TransformationException {
+    List<JupiterActivity> typed = edit(alice, I(9, "a"), I(10, "b"));
+    List<JupiterActivity> typedConcurrently = edit(bob, I(9, "y"), I(10, "z"));
+
+    /* alice's activities are transformed one by one, bob's are composed */
+    List<JupiterActivity> forBob = new ArrayList<>();
+    for (JupiterActivity activity : typed)
+      forBob.add(server.transformJupiterActivity(activity).get(bob));
+
+    JupiterActivity forAlice = server.transformJupiterActivities(typedConcurrently).get(alice);
+
+    for (JupiterActivity activity : forBob) receive(bob, activity);
+    receive(alice, forAlice);
+
+    assertEquals(aliceDocument.getDocument(), bobDocument.getDocument());
+  }
+
+  private List<JupiterActivity> edit(User user, Operation... ops) {
+    Jupiter client = user.equals(alice) ? aliceClient : bobClient;
+    Document document = user.equals(alice) ? aliceDocument : bobDocument;
+
+    List<JupiterActivity> activities = new ArrayList<>();
+
+    for (Operation op : ops) {
+      document.execOperation(op);
+      activities.add(client.generateJupiterActivity(op, user, file));
+    }
+
+    return activities;
+  }
+
+  private void receive(User user, JupiterActivity activity) throws TransformationException {
+    Jupiter client = user.equals(alice) ? aliceClient : bobClient;
+    Document document = user.equals(alice) ? aliceDocument : bobDocument;
+
+    document.execOperation(client.receiveJupiterActivity(activity));
+  }
+}
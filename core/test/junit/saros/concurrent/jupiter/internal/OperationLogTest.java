@@ -0,0 +1,126 @@
+package saros.concurrent.jupiter.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static saros.test.util.OperationHelper.I;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import saros.concurrent.jupiter.Operation;
+
+public class OperationLogTest {
+
+  private OperationLog log;
+
+  @Before
+  public void setUp() {
+    log = new OperationLog();
+  }
+
+  @Test
+  public void testAddAndGet() {
+    List<Operation> operations = createOperations(3);
+
+    for (int i = 0; i < operations.size(); i++) log.add(operations.get(i), 5 + i);
+
+    assertEquals(3, log.size());
+    assertEquals(5, log.getFirstCount());
+
+    for (int i = 0; i < operations.size(); i++) assertSame(operations.get(i), log.get(i));
+  }
+
+  @Test
+  public void testSetReplacesInPlace() {
+    List<Operation> operations = createOperations(3);
+
+    for (int i = 0; i < operations.size(); i++) log.add(operations.get(i), i);
+
+    Operation transformed = I(42, "x");
+
+    log.set(1, transformed);
+
+    assertSame(operations.get(0), log.get(0));
+    assertSame(transformed, log.get(1));
+    assertSame(operations.get(2), log.get(2));
+  }
+
+  @Test
+  public void testDiscardBefore() {
+    List<Operation> operations = createOperations(5);
+
+    for (int i = 0; i < operations.size(); i++) log.add(operations.get(i), i);
+
+    log.discardBefore(0);
+    assertEquals(5, log.size());
+
+    log.discardBefore(2);
+    assertEquals(3, log.size());
+    assertEquals(2, log.getFirstCount());
+    assertSame(operations.get(2), log.get(0));
+
+    log.discardBefore(1);
+    assertEquals("already discarded operations were discarded again", 3, log.size());
+
+    log.discardBefore(10);
+    assertTrue(log.isEmpty());
+  }
+
+  @Test
+  public void testGrowWhileWrapped() {
+    List<Operation> operations = createOperations(100);
+
+    int added = 0;
+    int discarded = 0;
+
+    // keep the head moving so the buffer wraps around before it grows
+    while (added < operations.size()) {
+      for (int i = 0; i < 7 && added < operations.size(); i++, added++)
+        log.add(operations.get(added), added);
+
+      discarded += 3;
+      log.discardBefore(discarded);
+
+      assertEquals(added - discarded, log.size());
+
+      for (int i = 0; i < log.size(); i++) assertSame(operations.get(discarded + i), log.get(i));
+    }
+  }
+
+  @Test
+  public void testAddAfterEmptied() {
+    log.add(I(0, "a"), 0);
+    log.add(I(1, "b"), 1);
+    log.discardBefore(2);
+
+    Operation operation = I(2, "c");
+
+    log.add(operation, 2);
+
+    assertEquals(2, log.getFirstCount());
+    assertSame(operation, log.get(0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNonConsecutiveCount() {
+    log.add(I(0, "a"), 0);
+    log.add(I(1, "b"), 2);
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testGetOutOfBounds() {
+    log.add(I(0, "a"), 0);
+    log.discardBefore(1);
+    log.get(0);
+  }
+
+  private static List<Operation> createOperations(int count) {
+    List<Operation> operations = new ArrayList<>(count);
+
+    for (int i = 0; i < count; i++) operations.add(I(i, "o" + i));
+
+    return operations;
+  }
+}
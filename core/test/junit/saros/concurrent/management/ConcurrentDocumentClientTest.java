@@ -0,0 +1,136 @@
+package saros.concurrent.management;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+import saros.activities.ChecksumActivity;
+import saros.activities.FileActivity.Purpose;
+import saros.activities.FileActivity.Type;
+import saros.activities.IActivity;
+import saros.activities.JupiterActivity;
+import saros.activities.RegionRecoveryActivity;
+import saros.activities.TargetedFileActivity;
+import saros.activities.TextEditActivity;
+import saros.concurrent.jupiter.internal.Jupiter;
+import saros.concurrent.jupiter.test.util.JupiterTestCase;
+import saros.editor.IEditorManager;
+import saros.editor.text.LineRange;
+import saros.editor.text.TextPosition;
+import saros.filesystem.IFile;
+import saros.filesystem.IResource;
+import saros.session.ISarosSession;
+import saros.session.User;
+
+public class ConcurrentDocumentClientTest {
+
+  private static final String RECOVERY_ID = "recovery";
+
+  private final User host = JupiterTestCase.createUser("host");
+  private final User alice = JupiterTestCase.createUser("alice");
+
+  private IFile file;
+
+  private ConcurrentDocumentClient client;
+
+  /** The Jupiter server side of alice, reset together with her client */
+  private Jupiter server;
+
+  @Before
+  public void setUp() {
+    file = EasyMock.createNiceMock(IFile.class);
+    EasyMock.expect(file.exists()).andStubReturn(true);
+    EasyMock.expect(file.getType()).andStubReturn(IResource.Type.FILE);
+    EasyMock.replay(file);
+
+    ISarosSession session = EasyMock.createNiceMock(ISarosSession.class);
+    EasyMock.expect(session.getLocalUser()).andStubReturn(alice);
+    EasyMock.replay(session);
+
+    IEditorManager editorManager = EasyMock.createNiceMock(IEditorManager.class);
+    EasyMock.expect(editorManager.getNormalizedContent(file)).andStubReturn("hello\nworld");
+    EasyMock.replay(editorManager);
+
+    client = new ConcurrentDocumentClient(session, editorManager);
+
+    server = new Jupiter(false);
+  }
+
+  @Test
+  public void testHeldBackActivitiesAreReplayedAfterTheReplacement() {
+    final RegionRecoveryActivity request =
+        RegionRecoveryActivity.request(host, alice, file, RECOVERY_ID);
+
+    assertEquals(Collections.singletonList(request), client.transformFromJupiter(request));
+
+    final JupiterActivity edit = insert(new TextPosition(0, 0), "X");
+
+    assertTrue(client.transformFromJupiter(edit).isEmpty());
+    assertTrue(client.transformFromJupiter(checksum()).isEmpty());
+
+    final RegionRecoveryActivity replace =
+        RegionRecoveryActivity.replace(
+            host,
+            alice,
+            file,
+            RECOVERY_ID,
+            Collections.singletonList(new LineRange(0, 64)),
+            Collections.singletonList("hallo\nworld"));
+
+    final List<IActivity> activities = client.transformFromJupiter(replace);
+
+    assertEquals(3, activities.size());
+
+    final TextEditActivity replacement = (TextEditActivity) activities.get(0);
+
+    assertEquals(new TextPosition(0, 0), replacement.getStartPosition());
+    assertEquals("hello\nworld", replacement.getReplacedText());
+    assertEquals("hallo\nworld", replacement.getNewText());
+
+    final TextEditActivity replayed = (TextEditActivity) activities.get(1);
+
+    assertEquals(new TextPosition(0, 0), replayed.getStartPosition());
+    assertEquals("X", replayed.getNewText());
+
+    assertSame(replace, activities.get(2));
+
+    // the recovery is finished, so later activities are no longer held back
+    assertEquals(1, client.transformFromJupiter(insert(new TextPosition(0, 1), "Y")).size());
+  }
+
+  @Test
+  public void testWholeFileRecoveryEndsTheHoldBack() {
+    client.transformFromJupiter(RegionRecoveryActivity.request(host, alice, file, RECOVERY_ID));
+
+    assertTrue(client.transformFromJupiter(insert(new TextPosition(0, 0), "X")).isEmpty());
+
+    final TargetedFileActivity recovery =
+        new TargetedFileActivity(
+            host, alice, Type.CREATED, file, null, new byte[0], "UTF-8", Purpose.RECOVERY);
+
+    assertEquals(Collections.singletonList(recovery), client.transformFromJupiter(recovery));
+
+    // both sides are reset again when the recovered file is written
+    client.reset(file);
+    server = new Jupiter(false);
+
+    // the recovered content already contains the effects of the held back activity
+    assertEquals(1, client.transformFromJupiter(insert(new TextPosition(0, 1), "Y")).size());
+  }
+
+  private JupiterActivity insert(TextPosition position, String text) {
+    return server.generateJupiterActivity(
+        TextEditActivity.buildTextEditActivity(host, position, text, "", file).toOperation(),
+        host,
+        file);
+  }
+
+  private ChecksumActivity checksum() {
+    return new ChecksumActivity(host, file, 42, 11, server.getTimestamp());
+  }
+}
@@ -0,0 +1,164 @@
+package saros.concurrent.watchdog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static saros.test.mocks.SarosMocks.fileMock;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import saros.filesystem.IFile;
+import saros.net.xmpp.JID;
+import saros.session.User;
+
+public class ChecksumSchedulerTest {
+
+  private ChecksumScheduler scheduler;
+
+  private IFile file;
+  private IFile other;
+
+  private User alice;
+  private User bob;
+
+  @Before
+  public void setUp() {
+    scheduler = new ChecksumScheduler();
+
+    file = fileMock();
+    other = fileMock();
+
+    alice = new User(new JID("alice@jabber.org"), true, true, null);
+    bob = new User(new JID("bob@jabber.org"), false, false, null);
+  }
+
+  @Test
+  public void testNewFilesAreDueImmediately() {
+    assertEquals(Arrays.asList(file, other), scheduler.getDueFiles(Arrays.asList(file, other), 0));
+  }
+
+  @Test
+  public void testIdleFilesBackOff() {
+    final List<IFile> files = Collections.singletonList(file);
+
+    long now = 0;
+    long lastInterval = 0;
+
+    for (int i = 0; i < 10; i++) {
+      assertEquals(files, scheduler.getDueFiles(files, now));
+      scheduler.checked(file, now);
+
+      long next = now + 1;
+      while (scheduler.getDueFiles(files, next).isEmpty()) next += 1000;
+
+      final long interval = next - now;
+
+      assertTrue("interval did not grow: " + interval, interval >= lastInterval);
+      assertTrue(interval <= ChecksumScheduler.MAX_IDLE_INTERVAL + 1000);
+
+      lastInterval = interval;
+      now = next;
+    }
+
+    assertEquals(ChecksumScheduler.MAX_IDLE_INTERVAL, lastInterval, 1000);
+  }
+
+  @Test
+  public void testEditedFilesAreCheckedSooner() {
+    final List<IFile> files = Arrays.asList(file, other);
+
+    scheduler.getDueFiles(files, 0);
+    scheduler.checked(file, 0);
+    scheduler.checked(other, 0);
+
+    scheduler.edited(file, alice, false, 1000);
+
+    assertEquals(
+        Collections.emptyList(),
+        scheduler.getDueFiles(files, 1000 + ChecksumScheduler.EDITED_INTERVAL - 1));
+    assertEquals(
+        Collections.singletonList(file),
+        scheduler.getDueFiles(files, 1000 + ChecksumScheduler.EDITED_INTERVAL));
+  }
+
+  @Test
+  public void testConcurrentlyEditedFilesAreCheckedFirst() {
+    final List<IFile> files = Arrays.asList(file, other);
+
+    scheduler.getDueFiles(files, 0);
+    scheduler.checked(file, 0);
+    scheduler.checked(other, 0);
+
+    scheduler.edited(other, alice, false, 1000);
+    scheduler.edited(file, alice, false, 1000);
+    scheduler.edited(file, bob, false, 1500);
+
+    assertEquals(
+        Collections.singletonList(file),
+        scheduler.getDueFiles(files, 1500 + ChecksumScheduler.RISKY_INTERVAL));
+  }
+
+  @Test
+  public void testHighLatencyEditsAreCheckedFirst() {
+    final List<IFile> files = Collections.singletonList(file);
+
+    scheduler.getDueFiles(files, 0);
+    scheduler.checked(file, 0);
+
+    scheduler.edited(file, bob, true, 1000);
+
+    assertEquals(files, scheduler.getDueFiles(files, 1000 + ChecksumScheduler.RISKY_INTERVAL));
+  }
+
+  @Test
+  public void testUnchangedChecksumsAreNotBroadcastAgain() {
+    final List<User> users = Collections.singletonList(bob);
+
+    scheduler.getDueFiles(Collections.singletonList(file), 0);
+
+    assertTrue(scheduler.needsBroadcast(file, 42, 100, users, 0));
+    assertFalse(scheduler.needsBroadcast(file, 42, 100, users, 1000));
+    assertTrue(scheduler.needsBroadcast(file, 43, 100, users, 2000));
+    assertFalse(scheduler.needsBroadcast(file, 43, 100, Collections.emptyList(), 3000));
+
+    assertTrue(
+        "new user did not receive the checksum",
+        scheduler.needsBroadcast(file, 43, 100, Arrays.asList(alice, bob), 4000));
+
+    assertTrue(
+        "checksum was not refreshed",
+        scheduler.needsBroadcast(file, 43, 100, users, 4000 + ChecksumScheduler.REFRESH_INTERVAL));
+  }
+
+  @Test
+  public void testFullUpdates() {
+    scheduler.getDueFiles(Collections.singletonList(file), 0);
+
+    assertTrue(scheduler.needsFullUpdate(file, 0));
+    assertFalse(scheduler.needsFullUpdate(file, ChecksumScheduler.FULL_UPDATE_INTERVAL - 1));
+    assertTrue(scheduler.needsFullUpdate(file, ChecksumScheduler.FULL_UPDATE_INTERVAL));
+  }
+
+  @Test
+  public void testCheckLatency() {
+    final List<IFile> files = Collections.singletonList(file);
+
+    scheduler.getDueFiles(files, 0);
+    scheduler.checked(file, 0);
+
+    scheduler.edited(file, alice, false, 1000);
+    scheduler.edited(file, alice, false, 3000);
+    scheduler.checked(file, 6000);
+
+    assertEquals(1, scheduler.getCheckLatency(file).getCount());
+    assertEquals(5000, scheduler.getCheckLatency(file).getMax());
+
+    scheduler.getDueFiles(Collections.singletonList(other), 7000);
+
+    assertNull("closed file is still scheduled", scheduler.getCheckLatency(file));
+  }
+}
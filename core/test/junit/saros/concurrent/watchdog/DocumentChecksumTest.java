@@ -0,0 +1,323 @@
+package saros.concurrent.watchdog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+import saros.activities.TextEditActivity;
+import saros.editor.text.LineRange;
+import saros.editor.text.TextPosition;
+import saros.filesystem.IFile;
+import saros.net.xmpp.JID;
+import saros.session.User;
+
+public class DocumentChecksumTest {
+
+  private IFile file;
+  private User alice;
+
+  @Before
+  public void setUp() {
+    file = EasyMock.createMock(IFile.class);
+    EasyMock.replay(file);
+
+    alice = new User(new JID("alice@jabber.org"), true, true, null);
+  }
+
+  @Test
+  public void testNotAvailable() {
+    DocumentChecksum checksum = new DocumentChecksum(file);
+
+    assertTrue(checksum.isDirty());
+    assertEquals(DocumentChecksum.NOT_AVAILABLE, checksum.getLength());
+    assertEquals(DocumentChecksum.NOT_AVAILABLE, checksum.getHash());
+
+    checksum.update(null);
+
+    assertFalse(checksum.isDirty());
+    assertEquals(DocumentChecksum.NOT_AVAILABLE, checksum.getHash());
+  }
+
+  @Test
+  public void testUpdateOnlyIfDirty() {
+    DocumentChecksum checksum = createChecksum("abc\ndef");
+
+    long hash = checksum.getHash();
+
+    checksum.update("xyz");
+    assertEquals(hash, checksum.getHash());
+    assertEquals(7, checksum.getLength());
+
+    checksum.markDirty();
+    checksum.update("xyz");
+    assertNotEquals(hash, checksum.getHash());
+    assertEquals(3, checksum.getLength());
+  }
+
+  @Test
+  public void testLineBreaksAreSignificant() {
+    assertNotEquals(createChecksum("ab\nc").getHash(), createChecksum("a\nbc").getHash());
+    assertNotEquals(createChecksum("abc").getHash(), createChecksum("abc\n").getHash());
+  }
+
+  @Test
+  public void testApplyEdit() {
+    DocumentChecksum checksum = createChecksum("hello\nworld");
+
+    assertTrue(checksum.applyEdit(edit(0, 5, ", dear\n", "")));
+    assertTrue(checksum.applyEdit(edit(2, 0, "", "world")));
+    assertTrue(checksum.applyEdit(edit(0, 0, "", "hello, dear\n\n")));
+    assertTrue(checksum.applyEdit(edit(0, 0, "bye", "")));
+
+    assertEquals(createChecksum("bye").getHash(), checksum.getHash());
+    assertEquals(3, checksum.getLength());
+  }
+
+  @Test
+  public void testApplyMismatchingEdit() {
+    DocumentChecksum checksum = createChecksum("hello\nworld");
+
+    long version = checksum.getVersion();
+
+    assertFalse(checksum.applyEdit(edit(1, 0, "x", "earth")));
+    assertTrue(checksum.isDirty());
+    assertEquals(version, checksum.getVersion());
+
+    assertFalse(checksum.applyEdit(edit(5, 0, "x", "")));
+
+    checksum.update("hello\nworld");
+    assertFalse(checksum.applyEdit(edit(1, 6, "x", "")));
+  }
+
+  @Test
+  public void testIncrementalEditsEqualFullUpdate() {
+    final Random random = new Random(4711);
+
+    StringBuilder content = new StringBuilder();
+
+    for (int i = 0; i < 1000; i++) content.append("line ").append(i).append('\n');
+
+    DocumentChecksum checksum = createChecksum(content.toString());
+
+    for (int i = 0; i < 500; i++) {
+      final int start = random.nextInt(content.length() + 1);
+      final int end = Math.min(content.length(), start + random.nextInt(200));
+
+      final String replacedText = content.substring(start, end);
+      final String newText = random.nextInt(3) == 0 ? "x\ny\n\nz" : "edit " + i;
+
+      final TextPosition position = toPosition(content, start);
+
+      assertTrue(checksum.applyEdit(edit(position, newText, replacedText)));
+
+      content.replace(start, end, newText);
+
+      if (i % 50 == 0) checksum.getHash();
+    }
+
+    DocumentChecksum expected = createChecksum(content.toString());
+
+    assertEquals(expected.getLength(), checksum.getLength());
+    assertEquals(expected.getHash(), checksum.getHash());
+    assertEquals(
+        Collections.emptyList(),
+        checksum.getDivergentRegions(
+            DocumentChecksum.getRegionLines(3), expected.getRegionHashes(3)));
+  }
+
+  @Test
+  public void testHashesCalculatedWhileEditing() throws Exception {
+    final StringBuilder content = new StringBuilder(createContent(5000));
+
+    final DocumentChecksum checksum = createChecksum(content.toString());
+
+    final AtomicBoolean editing = new AtomicBoolean(true);
+
+    final Thread hasher =
+        new Thread(
+            () -> {
+              while (editing.get()) checksum.getRegionHashes(0);
+            });
+
+    hasher.start();
+
+    try {
+      for (int i = 0; i < 2000; i++) {
+        final int line = (i * 31) % 4000;
+        final String newText = i % 3 == 0 ? "\n" : "x";
+
+        assertTrue(checksum.applyEdit(edit(line, 0, newText, "")));
+
+        content.insert(toOffset(content.toString(), new TextPosition(line, 0)), newText);
+      }
+    } finally {
+      editing.set(false);
+      hasher.join(10000);
+    }
+
+    assertEquals(createChecksum(content.toString()).getHash(), checksum.getHash());
+  }
+
+  @Test
+  public void testRegionHashes() {
+    DocumentChecksum checksum = createChecksum(createContent(1000));
+
+    // 16 blocks of 64 lines
+    assertEquals(0, checksum.getRegionLevel(16));
+    assertEquals(1, checksum.getRegionLevel(15));
+    assertEquals(8, checksum.getRegionHashes(checksum.getRegionLevel(8)).length);
+    assertEquals(128, DocumentChecksum.getRegionLines(1));
+
+    assertEquals(4, checksum.getRegionLevel(1));
+    assertEquals(1, checksum.getRegionHashes(4).length);
+    assertEquals(checksum.getHash(), checksum.getRegionHashes(7)[0]);
+  }
+
+  @Test
+  public void testDivergentRegions() {
+    DocumentChecksum host = createChecksum(createContent(1000));
+    DocumentChecksum client = createChecksum(createContent(1000));
+
+    final int level = host.getRegionLevel(DocumentChecksum.MAX_REGIONS);
+    final int regionLines = DocumentChecksum.getRegionLines(level);
+
+    assertTrue(client.applyEdit(edit(300, 0, "changed", "")));
+    assertTrue(client.applyEdit(edit(400, 0, "changed", "")));
+    assertTrue(client.applyEdit(edit(990, 0, "changed", "")));
+
+    assertEquals(
+        Arrays.asList(new LineRange(256, 256), new LineRange(896, 128)),
+        client.getDivergentRegions(regionLines, host.getRegionHashes(level)));
+  }
+
+  @Test
+  public void testDivergentRegionsWithDifferentLineCounts() {
+    DocumentChecksum host = createChecksum(createContent(1000));
+    DocumentChecksum client = createChecksum(createContent(1000));
+
+    assertTrue(client.applyEdit(edit(900, 0, "\n", "")));
+
+    assertEquals(
+        Arrays.asList(new LineRange(896, 128)),
+        client.getDivergentRegions(128, host.getRegionHashes(1)));
+
+    assertEquals(
+        Arrays.asList(new LineRange(0, 128)),
+        createChecksum("").getDivergentRegions(128, createChecksum("a").getRegionHashes(1)));
+  }
+
+  @Test
+  public void testReplacementRegions() {
+    final String base = createContent(1000);
+
+    assertRecovered(base, base);
+    assertRecovered(base, base.replace("line 500\n", "line 500 changed\n"));
+    assertRecovered(base, base + "appended\nlines");
+    assertRecovered(base + "appended\nlines", base);
+    assertRecovered(base, base.substring(0, base.length() - 1));
+    assertRecovered(base.substring(0, base.length() - 1), base);
+    assertRecovered(base, createContent(1024));
+    assertRecovered(createContent(1024), base);
+    assertRecovered("", base);
+    assertRecovered(base, "");
+  }
+
+  @Test
+  public void testRandomReplacementRegions() {
+    final Random random = new Random(42);
+
+    for (int i = 0; i < 200; i++) {
+      final StringBuilder host = new StringBuilder(createContent(random.nextInt(500)));
+      final StringBuilder client = new StringBuilder(host);
+
+      for (int j = random.nextInt(5); j >= 0; j--) {
+        final StringBuilder content = random.nextBoolean() ? host : client;
+
+        final int start = random.nextInt(content.length() + 1);
+        final int end = Math.min(content.length(), start + random.nextInt(100));
+
+        content.replace(start, end, random.nextBoolean() ? "\n" : "x");
+      }
+
+      assertRecovered(host.toString(), client.toString());
+    }
+  }
+
+  /** Replaces the divergent regions of the client content like a region recovery. */
+  private void assertRecovered(String hostContent, String clientContent) {
+    final DocumentChecksum host = createChecksum(hostContent);
+    final DocumentChecksum client = createChecksum(clientContent);
+
+    final List<LineRange> regions = host.getReplacementRegions(client.getRegionHashes(0));
+
+    final StringBuilder recovered = new StringBuilder(clientContent);
+
+    for (int i = regions.size() - 1; i >= 0; i--) {
+      final int startLine = regions.get(i).getStartLine();
+      final int endLine = startLine + regions.get(i).getNumberOfLines();
+
+      final String replacedText = client.getText(startLine, endLine);
+      final int offset = toOffset(clientContent, client.getPosition(startLine));
+
+      assertEquals(replacedText, recovered.substring(offset, offset + replacedText.length()));
+
+      recovered.replace(offset, offset + replacedText.length(), host.getText(startLine, endLine));
+    }
+
+    assertEquals(hostContent, recovered.toString());
+  }
+
+  private DocumentChecksum createChecksum(String content) {
+    DocumentChecksum checksum = new DocumentChecksum(file);
+    checksum.update(content);
+    return checksum;
+  }
+
+  private TextEditActivity edit(int line, int offset, String newText, String replacedText) {
+    return edit(new TextPosition(line, offset), newText, replacedText);
+  }
+
+  private TextEditActivity edit(TextPosition position, String newText, String replacedText) {
+    return TextEditActivity.buildTextEditActivity(alice, position, newText, replacedText, file);
+  }
+
+  private static String createContent(int lines) {
+    StringBuilder content = new StringBuilder();
+
+    for (int i = 0; i < lines; i++) content.append("line ").append(i).append('\n');
+
+    return content.toString();
+  }
+
+  private static int toOffset(String content, TextPosition position) {
+    int offset = 0;
+
+    for (int line = 0; line < position.getLineNumber(); line++)
+      offset = content.indexOf('\n', offset) + 1;
+
+    return offset + position.getInLineOffset();
+  }
+
+  private static TextPosition toPosition(CharSequence content, int offset) {
+    int line = 0;
+    int lineStart = 0;
+
+    for (int i = 0; i < offset; i++) {
+      if (content.charAt(i) == '\n') {
+        line++;
+        lineStart = i + 1;
+      }
+    }
+
+    return new TextPosition(line, offset - lineStart);
+  }
+}
@@ -0,0 +1,252 @@
+package saros.negotiation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static saros.test.mocks.SarosMocks.fileMockWithContent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.easymock.EasyMock;
+import org.junit.Test;
+import saros.filesystem.IFile;
+import saros.filesystem.IReferencePoint;
+import saros.filesystem.IResource;
+import saros.monitoring.NullProgressMonitor;
+
+/** Tests the creation and unpacking of an archive that is streamed from one task to the other. */
+public class ArchiveStreamTest {
+
+  private static final String DELIMITER = ":";
+
+  private final Map<String, byte[]> unpackedFiles = new ConcurrentHashMap<>();
+
+  @Test(timeout = 30000)
+  public void testStreamedArchive() throws Exception {
+    byte[] largeContent = new byte[512 * 1024];
+    new Random(42).nextBytes(largeContent);
+
+    byte[] smallContent = "Hello World".getBytes(StandardCharsets.UTF_8);
+
+    List<Pair<IFile, String>> filesToCompress = new ArrayList<>();
+    filesToCompress.add(new ImmutablePair<>(fileMockWithContent(largeContent), "1:src/large"));
+    filesToCompress.add(new ImmutablePair<>(fileMockWithContent(smallContent), "1:small"));
+    filesToCompress.add(new ImmutablePair<>(fileMockWithContent(smallContent), "2:unknown"));
+
+    PipedInputStream in = new PipedInputStream(4096);
+    PipedOutputStream out = new PipedOutputStream(in);
+
+    AtomicReference<Exception> error = new AtomicReference<>();
+
+    Thread creator =
+        new Thread(
+            () -> {
+              try {
+                new CreateArchiveTask(
+                        out, filesToCompress, Collections.emptyMap(), Collections.emptyMap(), null)
+                    .run(new NullProgressMonitor());
+              } catch (Exception e) {
+                error.set(e);
+              }
+            });
+
+    creator.start();
+
+    new DecompressArchiveTask(
+            in,
+            filesToCompress.size(),
+            Collections.singletonMap("1", createTargetReferencePoint()),
+            DELIMITER,
+            Collections.emptySet(),
+            Collections.emptyMap(),
+            null)
+        .run(new NullProgressMonitor());
+
+    creator.join();
+
+    assertNull(error.get());
+
+    assertEquals(2, unpackedFiles.size());
+    assertArrayEquals(largeContent, unpackedFiles.get("src/large"));
+    assertArrayEquals(smallContent, unpackedFiles.get("small"));
+  }
+
+  @Test(timeout = 30000)
+  public void testStreamedArchiveWithCopies() throws Exception {
+    byte[] content = new byte[64 * 1024];
+    new Random(42).nextBytes(content);
+
+    byte[] localContent = "Hello World".getBytes(StandardCharsets.UTF_8);
+
+    List<Pair<IFile, String>> filesToCompress = new ArrayList<>();
+    filesToCompress.add(new ImmutablePair<>(fileMockWithContent(content), "1:original"));
+
+    Map<String, String> copiedFiles = new LinkedHashMap<>();
+    copiedFiles.put("1:copy/of/original", "1:original");
+    copiedFiles.put("1:copy/of/local", "");
+
+    PipedInputStream in = new PipedInputStream(4096);
+    PipedOutputStream out = new PipedOutputStream(in);
+
+    AtomicReference<Exception> error = new AtomicReference<>();
+
+    Thread creator =
+        new Thread(
+            () -> {
+              try {
+                new CreateArchiveTask(
+                        out, filesToCompress, Collections.emptyMap(), copiedFiles, null)
+                    .run(new NullProgressMonitor());
+              } catch (Exception e) {
+                error.set(e);
+              }
+            });
+
+    creator.start();
+
+    new DecompressArchiveTask(
+            in,
+            filesToCompress.size() + copiedFiles.size(),
+            Collections.singletonMap("1", createTargetReferencePoint()),
+            DELIMITER,
+            Collections.emptySet(),
+            Collections.singletonMap("1:copy/of/local", fileMockWithContent(localContent)),
+            null)
+        .run(new NullProgressMonitor());
+
+    creator.join();
+
+    assertNull(error.get());
+
+    assertEquals(3, unpackedFiles.size());
+    assertArrayEquals(content, unpackedFiles.get("original"));
+    assertArrayEquals(content, unpackedFiles.get("copy/of/original"));
+    assertArrayEquals(localContent, unpackedFiles.get("copy/of/local"));
+  }
+
+  @Test
+  public void testInterruptedArchiveIsResumed() throws Exception {
+    List<Pair<IFile, String>> filesToCompress = new ArrayList<>();
+    List<byte[]> contents = new ArrayList<>();
+
+    Random random = new Random(42);
+
+    for (int i = 0; i < 4; i++) {
+      byte[] content = new byte[256 * 1024];
+      random.nextBytes(content);
+      contents.add(content);
+      filesToCompress.add(new ImmutablePair<>(fileMockWithContent(content), "1:file" + i));
+    }
+
+    byte[] archive = createArchive(filesToCompress);
+
+    // interrupt the transfer within the third file
+    InputStream interrupted = new ByteArrayInputStream(archive, 0, archive.length * 5 / 8);
+
+    DecompressArchiveTask interruptedTask =
+        new DecompressArchiveTask(
+            interrupted,
+            filesToCompress.size(),
+            Collections.singletonMap("1", createTargetReferencePoint()),
+            DELIMITER,
+            Collections.emptySet(),
+            Collections.emptyMap(),
+            null);
+
+    try {
+      interruptedTask.run(new NullProgressMonitor());
+      fail("interrupted archive was unpacked");
+    } catch (IOException e) {
+      // expected
+    }
+
+    int checkpoint = interruptedTask.getUnpackedEntryCount();
+
+    assertEquals(2, checkpoint);
+    assertEquals("1:file2", interruptedTask.getPartiallyUnpackedEntry());
+
+    byte[] resumedArchive =
+        createArchive(filesToCompress.subList(checkpoint, filesToCompress.size()));
+
+    DecompressArchiveTask resumedTask =
+        new DecompressArchiveTask(
+            new ByteArrayInputStream(resumedArchive),
+            filesToCompress.size() - checkpoint,
+            Collections.singletonMap("1", createTargetReferencePoint()),
+            DELIMITER,
+            Collections.emptySet(),
+            Collections.emptyMap(),
+            null);
+
+    resumedTask.run(new NullProgressMonitor());
+
+    assertEquals(2, resumedTask.getUnpackedEntryCount());
+    assertNull(resumedTask.getPartiallyUnpackedEntry());
+
+    for (int i = 0; i < contents.size(); i++)
+      assertArrayEquals(contents.get(i), unpackedFiles.get("file" + i));
+  }
+
+  private static byte[] createArchive(List<Pair<IFile, String>> filesToCompress) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    new CreateArchiveTask(
+            out, filesToCompress, Collections.emptyMap(), Collections.emptyMap(), null)
+        .run(new NullProgressMonitor());
+
+    return out.toByteArray();
+  }
+
+  private IReferencePoint createTargetReferencePoint() {
+    IReferencePoint referencePoint = EasyMock.createMock(IReferencePoint.class);
+
+    EasyMock.expect(referencePoint.getType()).andStubReturn(IResource.Type.REFERENCE_POINT);
+    EasyMock.expect(referencePoint.getFile(EasyMock.anyString()))
+        .andStubAnswer(
+            () -> createTargetFile(referencePoint, (String) EasyMock.getCurrentArguments()[0]));
+
+    EasyMock.replay(referencePoint);
+    return referencePoint;
+  }
+
+  private IFile createTargetFile(IReferencePoint referencePoint, String path) throws IOException {
+    IFile file = EasyMock.createMock(IFile.class);
+
+    EasyMock.expect(file.getType()).andStubReturn(IResource.Type.FILE);
+    EasyMock.expect(file.getParent()).andStubReturn(referencePoint);
+    EasyMock.expect(file.exists()).andStubReturn(false);
+    EasyMock.expect(file.getContents())
+        .andStubAnswer(() -> new ByteArrayInputStream(unpackedFiles.get(path)));
+
+    file.create(EasyMock.anyObject(InputStream.class));
+    EasyMock.expectLastCall()
+        .andAnswer(
+            () -> {
+              InputStream content = (InputStream) EasyMock.getCurrentArguments()[0];
+              unpackedFiles.put(path, IOUtils.toByteArray(content));
+              // like Eclipse, close the stream after the file was written
+              content.close();
+              return null;
+            });
+
+    EasyMock.replay(file);
+    return file;
+  }
+}
@@ -0,0 +1,76 @@
+package saros.negotiation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static saros.test.mocks.SarosMocks.fileMockWithContent;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.Test;
+
+public class ContentDeduplicatorTest {
+
+  private static final byte[] CONTENT = createContent(1);
+
+  private static final byte[] OTHER_CONTENT = createContent(2);
+
+  @Test
+  public void testDuplicatesHaveSameHash() throws IOException {
+    ContentDeduplicator<String> deduplicator = new ContentDeduplicator<>();
+
+    deduplicator.add("a", fileMockWithContent(CONTENT), 1L, null);
+    deduplicator.add("b", fileMockWithContent(CONTENT), 1L, null);
+    deduplicator.add("c", fileMockWithContent(OTHER_CONTENT), 1L, null);
+    deduplicator.add("d", fileMockWithContent(CONTENT), 2L, null);
+    deduplicator.add("e", fileMockWithContent(CONTENT), null, null);
+
+    deduplicator.run();
+
+    assertEquals(deduplicator.getHash("a"), deduplicator.getHash("b"));
+    assertNotEquals(deduplicator.getHash("a"), deduplicator.getHash("c"));
+    assertNull("file with unique checksum was hashed", deduplicator.getHash("d"));
+    assertNull("file without checksum was hashed", deduplicator.getHash("e"));
+  }
+
+  @Test
+  public void testSmallFilesAreNotHashed() throws IOException {
+    ContentDeduplicator<String> deduplicator = new ContentDeduplicator<>();
+
+    byte[] content = "Hello World".getBytes(StandardCharsets.UTF_8);
+
+    deduplicator.add("a", fileMockWithContent(content), 1L, null);
+    deduplicator.add("b", fileMockWithContent(content), 1L, null);
+
+    deduplicator.run();
+
+    assertNull(deduplicator.getHash("a"));
+    assertNull(deduplicator.getHash("b"));
+  }
+
+  @Test
+  public void testClaimedContentIsVerified() throws IOException {
+    ContentDeduplicator<String> deduplicator = new ContentDeduplicator<>();
+
+    String hash = ContentDeduplicator.hash(fileMockWithContent(CONTENT));
+
+    deduplicator.add("a", fileMockWithContent(CONTENT), 1L, hash);
+    deduplicator.add("b", fileMockWithContent(OTHER_CONTENT), 1L, hash);
+    deduplicator.add("c", fileMockWithContent(CONTENT), 1L, null);
+
+    deduplicator.run();
+
+    assertTrue(deduplicator.isLocallyAvailable("a"));
+    assertFalse(deduplicator.isLocallyAvailable("b"));
+    assertFalse(deduplicator.isLocallyAvailable("c"));
+  }
+
+  private static byte[] createContent(long seed) {
+    byte[] content = new byte[(int) ContentDeduplicator.MIN_FILE_SIZE * 4];
+    new Random(seed).nextBytes(content);
+    return content;
+  }
+}
@@ -0,0 +1,195 @@
+package saros.negotiation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static saros.test.mocks.SarosMocks.fileMockWithContent;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import saros.filesystem.IFile;
+import saros.monitoring.NullProgressMonitor;
+
+public class CreateArchiveTaskTest {
+
+  private File archive;
+
+  @Before
+  public void setUp() throws IOException {
+    archive = File.createTempFile("saros-archive", ".zip");
+  }
+
+  @After
+  public void tearDown() {
+    archive.delete();
+  }
+
+  @Test
+  public void testArchiveIsReadable() throws Exception {
+    Map<String, byte[]> contents = new LinkedHashMap<>();
+
+    byte[] random = new byte[2 * 1024 * 1024 + 17];
+    new Random(42).nextBytes(random);
+
+    StringBuilder text = new StringBuilder();
+
+    for (int i = 0; text.length() < 3 * 1024 * 1024; i++)
+      text.append("line ").append(i).append(" of a compressible file\n");
+
+    contents.put("1:empty", new byte[0]);
+    contents.put("1:src/text.txt", text.toString().getBytes(StandardCharsets.UTF_8));
+    contents.put("1:lib/random.jar", random);
+    contents.put("1:random", random);
+    contents.put("2:small äöü", "Hello World".getBytes(StandardCharsets.UTF_8));
+    contents.put("2:block", new byte[1024 * 1024]);
+
+    List<Pair<IFile, String>> filesToCompress = new ArrayList<>();
+
+    for (Map.Entry<String, byte[]> entry : contents.entrySet())
+      filesToCompress.add(
+          new ImmutablePair<>(fileMockWithContent(entry.getValue()), entry.getKey()));
+
+    new CreateArchiveTask(
+            archive, filesToCompress, Collections.emptyMap(), Collections.emptyMap(), null)
+        .run(new NullProgressMonitor());
+
+    assertEquals(contents.keySet(), readWithZipInputStream().keySet());
+
+    Map<String, byte[]> entries = readWithZipFile();
+
+    assertEquals(new ArrayList<>(contents.keySet()), new ArrayList<>(entries.keySet()));
+
+    for (Map.Entry<String, byte[]> entry : contents.entrySet())
+      assertArrayEquals(entry.getKey(), entry.getValue(), entries.get(entry.getKey()));
+
+    for (Map.Entry<String, byte[]> entry : readWithZipInputStream().entrySet())
+      assertArrayEquals(entry.getKey(), contents.get(entry.getKey()), entry.getValue());
+  }
+
+  @Test
+  public void testArchiveWithManyEntries() throws Exception {
+    final int count = 0xFFFF + 10;
+
+    final byte[] content = "content".getBytes(StandardCharsets.UTF_8);
+    final byte[] compressedContent = deflate(content);
+
+    final CRC32 crc = new CRC32();
+    crc.update(content);
+
+    try (ZipArchiveWriter writer = new ZipArchiveWriter(new FileOutputStream(archive), 8192)) {
+      for (int i = 0; i < count; i++)
+        writer.writeEntry(
+            "file" + i,
+            crc.getValue(),
+            content.length,
+            compressedContent,
+            compressedContent.length);
+
+      writer.finish();
+    }
+
+    try (ZipFile zipFile = new ZipFile(archive)) {
+      assertEquals(count, zipFile.size());
+
+      ZipEntry entry = zipFile.getEntry("file" + (count - 1));
+
+      assertNotNull(entry);
+      assertArrayEquals(content, IOUtils.toByteArray(zipFile.getInputStream(entry)));
+    }
+  }
+
+  @Test
+  public void testArchiveIsDeletedOnFailure() throws Exception {
+    IFile file = EasyMock.createMock(IFile.class);
+
+    EasyMock.expect(file.getContents()).andStubThrow(new IOException("unreadable"));
+    EasyMock.expect(file.getSize()).andStubReturn(1L);
+    EasyMock.replay(file);
+
+    List<Pair<IFile, String>> filesToCompress = new ArrayList<>();
+    filesToCompress.add(
+        new ImmutablePair<>(fileMockWithContent(new byte[4 * 1024 * 1024]), "1:large"));
+    filesToCompress.add(new ImmutablePair<>(file, "1:file"));
+
+    IOException exception = null;
+
+    try {
+      new CreateArchiveTask(
+              archive, filesToCompress, Collections.emptyMap(), Collections.emptyMap(), null)
+          .run(new NullProgressMonitor());
+    } catch (IOException e) {
+      exception = e;
+    }
+
+    assertNotNull(exception);
+    assertFalse(archive.exists());
+  }
+
+  private Map<String, byte[]> readWithZipFile() throws IOException {
+    Map<String, byte[]> entries = new LinkedHashMap<>();
+
+    try (ZipFile zipFile = new ZipFile(archive)) {
+      Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+
+      while (zipEntries.hasMoreElements()) {
+        ZipEntry entry = zipEntries.nextElement();
+        entries.put(entry.getName(), IOUtils.toByteArray(zipFile.getInputStream(entry)));
+      }
+    }
+
+    return entries;
+  }
+
+  private Map<String, byte[]> readWithZipInputStream() throws IOException {
+    Map<String, byte[]> entries = new LinkedHashMap<>();
+
+    try (ZipInputStream in = new ZipInputStream(new FileInputStream(archive))) {
+      ZipEntry entry;
+
+      while ((entry = in.getNextEntry()) != null)
+        entries.put(entry.getName(), IOUtils.toByteArray(in));
+
+      assertNull(in.getNextEntry());
+    }
+
+    return entries;
+  }
+
+  private static byte[] deflate(byte[] content) {
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    deflater.setInput(content);
+    deflater.finish();
+
+    byte[] buffer = new byte[256];
+    int length = deflater.deflate(buffer);
+    deflater.end();
+
+    byte[] result = new byte[length];
+    System.arraycopy(buffer, 0, result, 0, length);
+    return result;
+  }
+}
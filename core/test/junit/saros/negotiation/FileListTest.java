@@ -21,16 +21,20 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.zip.Adler32;
 import org.easymock.EasyMock;
 import org.easymock.IAnswer;
 import org.junit.Before;
 import org.junit.Test;
+import saros.exceptions.OperationCanceledException;
 import saros.filesystem.IFile;
 import saros.filesystem.IFolder;
 import saros.filesystem.IPath;
 import saros.filesystem.IReferencePoint;
 import saros.filesystem.IResource;
 import saros.misc.xstream.XStreamFactory;
+import saros.monitoring.IProgressMonitor;
+import saros.monitoring.NullProgressMonitor;
 
 /**
  * Reference point Layout for test
@@ -61,7 +65,7 @@ public class FileListTest {
   }
 
   @Test
-  public void testCreateFileListForReferencePoint() throws IOException {
+  public void testCreateFileListForReferencePoint() throws Exception {
 
     final FileList fileList = FileListFactory.createFileList(referencePoint, null, null);
 
@@ -86,6 +90,42 @@ public class FileListTest {
     assertEquals("not all encodings were fetched", expectedEncodings, fileList.getEncodings());
   }
 
+  @Test
+  public void testChecksumsOfManyFiles() throws Exception {
+
+    final IReferencePoint referencePoint = EasyMock.createMock(IReferencePoint.class);
+
+    final List<IResource> members = new ArrayList<>();
+
+    for (int i = 0; i < 500; i++)
+      members.add(createFileMock(referencePoint, "file" + i, "content of file " + i, "UTF-8"));
+
+    EasyMock.expect(referencePoint.getName()).andStubReturn("foo");
+    EasyMock.expect(referencePoint.members()).andStubReturn(members);
+    EasyMock.replay(referencePoint);
+
+    final FileList fileList = FileListFactory.createFileList(referencePoint, null, null);
+
+    for (int i = 0; i < 500; i++) {
+      final Adler32 checksum = new Adler32();
+      checksum.update(("content of file " + i).getBytes());
+
+      assertEquals(
+          "wrong checksum for file: file" + i,
+          checksum.getValue(),
+          fileList.getMetaData("file" + i).checksum);
+    }
+  }
+
+  @Test(expected = OperationCanceledException.class)
+  public void testCreateFileListWithCanceledMonitor() throws Exception {
+
+    final IProgressMonitor monitor = new NullProgressMonitor();
+    monitor.setCanceled(true);
+
+    FileListFactory.createFileList(referencePoint, null, monitor);
+  }
+
   @Test
   public void testToXmlAndBack() throws Exception {
     List<String> files = new ArrayList<String>();
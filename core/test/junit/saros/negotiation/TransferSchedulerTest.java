@@ -0,0 +1,140 @@
+package saros.negotiation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static saros.test.mocks.SarosMocks.fileMock;
+
+import org.junit.Before;
+import org.junit.Test;
+import saros.filesystem.IFile;
+
+public class TransferSchedulerTest {
+
+  private TransferScheduler scheduler;
+
+  @Before
+  public void setUp() {
+    scheduler = new TransferScheduler();
+  }
+
+  @Test
+  public void testSmallFilesFirst() {
+    IFile large = fileMock();
+    IFile small = fileMock();
+    IFile medium = fileMock();
+
+    scheduler.add(large, 10 * 1024 * 1024, 1);
+    scheduler.add(small, 100, 1);
+    scheduler.add(medium, 100 * 1024, 1);
+
+    assertSame(small, scheduler.poll());
+    assertSame(medium, scheduler.poll());
+    assertSame(large, scheduler.poll());
+    assertNull(scheduler.poll());
+  }
+
+  @Test
+  public void testTopLevelFilesFirst() {
+    IFile deep = fileMock();
+    IFile top = fileMock();
+
+    scheduler.add(deep, 100, 3);
+    scheduler.add(top, 100, 1);
+
+    assertSame(top, scheduler.poll());
+    assertSame(deep, scheduler.poll());
+  }
+
+  @Test
+  public void testWeightOutranksSize() {
+    IFile small = fileMock();
+    IFile open = fileMock();
+    IFile active = fileMock();
+    IFile followed = fileMock();
+
+    scheduler.add(small, 0, 1);
+    scheduler.add(open, 10 * 1024 * 1024, 1);
+    scheduler.add(active, 10 * 1024 * 1024, 1);
+    scheduler.add(followed, 10 * 1024 * 1024, 1);
+
+    scheduler.prioritize(open, TransferScheduler.OPEN_EDITOR);
+    scheduler.prioritize(active, TransferScheduler.ACTIVE_EDITOR);
+    scheduler.prioritize(followed, TransferScheduler.FOLLOWED_EDITOR);
+
+    assertSame(followed, scheduler.poll());
+    assertSame(active, scheduler.poll());
+    assertSame(open, scheduler.poll());
+    assertSame(small, scheduler.poll());
+  }
+
+  @Test
+  public void testReasonsAreCountedOnce() {
+    IFile modified = fileMock();
+    IFile open = fileMock();
+
+    scheduler.add(modified, 100, 1);
+    scheduler.add(open, 100, 1);
+
+    scheduler.prioritize(modified, TransferScheduler.MODIFIED);
+    scheduler.prioritize(modified, TransferScheduler.MODIFIED);
+    scheduler.prioritize(modified, TransferScheduler.MODIFIED);
+    scheduler.prioritize(open, TransferScheduler.OPEN_EDITOR);
+
+    assertSame(open, scheduler.poll());
+    assertSame(modified, scheduler.poll());
+  }
+
+  @Test
+  public void testPrioritizeBeforeAdd() {
+    IFile other = fileMock();
+    IFile open = fileMock();
+
+    scheduler.prioritize(open, TransferScheduler.OPEN_EDITOR);
+
+    scheduler.add(other, 100, 1);
+    scheduler.add(open, 100, 1);
+
+    assertSame(open, scheduler.poll());
+    assertSame(other, scheduler.poll());
+  }
+
+  @Test
+  public void testPrioritizeWhileSending() {
+    IFile a = fileMock();
+    IFile b = fileMock();
+    IFile c = fileMock();
+
+    scheduler.add(a, 100, 1);
+    scheduler.add(b, 100, 1);
+    scheduler.add(c, 100, 1);
+
+    assertSame(a, scheduler.poll());
+
+    scheduler.prioritize(c, TransferScheduler.ACTIVE_EDITOR);
+    scheduler.prioritize(a, TransferScheduler.ACTIVE_EDITOR);
+
+    assertSame(c, scheduler.poll());
+    assertSame(b, scheduler.poll());
+    assertNull("sent file was queued again", scheduler.poll());
+  }
+
+  @Test
+  public void testReschedule() {
+    IFile a = fileMock();
+    IFile b = fileMock();
+
+    scheduler.add(a, 100, 1);
+    scheduler.add(b, 100, 1);
+
+    assertSame(a, scheduler.poll());
+    assertSame(b, scheduler.poll());
+
+    scheduler.reschedule(a);
+    scheduler.reschedule(a);
+
+    assertSame(a, scheduler.poll());
+    assertNull(scheduler.poll());
+    assertEquals(2, scheduler.size());
+  }
+}
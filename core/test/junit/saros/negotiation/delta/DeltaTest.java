@@ -0,0 +1,164 @@
+package saros.negotiation.delta;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static saros.test.mocks.SarosMocks.fileMockWithContent;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class DeltaTest {
+
+  private final Random random = new Random(42);
+
+  @Test
+  public void testUnchangedContent() throws Exception {
+    byte[] content = randomBytes(1024 * 1024);
+
+    byte[] delta = encode(content, content);
+
+    assertArrayEquals(content, decode(content, delta));
+    assertTrue("delta too large: " + delta.length, delta.length < 64);
+  }
+
+  @Test
+  public void testModifiedContent() throws Exception {
+    byte[] oldContent = randomBytes(1024 * 1024 + 123);
+
+    byte[] newContent =
+        concat(
+            Arrays.copyOfRange(oldContent, 0, 1000),
+            randomBytes(10),
+            Arrays.copyOfRange(oldContent, 1000, 500 * 1024),
+            Arrays.copyOfRange(oldContent, 510 * 1024, oldContent.length),
+            randomBytes(3000));
+
+    byte[] delta = encode(oldContent, newContent);
+
+    assertArrayEquals(newContent, decode(oldContent, delta));
+    assertTrue("delta too large: " + delta.length, delta.length < 32 * 1024);
+  }
+
+  @Test
+  public void testMovedBlocks() throws Exception {
+    byte[] oldContent = randomBytes(256 * 1024);
+
+    byte[] newContent =
+        concat(
+            Arrays.copyOfRange(oldContent, 128 * 1024, oldContent.length),
+            Arrays.copyOfRange(oldContent, 0, 128 * 1024));
+
+    byte[] delta = encode(oldContent, newContent);
+
+    assertArrayEquals(newContent, decode(oldContent, delta));
+    assertTrue("delta too large: " + delta.length, delta.length < 8 * 1024);
+  }
+
+  @Test
+  public void testUnrelatedAndEmptyContent() throws Exception {
+    byte[] oldContent = randomBytes(200 * 1024);
+
+    byte[][] newContents = {new byte[0], randomBytes(1), randomBytes(300 * 1024)};
+
+    for (byte[] newContent : newContents)
+      assertArrayEquals(newContent, decode(oldContent, encode(oldContent, newContent)));
+
+    byte[] newContent = randomBytes(100 * 1024);
+
+    assertArrayEquals(newContent, decode(new byte[0], encode(new byte[0], newContent)));
+  }
+
+  @Test
+  public void testDeltaIsReadExactly() throws Exception {
+    byte[] oldContent = randomBytes(100 * 1024);
+    byte[] newContent = Arrays.copyOf(oldContent, oldContent.length + 10);
+
+    byte[] delta = encode(oldContent, newContent);
+    byte[] trailer = {1, 2, 3};
+
+    InputStream in = new ByteArrayInputStream(concat(delta, trailer));
+
+    try (DeltaDecoder decoder = DeltaDecoder.create(fileMockWithContent(oldContent), in)) {
+      assertArrayEquals(newContent, IOUtils.toByteArray(decoder));
+    }
+
+    assertArrayEquals(trailer, IOUtils.toByteArray(in));
+  }
+
+  @Test
+  public void testChangedOldVersionIsDetected() throws Exception {
+    byte[] oldContent = randomBytes(100 * 1024);
+    byte[] newContent = Arrays.copyOf(oldContent, oldContent.length + 10);
+
+    byte[] delta = encode(oldContent, newContent);
+
+    byte[] changedOldContent = oldContent.clone();
+    changedOldContent[5000]++;
+
+    try {
+      decode(changedOldContent, delta);
+      fail("changed old version was not detected");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testSignatureSize() throws Exception {
+    byte[] content = randomBytes(100 * 1024 + 5);
+
+    FileSignature signature =
+        FileSignature.create(new ByteArrayInputStream(content), content.length);
+
+    assertEquals(FileSignature.getBlockSize(content.length), signature.getBlockSize());
+    assertEquals(content.length / signature.getBlockSize(), signature.getBlockCount());
+    assertEquals(FileSignature.getSize(content.length), signature.getBlockCount() * 12);
+  }
+
+  private byte[] encode(byte[] oldContent, byte[] newContent) throws IOException {
+    FileSignature signature =
+        FileSignature.create(new ByteArrayInputStream(oldContent), oldContent.length);
+
+    try (InputStream in = new DeltaEncoder(new ByteArrayInputStream(newContent), signature)) {
+      return IOUtils.toByteArray(in);
+    }
+  }
+
+  private static byte[] decode(byte[] oldContent, byte[] delta) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(delta));
+
+    try (DeltaDecoder decoder = DeltaDecoder.create(fileMockWithContent(oldContent), in)) {
+      return IOUtils.toByteArray(decoder);
+    }
+  }
+
+  private byte[] randomBytes(int length) {
+    byte[] bytes = new byte[length];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+
+  private static byte[] concat(byte[]... arrays) {
+    int length = 0;
+
+    for (byte[] array : arrays) length += array.length;
+
+    byte[] result = new byte[length];
+    int offset = 0;
+
+    for (byte[] array : arrays) {
+      System.arraycopy(array, 0, result, offset, array.length);
+      offset += array.length;
+    }
+
+    return result;
+  }
+}
@@ -2,6 +2,7 @@ package saros.net.internal;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
@@ -11,6 +12,7 @@ import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import org.junit.Before;
@@ -235,6 +237,69 @@ public class BinaryChannelConnectionTest {
     assertArrayEquals("fragmentation error", bytesToSend, receivedBytes);
   }
 
+  @Test
+  public void testReassemblyOfSingleAndFullChunks() throws Exception {
+
+    final List<byte[]> payloads = new ArrayList<byte[]>();
+
+    final CountDownLatch received = new CountDownLatch(2);
+
+    BinaryChannelConnection alice =
+        new BinaryChannelConnection(
+            aliceJID,
+            bobJID,
+            "junit",
+            aliceStream,
+            StreamMode.SOCKS5_DIRECT,
+            new StreamConnectionListener());
+
+    BinaryChannelConnection bob =
+        new BinaryChannelConnection(
+            bobJID,
+            aliceJID,
+            "junit",
+            bobStream,
+            StreamMode.SOCKS5_DIRECT,
+            new StreamConnectionListener());
+
+    bob.setBinaryXMPPExtensionReceiver(
+        (e) -> {
+          payloads.add(e.getPayload());
+          received.countDown();
+        });
+
+    bob.announceCapabilities();
+
+    alice.initialize();
+    bob.initialize();
+
+    TransferDescription description = TransferDescription.newDescription();
+
+    description.setNamespace("foo-namespace");
+    description.setElementName("bar");
+
+    // exactly two full chunks
+    byte[] fullChunks = new byte[2 * (32 * 1024 - 1)];
+
+    for (int i = 0; i < fullChunks.length; i++) fullChunks[i] = (byte) (i * 31);
+
+    byte[] singleByte = new byte[] {42};
+
+    try {
+      alice.send(description, singleByte);
+      alice.send(description, fullChunks);
+      received.await(10000, TimeUnit.MILLISECONDS);
+    } finally {
+      alice.close();
+      bob.close();
+    }
+
+    assertEquals("not all packets were received", 0, received.getCount());
+
+    assertArrayEquals(singleByte, payloads.get(0));
+    assertArrayEquals(fullChunks, payloads.get(1));
+  }
+
   @Test
   @Ignore(
       "this test consumes much CPU resources and should only executed manually when making changes")
@@ -302,6 +367,344 @@ public class BinaryChannelConnectionTest {
     assertArrayEquals("fragmentation error", bytesToSend, receivedBytes);
   }
 
+  @Test
+  public void testBinaryContentNegotiation() throws Exception {
+
+    final List<BinaryXMPPExtension> extensions = new ArrayList<BinaryXMPPExtension>();
+
+    final CountDownLatch received = new CountDownLatch(1);
+
+    BinaryChannelConnection alice =
+        new BinaryChannelConnection(
+            aliceJID,
+            bobJID,
+            "junit",
+            aliceStream,
+            StreamMode.SOCKS5_DIRECT,
+            new StreamConnectionListener());
+
+    BinaryChannelConnection bob =
+        new BinaryChannelConnection(
+            bobJID,
+            aliceJID,
+            "junit",
+            bobStream,
+            StreamMode.SOCKS5_DIRECT,
+            new StreamConnectionListener());
+
+    bob.setBinaryXMPPExtensionReceiver(
+        (e) -> {
+          extensions.add(e);
+          received.countDown();
+        });
+
+    assertFalse(alice.isBinaryContentSupported());
+
+    bob.announceCapabilities();
+
+    alice.initialize();
+    bob.initialize();
+
+    final TransferDescription description = TransferDescription.newDescription();
+
+    try {
+      for (int i = 0; i < 100 && !alice.isBinaryContentSupported(); i++) Thread.sleep(100);
+
+      assertTrue("capabilities were not announced", alice.isBinaryContentSupported());
+
+      description.setNamespace("foo-namespace");
+      description.setElementName("bar");
+      description.setCompressContent(true);
+      description.setBinaryContent(true);
+
+      alice.send(description, new byte[16]);
+
+      received.await(10000, TimeUnit.MILLISECONDS);
+    } finally {
+      alice.close();
+      bob.close();
+    }
+
+    assertTrue(extensions.get(0).getTransferDescription().compressContent());
+    assertTrue(extensions.get(0).getTransferDescription().binaryContent());
+  }
+
+  @Test
+  public void testCapabilitiesAreOnlyAnnouncedOnRequest() throws Exception {
+
+    final CountDownLatch received = new CountDownLatch(1);
+
+    BinaryChannelConnection alice =
+        new BinaryChannelConnection(
+            aliceJID,
+            bobJID,
+            "junit",
+            aliceStream,
+            StreamMode.SOCKS5_DIRECT,
+            new StreamConnectionListener());
+
+    BinaryChannelConnection bob =
+        new BinaryChannelConnection(
+            bobJID,
+            aliceJID,
+            "junit",
+            bobStream,
+            StreamMode.SOCKS5_DIRECT,
+            new StreamConnectionListener());
+
+    bob.setBinaryXMPPExtensionReceiver((e) -> received.countDown());
+
+    alice.initialize();
+    bob.initialize();
+
+    final TransferDescription description = TransferDescription.newDescription();
+
+    try {
+      description.setNamespace("foo-namespace");
+      description.setElementName("bar");
+
+      alice.send(description, new byte[16]);
+
+      assertTrue("packet was not received", received.await(10000, TimeUnit.MILLISECONDS));
+    } finally {
+      alice.close();
+      bob.close();
+    }
+
+    // the capabilities would have been received before the packet
+    assertFalse(bob.isBinaryContentSupported());
+    assertFalse(bob.isStreamCompressionSupported());
+  }
+
+  @Test
+  public void testCompression() throws Exception {
+
+    final List<byte[]> payloads = new ArrayList<byte[]>();
+
+    final int packets = 10;
+
+    final CountDownLatch received = new CountDownLatch(packets + 1);
+
+    BinaryChannelConnection alice =
+        new BinaryChannelConnection(
+            aliceJID,
+            bobJID,
+            "junit",
+            aliceStream,
+            StreamMode.SOCKS5_DIRECT,
+            new StreamConnectionListener());
+
+    BinaryChannelConnection bob =
+        new BinaryChannelConnection(
+            bobJID,
+            aliceJID,
+            "junit",
+            bobStream,
+            StreamMode.SOCKS5_DIRECT,
+            new StreamConnectionListener());
+
+    bob.setBinaryXMPPExtensionReceiver(
+        (e) -> {
+          payloads.add(e.getPayload());
+          received.countDown();
+        });
+
+    bob.announceCapabilities();
+
+    alice.initialize();
+    bob.initialize();
+
+    final TransferDescription description = TransferDescription.newDescription();
+
+    description.setNamespace("foo-namespace");
+    description.setElementName("bar");
+    description.setCompressContent(true);
+
+    final List<byte[]> sentPayloads = new ArrayList<byte[]>();
+
+    final long[] sentSizes = new long[packets];
+
+    // too large to be compressed as a segment of the compression stream
+    final byte[] largePayload = new byte[256 * 1024];
+
+    for (int i = 0; i < largePayload.length; i++) largePayload[i] = (byte) (i % 7);
+
+    try {
+      for (int i = 0; i < 100 && !alice.isStreamCompressionSupported(); i++) Thread.sleep(100);
+
+      assertTrue("capabilities were not announced", alice.isStreamCompressionSupported());
+
+      for (int i = 0; i < packets; i++) {
+        byte[] payload = ("<textEdit path=\"src/Foo.java\" offset=\"" + i + "\"/>").getBytes();
+
+        sentPayloads.add(payload);
+        sentSizes[i] = alice.send(description, payload);
+      }
+
+      assertTrue(alice.send(description, largePayload) < largePayload.length);
+
+      received.await(10000, TimeUnit.MILLISECONDS);
+    } finally {
+      alice.close();
+      bob.close();
+    }
+
+    assertEquals("not all packets were received", 0, received.getCount());
+
+    for (int i = 0; i < packets; i++) assertArrayEquals(sentPayloads.get(i), payloads.get(i));
+
+    assertArrayEquals(largePayload, payloads.get(packets));
+
+    // the compression history of the stream is shared by all packets
+    assertTrue(
+        "small packets did not shrink: " + sentSizes[packets - 1],
+        sentSizes[packets - 1] < sentPayloads.get(packets - 1).length / 2);
+  }
+
+  @Test
+  public void testSmallPacketsOvertakeLargePackets() throws Exception {
+
+    final List<byte[]> payloads = new ArrayList<byte[]>();
+
+    final CountDownLatch received = new CountDownLatch(2);
+
+    BinaryChannelConnection alice =
+        new BinaryChannelConnection(
+            aliceJID,
+            bobJID,
+            "junit",
+            aliceStream,
+            StreamMode.SOCKS5_DIRECT,
+            new StreamConnectionListener());
+
+    BinaryChannelConnection bob =
+        new BinaryChannelConnection(
+            bobJID,
+            aliceJID,
+            "junit",
+            bobStream,
+            StreamMode.SOCKS5_DIRECT,
+            new StreamConnectionListener());
+
+    bob.setBinaryXMPPExtensionReceiver(
+        (e) -> {
+          payloads.add(e.getPayload());
+          received.countDown();
+        });
+
+    final TransferDescription description = TransferDescription.newDescription();
+
+    description.setNamespace("foo-namespace");
+    description.setElementName("bar");
+
+    final byte[] largePayload = new byte[4 * PIPE_BUFFER_SIZE];
+    final byte[] smallPayload = new byte[] {1, 2, 3};
+
+    final List<Exception> errors = new CopyOnWriteArrayList<Exception>();
+
+    alice.initialize();
+
+    try {
+      // the pipe gets full as bob is not reading yet, so the large packet stays in transfer
+      Thread largeSender = sendInBackground(alice, description, largePayload, errors);
+      Thread smallSender = sendInBackground(alice, description, smallPayload, errors);
+
+      Thread.sleep(500);
+
+      bob.initialize();
+
+      largeSender.join(10000);
+      smallSender.join(10000);
+
+      received.await(10000, TimeUnit.MILLISECONDS);
+    } finally {
+      alice.close();
+      bob.close();
+    }
+
+    assertTrue("sending failed: " + errors, errors.isEmpty());
+    assertEquals("not all packets were received", 0, received.getCount());
+
+    assertArrayEquals(smallPayload, payloads.get(0));
+    assertArrayEquals(largePayload, payloads.get(1));
+  }
+
+  @Test
+  public void testManyConcurrentSenders() throws Exception {
+
+    final int senders = 64;
+
+    final CountDownLatch received = new CountDownLatch(senders);
+
+    BinaryChannelConnection alice =
+        new BinaryChannelConnection(
+            aliceJID,
+            bobJID,
+            "junit",
+            aliceStream,
+            StreamMode.SOCKS5_DIRECT,
+            new StreamConnectionListener());
+
+    BinaryChannelConnection bob =
+        new BinaryChannelConnection(
+            bobJID,
+            aliceJID,
+            "junit",
+            bobStream,
+            StreamMode.SOCKS5_DIRECT,
+            new StreamConnectionListener());
+
+    bob.setBinaryXMPPExtensionReceiver((e) -> received.countDown());
+
+    alice.initialize();
+    bob.initialize();
+
+    final TransferDescription description = TransferDescription.newDescription();
+
+    description.setNamespace("foo-namespace");
+    description.setElementName("bar");
+
+    final List<Exception> errors = new CopyOnWriteArrayList<Exception>();
+    final List<Thread> threads = new ArrayList<Thread>();
+
+    try {
+      // more senders than fragment ids, half of them with packets that need multiple chunks
+      for (int i = 0; i < senders; i++)
+        threads.add(
+            sendInBackground(alice, description, new byte[i % 2 == 0 ? 16 : 64 * 1024], errors));
+
+      for (Thread thread : threads) thread.join(10000);
+
+      received.await(10000, TimeUnit.MILLISECONDS);
+    } finally {
+      alice.close();
+      bob.close();
+    }
+
+    assertTrue("sending failed: " + errors, errors.isEmpty());
+    assertEquals("not all packets were received", 0, received.getCount());
+  }
+
+  private static Thread sendInBackground(
+      final BinaryChannelConnection connection,
+      final TransferDescription description,
+      final byte[] payload,
+      final List<Exception> errors) {
+
+    Thread thread =
+        new Thread(
+            () -> {
+              try {
+                connection.send(description, payload);
+              } catch (Exception e) {
+                errors.add(e);
+              }
+            });
+
+    thread.start();
+    return thread;
+  }
+
   @Test
   public void testIDPool() {
 
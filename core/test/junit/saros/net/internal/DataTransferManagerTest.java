@@ -150,8 +150,9 @@ public class DataTransferManagerTest {
     }
 
     @Override
-    public void send(TransferDescription data, byte[] content) throws IOException {
+    public long send(TransferDescription data, byte[] content) throws IOException {
       sendPackets++;
+      return content.length;
     }
 
     @Override
@@ -159,6 +160,21 @@ public class DataTransferManagerTest {
       return mode;
     }
 
+    @Override
+    public void announceCapabilities() {
+      // NOP
+    }
+
+    @Override
+    public boolean isBinaryContentSupported() {
+      return false;
+    }
+
+    @Override
+    public boolean isStreamCompressionSupported() {
+      return false;
+    }
+
     public int getSendPacketsCount() {
       return sendPackets;
     }
@@ -194,6 +210,10 @@ public class DataTransferManagerTest {
   private XMPPConnectionService createConnectionsServiceMock(
       Capture<IConnectionListener> connectionListener) {
     XMPPConnectionService net = EasyMock.createMock(XMPPConnectionService.class);
+    net.addFeature(EasyMock.anyString());
+    EasyMock.expectLastCall().once();
+    EasyMock.expect(net.isFeatureSupported(EasyMock.anyObject(JID.class), EasyMock.anyString()))
+        .andStubReturn(false);
     net.addListener(
         EasyMock.and(
             EasyMock.isA(IConnectionListener.class), EasyMock.capture(connectionListener)));
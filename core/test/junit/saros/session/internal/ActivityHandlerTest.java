@@ -6,6 +6,7 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
@@ -23,6 +24,7 @@ import saros.activities.FileActivity;
 import saros.activities.FolderCreatedActivity;
 import saros.activities.FolderDeletedActivity;
 import saros.activities.IActivity;
+import saros.activities.IMulticastActivity;
 import saros.activities.IResourceActivity;
 import saros.activities.ITargetedActivity;
 import saros.activities.JupiterActivity;
@@ -40,6 +42,7 @@ import saros.concurrent.management.ConcurrentDocumentServer;
 import saros.filesystem.IFile;
 import saros.filesystem.IFolder;
 import saros.filesystem.IReferencePoint;
+import saros.filesystem.IResource;
 import saros.session.IActivityHandlerCallback;
 import saros.session.ISarosSession;
 import saros.session.User;
@@ -55,7 +58,7 @@ public class ActivityHandlerTest {
   private IActivity transformedActivity;
   private IActivity localActivity;
   private volatile boolean willBeSent;
-  private List<User> targets = new ArrayList<User>();
+  private volatile List<User> targets = new ArrayList<User>();
 
   // Input
   private List<IActivity> activities;
@@ -73,6 +76,12 @@ public class ActivityHandlerTest {
   // Needed to compare localActivities
   private volatile CountDownLatch gate;
 
+  // Needed to wait for activities that are transformed in a transformation lane
+  private volatile CountDownLatch sendGate;
+
+  private ISarosSession sessionMock;
+  private IReferencePoint referencePoint;
+
   // Roles of the Users in this Test
   private User target;
   private User source;
@@ -85,9 +94,13 @@ public class ActivityHandlerTest {
         @Override
         public void send(List<User> recipients, IActivity activity) {
 
-          willBeSent = true;
           targets = recipients;
           transformedActivity = activity;
+          willBeSent = true;
+
+          CountDownLatch gateToCountdown = sendGate;
+
+          if (gateToCountdown != null) gateToCountdown.countDown();
         }
 
         @Override
@@ -172,13 +185,17 @@ public class ActivityHandlerTest {
     for (IActivity activity : activities) {
 
       willBeSent = false;
+      sendGate = new CountDownLatch(1);
 
       // SUT-CALL
       handler.handleIncomingActivities(Collections.singletonList(activity));
 
+      // Activities of files are transformed and sent by a different Thread
+      awaitGate(sendGate);
+
       if (!willBeSent) {
         fail("Activity: " + activity + " was not send.");
-      } else if (activity instanceof ITargetedActivity) {
+      } else if (activity instanceof ITargetedActivity || activity instanceof IMulticastActivity) {
         assertEquals("Wrong target for" + activity, targets.get(0), bob);
         assertEquals("Wrong activity after Transformation.", activity, transformedActivity);
       } else {
@@ -268,6 +285,183 @@ public class ActivityHandlerTest {
     }
   }
 
+  /**
+   * This tests that the host transforms activities of different files concurrently while the
+   * activities of the same file are transformed in the order they were received.
+   */
+  @Test
+  public void ServerTransformationLanesTest() throws Exception {
+
+    setParameters(bob, alice, true);
+
+    final IFile fileA = createFile();
+    final IFile fileB = createFile();
+
+    final JupiterActivity blockingActivity = createJupiterActivity(fileA);
+    final JupiterActivity succeedingActivity = createJupiterActivity(fileA);
+    final JupiterActivity otherFileActivity = createJupiterActivity(fileB);
+
+    final CountDownLatch otherFileTransformed = new CountDownLatch(1);
+    final List<IActivity> transformed = Collections.synchronizedList(new ArrayList<IActivity>());
+
+    ConcurrentDocumentServer server = EasyMock.createNiceMock(ConcurrentDocumentServer.class);
+
+    EasyMock.expect(server.transformIncoming(EasyMock.anyObject(IActivity.class)))
+        .andAnswer(
+            () -> {
+              IActivity activity = (IActivity) EasyMock.getCurrentArguments()[0];
+
+              // blocks the lane of file A until the activity of file B was transformed
+              if (activity == blockingActivity && !otherFileTransformed.await(10, TimeUnit.SECONDS))
+                fail("activities of different files were not transformed concurrently");
+
+              transformed.add(activity);
+
+              if (activity == otherFileActivity) otherFileTransformed.countDown();
+
+              return Collections.singletonList(new QueueItem(remoteUsers, activity));
+            })
+        .anyTimes();
+
+    // thread safe mocks serialize all calls which would block the lane of file B
+    EasyMock.makeThreadSafe(server, false);
+    EasyMock.replay(server);
+
+    ActivityHandler laneHandler =
+        new ActivityHandler(
+            sessionMock,
+            callback,
+            server,
+            EasyMock.createNiceMock(ConcurrentDocumentClient.class),
+            synchronizer);
+
+    laneHandler.start();
+
+    try {
+      laneHandler.handleIncomingActivities(Collections.<IActivity>singletonList(blockingActivity));
+      laneHandler.handleIncomingActivities(
+          Collections.<IActivity>singletonList(succeedingActivity));
+      laneHandler.handleIncomingActivities(Collections.<IActivity>singletonList(otherFileActivity));
+    } finally {
+      // waits for the pending transformations
+      laneHandler.stop();
+    }
+
+    assertEquals(3, transformed.size());
+    assertEquals(otherFileActivity, transformed.get(0));
+    assertEquals(blockingActivity, transformed.get(1));
+    assertEquals(succeedingActivity, transformed.get(2));
+  }
+
+  /**
+   * This tests that the host handles an activity that is not transformed in a lane after the
+   * earlier activities of all senders, and transforms later activities only after it.
+   */
+  @Test
+  public void ServerBarrierTest() throws Exception {
+
+    setParameters(bob, alice, true);
+
+    final IFile fileA = createFile();
+
+    final JupiterActivity queuedEdit = createJupiterActivity(fileA);
+    final IActivity delete = createFileActivity(carl, fileA);
+    final JupiterActivity laterEdit = createJupiterActivity(createFile());
+
+    final CountDownLatch deleteReceived = new CountDownLatch(1);
+    final CountDownLatch allSent = new CountDownLatch(3);
+    final List<IActivity> sent = Collections.synchronizedList(new ArrayList<IActivity>());
+
+    ConcurrentDocumentServer server = EasyMock.createNiceMock(ConcurrentDocumentServer.class);
+
+    EasyMock.expect(server.transformIncoming(EasyMock.anyObject(IActivity.class)))
+        .andAnswer(
+            () -> {
+              IActivity activity = (IActivity) EasyMock.getCurrentArguments()[0];
+
+              // keeps the edit queued in its lane until the delete of the other sender arrived
+              if (activity == queuedEdit && !deleteReceived.await(10, TimeUnit.SECONDS))
+                fail("delete was not received");
+
+              return Collections.singletonList(new QueueItem(remoteUsers, activity));
+            })
+        .anyTimes();
+
+    EasyMock.makeThreadSafe(server, false);
+    EasyMock.replay(server);
+
+    IActivityHandlerCallback orderCallback =
+        new IActivityHandlerCallback() {
+          @Override
+          public void send(List<User> recipients, IActivity activity) {
+            sent.add(activity);
+            allSent.countDown();
+          }
+
+          @Override
+          public void execute(IActivity activity) {
+            // NOP
+          }
+        };
+
+    ActivityHandler laneHandler =
+        new ActivityHandler(
+            sessionMock,
+            orderCallback,
+            server,
+            EasyMock.createNiceMock(ConcurrentDocumentClient.class),
+            synchronizer);
+
+    laneHandler.start();
+
+    try {
+      laneHandler.handleIncomingActivities(Collections.<IActivity>singletonList(queuedEdit));
+      laneHandler.handleIncomingActivities(Collections.singletonList(delete));
+      laneHandler.handleIncomingActivities(Collections.<IActivity>singletonList(laterEdit));
+
+      deleteReceived.countDown();
+
+      awaitGate(allSent);
+    } finally {
+      laneHandler.stop();
+    }
+
+    assertEquals(Arrays.asList(queuedEdit, delete, laterEdit), sent);
+  }
+
+  private IActivity createFileActivity(User source, IFile file) {
+    FileActivity activity = EasyMock.createNiceMock(FileActivity.class);
+    EasyMock.expect(activity.getSource()).andStubReturn(source);
+    EasyMock.expect(activity.getResource()).andStubReturn(file);
+    EasyMock.expect(activity.getType()).andStubReturn(FileActivity.Type.REMOVED);
+    EasyMock.replay(activity);
+    return activity;
+  }
+
+  private IFile createFile() {
+    IFile file = EasyMock.createNiceMock(IFile.class);
+    EasyMock.expect(file.getType()).andStubReturn(IResource.Type.FILE);
+    EasyMock.expect(file.getReferencePoint()).andStubReturn(referencePoint);
+    EasyMock.replay(file);
+    return file;
+  }
+
+  private JupiterActivity createJupiterActivity(IFile file) {
+    JupiterActivity activity = EasyMock.createNiceMock(JupiterActivity.class);
+    EasyMock.expect(activity.getSource()).andStubReturn(alice);
+    EasyMock.expect(activity.getResource()).andStubReturn(file);
+    EasyMock.replay(activity);
+    return activity;
+  }
+
+  private static void awaitGate(CountDownLatch gate) {
+    try {
+      if (!gate.await(10, TimeUnit.SECONDS)) fail("activity was not sent");
+    } catch (InterruptedException e) {
+      fail("Interupted");
+    }
+  }
+
   /**
    * Specifies the roles of participants in the session. Should be called at the start of every test
    * case
@@ -322,7 +516,7 @@ public class ActivityHandlerTest {
     synchronizer = new NonUISynchronizer();
 
     // Create SessionMock
-    ISarosSession sessionMock = EasyMock.createMock(ISarosSession.class);
+    sessionMock = EasyMock.createMock(ISarosSession.class);
     EasyMock.expect(sessionMock.getLocalUser()).andStubReturn(alice);
     EasyMock.expect(sessionMock.getHost()).andStubReturn(alice);
     // read host-Variable at runtime.
@@ -336,7 +530,7 @@ public class ActivityHandlerTest {
             })
         .anyTimes();
 
-    IReferencePoint referencePoint = EasyMock.createMock(IReferencePoint.class);
+    referencePoint = EasyMock.createMock(IReferencePoint.class);
 
     EasyMock.expect(sessionMock.userHasReferencePoint(dave, referencePoint)).andStubReturn(false);
     for (User user : remoteUsersWithReferencePoints) {
@@ -367,9 +561,7 @@ public class ActivityHandlerTest {
     activities.add(EasyMock.createNiceMock(TextEditActivity.class));
     activities.add(EasyMock.createNiceMock(ChecksumActivity.class));
 
-    IFile file = EasyMock.createNiceMock(IFile.class);
-    EasyMock.expect(file.getReferencePoint()).andStubReturn(referencePoint);
-    EasyMock.replay(file);
+    IFile file = createFile();
 
     IFolder folder = EasyMock.createNiceMock(IFolder.class);
     EasyMock.expect(folder.getReferencePoint()).andStubReturn(referencePoint);
@@ -389,6 +581,18 @@ public class ActivityHandlerTest {
                 })
             .anyTimes();
       }
+      if (activity instanceof IMulticastActivity) {
+        // read target-Variable at runtime.
+        EasyMock.expect(((IMulticastActivity) activity).getTargets())
+            .andAnswer(
+                new IAnswer<List<User>>() {
+                  @Override
+                  public List<User> answer() throws Throwable {
+                    return Collections.singletonList(target);
+                  }
+                })
+            .anyTimes();
+      }
       // read source-Variable at runtime.
       EasyMock.expect(activity.getSource())
           .andAnswer(
@@ -26,9 +26,12 @@ import saros.session.ISarosSession;
 import saros.session.User;
 import saros.test.fakes.net.FakeConnectionFactory;
 import saros.test.fakes.net.FakeConnectionFactory.FakeConnectionFactoryResult;
+import saros.util.Histogram;
 
 public class ActivitySequencerTest {
 
+  private static final String BATCH_MAX_BYTES_KEY = "saros.session.ACTIVITY_BATCH_MAX_BYTES";
+
   private static final JID ALICE_JID = new JID("alice@test/Saros");
   private static final JID BOB_JID = new JID("bob@test/Saros");
 
@@ -199,6 +202,83 @@ public class ActivitySequencerTest {
     }
   }
 
+  @Test(timeout = 30000)
+  public void testBacklogIsSentInBatches() {
+
+    int activityCount = 1000;
+
+    // the encoded size of an activity is not measured by the fake transmitter and thus assumed as
+    // 512 bytes, so a batch contains at most 8 activities
+    System.setProperty(BATCH_MAX_BYTES_KEY, "4096");
+
+    try {
+      aliceSequencer =
+          new ActivitySequencer(sessionStubAlice, aliceTransmitter, aliceReceiver, null);
+    } finally {
+      System.clearProperty(BATCH_MAX_BYTES_KEY);
+    }
+
+    bobSequencer = new ActivitySequencer(sessionStubBob, bobTransmitter, bobReceiver, null);
+
+    aliceSequencer.start();
+    bobSequencer.start();
+
+    aliceSequencer.registerUser(bobUserInAliceSession);
+    bobSequencer.registerUser(aliceUserInBobSession);
+
+    for (int i = 0; i < activityCount; i++)
+      aliceSequencer.sendActivity(
+          Collections.singletonList(bobUserInAliceSession),
+          new NOPActivity(aliceUser, bobUserInAliceSession, i));
+
+    aliceSequencer.flush(bobUserInAliceSession);
+
+    assertEquals("not all activies received", activityCount, bobReceivedActivitiesBuffer.size());
+
+    for (int i = 0; i < activityCount; i++) {
+      NOPActivity activity = (NOPActivity) bobReceivedActivitiesBuffer.get(i);
+      assertEquals("activity is out of order", i, activity.getID());
+    }
+
+    Histogram batchSizes = aliceSequencer.getBatchSizeHistogram();
+
+    assertTrue("batch exceeds the size limit", batchSizes.getMax() <= 8);
+    assertTrue("too few batches sent", batchSizes.getCount() >= activityCount / 8);
+    assertEquals(
+        "queue depth not recorded for every batch",
+        batchSizes.getCount(),
+        aliceSequencer.getQueueDepthHistogram().getCount());
+  }
+
+  @Test(timeout = 30000)
+  public void testRoundTripTimeAndJitter() {
+
+    aliceSequencer = new ActivitySequencer(sessionStubAlice, aliceTransmitter, aliceReceiver, null);
+
+    aliceSequencer.start();
+
+    assertEquals(-1, aliceSequencer.getRoundTripTime(BOB_JID));
+    assertEquals(-1, aliceSequencer.getJitter(BOB_JID));
+
+    aliceSequencer.registerUser(bobUserInAliceSession);
+
+    aliceSequencer.updateRoundTripTime(BOB_JID, 100);
+
+    assertEquals(100, aliceSequencer.getRoundTripTime(BOB_JID));
+    assertEquals(50, aliceSequencer.getJitter(BOB_JID));
+
+    for (int i = 0; i < 100; i++) aliceSequencer.updateRoundTripTime(BOB_JID, 100);
+
+    assertEquals(100, aliceSequencer.getRoundTripTime(BOB_JID));
+    assertEquals("constant round trip times have no jitter", 0, aliceSequencer.getJitter(BOB_JID));
+
+    for (int i = 0; i < 100; i++)
+      aliceSequencer.updateRoundTripTime(BOB_JID, i % 2 == 0 ? 50 : 150);
+
+    assertEquals(100, aliceSequencer.getRoundTripTime(BOB_JID), 10);
+    assertEquals(50, aliceSequencer.getJitter(BOB_JID), 10);
+  }
+
   @Test(timeout = 30000)
   public void testSendWithoutRegisteredUser() {
 
@@ -5,6 +5,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -20,24 +22,28 @@ import saros.net.xmpp.JID;
 import saros.session.IActivityConsumer;
 import saros.session.IActivityListener;
 import saros.session.ISarosSession;
+import saros.session.ISessionListener;
 import saros.session.User;
 
 public class StopManagerTest {
 
   private ISarosSession alicesSession;
   private IActivityConsumer alicesConsumer;
+  private ISessionListener alicesListener;
   private User alicesAlice;
   private User alicesBob;
   private User alicesCarl;
 
   private ISarosSession bobsSession;
   private IActivityConsumer bobsConsumer;
+  private ISessionListener bobsListener;
   private User bobsAlice;
   private User bobsBob;
   private User bobsCarl;
 
   private ISarosSession carlsSession;
   private IActivityConsumer carlsConsumer;
+  private ISessionListener carlsListener;
   private User carlsAlice;
   private User carlsBob;
   private User carlsCarl;
@@ -62,6 +68,18 @@ public class StopManagerTest {
             });
     alicesSession.removeActivityConsumer(isA(IActivityConsumer.class));
 
+    alicesSession.addListener(isA(ISessionListener.class));
+    EasyMock.expectLastCall()
+        .andStubAnswer(
+            new IAnswer<Object>() {
+              @Override
+              public Object answer() throws Throwable {
+                alicesListener = (ISessionListener) EasyMock.getCurrentArguments()[0];
+                return null;
+              }
+            });
+    alicesSession.removeListener(isA(ISessionListener.class));
+
     alicesAlice = new User(new JID("alice"), true, true, null);
     alicesBob = new User(new JID("bob"), false, false, null);
     alicesCarl = new User(new JID("carl"), false, false, null);
@@ -102,6 +120,18 @@ public class StopManagerTest {
             });
     bobsSession.removeActivityConsumer(isA(IActivityConsumer.class));
 
+    bobsSession.addListener(isA(ISessionListener.class));
+    EasyMock.expectLastCall()
+        .andStubAnswer(
+            new IAnswer<Object>() {
+              @Override
+              public Object answer() throws Throwable {
+                bobsListener = (ISessionListener) EasyMock.getCurrentArguments()[0];
+                return null;
+              }
+            });
+    bobsSession.removeListener(isA(ISessionListener.class));
+
     bobsAlice = new User(new JID("alice"), true, false, null);
     bobsBob = new User(new JID("bob"), false, true, null);
     bobsCarl = new User(new JID("carl"), false, false, null);
@@ -141,6 +171,18 @@ public class StopManagerTest {
             });
     carlsSession.removeActivityConsumer(isA(IActivityConsumer.class));
 
+    carlsSession.addListener(isA(ISessionListener.class));
+    EasyMock.expectLastCall()
+        .andStubAnswer(
+            new IAnswer<Object>() {
+              @Override
+              public Object answer() throws Throwable {
+                carlsListener = (ISessionListener) EasyMock.getCurrentArguments()[0];
+                return null;
+              }
+            });
+    carlsSession.removeListener(isA(ISessionListener.class));
+
     carlsAlice = new User(new JID("alice"), true, false, null);
     carlsBob = new User(new JID("bob"), false, false, null);
     carlsCarl = new User(new JID("carl"), false, true, null);
@@ -191,7 +233,7 @@ public class StopManagerTest {
               @Override
               public Object answer() throws Throwable {
                 StopActivity activity = (StopActivity) EasyMock.getCurrentArguments()[0];
-                Assert.assertEquals(alicesBob, activity.getAffected());
+                Assert.assertEquals(Collections.singletonList(alicesBob), activity.getAffected());
                 Assert.assertEquals(alicesAlice, activity.getSource());
                 Assert.assertEquals(alicesAlice, activity.getInitiator());
                 Assert.assertEquals(StopActivity.Type.LOCKREQUEST, activity.getType());
@@ -210,7 +252,7 @@ public class StopManagerTest {
               @Override
               public Object answer() throws Throwable {
                 StopActivity activity = (StopActivity) EasyMock.getCurrentArguments()[0];
-                Assert.assertEquals(alicesBob, activity.getAffected());
+                Assert.assertEquals(Collections.singletonList(alicesBob), activity.getAffected());
                 Assert.assertEquals(alicesAlice, activity.getSource());
                 Assert.assertEquals(alicesAlice, activity.getInitiator());
                 Assert.assertEquals(StopActivity.Type.UNLOCKREQUEST, activity.getType());
@@ -240,6 +282,57 @@ public class StopManagerTest {
     EasyMock.verify(alicesSession);
   }
 
+  /** Verify that a StopManager which is not started refuses to stop users instead of blocking. */
+  @Test(timeout = 10000)
+  public void testStopBeforeStartIsCancelled() throws InterruptedException {
+    IActivityListener listener = EasyMock.createMock(IActivityListener.class);
+    EasyMock.replay(listener);
+
+    StopManager manager = new StopManager(alicesSession);
+    manager.addActivityListener(listener);
+
+    try {
+      manager.stop(alicesBob, "test");
+      Assert.fail("stopped a user without being started");
+    } catch (CancellationException e) {
+      // expected
+    }
+
+    EasyMock.verify(listener);
+  }
+
+  /** Verify that a stopped StopManager refuses new requests without registering them. */
+  @Test(timeout = 10000)
+  public void testStopAfterStopIsCancelled() throws InterruptedException {
+    IActivityListener listener = EasyMock.createMock(IActivityListener.class);
+    EasyMock.replay(listener);
+
+    StopManager manager = new StopManager(alicesSession);
+    manager.start();
+    manager.addActivityListener(listener);
+    manager.stop();
+
+    try {
+      manager.stop(Arrays.asList(alicesAlice, alicesBob), "test");
+      Assert.fail("stopped users after being stopped");
+    } catch (CancellationException e) {
+      // expected
+    }
+
+    try {
+      manager.stop(alicesBob, "test");
+      Assert.fail("stopped a user after being stopped");
+    } catch (CancellationException e) {
+      // expected
+    }
+
+    // no handle is left behind that would block the local user
+    assertFalse(manager.getBlockedObservable().getValue());
+
+    EasyMock.verify(listener);
+    EasyMock.verify(alicesSession);
+  }
+
   /**
    * Verify that local locking does not generate an activity.
    *
@@ -362,6 +455,90 @@ public class StopManagerTest {
     EasyMock.verify(carlsSession);
   }
 
+  /** Verify that stopping several users sends a single lock request to all of them. */
+  @Test
+  public void testStopMultipleUsersMulticast() {
+    final StopManager alicesStopManager = new StopManager(alicesSession);
+    final StopManager bobsStopManager = new StopManager(bobsSession);
+    final StopManager carlsStopManager = new StopManager(carlsSession);
+    alicesStopManager.start();
+    bobsStopManager.start();
+    carlsStopManager.start();
+
+    final List<StopActivity> lockRequests = new ArrayList<StopActivity>();
+
+    final IActivityListener forwarder = createForwarder(bobsConsumer, carlsConsumer);
+
+    alicesStopManager.addActivityListener(
+        new IActivityListener() {
+          @Override
+          public void created(IActivity activity) {
+            if (((StopActivity) activity).getType() == StopActivity.Type.LOCKREQUEST)
+              lockRequests.add((StopActivity) activity);
+
+            forwarder.created(activity);
+          }
+        });
+
+    bobsStopManager.addActivityListener(createForwarder(alicesConsumer));
+    carlsStopManager.addActivityListener(createForwarder(alicesConsumer));
+
+    List<StartHandle> handles =
+        alicesStopManager.stop(Arrays.asList(alicesBob, alicesCarl), "test");
+
+    assertEquals(2, handles.size());
+    assertEquals(1, lockRequests.size());
+    assertEquals(Arrays.asList(alicesBob, alicesCarl), lockRequests.get(0).getTargets());
+
+    for (StartHandle handle : handles) assertTrue(handle.startAndAwait());
+
+    assertFalse(bobsStopManager.getBlockedObservable().getValue());
+    assertFalse(carlsStopManager.getBlockedObservable().getValue());
+
+    alicesStopManager.stop();
+    bobsStopManager.stop();
+    carlsStopManager.stop();
+  }
+
+  /** Verify that a user leaving the session aborts the stop without waiting for the timeout. */
+  @Test(timeout = 10000)
+  public void testUserLeftDuringStop() {
+    final StopManager alicesStopManager = new StopManager(alicesSession);
+    final StopManager carlsStopManager = new StopManager(carlsSession);
+    alicesStopManager.start();
+    carlsStopManager.start();
+
+    final IActivityListener forwarder = createForwarder(carlsConsumer);
+
+    alicesStopManager.addActivityListener(
+        new IActivityListener() {
+          @Override
+          public void created(IActivity activity) {
+            StopActivity stop = (StopActivity) activity;
+
+            // bob never answers but leaves the session, carl answers
+            if (stop.getType() == StopActivity.Type.LOCKREQUEST) alicesListener.userLeft(alicesBob);
+
+            if (stop.getRecipients().contains(alicesCarl)) forwarder.created(activity);
+          }
+        });
+
+    carlsStopManager.addActivityListener(createForwarder(alicesConsumer));
+
+    try {
+      alicesStopManager.stop(Arrays.asList(alicesBob, alicesCarl), "test");
+      Assert.fail("Should not be reached");
+    } catch (CancellationException e) {
+      // expected
+    }
+
+    // carl was stopped and has to be resumed again
+    assertFalse(carlsStopManager.getBlockedObservable().getValue());
+
+    alicesStopManager.stop();
+    carlsStopManager.stop();
+  }
+
   /**
    * This tests what happens when a user is leaving a session during the stop/pause process is on.
    */
@@ -388,6 +565,18 @@ public class StopManagerTest {
             });
     alicesSession.removeActivityConsumer(isA(IActivityConsumer.class));
 
+    alicesSession.addListener(isA(ISessionListener.class));
+    EasyMock.expectLastCall()
+        .andStubAnswer(
+            new IAnswer<Object>() {
+              @Override
+              public Object answer() throws Throwable {
+                alicesListener = (ISessionListener) EasyMock.getCurrentArguments()[0];
+                return null;
+              }
+            });
+    alicesSession.removeListener(isA(ISessionListener.class));
+
     alicesSession.getLocalUser();
     EasyMock.expectLastCall().andReturn(alicesAlice).anyTimes();
 
@@ -542,10 +731,14 @@ public class StopManagerTest {
   }
 
   private static StopActivity rewriteStopActivity(StopActivity inActivity) {
+    List<User> affected = new ArrayList<User>();
+
+    for (User user : inActivity.getAffected()) affected.add(rewriteUser(user));
+
     return new StopActivity(
-        rewriteUser(inActivity.getAffected()),
+        rewriteUser(inActivity.getSource()),
         rewriteUser(inActivity.getInitiator()),
-        rewriteUser(inActivity.getAffected()),
+        affected,
         inActivity.getType(),
         inActivity.getState(),
         inActivity.getActivityID());
@@ -585,11 +778,13 @@ public class StopManagerTest {
         if (!(activity instanceof StopActivity)) return;
 
         StopActivity stop = (StopActivity) activity;
-        if (stop.getRecipient().getJID().equals(new JID("bob"))) {
-          from.exec(rewriteStopActivity(stop));
-        } else if (stop.getRecipient().getJID().equals(new JID("carl"))) {
-          to.exec(rewriteStopActivity(stop));
-        } else Assert.fail("Should not be reached");
+        for (User recipient : stop.getRecipients()) {
+          if (recipient.getJID().equals(new JID("bob"))) {
+            from.exec(rewriteStopActivity(stop));
+          } else if (recipient.getJID().equals(new JID("carl"))) {
+            to.exec(rewriteStopActivity(stop));
+          } else Assert.fail("Should not be reached");
+        }
       }
     };
   }
@@ -5,7 +5,11 @@ import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Optional;
+import saros.filesystem.IFile;
 import saros.net.xmpp.JID;
 import saros.net.xmpp.contact.XMPPContact;
 import saros.net.xmpp.contact.XMPPContactsService;
@@ -36,4 +40,34 @@ public class SarosMocks {
 
     return contactsServiceMock;
   }
+
+  /**
+   * Create a mocked file without any behavior, e.g to identify a file.
+   *
+   * @return a mocked IFile
+   */
+  public static IFile fileMock() {
+    IFile fileMock = createMock(IFile.class);
+    replay(fileMock);
+
+    return fileMock;
+  }
+
+  /**
+   * Create a mocked file with the given content. Every call of {@link IFile#getContents()} returns
+   * a new stream of the content.
+   *
+   * @param content
+   * @return a mocked IFile
+   */
+  public static IFile fileMockWithContent(byte[] content) throws IOException {
+    IFile fileMock = createMock(IFile.class);
+
+    expect(fileMock.getContents())
+        .andStubAnswer(() -> (InputStream) new ByteArrayInputStream(content.clone()));
+    expect(fileMock.getSize()).andStubReturn((long) content.length);
+    replay(fileMock);
+
+    return fileMock;
+  }
 }
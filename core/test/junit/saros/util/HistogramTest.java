@@ -0,0 +1,48 @@
+package saros.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+  @Test
+  public void testBuckets() {
+    assertEquals(0, Histogram.getBucket(0));
+    assertEquals(1, Histogram.getBucket(1));
+    assertEquals(2, Histogram.getBucket(2));
+    assertEquals(2, Histogram.getBucket(3));
+    assertEquals(3, Histogram.getBucket(4));
+    assertEquals(11, Histogram.getBucket(1024));
+    assertEquals(63, Histogram.getBucket(Long.MAX_VALUE));
+
+    assertEquals(0, Histogram.getLowerBound(0));
+    assertEquals(1, Histogram.getLowerBound(1));
+    assertEquals(1024, Histogram.getLowerBound(11));
+  }
+
+  @Test
+  public void testRecord() {
+    Histogram histogram = new Histogram();
+
+    histogram.record(1);
+    histogram.record(2);
+    histogram.record(3);
+    histogram.record(9);
+    histogram.record(-5);
+
+    long[] counts = histogram.getCounts();
+
+    assertEquals(1, counts[0]);
+    assertEquals(1, counts[1]);
+    assertEquals(2, counts[2]);
+    assertEquals(1, counts[4]);
+
+    assertEquals(5, histogram.getCount());
+    assertEquals(9, histogram.getMax());
+    assertEquals(3.0, histogram.getMean(), 0.0);
+
+    assertEquals(
+        "[0]=1, [1]=1, [2-3]=2, [8-15]=1 (count=5, mean=3.0, max=9)", histogram.toString());
+  }
+}
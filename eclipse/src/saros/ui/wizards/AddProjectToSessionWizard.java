@@ -44,6 +44,7 @@ import org.eclipse.ui.IFileEditorInput;
 import saros.Saros;
 import saros.SarosPluginContext;
 import saros.editor.internal.EditorAPI;
+import saros.exceptions.OperationCanceledException;
 import saros.filesystem.IReferencePoint;
 import saros.filesystem.ResourceAdapterFactory;
 import saros.filesystem.checksum.IChecksumCache;
@@ -578,6 +579,8 @@ public class AddProjectToSessionWizard extends Wizard {
                 checksumCache,
                 ProgressMonitorAdapterFactory.convert(
                     subMonitor.newChild(1, SubMonitor.SUPPRESS_ALL_LABELS)));
+      } catch (OperationCanceledException e) {
+        throw new CoreException(Status.CANCEL_STATUS);
       } catch (IOException e) {
         Throwable cause = e.getCause();
 
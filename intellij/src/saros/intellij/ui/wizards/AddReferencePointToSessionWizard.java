@@ -19,6 +19,7 @@ import org.apache.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import saros.SarosPluginContext;
+import saros.exceptions.OperationCanceledException;
 import saros.filesystem.IReferencePoint;
 import saros.filesystem.checksum.IChecksumCache;
 import saros.intellij.context.SharedIDEContext;
@@ -690,6 +691,9 @@ public class AddReferencePointToSessionWizard extends Wizard {
           modifiedResources.put(referencePoint.getName(), diff);
         }
 
+      } catch (OperationCanceledException e) {
+        log.debug("calculation of the local file lists was canceled");
+        break;
       } catch (IOException e) {
         log.warn("could not calculate local file list for reference point " + referencePoint, e);
       }
@@ -10,6 +10,14 @@ public class ServerConfig {
   private static final String PASSWORD_KEY = "saros.server.password";
   private static final String WORKSPACE_PATH_KEY = "saros.server.workspace";
   private static final String INTERACTIVE_KEY = "saros.server.interactive";
+  private static final String EDITOR_SAVE_INTERVAL_KEY = "saros.server.editor.saveinterval";
+  private static final String EDITOR_IDLE_TIMEOUT_KEY = "saros.server.editor.idletimeout";
+  private static final String EDITOR_CACHE_SIZE_KEY = "saros.server.editor.cachesize";
+  private static final String CHECKSUM_CACHE_KEY = "saros.server.checksumcache";
+
+  private static final long DEFAULT_EDITOR_SAVE_INTERVAL = 2000;
+  private static final long DEFAULT_EDITOR_IDLE_TIMEOUT = 500;
+  private static final long DEFAULT_EDITOR_CACHE_SIZE = 16 * 1024 * 1024;
 
   /**
    * Returns the JID that the Saros server should use to connect to the XMPP network.
@@ -52,4 +60,44 @@ public class ServerConfig {
         || value.equalsIgnoreCase("yes")
         || value.equalsIgnoreCase("y");
   }
+
+  /**
+   * Returns the maximum time in milliseconds changes of an open editor may stay unsaved, even if
+   * the editor is still being edited.
+   *
+   * @return the save interval in milliseconds
+   */
+  public static long getEditorSaveInterval() {
+    return Long.getLong(EDITOR_SAVE_INTERVAL_KEY, DEFAULT_EDITOR_SAVE_INTERVAL);
+  }
+
+  /**
+   * Returns the time in milliseconds after which the changes of an open editor are saved once it is
+   * no longer edited.
+   *
+   * @return the idle timeout in milliseconds
+   */
+  public static long getEditorIdleTimeout() {
+    return Long.getLong(EDITOR_IDLE_TIMEOUT_KEY, DEFAULT_EDITOR_IDLE_TIMEOUT);
+  }
+
+  /**
+   * Returns the maximum number of characters the open editors may hold in memory. Editors of files
+   * that are opened by remote users are kept open even if this limit is exceeded.
+   *
+   * @return the maximum number of characters of all open editors
+   */
+  public static long getEditorCacheSize() {
+    return Long.getLong(EDITOR_CACHE_SIZE_KEY, DEFAULT_EDITOR_CACHE_SIZE);
+  }
+
+  /**
+   * Returns the path of the file in which the checksums of the workspace files are persisted. May
+   * be <code>null</code>, which means the file should be placed in the root of the workspace.
+   *
+   * @return the path of the checksum cache file, or <code>null</code> if the default should be used
+   */
+  public static String getChecksumCachePath() {
+    return System.getProperty(CHECKSUM_CACHE_KEY);
+  }
 }
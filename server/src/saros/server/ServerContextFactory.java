@@ -11,7 +11,7 @@ import saros.filesystem.IPath;
 import saros.filesystem.IPathFactory;
 import saros.filesystem.IWorkspace;
 import saros.filesystem.checksum.IChecksumCache;
-import saros.filesystem.checksum.NullChecksumCache;
+import saros.filesystem.checksum.IFileContentChangedNotifier;
 import saros.monitoring.remote.IRemoteProgressIndicatorFactory;
 import saros.preferences.IPreferenceStore;
 import saros.preferences.Preferences;
@@ -21,6 +21,8 @@ import saros.server.console.InviteCommand;
 import saros.server.console.ServerConsole;
 import saros.server.console.ShareCommand;
 import saros.server.dummies.NullRemoteProgressIndicatorFactory;
+import saros.server.filesystem.ServerChecksumCache;
+import saros.server.filesystem.ServerFileContentChangedNotifier;
 import saros.server.filesystem.ServerPathFactoryImpl;
 import saros.server.filesystem.ServerPathImpl;
 import saros.server.filesystem.ServerWorkspaceImpl;
@@ -48,7 +50,6 @@ public class ServerContextFactory extends AbstractContextFactory {
   public void createComponents(MutablePicoContainer c) {
     addVersionString(c);
     addCoreInterfaceImplementations(c);
-    addOptionalCoreInterfaceImplementations(c);
     addAdditionalComponents(c);
   }
 
@@ -62,6 +63,8 @@ public class ServerContextFactory extends AbstractContextFactory {
     // File System
     c.addComponent(IPathFactory.class, ServerPathFactoryImpl.class);
     c.addComponent(IWorkspace.class, createWorkspace());
+    c.addComponent(IFileContentChangedNotifier.class, ServerFileContentChangedNotifier.class);
+    c.addComponent(IChecksumCache.class, ServerChecksumCache.class);
 
     // Preferences
     c.addComponent(IPreferenceStore.class, PersistencePreferenceStore.class);
@@ -76,14 +79,6 @@ public class ServerContextFactory extends AbstractContextFactory {
     c.addComponent(UISynchronizer.class, ServerUISynchronizerImpl.class);
   }
 
-  /*
-   * Components that are not necessarily needed but must be present, i.e. use
-   * dummies
-   */
-  private void addOptionalCoreInterfaceImplementations(MutablePicoContainer c) {
-    c.addComponent(IChecksumCache.class, NullChecksumCache.class);
-  }
-
   private void addAdditionalComponents(MutablePicoContainer c) {
     c.addComponent(SubscriptionAuthorizer.class);
     c.addComponent(NegotiationHandler.class);
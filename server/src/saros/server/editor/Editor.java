@@ -4,16 +4,29 @@ import java.io.IOException;
 import java.io.InputStream;
 import org.apache.commons.io.IOUtils;
 import saros.activities.TextEditActivity;
-import saros.editor.text.TextPositionUtils;
 import saros.filesystem.IFile;
 import saros.util.LineSeparatorNormalizationUtil;
 
-/** Representation of an open file on the server. Used by {@link ServerEditorManager}. */
+/**
+ * Representation of an open file on the server. Used by {@link ServerEditorManager}.
+ *
+ * <p>The editor keeps track of whether its content differs from the content of the file on disk, so
+ * the content can be written back to disk some time after it was changed. All methods of this class
+ * are thread safe.
+ */
 public class Editor {
 
   private IFile file;
   private GapBuffer content;
 
+  // Time of the first text edit that was not saved yet, 0 if there are no unsaved changes
+  private long dirtySince;
+
+  // Time of the last text edit
+  private long lastModification;
+
+  private boolean closed;
+
   public Editor(IFile file) throws IOException {
     String charset = file.getCharset();
 
@@ -44,29 +57,35 @@ public class Editor {
    *
    * @return editor's content
    */
-  public String getContent() {
+  public synchronized String getContent() {
     return content.toString();
   }
 
+  /**
+   * Returns the number of characters of the editor's content.
+   *
+   * @return length of the editor's content
+   */
+  public synchronized int length() {
+    return content.length();
+  }
+
   /**
    * Applies an editing operation to the editor's content. For performance reasons, the change is
    * not automatically saved to disk; this allows multiple edits to be collected and then written in
-   * one go (by calling {@link #save}).
+   * one go (by calling {@link #save} or {@link #flush}).
    *
    * @param edit the text edit operation to apply
    */
-  public void applyTextEdit(TextEditActivity edit) {
-    String contentString = content.toString();
-
-    String lineSeparator = TextPositionUtils.guessLineSeparator(contentString);
+  public synchronized void applyTextEdit(TextEditActivity edit) {
+    String lineSeparator = content.getLineSeparator();
 
     // Use system default line separator if text does not contain any line separator yet.
     if (lineSeparator.isEmpty()) {
       lineSeparator = System.lineSeparator();
     }
 
-    int startOffset =
-        TextPositionUtils.calculateOffset(contentString, edit.getStartPosition(), lineSeparator);
+    int startOffset = content.calculateOffset(edit.getStartPosition(), lineSeparator);
 
     if (edit.getReplacedText().length() > 0) {
       String replacedText = edit.getReplacedText();
@@ -84,6 +103,74 @@ public class Editor {
 
       content.insert(startOffset, denormalizedNewText);
     }
+
+    lastModification = System.currentTimeMillis();
+
+    if (dirtySince == 0) dirtySince = lastModification;
+  }
+
+  /**
+   * Returns whether the editor's content contains changes that were not saved to disk yet.
+   *
+   * @return <code>true</code> if there are unsaved changes, <code>false</code> otherwise
+   */
+  public synchronized boolean isDirty() {
+    return dirtySince != 0;
+  }
+
+  /**
+   * Returns the time of the oldest change that was not saved to disk yet.
+   *
+   * @return the time in milliseconds or 0 if there are no unsaved changes
+   * @see System#currentTimeMillis()
+   */
+  public synchronized long getDirtySince() {
+    return dirtySince;
+  }
+
+  /**
+   * Returns the time of the last change of the editor's content.
+   *
+   * @return the time in milliseconds or 0 if the content was never changed
+   * @see System#currentTimeMillis()
+   */
+  public synchronized long getLastModification() {
+    return lastModification;
+  }
+
+  /**
+   * Writes the editor's content to disk if it contains unsaved changes and the editor was not
+   * closed yet.
+   *
+   * @throws IOException if writing the file fails
+   * @see #save()
+   */
+  public synchronized void flush() throws IOException {
+    if (closed || dirtySince == 0) return;
+
+    save();
+  }
+
+  /**
+   * Writes pending changes to disk and closes the editor. Changes applied after the editor was
+   * closed are no longer written to disk.
+   *
+   * @throws IOException if writing the file fails, the editor is closed nevertheless
+   */
+  public synchronized void close() throws IOException {
+    try {
+      flush();
+    } finally {
+      closed = true;
+    }
+  }
+
+  /**
+   * Closes the editor without writing pending changes to disk, e.g because the associated file was
+   * moved or deleted.
+   */
+  public synchronized void discard() {
+    closed = true;
   }
 
   /**
@@ -93,7 +180,9 @@ public class Editor {
    *
    * @throws IOException if writing the file fails
    */
-  public void save() throws IOException {
+  public synchronized void save() throws IOException {
     getFile().setContents(IOUtils.toInputStream(content.toString(), file.getCharset()));
+
+    dirtySince = 0;
   }
 }
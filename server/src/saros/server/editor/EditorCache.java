@@ -0,0 +1,240 @@
+package saros.server.editor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.apache.log4j.Logger;
+import saros.filesystem.IFile;
+
+/**
+ * Cache of the open {@link Editor editors} of the {@link ServerEditorManager}. The cache is bounded
+ * by the number of characters of all cached editors. If the bound is exceeded the least recently
+ * used editors are evicted first. Editors of pinned files are never evicted, even if this means
+ * that the bound is exceeded.
+ *
+ * <p>The eviction handler is called after the lock of the cache was released. Until it returns the
+ * editor of an evicted file is not loaded again.
+ */
+final class EditorCache {
+
+  private static final Logger log = Logger.getLogger(EditorCache.class);
+
+  /** Loads the editor of a file on a cache miss. */
+  interface EditorLoader {
+    Editor load(IFile file) throws IOException;
+  }
+
+  private final Map<IFile, Editor> editors = new LinkedHashMap<>(16, 0.75f, true);
+
+  /** Files whose evicted editors are currently handled by the eviction handler */
+  private final Set<IFile> evictingFiles = new HashSet<>();
+
+  private final long maxCharacters;
+
+  private final Supplier<Set<IFile>> pinnedFiles;
+
+  private final Consumer<Editor> evictionHandler;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * Creates a new cache.
+   *
+   * @param maxCharacters the maximum number of characters of all cached editors
+   * @param pinnedFiles supplies the files whose editors must not be evicted
+   * @param evictionHandler is called with every evicted editor
+   */
+  EditorCache(
+      long maxCharacters, Supplier<Set<IFile>> pinnedFiles, Consumer<Editor> evictionHandler) {
+
+    this.maxCharacters = maxCharacters;
+    this.pinnedFiles = pinnedFiles;
+    this.evictionHandler = evictionHandler;
+  }
+
+  /**
+   * Returns the cached editor of the given file. On a cache miss the editor is loaded using the
+   * given loader and other editors may be evicted to stay within the bound of the cache.
+   */
+  Editor get(IFile file, EditorLoader loader) throws IOException {
+    return get(file, loader, editor -> {});
+  }
+
+  /**
+   * Returns the cached editor of the given file after applying the given action to it. On a cache
+   * miss the editor is loaded using the given loader. The editor is not evicted before the action
+   * was applied, other editors may be evicted afterwards to stay within the bound of the cache.
+   */
+  Editor get(IFile file, EditorLoader loader, Consumer<Editor> action) throws IOException {
+    final Editor editor;
+    final List<Editor> evicted;
+
+    synchronized (this) {
+      awaitEviction(file);
+
+      Editor cached = editors.get(file);
+
+      if (cached != null) {
+        hits++;
+        editor = cached;
+      } else {
+        misses++;
+        editor = loader.load(file);
+        editors.put(file, editor);
+      }
+
+      action.accept(editor);
+
+      evicted = trim(file);
+    }
+
+    evict(evicted);
+
+    return editor;
+  }
+
+  /** Returns the cached editor of the given file or <code>null</code> if it is not cached. */
+  synchronized Editor getIfPresent(IFile file) {
+    return editors.get(file);
+  }
+
+  /** Removes the editor of the given file from the cache without calling the eviction handler. */
+  synchronized Editor remove(IFile file) {
+    return editors.remove(file);
+  }
+
+  /** Returns a snapshot of the cached files. */
+  synchronized List<IFile> getFiles() {
+    return new ArrayList<>(editors.keySet());
+  }
+
+  /** Returns a snapshot of the cached editors. */
+  synchronized List<Editor> getEditors() {
+    return new ArrayList<>(editors.values());
+  }
+
+  /**
+   * Evicts the least recently used editors that are not pinned until the editors fit into the bound
+   * of the cache. Needs to be called if the content of the cached editors grew.
+   */
+  void trim() {
+    final List<Editor> evicted;
+
+    synchronized (this) {
+      evicted = trim(null);
+    }
+
+    evict(evicted);
+  }
+
+  /**
+   * Removes the least recently used editors that are neither pinned nor belong to the given file
+   * until the editors fit into the bound of the cache. The removed editors must be passed to {@link
+   * #evict} after releasing the lock.
+   *
+   * @return the removed editors
+   */
+  private List<Editor> trim(IFile fileToKeep) {
+    long characters = getCharacters();
+
+    if (characters <= maxCharacters) return Collections.emptyList();
+
+    Set<IFile> pinned = pinnedFiles.get();
+
+    List<Editor> evicted = new ArrayList<>();
+
+    Iterator<Map.Entry<IFile, Editor>> iterator = editors.entrySet().iterator();
+
+    while (characters > maxCharacters && iterator.hasNext()) {
+      Map.Entry<IFile, Editor> entry = iterator.next();
+
+      if (pinned.contains(entry.getKey()) || entry.getKey().equals(fileToKeep)) continue;
+
+      Editor editor = entry.getValue();
+
+      iterator.remove();
+
+      characters -= editor.length();
+      evictions++;
+
+      evictingFiles.add(entry.getKey());
+      evicted.add(editor);
+    }
+
+    if (characters > maxCharacters && log.isDebugEnabled())
+      log.debug(
+          "editor cache exceeds its bound of "
+              + maxCharacters
+              + " characters as it only contains pinned or new editors: "
+              + characters);
+
+    return evicted;
+  }
+
+  /**
+   * Calls the eviction handler for the given editors, must not be called while holding the lock.
+   */
+  private void evict(List<Editor> evicted) {
+    assert !Thread.holdsLock(this) || evicted.isEmpty();
+
+    for (Editor editor : evicted) {
+      try {
+        evictionHandler.accept(editor);
+      } finally {
+        synchronized (this) {
+          evictingFiles.remove(editor.getFile());
+          notifyAll();
+        }
+      }
+    }
+  }
+
+  /**
+   * Waits until the eviction handler returned for the evicted editor of the given file, so its
+   * pending changes are not missed when loading the file again.
+   */
+  private void awaitEviction(IFile file) {
+    boolean interrupted = false;
+
+    while (evictingFiles.contains(file)) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+
+    if (interrupted) Thread.currentThread().interrupt();
+  }
+
+  /** Returns the number of characters of all cached editors. */
+  synchronized long getCharacters() {
+    long characters = 0;
+
+    for (Editor editor : editors.values()) characters += editor.length();
+
+    return characters;
+  }
+
+  synchronized long getHits() {
+    return hits;
+  }
+
+  synchronized long getMisses() {
+    return misses;
+  }
+
+  synchronized long getEvictions() {
+    return evictions;
+  }
+}
@@ -1,6 +1,14 @@
 package saros.server.editor;
 
-/** Gap buffer implementation used by {@link Editor} for performant text edits. */
+import saros.editor.text.TextPosition;
+import saros.editor.text.TextPositionUtils;
+
+/**
+ * Gap buffer implementation used by {@link Editor} for performant text edits.
+ *
+ * <p>The buffer keeps an index of the line separators contained in its content, so the offset of a
+ * {@link TextPosition} and the used line separator can be determined without scanning the content.
+ */
 public class GapBuffer {
   // Buffer
   private char[] content;
@@ -9,6 +17,12 @@ public class GapBuffer {
   private int gapStart;
   private int gapLength;
 
+  // Start offsets of all Unix line separators, including those that are part of a Windows one
+  private final OffsetIndex unixLineSeparators;
+
+  // Start offsets of all Windows line separators
+  private final OffsetIndex windowsLineSeparators;
+
   public GapBuffer(String content) {
     this(content, 0);
   }
@@ -19,25 +33,107 @@ public class GapBuffer {
     System.arraycopy(contentArray, 0, this.content, 0, contentArray.length);
     gapStart = contentArray.length;
     gapLength = initialGap;
+
+    unixLineSeparators = new OffsetIndex(contentArray.length);
+    windowsLineSeparators = new OffsetIndex(contentArray.length);
+
+    indexLineSeparators(0, contentArray.length);
   }
 
   public void insert(int pos, String s) {
     int len = s.length();
+
+    // the text may be inserted between the characters of a Windows line separator
+    if (pos > 0) windowsLineSeparators.remove(pos - 1, pos);
+
     moveGap(pos, len);
     s.getChars(0, len, content, gapStart);
     gapStart += len;
     gapLength -= len;
+
+    unixLineSeparators.textInserted(pos, len);
+    windowsLineSeparators.textInserted(pos, len);
+
+    indexLineSeparators(pos, pos + len);
   }
 
   public void delete(int pos, int len) {
+    // a Windows line separator may start right before the deleted text
+    if (pos > 0) windowsLineSeparators.remove(pos - 1, pos);
+
     moveGap(pos, 0);
     gapLength += len;
+
+    unixLineSeparators.textDeleted(pos, len);
+    windowsLineSeparators.textDeleted(pos, len);
+
+    indexLineSeparators(pos, pos);
   }
 
   public int length() {
     return content.length - gapLength;
   }
 
+  public char charAt(int index) {
+    if (index < 0 || index >= length())
+      throw new IndexOutOfBoundsException("index: " + index + ", length: " + length());
+
+    return index < gapStart ? content[index] : content[index + gapLength];
+  }
+
+  /**
+   * Returns the line separator used in the content.
+   *
+   * @return the used line separator or an empty string if the content does not contain a line
+   *     separator
+   * @see TextPositionUtils#guessLineSeparator(String)
+   */
+  public String getLineSeparator() {
+    // Windows line ending must be tested first as the Unix line ending is a substring of it
+    if (windowsLineSeparators.size() > 0) return TextPositionUtils.WINDOWS_LINE_SEPARATOR;
+
+    if (unixLineSeparators.size() > 0) return TextPositionUtils.UNIX_LINE_SEPARATOR;
+
+    return "";
+  }
+
+  /**
+   * Calculates the offset of the given text position in the content using the given line separator.
+   *
+   * @param position the position for which to calculate the offset
+   * @param lineSeparator the line separator used in the content
+   * @return the offset of the given text position in the content
+   * @see TextPositionUtils#calculateOffset(String, TextPosition, String)
+   */
+  public int calculateOffset(TextPosition position, String lineSeparator) {
+    final OffsetIndex lineSeparators;
+
+    if (TextPositionUtils.WINDOWS_LINE_SEPARATOR.equals(lineSeparator))
+      lineSeparators = windowsLineSeparators;
+    else if (TextPositionUtils.UNIX_LINE_SEPARATOR.equals(lineSeparator))
+      lineSeparators = unixLineSeparators;
+    else return TextPositionUtils.calculateOffset(toString(), position, lineSeparator);
+
+    if (!position.isValid()) {
+      throw new IllegalArgumentException("The given position must not be invalid");
+    }
+
+    int lineNumber = position.getLineNumber();
+
+    if (lineNumber == 0) {
+      return position.getInLineOffset();
+    }
+
+    if (lineNumber > lineSeparators.size()) {
+      throw new IllegalStateException(
+          "The content contains fewer lines than specified by the text position");
+    }
+
+    int lineStartOffset = lineSeparators.get(lineNumber - 1) + lineSeparator.length();
+
+    return lineStartOffset + position.getInLineOffset();
+  }
+
   public String toString() {
     char[] result = new char[length()];
     // copy before & after the gap
@@ -47,6 +143,22 @@ public class GapBuffer {
     return String.valueOf(result);
   }
 
+  /**
+   * Adds the line separators that start in the given range of the content to the line separator
+   * indices. Also checks for a Windows line separator that starts right before the range and one
+   * that starts at the end of the range.
+   */
+  private void indexLineSeparators(int start, int end) {
+    int length = length();
+
+    for (int i = Math.max(0, start - 1); i <= end && i < length; i++) {
+      if (charAt(i) == '\r' && i + 1 < length && charAt(i + 1) == '\n')
+        windowsLineSeparators.add(i);
+
+      if (i >= start && i < end && charAt(i) == '\n') unixLineSeparators.add(i);
+    }
+  }
+
   /**
    * Move the gap to a particular position and make sure it's at least a given size.
    *
@@ -0,0 +1,147 @@
+package saros.server.editor;
+
+import java.util.Arrays;
+
+/**
+ * Sorted list of offsets into the text of a {@link GapBuffer}, e.g. the offsets of all line
+ * separators.
+ *
+ * <p>Like the gap buffer itself the index is organized around a gap. Offsets before the gap are
+ * stored as they are, offsets after the gap are stored relative to the end of the text. As edits
+ * are applied at the gap, inserting or deleting text only moves the gap to the edit position
+ * instead of updating all following offsets.
+ */
+final class OffsetIndex {
+
+  private int[] offsets;
+
+  // Gap
+  private int gapStart;
+  private int gapLength;
+
+  private int textLength;
+
+  /**
+   * Creates an empty index.
+   *
+   * @param textLength the length of the indexed text
+   */
+  OffsetIndex(int textLength) {
+    this.offsets = new int[16];
+    this.gapStart = 0;
+    this.gapLength = offsets.length;
+    this.textLength = textLength;
+  }
+
+  /** Returns the number of offsets in the index. */
+  int size() {
+    return offsets.length - gapLength;
+  }
+
+  /**
+   * Returns the offset at the given position of the index.
+   *
+   * @param index the position in the index, starting with 0 for the smallest offset
+   * @throws IndexOutOfBoundsException if the index is out of range
+   */
+  int get(int index) {
+    if (index < 0 || index >= size())
+      throw new IndexOutOfBoundsException("index: " + index + ", size: " + size());
+
+    return index < gapStart ? offsets[index] : offsets[index + gapLength] + textLength;
+  }
+
+  /**
+   * Adds the given offset. Does nothing if the offset is already contained in the index.
+   *
+   * @param offset the offset to add
+   */
+  void add(int offset) {
+    moveGap(offset);
+
+    if (gapStart < size() && get(gapStart) == offset) return;
+
+    if (gapLength == 0) grow();
+
+    offsets[gapStart++] = offset;
+    gapLength--;
+  }
+
+  /**
+   * Removes all offsets in the given range.
+   *
+   * @param from the start of the range (inclusive)
+   * @param to the end of the range (exclusive)
+   */
+  void remove(int from, int to) {
+    moveGap(from);
+
+    while (gapStart < size() && get(gapStart) < to) gapLength++;
+  }
+
+  /**
+   * Updates the index after text was inserted. All offsets greater or equal to the given offset are
+   * moved by the length of the inserted text.
+   *
+   * @param offset the offset at which the text was inserted
+   * @param length the length of the inserted text
+   */
+  void textInserted(int offset, int length) {
+    moveGap(offset);
+    textLength += length;
+  }
+
+  /**
+   * Updates the index after text was deleted. All offsets of the deleted range are removed, all
+   * following offsets are moved by the length of the deleted text.
+   *
+   * @param offset the offset at which the text was deleted
+   * @param length the length of the deleted text
+   */
+  void textDeleted(int offset, int length) {
+    remove(offset, offset + length);
+    textLength -= length;
+  }
+
+  /**
+   * Moves the gap to the position of the first offset that is greater or equal to the given offset.
+   */
+  private void moveGap(int offset) {
+    int low = 0;
+    int high = size();
+
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+
+      if (get(middle) < offset) low = middle + 1;
+      else high = middle;
+    }
+
+    int newGapStart = low;
+
+    // moves offsets from before the gap to after the gap or vice versa
+    while (gapStart > newGapStart) {
+      gapStart--;
+      offsets[gapStart + gapLength] = offsets[gapStart] - textLength;
+    }
+
+    while (gapStart < newGapStart) {
+      offsets[gapStart] = offsets[gapStart + gapLength] + textLength;
+      gapStart++;
+    }
+  }
+
+  private void grow() {
+    int size = size();
+    int newLength = offsets.length * 2;
+    int[] target = Arrays.copyOf(offsets, newLength);
+
+    int suffixLength = size - gapStart;
+
+    System.arraycopy(
+        offsets, offsets.length - suffixLength, target, newLength - suffixLength, suffixLength);
+
+    gapLength = newLength - size;
+    offsets = target;
+  }
+}
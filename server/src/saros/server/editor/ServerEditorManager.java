@@ -2,36 +2,112 @@ package saros.server.editor;
 
 import java.io.IOException;
 import java.nio.file.NoSuchFileException;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
-import org.apache.commons.collections4.map.LRUMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import org.apache.log4j.Logger;
 import saros.activities.TextEditActivity;
 import saros.editor.IEditorManager;
 import saros.editor.ISharedEditorListener;
+import saros.editor.remote.UserEditorStateManager;
 import saros.editor.text.LineRange;
 import saros.editor.text.TextPositionUtils;
 import saros.editor.text.TextSelection;
 import saros.filesystem.IFile;
 import saros.filesystem.IFolder;
 import saros.filesystem.IReferencePoint;
+import saros.repackaged.picocontainer.Startable;
+import saros.server.ServerConfig;
 import saros.server.filesystem.ServerFileImpl;
 import saros.server.filesystem.ServerFolderImpl;
 import saros.session.User;
 import saros.util.LineSeparatorNormalizationUtil;
+import saros.util.NamedThreadFactory;
+import saros.util.ThreadUtils;
 
-/** Server implementation of the {@link IEditorManager} interface */
-public class ServerEditorManager implements IEditorManager {
+/**
+ * Server implementation of the {@link IEditorManager} interface
+ *
+ * <p>Text edits are not written to disk immediately. Changed editors are saved once they were not
+ * edited for {@linkplain ServerConfig#getEditorIdleTimeout() some time}, at the latest after the
+ * {@linkplain ServerConfig#getEditorSaveInterval() save interval}. Editors are also saved when
+ * {@link #saveEditors} is called, when they are closed or evicted, and when the session ends.
+ */
+public class ServerEditorManager implements IEditorManager, Startable {
 
   private static final Logger log = Logger.getLogger(ServerEditorManager.class);
 
-  private Map<IFile, Editor> openEditors = Collections.synchronizedMap(new LRUMap<>(10));
+  private static final long MIN_SAVE_CHECK_DELAY = 50;
+
+  private final EditorCache openEditors;
+
   private List<ISharedEditorListener> listeners = new CopyOnWriteArrayList<>();
 
+  private ScheduledExecutorService saveExecutor;
+
+  private long saveInterval;
+  private long idleTimeout;
+
+  /**
+   * Creates a ServerEditorManager.
+   *
+   * @param userEditorStateManager used to keep the editors of files open that are opened by remote
+   *     users
+   */
+  public ServerEditorManager(UserEditorStateManager userEditorStateManager) {
+    openEditors =
+        new EditorCache(
+            ServerConfig.getEditorCacheSize(),
+            userEditorStateManager::getOpenEditors,
+            this::closeEditor);
+  }
+
+  @Override
+  public void start() {
+    saveInterval = ServerConfig.getEditorSaveInterval();
+    idleTimeout = ServerConfig.getEditorIdleTimeout();
+
+    long checkDelay = Math.max(MIN_SAVE_CHECK_DELAY, Math.min(saveInterval, idleTimeout) / 2);
+
+    saveExecutor =
+        Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("editor-save", false));
+
+    saveExecutor.scheduleWithFixedDelay(
+        ThreadUtils.wrapSafe(log, this::saveIdleEditors),
+        checkDelay,
+        checkDelay,
+        TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void stop() {
+    saveExecutor.shutdown();
+
+    try {
+      if (!saveExecutor.awaitTermination(10, TimeUnit.SECONDS))
+        log.warn("saving of editors is still running");
+    } catch (InterruptedException e) {
+      log.warn("interrupted while waiting for the saving of editors to finish");
+      Thread.currentThread().interrupt();
+    }
+
+    saveEditors(editor -> true);
+
+    log.debug(
+        "editor cache statistics: hits = "
+            + getCacheHits()
+            + ", misses = "
+            + getCacheMisses()
+            + ", evictions = "
+            + getCacheEvictions());
+  }
+
   @Override
   public void openEditor(IFile file, boolean activate) {
     try {
@@ -43,7 +119,7 @@ public class ServerEditorManager implements IEditorManager {
 
   @Override
   public Set<IFile> getOpenEditors() {
-    return openEditors.keySet();
+    return new HashSet<>(openEditors.getFiles());
   }
 
   @Override
@@ -70,9 +146,19 @@ public class ServerEditorManager implements IEditorManager {
 
   @Override
   public void saveEditors(IReferencePoint referencePoint) {
-    // do nothing?
-    // we do not keep dirty editors,
-    // because the LRUMap might close Editors at any time
+    saveEditors(editor -> referencePoint.equals(editor.getFile().getReferencePoint()));
+  }
+
+  /**
+   * Writes the pending changes of the editor for the given file to disk. Does nothing if there is
+   * no open editor for the file.
+   *
+   * @param file the file whose editor to save
+   */
+  public void saveEditor(IFile file) {
+    Editor editor = openEditors.getIfPresent(file);
+
+    if (editor != null) flushEditor(editor);
   }
 
   @Override
@@ -95,25 +181,65 @@ public class ServerEditorManager implements IEditorManager {
     listeners.remove(listener);
   }
 
+  /**
+   * Returns the number of requests for an editor that were answered by an already open editor.
+   *
+   * @return number of cache hits
+   */
+  public long getCacheHits() {
+    return openEditors.getHits();
+  }
+
+  /**
+   * Returns the number of requests for an editor that required to open the editor.
+   *
+   * @return number of cache misses
+   */
+  public long getCacheMisses() {
+    return openEditors.getMisses();
+  }
+
+  /**
+   * Returns the number of editors that were closed to limit the memory used by the open editors.
+   *
+   * @return number of cache evictions
+   */
+  public long getCacheEvictions() {
+    return openEditors.getEvictions();
+  }
+
   /**
    * Get an existing or create a new Editor for a given file. May remove the least recently used
-   * Editor to free memory.
+   * Editors that are not opened by remote users to free memory.
    *
    * @param file of the file to open
    * @return Editor of the file
    * @throws IOException
    */
   private Editor getOrCreateEditor(IFile file) throws IOException {
-    Editor editor = openEditors.get(file);
-    if (editor == null) {
-      if (!file.exists()) {
-        throw new NoSuchFileException(file.toString());
-      }
+    return getOrCreateEditor(file, editor -> {});
+  }
 
-      editor = new Editor(file);
-      openEditors.put(file, editor);
-    }
-    return editor;
+  /**
+   * Get an existing or create a new Editor for a given file and applies the given action to it
+   * before it can be evicted.
+   *
+   * @param file of the file to open
+   * @param action the action to apply to the editor
+   * @return Editor of the file
+   * @throws IOException
+   */
+  private Editor getOrCreateEditor(IFile file, Consumer<Editor> action) throws IOException {
+    return openEditors.get(
+        file,
+        f -> {
+          if (!f.exists()) {
+            throw new NoSuchFileException(f.toString());
+          }
+
+          return new Editor(f);
+        },
+        action);
   }
 
   /**
@@ -124,9 +250,9 @@ public class ServerEditorManager implements IEditorManager {
   public void applyTextEdit(TextEditActivity activity) {
     IFile file = activity.getResource();
     try {
-      Editor editor = getOrCreateEditor(file);
-      editor.applyTextEdit(activity);
-      editor.save();
+      // the editor must not be evicted before the edit is applied
+      getOrCreateEditor(file, editor -> editor.applyTextEdit(activity));
+
       for (ISharedEditorListener listener : listeners) {
         listener.textEdited(activity);
       }
@@ -143,35 +269,79 @@ public class ServerEditorManager implements IEditorManager {
    */
   public void updateMapping(IFile oldFile, IFile newFile) {
     Editor oldEditor = openEditors.remove(oldFile);
-    openEditors.put(newFile, oldEditor);
+
+    if (oldEditor == null) return;
+
+    // the old file no longer exists, so its pending changes must not be written anymore
+    oldEditor.discard();
+
+    openEditor(newFile, false);
   }
 
   @Override
   public void closeEditor(IFile file) {
-    openEditors.remove(file);
+    Editor editor = openEditors.remove(file);
+
+    if (editor != null) closeEditor(editor);
   }
 
   /**
-   * Close all editors of files in a specific folder. Helpful if a folder gets deleted.
+   * Saves all open editors with unsaved changes that are idle or whose oldest change exceeds the
+   * save interval.
+   */
+  private void saveIdleEditors() {
+    long now = System.currentTimeMillis();
+
+    saveEditors(
+        editor ->
+            now - editor.getLastModification() >= idleTimeout
+                || now - editor.getDirtySince() >= saveInterval);
+
+    // the content of the editors may have grown since they were opened
+    openEditors.trim();
+  }
+
+  /** Saves all open editors with unsaved changes that match the given filter. */
+  private void saveEditors(Predicate<Editor> filter) {
+    for (Editor editor : openEditors.getEditors()) {
+      if (editor.isDirty() && filter.test(editor)) flushEditor(editor);
+    }
+  }
+
+  private void flushEditor(Editor editor) {
+    try {
+      editor.flush();
+    } catch (IOException e) {
+      log.error("Could not save " + editor.getFile(), e);
+    }
+  }
+
+  private void closeEditor(Editor editor) {
+    try {
+      editor.close();
+    } catch (IOException e) {
+      log.error("Could not save " + editor.getFile() + " while closing its editor", e);
+    }
+  }
+
+  /**
+   * Closes all editors of files in a specific folder without saving their pending changes. Must be
+   * called after the folder was deleted.
    *
-   * @param folder the folder
+   * @param folder the deleted folder
    */
   public void closeEditorsInFolder(IFolder folder) {
-    synchronized (openEditors) {
-      ServerFolderImpl serverFolder = (ServerFolderImpl) folder;
+    ServerFolderImpl serverFolder = (ServerFolderImpl) folder;
 
-      Set<IFile> keys = openEditors.keySet();
-      Set<IFile> invalidKeys = new HashSet<>();
-      for (IFile file : keys) {
-        ServerFileImpl serverFile = (ServerFileImpl) file;
+    for (IFile file : openEditors.getFiles()) {
+      ServerFileImpl serverFile = (ServerFileImpl) file;
 
-        if (serverFolder.getFullPath().isPrefixOf(serverFile.getFullPath())) {
-          invalidKeys.add(file);
-        }
-      }
-      for (IFile file : invalidKeys) {
-        closeEditor(file);
-      }
+      if (!serverFolder.getFullPath().isPrefixOf(serverFile.getFullPath())) continue;
+
+      Editor editor = openEditors.remove(file);
+
+      // the file no longer exists, so its pending changes must not be written anymore
+      if (editor != null) editor.discard();
     }
   }
 }
@@ -0,0 +1,330 @@
+package saros.server.filesystem;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Logger;
+import saros.filesystem.IFile;
+import saros.filesystem.checksum.IChecksumCache;
+import saros.filesystem.checksum.IFileContentChangedListener;
+import saros.filesystem.checksum.IFileContentChangedNotifier;
+import saros.repackaged.picocontainer.Startable;
+import saros.server.ServerConfig;
+
+/**
+ * Server implementation of the {@link IChecksumCache} interface that persists the checksums in an
+ * index file, so a restarted server does not have to read all files again.
+ *
+ * <p>Every checksum is stored along with the size and the modification time of its file. A checksum
+ * is only returned if both still match the file, so changes made while the server was not running
+ * are detected without reading the file. Changes made while the server is running are reported by
+ * the {@link IFileContentChangedNotifier}, which also covers changes that do not alter the size and
+ * happen within the resolution of the modification time. A checksum added after its file was
+ * changed is not stored, as it may have been calculated from the content before the change.
+ *
+ * <p>The index file is an append-only log of entries and invalidations. It is compacted whenever
+ * the cache is started, which drops the entries of files that were deleted or changed in the
+ * meantime.
+ */
+public class ServerChecksumCache implements IChecksumCache, Startable {
+
+  private static final Logger log = Logger.getLogger(ServerChecksumCache.class);
+
+  private static final String DEFAULT_INDEX_FILE = ".saros-checksums";
+
+  private static final int MAGIC = 0x53435331;
+
+  /**
+   * Checksums of files that were modified within this time in milliseconds before their checksum
+   * was added are not persisted, as a following modification may not change the modification time.
+   */
+  private static final long RACY_INTERVAL = 2000;
+
+  /** Size of the entries that mark an invalidated checksum in the index file */
+  private static final long INVALIDATED = -1;
+
+  private static final class Entry {
+    private final long size;
+    private final long modificationTime;
+    private final long checksum;
+
+    private Entry(long size, long modificationTime, long checksum) {
+      this.size = size;
+      this.modificationTime = modificationTime;
+      this.checksum = checksum;
+    }
+  }
+
+  private final IFileContentChangedListener fileContentChangedListener = this::invalidate;
+
+  private final IFileContentChangedNotifier fileContentChangedNotifier;
+
+  private final Path indexFile;
+
+  private final Path workspaceLocation;
+
+  /** The valid checksums by the workspace relative paths of their files */
+  private final Map<String, Entry> entries = new HashMap<>();
+
+  /** Paths of files that changed since their checksums were added the last time */
+  private final Set<String> invalidatedPaths = new HashSet<>();
+
+  /** Appends to the index file, <code>null</code> if the checksums are not persisted */
+  private DataOutputStream index;
+
+  public ServerChecksumCache(
+      ServerWorkspaceImpl workspace, IFileContentChangedNotifier fileContentChangedNotifier) {
+
+    this.fileContentChangedNotifier = fileContentChangedNotifier;
+
+    final String indexPath = ServerConfig.getChecksumCachePath();
+
+    workspaceLocation = ((ServerPathImpl) workspace.getLocation()).getDelegate();
+
+    indexFile =
+        indexPath != null ? Paths.get(indexPath) : workspaceLocation.resolve(DEFAULT_INDEX_FILE);
+  }
+
+  @Override
+  public synchronized void start() {
+    load();
+
+    try {
+      compact();
+
+      index =
+          new DataOutputStream(
+              new BufferedOutputStream(
+                  Files.newOutputStream(indexFile, StandardOpenOption.APPEND)));
+
+    } catch (IOException e) {
+      log.error("failed to write checksum index " + indexFile + ", checksums are not persisted", e);
+    }
+
+    fileContentChangedNotifier.addFileContentChangedListener(fileContentChangedListener);
+  }
+
+  @Override
+  public synchronized void stop() {
+    fileContentChangedNotifier.removeFileContentChangedListener(fileContentChangedListener);
+
+    if (index == null) return;
+
+    try {
+      index.close();
+    } catch (IOException e) {
+      log.error("failed to write checksum index " + indexFile, e);
+    }
+
+    index = null;
+  }
+
+  @Override
+  public Long getChecksum(IFile file) {
+    final String path = getPath(file);
+
+    if (path == null) return null;
+
+    final Entry entry;
+
+    synchronized (this) {
+      entry = entries.get(path);
+    }
+
+    if (entry == null) return null;
+
+    final BasicFileAttributes attributes = readAttributes(file);
+
+    if (attributes != null
+        && attributes.size() == entry.size
+        && getModificationTime(attributes) == entry.modificationTime) return entry.checksum;
+
+    synchronized (this) {
+      entries.remove(path, entry);
+    }
+
+    return null;
+  }
+
+  @Override
+  public boolean addChecksum(IFile file, long checksum) {
+    final String path = getPath(file);
+
+    if (path == null) return false;
+
+    final BasicFileAttributes attributes = readAttributes(file);
+
+    synchronized (this) {
+      final boolean isInvalid = invalidatedPaths.remove(path);
+
+      // the file may have changed while the checksum was calculated
+      if (attributes == null || isInvalid) return isInvalid;
+
+      final Entry entry = new Entry(attributes.size(), getModificationTime(attributes), checksum);
+
+      final Entry previous = entries.put(path, entry);
+
+      if (previous != null
+          && previous.size == entry.size
+          && previous.modificationTime == entry.modificationTime
+          && previous.checksum == entry.checksum) return false;
+
+      final long modificationTime = attributes.lastModifiedTime().toMillis();
+
+      if (System.currentTimeMillis() - modificationTime > RACY_INTERVAL) append(path, entry);
+
+      return isInvalid;
+    }
+  }
+
+  private synchronized void invalidate(final IFile file) {
+    final String path = getPath(file);
+
+    if (path == null) return;
+
+    // also recorded without an entry, as a checksum may currently be calculated
+    invalidatedPaths.add(path);
+
+    if (entries.remove(path) == null) return;
+
+    // the file may change without changing its size or modification time
+    append(path, new Entry(INVALIDATED, 0, 0));
+  }
+
+  /** Loads the entries of the index file. A truncated last entry is ignored. */
+  private void load() {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+
+      if (in.readInt() != MAGIC) {
+        log.warn("discarding checksum index " + indexFile + " as it has an unknown format");
+        return;
+      }
+
+      while (true) {
+        final String path = in.readUTF();
+        final Entry entry = new Entry(in.readLong(), in.readLong(), in.readLong());
+
+        if (entry.size == INVALIDATED) entries.remove(path);
+        else entries.put(path, entry);
+      }
+
+    } catch (NoSuchFileException | FileNotFoundException e) {
+      // NOP
+    } catch (EOFException e) {
+      log.debug("loaded " + entries.size() + " checksums from index " + indexFile);
+    } catch (IOException e) {
+      log.error("failed to read checksum index " + indexFile, e);
+    }
+  }
+
+  /**
+   * Replaces the index file with one that contains every current entry once. Entries whose file no
+   * longer exists or whose size or modification time no longer match are dropped.
+   */
+  private void compact() throws IOException {
+    final Path tmpFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+
+    int dropped = 0;
+
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+
+      out.writeInt(MAGIC);
+
+      final Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+
+      while (iterator.hasNext()) {
+        final Map.Entry<String, Entry> entry = iterator.next();
+
+        if (!isUpToDate(entry.getKey(), entry.getValue())) {
+          iterator.remove();
+          dropped++;
+          continue;
+        }
+
+        write(out, entry.getKey(), entry.getValue());
+      }
+    }
+
+    if (dropped > 0) log.debug("dropped " + dropped + " outdated checksums from " + indexFile);
+
+    Files.move(tmpFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /** Returns whether the file of the given entry still has the size and modification time. */
+  private boolean isUpToDate(final String path, final Entry entry) {
+    final BasicFileAttributes attributes;
+
+    try {
+      attributes = Files.readAttributes(workspaceLocation.resolve(path), BasicFileAttributes.class);
+    } catch (IOException e) {
+      return false;
+    }
+
+    return attributes.size() == entry.size
+        && getModificationTime(attributes) == entry.modificationTime;
+  }
+
+  private void append(final String path, final Entry entry) {
+    if (index == null) return;
+
+    try {
+      write(index, path, entry);
+    } catch (IOException e) {
+      log.error("failed to write checksum index " + indexFile + ", checksums are not persisted", e);
+
+      try {
+        index.close();
+      } catch (IOException ignore) {
+        // NOP
+      }
+
+      index = null;
+    }
+  }
+
+  private static void write(final DataOutputStream out, final String path, final Entry entry)
+      throws IOException {
+
+    out.writeUTF(path);
+    out.writeLong(entry.size);
+    out.writeLong(entry.modificationTime);
+    out.writeLong(entry.checksum);
+  }
+
+  private static String getPath(final IFile file) {
+    if (!(file instanceof ServerFileImpl)) return null;
+
+    return ((ServerFileImpl) file).getFullPath().toPortableString();
+  }
+
+  private static BasicFileAttributes readAttributes(final IFile file) {
+    try {
+      return Files.readAttributes(((ServerFileImpl) file).toNioPath(), BasicFileAttributes.class);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private static long getModificationTime(final BasicFileAttributes attributes) {
+    return attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+  }
+}
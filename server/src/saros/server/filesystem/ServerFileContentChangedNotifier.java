@@ -0,0 +1,193 @@
+package saros.server.filesystem;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.apache.log4j.Logger;
+import saros.filesystem.IFile;
+import saros.filesystem.checksum.IFileContentChangedListener;
+import saros.filesystem.checksum.IFileContentChangedNotifier;
+import saros.repackaged.picocontainer.Startable;
+import saros.util.ThreadUtils;
+
+/**
+ * Server implementation of the {@link IFileContentChangedNotifier} interface. Watches the workspace
+ * folder and all its sub folders with a {@link WatchService} and notifies the listeners about every
+ * file that was created, modified or deleted.
+ *
+ * <p><b>Note:</b> Changes that are dropped by the watch service because of an overflow are not
+ * reported.
+ */
+public class ServerFileContentChangedNotifier implements IFileContentChangedNotifier, Startable {
+
+  private static final Logger log = Logger.getLogger(ServerFileContentChangedNotifier.class);
+
+  private static final long TIMEOUT = 10000;
+
+  private final ServerWorkspaceImpl workspace;
+
+  private final Path root;
+
+  private final List<IFileContentChangedListener> listeners = new CopyOnWriteArrayList<>();
+
+  /** The watched folders by their watch keys */
+  private final Map<WatchKey, Path> folders = new ConcurrentHashMap<>();
+
+  private WatchService watchService;
+
+  private Thread watcherThread;
+
+  public ServerFileContentChangedNotifier(ServerWorkspaceImpl workspace) {
+    this.workspace = workspace;
+    this.root = ((ServerPathImpl) workspace.getLocation()).getDelegate();
+  }
+
+  @Override
+  public void start() {
+    try {
+      watchService = root.getFileSystem().newWatchService();
+      registerAll(root);
+    } catch (IOException e) {
+      log.error("failed to watch workspace folder " + root + ", changes will not be reported", e);
+      return;
+    }
+
+    watcherThread = ThreadUtils.runSafeAsync("ServerFileWatcher", log, this::watch);
+  }
+
+  @Override
+  public void stop() {
+    if (watchService == null) return;
+
+    try {
+      watchService.close();
+    } catch (IOException e) {
+      log.warn("failed to close watch service", e);
+    }
+
+    if (watcherThread == null) return;
+
+    try {
+      watcherThread.join(TIMEOUT);
+    } catch (InterruptedException e) {
+      log.warn("interrupted while waiting for " + watcherThread.getName() + " thread to terminate");
+
+      Thread.currentThread().interrupt();
+    }
+
+    if (watcherThread.isAlive()) log.error(watcherThread.getName() + " thread is still running");
+  }
+
+  @Override
+  public void addFileContentChangedListener(IFileContentChangedListener listener) {
+    listeners.add(listener);
+  }
+
+  @Override
+  public void removeFileContentChangedListener(IFileContentChangedListener listener) {
+    listeners.remove(listener);
+  }
+
+  private void watch() {
+    while (true) {
+      final WatchKey key;
+
+      try {
+        key = watchService.take();
+      } catch (ClosedWatchServiceException | InterruptedException e) {
+        return;
+      }
+
+      final Path folder = folders.get(key);
+
+      for (WatchEvent<?> event : key.pollEvents()) {
+        if (event.kind() == OVERFLOW) {
+          log.warn("changes in workspace folder " + root + " were dropped by the watch service");
+          continue;
+        }
+
+        if (folder == null) continue;
+
+        final Path path = folder.resolve((Path) event.context());
+
+        if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+          fileChanged(path);
+          continue;
+        }
+
+        if (event.kind() != ENTRY_CREATE) continue;
+
+        /*
+         * files may have been created in the new folder before it was registered, so all of its
+         * files are reported as changed
+         */
+        try {
+          registerAll(path);
+        } catch (IOException e) {
+          log.error("failed to watch folder " + path + ", changes will not be reported", e);
+        }
+      }
+
+      if (!key.reset()) folders.remove(key);
+    }
+  }
+
+  /** Registers the given folder and all its sub folders and reports all contained files. */
+  private void registerAll(final Path start) throws IOException {
+    Files.walkFileTree(
+        start,
+        new SimpleFileVisitor<Path>() {
+
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+              throws IOException {
+
+            folders.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            if (!start.equals(root)) fileChanged(file);
+
+            return FileVisitResult.CONTINUE;
+          }
+        });
+  }
+
+  private void fileChanged(final Path path) {
+    final Path relativePath = root.relativize(path);
+
+    // files in the workspace root do not belong to any project
+    if (relativePath.getNameCount() < 2) return;
+
+    final IFile file =
+        new ServerFileImpl(workspace, ServerPathImpl.fromString(relativePath.toString()));
+
+    for (IFileContentChangedListener listener : listeners) {
+      try {
+        listener.fileContentChanged(file);
+      } catch (RuntimeException e) {
+        log.error("invoking fileContentChanged() failed", e);
+      }
+    }
+  }
+}
@@ -95,6 +95,9 @@ public class FileActivityExecutor extends AbstractActivityConsumer implements St
       return;
     }
 
+    // the content is read from disk if the activity does not contain it
+    editorManager.saveEditor(oldFile);
+
     byte[] activityContent = activity.getContent();
 
     InputStream contents;
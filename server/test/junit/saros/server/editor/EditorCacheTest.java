@@ -0,0 +1,134 @@
+package saros.server.editor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import saros.filesystem.IFile;
+import saros.server.filesystem.ServerPathImpl;
+import saros.server.filesystem.ServerProjectImpl;
+import saros.server.filesystem.ServerWorkspaceImpl;
+
+public class EditorCacheTest {
+
+  private ServerWorkspaceImpl workspace;
+  private ServerProjectImpl project;
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() throws Exception {
+    workspace =
+        new ServerWorkspaceImpl(
+            ServerPathImpl.fromString(
+                Files.createTempDirectory("saros-test-workspace").toString()));
+
+    project = new ServerProjectImpl(workspace, "project");
+    project.create();
+
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+
+    FileUtils.deleteQuietly(workspace.getLocation().toFile());
+  }
+
+  @Test
+  public void evictionHandlerIsCalledWithoutHoldingTheLock() throws Exception {
+    final AtomicReference<EditorCache> cache = new AtomicReference<>();
+    final AtomicBoolean lockHeld = new AtomicBoolean(true);
+
+    cache.set(
+        new EditorCache(
+            15, Collections::emptySet, editor -> lockHeld.set(Thread.holdsLock(cache.get()))));
+
+    IFile file = createFile("file.txt", "0123456789");
+
+    cache.get().get(file, Editor::new);
+    cache.get().get(createFile("other.txt", "0123456789"), Editor::new);
+
+    assertFalse(cache.get().getFiles().contains(file));
+    assertEquals(1, cache.get().getEvictions());
+    assertFalse(lockHeld.get());
+  }
+
+  @Test
+  public void evictedFileIsLoadedAfterTheEvictionHandlerReturned() throws Exception {
+    final CountDownLatch evictionStarted = new CountDownLatch(1);
+    final CountDownLatch evictionReleased = new CountDownLatch(1);
+    final AtomicBoolean evicted = new AtomicBoolean();
+
+    final EditorCache cache =
+        new EditorCache(
+            15,
+            Collections::emptySet,
+            editor -> {
+              evictionStarted.countDown();
+
+              try {
+                evictionReleased.await(10, TimeUnit.SECONDS);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+
+              evicted.set(true);
+            });
+
+    final IFile file = createFile("file.txt", "0123456789");
+    final IFile other = createFile("other.txt", "0123456789");
+
+    cache.get(file, Editor::new);
+
+    Future<?> eviction = executor.submit(() -> cache.get(other, Editor::new));
+
+    assertTrue(evictionStarted.await(10, TimeUnit.SECONDS));
+
+    Future<Boolean> reload =
+        executor.submit(
+            () -> {
+              final AtomicBoolean evictedBeforeLoad = new AtomicBoolean();
+
+              cache.get(
+                  file,
+                  f -> {
+                    evictedBeforeLoad.set(evicted.get());
+                    return new Editor(f);
+                  });
+
+              return evictedBeforeLoad.get();
+            });
+
+    // the cache must not be blocked by the running eviction handler
+    assertTrue(cache.getFiles().contains(other));
+
+    evictionReleased.countDown();
+
+    eviction.get(10, TimeUnit.SECONDS);
+    assertTrue("file was loaded before its eviction finished", reload.get(10, TimeUnit.SECONDS));
+  }
+
+  private IFile createFile(String path, String content) throws IOException {
+    IFile file = project.getFile(path);
+    file.create(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    return file;
+  }
+}
@@ -0,0 +1,112 @@
+package saros.server.editor;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import org.junit.Test;
+import saros.editor.text.TextPosition;
+import saros.editor.text.TextPositionUtils;
+
+public class GapBufferTest {
+
+  private static final String CRLF = TextPositionUtils.WINDOWS_LINE_SEPARATOR;
+  private static final String LF = TextPositionUtils.UNIX_LINE_SEPARATOR;
+
+  @Test
+  public void insertAndDelete() {
+    GapBuffer buffer = new GapBuffer("Hello World");
+
+    buffer.insert(5, ",");
+    buffer.insert(12, "!");
+    buffer.delete(0, 1);
+    buffer.insert(0, "h");
+
+    assertEquals("hello, World!", buffer.toString());
+    assertEquals(13, buffer.length());
+    assertEquals('W', buffer.charAt(7));
+  }
+
+  @Test
+  public void lineSeparator() {
+    GapBuffer buffer = new GapBuffer("foo");
+
+    assertEquals("", buffer.getLineSeparator());
+
+    buffer.insert(3, "\n");
+    assertEquals(LF, buffer.getLineSeparator());
+
+    // joins to a Windows line separator
+    buffer.insert(3, "\r");
+    assertEquals(CRLF, buffer.getLineSeparator());
+
+    // splits the Windows line separator
+    buffer.insert(4, "bar");
+    assertEquals(LF, buffer.getLineSeparator());
+
+    buffer.delete(4, 3);
+    assertEquals(CRLF, buffer.getLineSeparator());
+
+    buffer.delete(3, 2);
+    assertEquals("", buffer.getLineSeparator());
+  }
+
+  @Test
+  public void calculateOffset() {
+    GapBuffer buffer = new GapBuffer("first\r\nsecond\nstill second\r\nthird");
+
+    assertEquals(3, buffer.calculateOffset(new TextPosition(0, 3), CRLF));
+    assertEquals(7, buffer.calculateOffset(new TextPosition(1, 0), CRLF));
+    assertEquals(28, buffer.calculateOffset(new TextPosition(2, 0), CRLF));
+
+    assertEquals(14, buffer.calculateOffset(new TextPosition(2, 0), LF));
+    assertEquals(29, buffer.calculateOffset(new TextPosition(3, 1), LF));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void calculateOffsetBeyondLastLine() {
+    new GapBuffer("first\nsecond").calculateOffset(new TextPosition(2, 0), LF);
+  }
+
+  @Test
+  public void randomEdits() {
+    Random random = new Random(4711);
+
+    String[] fragments = {"a", "bc", "\n", "\r", "\r\n", "x\r\ny", "\n\n", "\r\r"};
+
+    StringBuilder expected = new StringBuilder("initial\r\ntext\n");
+    GapBuffer buffer = new GapBuffer(expected.toString());
+
+    for (int i = 0; i < 5000; i++) {
+      int position = random.nextInt(expected.length() + 1);
+
+      if (random.nextInt(3) == 0 && position < expected.length()) {
+        int length = 1 + random.nextInt(Math.min(4, expected.length() - position));
+
+        expected.delete(position, position + length);
+        buffer.delete(position, length);
+      } else {
+        String fragment = fragments[random.nextInt(fragments.length)];
+
+        expected.insert(position, fragment);
+        buffer.insert(position, fragment);
+      }
+
+      String text = expected.toString();
+
+      assertEquals(text, buffer.toString());
+      assertEquals(TextPositionUtils.guessLineSeparator(text), buffer.getLineSeparator());
+
+      for (String lineSeparator : new String[] {LF, CRLF}) {
+        int lines = TextPositionUtils.calculateDeltas(text, lineSeparator).getLeft();
+
+        for (int line = 0; line <= lines; line++) {
+          TextPosition position0 = new TextPosition(line, 0);
+
+          assertEquals(
+              TextPositionUtils.calculateOffset(text, position0, lineSeparator),
+              buffer.calculateOffset(position0, lineSeparator));
+        }
+      }
+    }
+  }
+}
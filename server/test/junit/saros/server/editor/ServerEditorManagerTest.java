@@ -0,0 +1,279 @@
+package saros.server.editor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Stream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import saros.activities.TextEditActivity;
+import saros.editor.remote.UserEditorStateManager;
+import saros.editor.text.TextPosition;
+import saros.filesystem.IFile;
+import saros.filesystem.IFolder;
+import saros.net.xmpp.JID;
+import saros.server.filesystem.ServerPathImpl;
+import saros.server.filesystem.ServerProjectImpl;
+import saros.server.filesystem.ServerWorkspaceImpl;
+import saros.session.User;
+
+public class ServerEditorManagerTest {
+
+  private static final String SAVE_INTERVAL_KEY = "saros.server.editor.saveinterval";
+  private static final String IDLE_TIMEOUT_KEY = "saros.server.editor.idletimeout";
+  private static final String CACHE_SIZE_KEY = "saros.server.editor.cachesize";
+
+  private final User alice = new User(new JID("alice@junit"), true, true, null);
+
+  private ServerWorkspaceImpl workspace;
+  private ServerProjectImpl project;
+
+  private final Set<IFile> remotelyOpenedFiles = new HashSet<>();
+
+  private ServerEditorManager editorManager;
+
+  @Before
+  public void setUp() throws Exception {
+    workspace =
+        new ServerWorkspaceImpl(
+            ServerPathImpl.fromString(
+                Files.createTempDirectory("saros-test-workspace").toString()));
+
+    project = new ServerProjectImpl(workspace, "project");
+    project.create();
+
+    System.setProperty(CACHE_SIZE_KEY, "30");
+
+    UserEditorStateManager userEditorStateManager =
+        EasyMock.createMock(UserEditorStateManager.class);
+
+    EasyMock.expect(userEditorStateManager.getOpenEditors())
+        .andAnswer(() -> new HashSet<>(remotelyOpenedFiles))
+        .anyTimes();
+
+    EasyMock.replay(userEditorStateManager);
+
+    editorManager = new ServerEditorManager(userEditorStateManager);
+  }
+
+  @After
+  public void tearDown() {
+    System.clearProperty(SAVE_INTERVAL_KEY);
+    System.clearProperty(IDLE_TIMEOUT_KEY);
+    System.clearProperty(CACHE_SIZE_KEY);
+
+    FileUtils.deleteQuietly(workspace.getLocation().toFile());
+  }
+
+  @Test
+  public void editsAreSavedOnSaveEditors() throws Exception {
+    startWithoutAutomaticSaving();
+
+    IFile file = createFile("file.txt", "Hello World");
+
+    editorManager.applyTextEdit(insert(file, 5, ","));
+
+    assertEquals("Hello, World", editorManager.getContent(file));
+    assertEquals("Hello World", readFile(file));
+
+    editorManager.saveEditors(project);
+
+    assertEquals("Hello, World", readFile(file));
+
+    editorManager.stop();
+  }
+
+  @Test
+  public void editsAreSavedWhenIdle() throws Exception {
+    System.setProperty(SAVE_INTERVAL_KEY, "60000");
+    System.setProperty(IDLE_TIMEOUT_KEY, "50");
+
+    editorManager.start();
+
+    IFile file = createFile("file.txt", "Hello World");
+
+    editorManager.applyTextEdit(insert(file, 11, "!"));
+
+    long deadline = System.currentTimeMillis() + 10000;
+
+    while (!"Hello World!".equals(readFile(file)) && System.currentTimeMillis() < deadline)
+      Thread.sleep(10);
+
+    assertEquals("Hello World!", readFile(file));
+
+    editorManager.stop();
+  }
+
+  @Test
+  public void editsAreSavedOnStop() throws Exception {
+    startWithoutAutomaticSaving();
+
+    IFile file = createFile("file.txt", "Hello World");
+
+    editorManager.applyTextEdit(insert(file, 0, ">"));
+
+    editorManager.stop();
+
+    assertEquals(">Hello World", readFile(file));
+  }
+
+  @Test
+  public void editsAreSavedOnEviction() throws Exception {
+    startWithoutAutomaticSaving();
+
+    IFile file = createFile("file.txt", "Hello World");
+
+    editorManager.applyTextEdit(insert(file, 0, ">"));
+
+    editorManager.openEditor(createFile("other1", "0123456789"), false);
+    assertTrue(editorManager.getOpenEditors().contains(file));
+
+    editorManager.openEditor(createFile("other2", "0123456789"), false);
+    assertFalse(editorManager.getOpenEditors().contains(file));
+
+    assertEquals(">Hello World", readFile(file));
+    assertEquals(1, editorManager.getCacheEvictions());
+
+    editorManager.stop();
+  }
+
+  @Test
+  public void remotelyOpenedEditorsAreNotEvicted() throws Exception {
+    startWithoutAutomaticSaving();
+
+    IFile pinned = createFile("pinned", "0123456789");
+    IFile other = createFile("other", "0123456789");
+
+    remotelyOpenedFiles.add(pinned);
+
+    editorManager.openEditor(pinned, false);
+    editorManager.openEditor(other, false);
+    editorManager.openEditor(
+        createFile("large", "0123456789012345678901234567890123456789"), false);
+
+    assertTrue(editorManager.getOpenEditors().contains(pinned));
+    assertFalse(editorManager.getOpenEditors().contains(other));
+
+    // the most recently opened editor is kept, even if it exceeds the limit
+    assertEquals(2, editorManager.getOpenEditors().size());
+
+    editorManager.stop();
+  }
+
+  @Test
+  public void cacheStatistics() throws Exception {
+    startWithoutAutomaticSaving();
+
+    IFile file = createFile("file.txt", "Hello World");
+
+    editorManager.getContent(file);
+    editorManager.getContent(file);
+    editorManager.applyTextEdit(insert(file, 0, ">"));
+
+    assertEquals(2, editorManager.getCacheHits());
+    assertEquals(1, editorManager.getCacheMisses());
+    assertEquals(0, editorManager.getCacheEvictions());
+
+    editorManager.stop();
+  }
+
+  @Test
+  public void closedEditorIsNotSavedAnymore() throws Exception {
+    startWithoutAutomaticSaving();
+
+    IFile file = createFile("file.txt", "Hello World");
+
+    editorManager.applyTextEdit(insert(file, 0, ">"));
+    editorManager.closeEditor(file);
+
+    assertEquals(">Hello World", readFile(file));
+
+    file.delete();
+    editorManager.stop();
+
+    assertFalse(file.exists());
+    assertTrue(editorManager.getOpenEditors().isEmpty());
+  }
+
+  @Test
+  public void movedEditorIsNotSavedToOldFile() throws Exception {
+    startWithoutAutomaticSaving();
+
+    IFile oldFile = createFile("old.txt", "Hello World");
+
+    editorManager.applyTextEdit(insert(oldFile, 0, ">"));
+
+    IFile newFile = createFile("new.txt", "Hello World");
+    oldFile.delete();
+
+    editorManager.updateMapping(oldFile, newFile);
+    editorManager.stop();
+
+    assertFalse(oldFile.exists());
+    assertTrue(editorManager.getOpenEditors().contains(newFile));
+  }
+
+  @Test
+  public void editorsOfDeletedFolderAreNotSaved() throws Exception {
+    startWithoutAutomaticSaving();
+
+    IFolder folder = project.getFolder("folder");
+    folder.create();
+
+    // the name identifies the temporary file of a failed save
+    String name = "deleted-" + System.nanoTime() + ".txt";
+
+    IFile file = createFile("folder/" + name, "Hello World");
+
+    editorManager.applyTextEdit(insert(file, 0, ">"));
+
+    folder.delete();
+    editorManager.closeEditorsInFolder(folder);
+    editorManager.stop();
+
+    assertFalse(folder.exists());
+    assertTrue(editorManager.getOpenEditors().isEmpty());
+
+    try (Stream<Path> tempFiles = Files.list(Paths.get(System.getProperty("java.io.tmpdir")))) {
+      assertFalse(tempFiles.anyMatch(path -> path.getFileName().toString().startsWith(name)));
+    }
+  }
+
+  private void startWithoutAutomaticSaving() {
+    System.setProperty(SAVE_INTERVAL_KEY, "60000");
+    System.setProperty(IDLE_TIMEOUT_KEY, "60000");
+
+    editorManager.start();
+  }
+
+  private IFile createFile(String path, String content) throws IOException {
+    IFile file = project.getFile(path);
+    file.create(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    return file;
+  }
+
+  private static String readFile(IFile file) throws IOException {
+    try (InputStream in = file.getContents()) {
+      return IOUtils.toString(in, "UTF-8");
+    }
+  }
+
+  private TextEditActivity insert(IFile file, int offset, String text) {
+    return TextEditActivity.buildTextEditActivity(
+        alice, new TextPosition(0, offset), text, "", file);
+  }
+}
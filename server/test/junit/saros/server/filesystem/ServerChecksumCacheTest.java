@@ -0,0 +1,219 @@
+package saros.server.filesystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static saros.server.filesystem.FileSystemTestUtils.createFile;
+import static saros.server.filesystem.FileSystemTestUtils.createWorkspaceFolder;
+import static saros.server.filesystem.FileSystemTestUtils.path;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import org.apache.commons.io.FileUtils;
+import org.easymock.Capture;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import saros.filesystem.IFile;
+import saros.filesystem.checksum.IFileContentChangedListener;
+import saros.filesystem.checksum.IFileContentChangedNotifier;
+
+public class ServerChecksumCacheTest {
+
+  private ServerWorkspaceImpl workspace;
+  private ServerFileImpl file;
+
+  private IFileContentChangedNotifier notifier;
+  private final Capture<IFileContentChangedListener> listener = Capture.newInstance();
+
+  private ServerChecksumCache cache;
+
+  @Before
+  public void setUp() throws Exception {
+    workspace = new ServerWorkspaceImpl(createWorkspaceFolder());
+
+    createFile(workspace, "project/file", "content");
+    file = new ServerFileImpl(workspace, path("project/file"));
+    setModificationTime(file, System.currentTimeMillis() - 60000);
+
+    notifier = EasyMock.createNiceMock(IFileContentChangedNotifier.class);
+    notifier.addFileContentChangedListener(EasyMock.capture(listener));
+    EasyMock.expectLastCall().anyTimes();
+    EasyMock.replay(notifier);
+
+    cache = new ServerChecksumCache(workspace, notifier);
+  }
+
+  @After
+  public void tearDown() {
+    cache.stop();
+
+    FileUtils.deleteQuietly(workspace.getLocation().toFile());
+  }
+
+  @Test
+  public void checksumIsPersisted() {
+    cache.start();
+
+    assertNull(cache.getChecksum(file));
+    assertFalse(cache.addChecksum(file, 42));
+    assertEquals(Long.valueOf(42), cache.getChecksum(file));
+
+    restart();
+
+    assertEquals(Long.valueOf(42), cache.getChecksum(file));
+
+    // the index is compacted on every start
+    restart();
+
+    assertEquals(Long.valueOf(42), cache.getChecksum(file));
+  }
+
+  @Test
+  public void changesWhileStoppedAreDetected() throws Exception {
+    IFile other = new ServerFileImpl(workspace, path("project/other"));
+    createFile(workspace, "project/other", "content");
+    setModificationTime(other, System.currentTimeMillis() - 60000);
+
+    cache.start();
+    cache.addChecksum(file, 42);
+    cache.addChecksum(other, 43);
+    cache.stop();
+
+    // same size but a different modification time
+    writeFile(file, "CONTENT");
+    setModificationTime(file, System.currentTimeMillis() - 30000);
+
+    // different size but the same modification time
+    long modificationTime =
+        Files.getLastModifiedTime(((ServerFileImpl) other).toNioPath()).toMillis();
+    writeFile(other, "more content");
+    setModificationTime(other, modificationTime);
+
+    restart();
+
+    assertNull(cache.getChecksum(file));
+    assertNull(cache.getChecksum(other));
+  }
+
+  @Test
+  public void recentlyModifiedFilesAreNotPersisted() throws Exception {
+    setModificationTime(file, System.currentTimeMillis());
+
+    cache.start();
+    cache.addChecksum(file, 42);
+
+    assertEquals(Long.valueOf(42), cache.getChecksum(file));
+
+    restart();
+
+    assertNull(cache.getChecksum(file));
+  }
+
+  @Test
+  public void changedFilesAreInvalidated() {
+    cache.start();
+    cache.addChecksum(file, 42);
+
+    listener.getValue().fileContentChanged(new ServerFileImpl(workspace, path("project/file")));
+
+    assertNull(cache.getChecksum(file));
+    assertTrue("former checksum is not reported as invalid", cache.addChecksum(file, 43));
+    assertFalse(cache.addChecksum(file, 43));
+    assertEquals(Long.valueOf(43), cache.getChecksum(file));
+  }
+
+  @Test
+  public void checksumOfFileChangedDuringCalculationIsNotStored() {
+    cache.start();
+
+    // the file changes while its checksum is calculated
+    listener.getValue().fileContentChanged(new ServerFileImpl(workspace, path("project/file")));
+
+    assertTrue("checksum is not reported as invalid", cache.addChecksum(file, 42));
+    assertNull(cache.getChecksum(file));
+
+    assertFalse(cache.addChecksum(file, 43));
+    assertEquals(Long.valueOf(43), cache.getChecksum(file));
+  }
+
+  @Test
+  public void unchangedChecksumsAreNotAppended() throws Exception {
+    cache.start();
+    cache.addChecksum(file, 42);
+    cache.stop();
+
+    final long indexSize = Files.size(getIndexFile());
+
+    restart();
+
+    assertEquals(Long.valueOf(42), cache.getChecksum(file));
+    assertFalse(cache.addChecksum(file, 42));
+    assertFalse(cache.addChecksum(file, 42));
+
+    cache.stop();
+
+    assertEquals(indexSize, Files.size(getIndexFile()));
+  }
+
+  @Test
+  public void invalidationsArePersisted() {
+    cache.start();
+    cache.addChecksum(file, 42);
+
+    // a change that neither alters the size nor the modification time
+    listener.getValue().fileContentChanged(new ServerFileImpl(workspace, path("project/file")));
+
+    restart();
+
+    assertNull(cache.getChecksum(file));
+  }
+
+  @Test
+  public void compactionDropsEntriesOfDeletedFiles() throws Exception {
+    IFile other = new ServerFileImpl(workspace, path("project/other"));
+    createFile(workspace, "project/other", "content");
+    long modificationTime = System.currentTimeMillis() - 60000;
+    setModificationTime(other, modificationTime);
+
+    cache.start();
+    cache.addChecksum(other, 43);
+    cache.stop();
+
+    other.delete();
+
+    restart();
+    cache.stop();
+
+    // recreated with the same size and modification time after the compaction
+    createFile(workspace, "project/other", "CONTENT");
+    setModificationTime(other, modificationTime);
+
+    restart();
+
+    assertNull(cache.getChecksum(other));
+  }
+
+  private Path getIndexFile() {
+    return workspace.getLocation().toFile().toPath().resolve(".saros-checksums");
+  }
+
+  private void restart() {
+    cache.stop();
+    cache = new ServerChecksumCache(workspace, notifier);
+    cache.start();
+  }
+
+  private static void writeFile(IFile file, String content) throws IOException {
+    Files.write(((ServerFileImpl) file).toNioPath(), content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void setModificationTime(IFile file, long time) throws IOException {
+    Files.setLastModifiedTime(((ServerFileImpl) file).toNioPath(), FileTime.fromMillis(time));
+  }
+}
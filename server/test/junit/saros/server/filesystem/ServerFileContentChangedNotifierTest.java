@@ -0,0 +1,72 @@
+package saros.server.filesystem;
+
+import static saros.server.filesystem.FileSystemTestUtils.createFile;
+import static saros.server.filesystem.FileSystemTestUtils.createFolder;
+import static saros.server.filesystem.FileSystemTestUtils.createWorkspaceFolder;
+import static saros.server.filesystem.FileSystemTestUtils.path;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import saros.filesystem.IFile;
+
+public class ServerFileContentChangedNotifierTest {
+
+  private ServerWorkspaceImpl workspace;
+
+  private ServerFileContentChangedNotifier notifier;
+
+  private final Set<IFile> changedFiles = ConcurrentHashMap.newKeySet();
+
+  @Before
+  public void setUp() throws Exception {
+    workspace = new ServerWorkspaceImpl(createWorkspaceFolder());
+
+    createFile(workspace, "project/file", "content");
+
+    notifier = new ServerFileContentChangedNotifier(workspace);
+    notifier.addFileContentChangedListener(changedFiles::add);
+    notifier.start();
+  }
+
+  @After
+  public void tearDown() {
+    notifier.stop();
+
+    FileUtils.deleteQuietly(workspace.getLocation().toFile());
+  }
+
+  @Test(timeout = 30000)
+  public void modifiedFileIsReported() throws Exception {
+    ServerFileImpl file = new ServerFileImpl(workspace, path("project/file"));
+
+    Files.write(file.toNioPath(), "changed".getBytes(StandardCharsets.UTF_8));
+
+    awaitChange(file);
+  }
+
+  @Test(timeout = 30000)
+  public void filesInNewFoldersAreReported() throws Exception {
+    createFolder(workspace, "project/folder");
+    createFile(workspace, "project/folder/file", "content");
+
+    awaitChange(new ServerFileImpl(workspace, path("project/folder/file")));
+
+    changedFiles.clear();
+
+    ServerFileImpl file = new ServerFileImpl(workspace, path("project/folder/file"));
+
+    Files.delete(file.toNioPath());
+
+    awaitChange(file);
+  }
+
+  private void awaitChange(IFile file) throws InterruptedException {
+    while (!changedFiles.contains(file)) Thread.sleep(10);
+  }
+}